@@ -3,17 +3,24 @@ package se.cbb.jprime.apps;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.biojava.nbio.core.sequence.io.FastaReaderHelper;
 import org.biojava.nbio.core.sequence.template.Compound;
 import org.biojava.nbio.core.sequence.template.Sequence;
 
+import se.cbb.jprime.io.AsyncSampleWriter;
+import se.cbb.jprime.io.BinarySampleWriter;
 import se.cbb.jprime.io.GuestHostMapReader;
 import se.cbb.jprime.io.MSAFastPhyloTree;
+import se.cbb.jprime.io.MSAPartitionDefinition;
+import se.cbb.jprime.io.MSAPartitionReader;
+import se.cbb.jprime.io.MSAReader;
 import se.cbb.jprime.io.NewickRBTreeSamples;
 import se.cbb.jprime.io.NewickTree;
 import se.cbb.jprime.io.PrIMENewickTree;
@@ -21,31 +28,49 @@ import se.cbb.jprime.io.PrIMENewickTree.MetaProperty;
 import se.cbb.jprime.io.PrIMENewickTreeReader;
 import se.cbb.jprime.io.SampleDoubleArray;
 import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.io.Sampleable;
+import se.cbb.jprime.io.Sampler;
 import se.cbb.jprime.math.Continuous1DPDDependent;
 import se.cbb.jprime.math.GammaDistribution;
 import se.cbb.jprime.math.PRNG;
 import se.cbb.jprime.math.RealInterval;
 import se.cbb.jprime.math.UniformDistribution;
+import se.cbb.jprime.mcmc.AdaptiveTuningParameter;
 import se.cbb.jprime.mcmc.ConstantThinner;
+import se.cbb.jprime.mcmc.ConvergenceDiagnostics;
+import se.cbb.jprime.mcmc.DirichletProposer;
 import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.mcmc.FineProposerStatistics;
 import se.cbb.jprime.mcmc.HillClimbingAcceptor;
 import se.cbb.jprime.mcmc.Iteration;
 import se.cbb.jprime.mcmc.LinearProposerWeight;
 import se.cbb.jprime.mcmc.LinearTuningParameter;
+import se.cbb.jprime.mcmc.MCMCManager;
+import se.cbb.jprime.mcmc.MCMCProfiler;
+import se.cbb.jprime.mcmc.MetropolisCoupledRunner;
 import se.cbb.jprime.mcmc.MetropolisHastingsAcceptor;
+import se.cbb.jprime.mcmc.MultiChainRunner;
 import se.cbb.jprime.mcmc.MultiProposerSelector;
 import se.cbb.jprime.mcmc.NormalProposer;
 import se.cbb.jprime.mcmc.ProposalAcceptor;
 import se.cbb.jprime.mcmc.Proposer;
+import se.cbb.jprime.mcmc.ProposerStatistics;
 import se.cbb.jprime.mcmc.RealParameter;
+import se.cbb.jprime.mcmc.SimplexParameter;
+import se.cbb.jprime.mcmc.TemperedMetropolisHastingsAcceptor;
 import se.cbb.jprime.mcmc.Thinner;
+import se.cbb.jprime.mcmc.TuningParameter;
+import se.cbb.jprime.mcmc.WeightedDirichletPrior;
+import se.cbb.jprime.mcmc.WeightedDirichletProposer;
 import se.cbb.jprime.misc.Pair;
 import se.cbb.jprime.misc.Triple;
 import se.cbb.jprime.seqevo.GammaSiteRateHandler;
 import se.cbb.jprime.seqevo.MSAData;
+import se.cbb.jprime.seqevo.MSAPartition;
 import se.cbb.jprime.seqevo.MultiAlignment;
 import se.cbb.jprime.seqevo.SequenceType;
+import se.cbb.jprime.seqevo.SubstitutionMatrixHandler;
+import se.cbb.jprime.seqevo.SubstitutionMatrixHandlerFactory;
 import se.cbb.jprime.topology.BiasedRBTreeBranchSwapper;
 import se.cbb.jprime.topology.BifurcateTree;
 import se.cbb.jprime.topology.DoubleMap;
@@ -73,6 +98,12 @@ import se.cbb.jprime.topology.UniformRBTreeGenerator;
  */
 public class ParameterParser {
 
+	/** Number of iterations between adaptations of adaptive tuning parameters. */
+	public static final int ADAPTATION_INTERVAL = 100;
+	
+	/** Matches values which are fixed, e.g. "1.5FIXED". Notice the starting ".+": the regex has to match the whole string. */
+	public static final String FIXED_REGEX = ".+[fF][iI][xX][eE][dD]";
+
 	/**
 	 * Reads host tree with leaf names and times.
 	 * <p/>
@@ -128,6 +159,17 @@ public class ParameterParser {
 		}
 	}
 	
+	/**
+	 * Reads the multiple sequence alignment, in FASTA or PHYLIP format, directly into encoded states.
+	 * @param ps parameters.
+	 * @param seqType sequence type.
+	 * @return the alignment.
+	 * @throws IOException if unable to read the alignment.
+	 */
+	public static <P extends Parameters> MSAData getMSAData(P ps, SequenceType seqType) throws IOException {
+		return MSAReader.readMSA(new File(ps.getFiles().get(1)), seqType);
+	}
+	
 	/**
 	 * Reads a guest-to-host leaf map.
 	 * @param ps parameters.
@@ -152,19 +194,393 @@ public class ParameterParser {
 		return new Pair<DoubleParameter, GammaSiteRateHandler>(k, sr);
 	}
 	
+	/**
+	 * Returns the partitions of the sequence data. If no partition file has been specified, there is
+	 * a single partition named "SubstitutionModel", made up of the entire data, substitution matrix and site rates.
+	 * Otherwise, each partition has a substitution matrix and site rates of its own, and parameters prefixed by its name.
+	 * @param ps parameters.
+	 * @param D sequence data.
+	 * @param Q substitution matrix of the data, also the default model of partitions.
+	 * @param siteRates site rates of the data.
+	 * @param pCacheSize transition matrix cache size of each partition.
+	 * @return the partitions.
+	 * @throws IOException if unable to read the partition file.
+	 */
+	public static <P extends Parameters> List<MSAPartition> getMSAPartitions(P ps, MSAData D, SubstitutionMatrixHandler Q,
+			Pair<DoubleParameter, GammaSiteRateHandler> siteRates, int pCacheSize) throws IOException {
+		ArrayList<MSAPartition> parts = new ArrayList<MSAPartition>();
+		if (ps.getPartitions() == null) {
+			parts.add(new MSAPartition("SubstitutionModel", D, Q, siteRates.first, siteRates.second, null, false));
+			return parts;
+		}
+		List<MSAPartitionDefinition> defs = MSAPartitionReader.readPartitions(new File(ps.getPartitions()));
+		MSAPartitionReader.checkCoverage(defs, D.getNoOfPositions());
+		for (MSAPartitionDefinition def : defs) {
+			String name = def.getName();
+			String model = (def.getModel() == null ? ps.getSubstitutionModel() : def.getModel());
+			SubstitutionMatrixHandler pq = SubstitutionMatrixHandlerFactory.create(model, pCacheSize, name);
+			if (pq.getSequenceType() != D.getSequenceType()) {
+				throw new IllegalArgumentException("Substitution model of partition " + name + " must have the sequence type of the default model.");
+			}
+			DoubleParameter k = new DoubleParameter(name + "SiteRateShape", siteRates.first.getValue());
+			GammaSiteRateHandler sr = new GammaSiteRateHandler(k, siteRates.second.getNoOfCategories());
+			DoubleParameter rm = null;
+			boolean rmFixed = false;
+			if (def.getRateMultiplier() != null) {
+				String val = def.getRateMultiplier();
+				rmFixed = val.matches(FIXED_REGEX);
+				double m = Double.parseDouble(rmFixed ? val.substring(0, val.length() - 5) : val);
+				if (!(m > 0.0) || Double.isInfinite(m)) {
+					throw new IllegalArgumentException("Rate multiplier of partition " + name + " must be positive.");
+				}
+				rm = new DoubleParameter(name + "RateMultiplier", m);
+			}
+			parts.add(new MSAPartition(name, D.getPartition(def.getPositions()), pq, k, sr, rm, !rmFixed));
+		}
+		
+		// Estimated rate multipliers start with a site-weighted mean of 1, which is then kept.
+		List<DoubleParameter> rms = getEstimatedRateMultipliers(parts);
+		if (rms.size() == 1) {
+			throw new IllegalArgumentException("Cannot estimate the rate multiplier of a single partition, since estimated multipliers are " +
+					"constrained to a site-weighted mean of 1. Fix it or estimate the multipliers of further partitions.");
+		}
+		double[] ws = getRateMultiplierWeights(parts);
+		double wSum = 0.0;
+		double rmSum = 0.0;
+		for (int i = 0; i < rms.size(); ++i) {
+			wSum += ws[i];
+			rmSum += ws[i] * rms.get(i).getValue();
+		}
+		for (DoubleParameter rm : rms) {
+			rm.setValue(rm.getValue() * wSum / rmSum);
+		}
+		return parts;
+	}
+	
+	/**
+	 * Returns the estimated rate multipliers of partitions.
+	 * @param parts the partitions.
+	 * @return the estimated rate multipliers, in partition order.
+	 */
+	private static List<DoubleParameter> getEstimatedRateMultipliers(List<MSAPartition> parts) {
+		ArrayList<DoubleParameter> rms = new ArrayList<DoubleParameter>();
+		for (MSAPartition part : parts) {
+			if (part.isRateMultiplierEstimated()) {
+				rms.add(part.getRateMultiplier());
+			}
+		}
+		return rms;
+	}
+	
+	/**
+	 * Returns the weight of each estimated rate multiplier of partitions, i.e., the number of positions of its partition.
+	 * @param parts the partitions.
+	 * @return the weights, in partition order.
+	 */
+	private static double[] getRateMultiplierWeights(List<MSAPartition> parts) {
+		ArrayList<Double> ws = new ArrayList<Double>();
+		for (MSAPartition part : parts) {
+			if (part.isRateMultiplierEstimated()) {
+				ws.add((double) part.getData().getNoOfPositions());
+			}
+		}
+		double[] a = new double[ws.size()];
+		for (int i = 0; i < a.length; ++i) {
+			a[i] = ws.get(i);
+		}
+		return a;
+	}
+	
+	/**
+	 * Returns the prior of the estimated rate multipliers of partitions, a flat Dirichlet prior on their site-weighted shares.
+	 * @param parts the partitions.
+	 * @return the prior; null if no rate multipliers are estimated.
+	 */
+	public static WeightedDirichletPrior getRateMultiplierPrior(List<MSAPartition> parts) {
+		List<DoubleParameter> rms = getEstimatedRateMultipliers(parts);
+		return (rms.isEmpty() ? null : new WeightedDirichletPrior(rms, getRateMultiplierWeights(parts), 1.0));
+	}
+	
+	/**
+	 * Creates the proposers of the substitution model parameters of each partition, and adds them to a selector.
+	 * These are site rate shape proposers, disabled if the shape is fixed or if there is a single category, and proposers
+	 * of estimated exchangeabilities and stationary frequencies. Estimated rate multipliers are perturbed jointly, keeping
+	 * their site-weighted mean, since they would otherwise not be identifiable from the shared branch lengths.
+	 * @param ps parameters.
+	 * @param parts the partitions.
+	 * @param selector the proposer selector.
+	 * @param iter iterations.
+	 * @param prng PRNG.
+	 * @param tuningSiteRateShape site rate shape tuning CV parameter start-stop as an array in string format.
+	 * @return the perturbed parameters, which should be sampled.
+	 */
+	public static <P extends Parameters> List<Sampleable> addPartitionProposers(P ps, List<MSAPartition> parts, MultiProposerSelector selector,
+			Iteration iter, PRNG prng, String tuningSiteRateShape) {
+		ArrayList<Sampleable> sampleables = new ArrayList<Sampleable>();
+		for (MSAPartition part : parts) {
+			NormalProposer siteRateShapeProposer = getNormalProposer(ps, part.getSiteRateShape(), iter, prng, tuningSiteRateShape);
+			selector.add(siteRateShapeProposer, getProposerWeight(ps.getTuningWeightSiteRateShape(), iter));
+			if (ps.getSiteRateCats() == 1 || ps.getSiteRateShape().matches(FIXED_REGEX)) {
+				siteRateShapeProposer.setEnabled(false);
+			} else {
+				sampleables.add(part.getSiteRateShape());
+			}
+			SubstitutionMatrixHandler Q = part.getSubstitutionMatrixHandler();
+			if (Q.getExchangeabilityParameter() != null) {
+				selector.add(getDirichletProposer(ps, Q.getExchangeabilityParameter(), iter, prng, ps.getTuningExchangeabilities()),
+						getProposerWeight(ps.getTuningWeightExchangeabilities(), iter));
+				sampleables.add(Q.getExchangeabilityParameter());
+			}
+			if (Q.getStationaryFrequencyParameter() != null) {
+				selector.add(getDirichletProposer(ps, Q.getStationaryFrequencyParameter(), iter, prng, ps.getTuningStationaryFrequencies()),
+						getProposerWeight(ps.getTuningWeightStationaryFrequencies(), iter));
+				sampleables.add(Q.getStationaryFrequencyParameter());
+			}
+		}
+		List<DoubleParameter> rms = getEstimatedRateMultipliers(parts);
+		if (!rms.isEmpty()) {
+			FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+			WeightedDirichletProposer proposer = new WeightedDirichletProposer(rms, getRateMultiplierWeights(parts),
+					getTuningParameter(ps, iter, stats, ps.getTuningRateMultipliers()), prng);
+			proposer.setStatistics(stats);
+			selector.add(proposer, getProposerWeight(ps.getTuningWeightRateMultipliers(), iter));
+			sampleables.addAll(rms);
+		}
+		return sampleables;
+	}
+	
 	/**
 	 * Creates an output stream for the MCMC chain. If no parameter is found, stdout is used.
+	 * If desired, samples are written asynchronously or in binary format.
+	 * @param ps parameters.
+	 * @return output stream.
+	 */
+	public static <P extends Parameters> Sampler getOut(P ps) {
+		if (ps.getBinaryOutput()) {
+			return getBinaryOut(ps, ps.getOutfile());
+		}
+		SampleWriter writer;
+		try {
+			writer = (ps.getOutfile() == null ? new SampleWriter() :
+				new SampleWriter(new File(ps.getOutfile()), SampleWriter.DEFAULT_BUFFER_SIZE, 10, isResuming(ps)));
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Invalid output file.", e);
+		}
+		return getSampler(ps, writer);
+	}
+	
+	/**
+	 * Creates the sample output stream of a chain when running multiple independent chains.
+	 * For a single chain, this is identical to {@link #getOut(Parameters)}. Otherwise, chain k
+	 * writes to "&lt;outfile&gt;.chaink", and an output file must have been specified.
+	 * @param ps parameters.
+	 * @param chain the chain number, starting at 1.
+	 * @return output stream.
+	 */
+	public static <P extends Parameters> Sampler getOut(P ps, int chain) {
+		if (getNoOfChains(ps) == 1) {
+			return getOut(ps);
+		}
+		if (ps.getOutfile() == null) {
+			throw new IllegalArgumentException("An output file must be specified when running multiple chains.");
+		}
+		String f = getChainFilename(ps, ps.getOutfile().trim(), chain);
+		if (ps.getBinaryOutput()) {
+			return getBinaryOut(ps, f);
+		}
+		SampleWriter writer;
+		try {
+			writer = new SampleWriter(new File(f), SampleWriter.DEFAULT_BUFFER_SIZE, 10, isResuming(ps));
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Invalid output file.", e);
+		}
+		return getSampler(ps, writer);
+	}
+	
+	/**
+	 * Creates a binary output stream.
 	 * @param ps parameters.
+	 * @param f the output file name.
 	 * @return output stream.
 	 */
-	public static <P extends Parameters> SampleWriter getOut(P ps) {
+	private static <P extends Parameters> Sampler getBinaryOut(P ps, String f) {
+		if (f == null) {
+			throw new IllegalArgumentException("An output file must be specified for binary output.");
+		}
+		if (ps.getAsyncOutput()) {
+			throw new IllegalArgumentException("Binary output cannot be combined with asynchronous output.");
+		}
+		if (isResuming(ps)) {
+			throw new IllegalArgumentException("Binary output does not support resuming from a checkpoint.");
+		}
+		if (ps.getDebug()) {
+			throw new IllegalArgumentException("Binary output cannot be combined with debugging info, which is written to the sample output.");
+		}
 		try {
-			return (ps.getOutfile() == null ? new SampleWriter() : new SampleWriter(new File(ps.getOutfile()), 10));
+			return new BinarySampleWriter(new File(f));
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Invalid output file.", e);
 		}
 	}
 	
+	/**
+	 * Wraps a sample writer in an asynchronous writer if desired.
+	 * @param ps parameters.
+	 * @param writer the writer.
+	 * @return the sampler.
+	 */
+	private static <P extends Parameters> Sampler getSampler(P ps, SampleWriter writer) {
+		return (ps.getAsyncOutput() ? new AsyncSampleWriter(writer) : writer);
+	}
+	
+	/**
+	 * Returns the name of a chain-specific output file. For a single chain, the name is left
+	 * unaltered, otherwise chain k appends ".chaink".
+	 * @param ps parameters.
+	 * @param fn the file name.
+	 * @param chain the chain number, starting at 1.
+	 * @return the file name of the chain.
+	 */
+	public static <P extends Parameters> String getChainFilename(P ps, String fn, int chain) {
+		return (getNoOfChains(ps) == 1 ? fn : fn + ".chain" + chain);
+	}
+	
+	/**
+	 * Returns the number of independent chains to run.
+	 * @param ps parameters.
+	 * @return the number of chains.
+	 */
+	public static <P extends Parameters> int getNoOfChains(P ps) {
+		if (ps.getChains() == null || ps.getChains() < 1) {
+			throw new IllegalArgumentException("Number of chains must be at least 1.");
+		}
+		return ps.getChains();
+	}
+	
+	/**
+	 * Returns true if the chain(s) should be resumed from a checkpoint. In that case,
+	 * output files are appended to rather than overwritten.
+	 * @param ps parameters.
+	 * @return true if resuming.
+	 */
+	public static <P extends Parameters> boolean isResuming(P ps) {
+		return (ps.getResume() != null);
+	}
+	
+	/**
+	 * Enables checkpointing of a chain and/or resumes it from a checkpoint, as specified by the parameters.
+	 * Must be invoked when the chain has been fully set up. With multiple chains, chain k uses
+	 * "&lt;file&gt;.chaink" for its checkpoint.
+	 * @param ps parameters.
+	 * @param manager the chain.
+	 * @param chain the chain number, starting at 1.
+	 * @throws IOException if unable to resume from the checkpoint.
+	 */
+	public static <P extends Parameters> void setupCheckpointing(P ps, MCMCManager manager, int chain) throws IOException {
+		if ((ps.getCheckpoint() != null || isResuming(ps)) && isMetropolisCoupled(ps)) {
+			throw new IllegalArgumentException("Checkpointing is not supported for Metropolis-coupled chains.");
+		}
+		if (ps.getCheckpoint() != null) {
+			if (ps.getCheckpointInterval() == null || ps.getCheckpointInterval() < 1) {
+				throw new IllegalArgumentException("Checkpoint interval must be at least 1.");
+			}
+			manager.setCheckpointing(new File(getChainFilename(ps, ps.getCheckpoint().trim(), chain)), ps.getCheckpointInterval());
+		}
+		if (isResuming(ps)) {
+			if (ps.getOutfile() == null) {
+				throw new IllegalArgumentException("An output file must be specified when resuming from a checkpoint.");
+			}
+			manager.resume(new File(getChainFilename(ps, ps.getResume().trim(), chain)));
+		}
+	}
+	
+	/**
+	 * Enables streaming convergence diagnostics of a chain, if specified by the parameters.
+	 * Must be invoked when the chain has been fully set up, but prior to resuming it.
+	 * With multiple chains, the reports of chain k are prefixed accordingly.
+	 * @param ps parameters.
+	 * @param manager the chain.
+	 * @param iter the iteration counter of the chain.
+	 * @param chain the chain number, starting at 1.
+	 * @param info the info output for regular reports, may be null.
+	 */
+	public static <P extends Parameters> void setupDiagnostics(P ps, MCMCManager manager, Iteration iter, int chain, BufferedWriter info) {
+		if (!ps.getDiagnostics() && ps.getEssThreshold() == null) {
+			return;
+		}
+		if (isMetropolisCoupled(ps)) {
+			throw new IllegalArgumentException("Convergence diagnostics are not supported for Metropolis-coupled chains.");
+		}
+		Double b = ps.getDiagnosticsBurninProp();
+		if (b == null || b < 0.0 || b >= 1.0) {
+			throw new IllegalArgumentException("Convergence diagnostics burn-in proportion must be in [0,1).");
+		}
+		if (ps.getEssThreshold() != null && !(ps.getEssThreshold() > 0.0)) {
+			throw new IllegalArgumentException("ESS threshold must be positive.");
+		}
+		double ess = (ps.getEssThreshold() == null ? Double.NaN : ps.getEssThreshold());
+		ConvergenceDiagnostics diag = new ConvergenceDiagnostics(iter, (int) (b * ps.getIterations()), ess);
+		if (info != null) {
+			if (ps.getDiagnosticsInterval() == null || ps.getDiagnosticsInterval() < 1) {
+				throw new IllegalArgumentException("Convergence diagnostics interval must be at least 1.");
+			}
+			diag.setReporting(info, ps.getDiagnosticsInterval(), getNoOfChains(ps) == 1 ? "# " : "# Chain " + chain + ": ");
+		}
+		manager.setDiagnostics(diag);
+	}
+	
+	/**
+	 * Enables profiling of the proposers and dependents of a chain, if specified by the parameters.
+	 * With multiple chains, the reports of chain k are prefixed accordingly.
+	 * @param ps parameters.
+	 * @param manager the chain.
+	 * @param iter the iteration counter of the chain.
+	 * @param chain the chain number, starting at 1.
+	 * @param info the info output for regular reports, may be null.
+	 */
+	public static <P extends Parameters> void setupProfiling(P ps, MCMCManager manager, Iteration iter, int chain, BufferedWriter info) {
+		if (!ps.getProfiling() && ps.getProfilingInterval() == null) {
+			return;
+		}
+		MCMCProfiler prof = new MCMCProfiler(iter);
+		if (info != null && ps.getProfilingInterval() != null) {
+			if (ps.getProfilingInterval() < 1) {
+				throw new IllegalArgumentException("Profiling interval must be at least 1.");
+			}
+			prof.setReporting(info, ps.getProfilingInterval(), getNoOfChains(ps) == 1 ? "# " : "# Chain " + chain + ": ");
+		}
+		manager.setProfiler(prof);
+	}
+	
+	/**
+	 * Returns the maximum number of transition probability matrices of the substitution model to cache.
+	 * @param ps parameters.
+	 * @param noOfLeaves the number of guest tree leaves, on which the default is based.
+	 * @return the cache size.
+	 */
+	public static <P extends Parameters> int getPCacheSize(P ps, int noOfLeaves) {
+		if (ps.getPCacheSize() == null) {
+			return 4 * noOfLeaves;
+		}
+		if (ps.getPCacheSize() < 0) {
+			throw new IllegalArgumentException("Transition matrix cache size must not be negative.");
+		}
+		return ps.getPCacheSize();
+	}
+	
+	/**
+	 * Returns the number of threads for processing blocks of site patterns concurrently.
+	 * The pool itself is created and shut down by the application.
+	 * @param ps parameters.
+	 * @return the number of threads, 1 for serial processing.
+	 */
+	public static <P extends Parameters> int getNoOfPatternThreads(P ps) {
+		if (ps.getPatternThreads() == null || ps.getPatternThreads() < 1) {
+			throw new IllegalArgumentException("Number of pattern threads must be at least 1.");
+		}
+		return ps.getPatternThreads();
+	}
+	
 	/**
 	 * Creates an output stream for auxiliary run info. If no parameter is found then,
 	 * <ol>
@@ -182,7 +598,7 @@ public class ParameterParser {
 					return new BufferedWriter(new OutputStreamWriter(System.out));
 				} else {
 					// <outfile>.info.
-					return new BufferedWriter(new FileWriter(ps.getOutfile().trim() + ".info"));
+					return new BufferedWriter(new FileWriter(ps.getOutfile().trim() + ".info", isResuming(ps)));
 				}
 				
 			} else {
@@ -191,7 +607,7 @@ public class ParameterParser {
 					return null;
 				}
 				// User-defined info file.
-				return new BufferedWriter(new FileWriter(ps.getInfofile()));
+				return new BufferedWriter(new FileWriter(ps.getInfofile(), isResuming(ps)));
 			}			
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Invalid output file.", e);
@@ -207,6 +623,48 @@ public class ParameterParser {
 		return (ps.getSeed() == null ? new PRNG() : new PRNG(new BigInteger(ps.getSeed())));
 	}
 	
+	/**
+	 * Returns the PRNG of a chain when running multiple chains. If a seed has been specified, it seeds
+	 * a master PRNG, and chain k is seeded with the k-th 16-byte block drawn from the master, so that
+	 * the streams of the chains are unrelated. A single chain uses the seed as is, like a single-chain run.
+	 * If no seed is found, every chain uses its own random seed.
+	 * @param ps parameters.
+	 * @param chain the chain number, starting at 1.
+	 * @return PRNG.
+	 */
+	public static <P extends Parameters> PRNG getPRNG(P ps, int chain) {
+		if (chain < 1) {
+			throw new IllegalArgumentException("Chain number must be at least 1.");
+		}
+		if (ps.getSeed() == null) {
+			return new PRNG();
+		}
+		if (getNoOfChains(ps) == 1 && chain == 1) {
+			return getPRNG(ps);
+		}
+		PRNG master = getPRNG(ps);
+		byte[] seed = new byte[16];
+		for (int k = 1; k <= chain; ++k) {
+			master.nextBytes(seed);
+		}
+		return new PRNG(seed);
+	}
+	
+	/**
+	 * Returns the maximum number of independent chains to run simultaneously.
+	 * @param ps parameters.
+	 * @return the number of threads. Defaults to the number of available processors.
+	 */
+	public static <P extends Parameters> int getNoOfChainThreads(P ps) {
+		if (ps.getChainThreads() == null) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		if (ps.getChainThreads() < 1) {
+			throw new IllegalArgumentException("Number of chain threads must be at least 1.");
+		}
+		return ps.getChainThreads();
+	}
+	
 	/**
 	 * Reads the guest tree with names and possibly lengths. There are many options,
 	 * e.g. reading a tree with or without lengths, or randomly creating one.
@@ -215,12 +673,13 @@ public class ParameterParser {
 	 * @param ps parameters.
 	 * @param gsMap guest-to-host leaf map.
 	 * @param prng PRNG.
-	 * @param alignment alignment of sequences.
+	 * @param info information output.
 	 * @param samples guest tree set samples.
+	 * @param msa alignment of sequences.
 	 * @return guest tree, names and branch lengths.
 	 */
 	public static <P extends Parameters> Triple<RBTree, NamesMap, DoubleMap>
-		getGuestTreeAndLengths(P ps, GuestHostMap gsMap, PRNG prng, LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs, BufferedWriter info, NewickRBTreeSamples samples, MSAData msa) {
+		getGuestTreeAndLengths(P ps, GuestHostMap gsMap, PRNG prng, BufferedWriter info, NewickRBTreeSamples samples, MSAData msa) {
 		Triple<RBTree, NamesMap, DoubleMap> guestTreeAndLengths = null;
 		if (ps.isMsaFastPhyloTree() && ps.getGuestTreeSet() != null) {
 			throw new IllegalArgumentException("Cannot use a fixed guest tree set and Fast Phylo at the same time.");
@@ -229,7 +688,7 @@ public class ParameterParser {
 		} else if (ps.getGuestTreeSet() != null) {
 			guestTreeAndLengths = getGuestTreeAndLengthsFromSet(ps, prng, info, samples);
 		} else {
-			guestTreeAndLengths = getGuestTreeAndLengthsSimple(ps, gsMap, prng, seqs, info, msa);
+			guestTreeAndLengths = getGuestTreeAndLengthsSimple(ps, gsMap, prng, info, msa);
 		}
 		return guestTreeAndLengths;
 	}
@@ -240,11 +699,11 @@ public class ParameterParser {
 	 * @param ps parameters.
 	 * @param gsMap guest-to-host leaf map.
 	 * @param prng PRNG.
-	 * @param seqs alignment of sequences.
 	 * @param info information output.
+	 * @param msa alignment of sequences.
 	 * @return guest tree, names and branch lengths.
 	 */
-	private static <P extends Parameters> Triple<RBTree, NamesMap, DoubleMap> getGuestTreeAndLengthsSimple(P ps, GuestHostMap gsMap, PRNG prng, LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs,
+	private static <P extends Parameters> Triple<RBTree, NamesMap, DoubleMap> getGuestTreeAndLengthsSimple(P ps, GuestHostMap gsMap, PRNG prng,
 			BufferedWriter info, MSAData msa) {
 		RBTree g = null;
 		NamesMap gNames = null;
@@ -253,6 +712,7 @@ public class ParameterParser {
 			if (ps.getGuestTree() == null || ps.getGuestTree().equalsIgnoreCase("NJ")) {
 				// "Randomly rooted" NJ tree. Produced lengths seem suspicious, so we won't use'em.
 				info.append("# Initial guest tree: Produced with NJ on sequence identity (arbitrarily rooted).\n");
+				LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs = getMultialignment(ps, msa.getSequenceType());
 				@SuppressWarnings({ "unchecked", "rawtypes" })
 				NewickTree gRaw = NeighbourJoiningTreeGenerator.createNewickTree(new MultiAlignment(seqs, false));
 				g = new RBTree(gRaw, "GuestTree");
@@ -453,6 +913,50 @@ public class ParameterParser {
 		throw new IllegalArgumentException("Invalid run type.");
 	}
 	
+	/**
+	 * Returns the proposal acceptor of a chain when running multiple chains. For Metropolis-coupled MCMC,
+	 * chain k is heated to temperature 1 + (k-1) * the heating increment.
+	 * @param ps parameters.
+	 * @param prng PRNG of the chain.
+	 * @param chain the chain number, starting at 1.
+	 * @return proposal acceptor.
+	 */
+	public static <P extends Parameters> ProposalAcceptor getAcceptor(P ps, PRNG prng, int chain) {
+		if (!isMetropolisCoupled(ps)) {
+			return getAcceptor(ps, prng);
+		}
+		if (!ps.getRuntype().equalsIgnoreCase("MCMC")) {
+			throw new IllegalArgumentException("Metropolis-coupled chains require run type MCMC.");
+		}
+		return new TemperedMetropolisHastingsAcceptor(prng, 1.0 + (chain - 1) * ps.getHeatingIncrement());
+	}
+	
+	/**
+	 * Returns true if multiple chains should be run as Metropolis-coupled MCMC rather than independently.
+	 * @param ps parameters.
+	 * @return true if Metropolis-coupled.
+	 */
+	public static <P extends Parameters> boolean isMetropolisCoupled(P ps) {
+		if (ps.getHeatingIncrement() == null || ps.getHeatingIncrement() < 0.0) {
+			throw new IllegalArgumentException("Heating increment must be non-negative.");
+		}
+		return (getNoOfChains(ps) > 1 && ps.getHeatingIncrement() > 0.0);
+	}
+	
+	/**
+	 * Returns a runner for the chains, either executing them independently or as Metropolis-coupled MCMC.
+	 * @param ps parameters.
+	 * @param chains the chains, with chain k at index k-1.
+	 * @return the runner.
+	 */
+	public static <P extends Parameters> MultiChainRunner getChainRunner(P ps, List<MCMCManager> chains) {
+		if (isMetropolisCoupled(ps)) {
+			// Swaps use a stream of their own, following those of the chains.
+			return new MetropolisCoupledRunner(chains, ps.getSwapInterval(), getPRNG(ps, chains.size() + 1));
+		}
+		return new MultiChainRunner(chains, getNoOfChainThreads(ps));
+	}
+	
 	/**
 	 * Returns a Normal proposer.
 	 * @param ps parameters.
@@ -463,13 +967,52 @@ public class ParameterParser {
 	 * @return proposer.
 	 */
 	public static <P extends Parameters> NormalProposer getNormalProposer(P ps, RealParameter p, Iteration iter, PRNG prng, String tuning) {
-		double[] tng = SampleDoubleArray.toDoubleArray(tuning);
-		LinearTuningParameter tcv = new LinearTuningParameter(iter, tng[0], tng[1]);
-		NormalProposer proposer = new NormalProposer(p, new RealInterval(0, Double.POSITIVE_INFINITY, true, true), tcv, prng);
-		proposer.setStatistics(new FineProposerStatistics(iter, 8));
+		FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+		NormalProposer proposer = new NormalProposer(p, new RealInterval(0, Double.POSITIVE_INFINITY, true, true), getTuningParameter(ps, iter, stats, tuning), prng);
+		proposer.setStatistics(stats);
 		return proposer;
 	}
 	
+	/**
+	 * Returns a Dirichlet proposer for a simplex parameter, e.g., estimated substitution model frequencies.
+	 * @param ps parameters.
+	 * @param p the parameter.
+	 * @param iter iterations.
+	 * @param prng PRNG.
+	 * @param tuning tuning parameter start-stop as an array in string format.
+	 * @return the proposer.
+	 */
+	public static <P extends Parameters> DirichletProposer getDirichletProposer(P ps, SimplexParameter p, Iteration iter, PRNG prng, String tuning) {
+		FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+		DirichletProposer proposer = new DirichletProposer(p, getTuningParameter(ps, iter, stats, tuning), prng);
+		proposer.setStatistics(stats);
+		return proposer;
+	}
+	
+	/**
+	 * Returns the CV tuning parameter of a normal proposer. This is either a linear tuning parameter,
+	 * or, if adaptive tuning has been specified, an adaptive tuning parameter starting at the first value.
+	 * @param ps parameters.
+	 * @param iter iterations.
+	 * @param stats statistics of the proposer, on which adaptation is based.
+	 * @param tuning tuning CV parameter start-stop as an array in string format.
+	 * @return the tuning parameter.
+	 */
+	public static <P extends Parameters> TuningParameter getTuningParameter(P ps, Iteration iter, ProposerStatistics stats, String tuning) {
+		double[] tng = SampleDoubleArray.toDoubleArray(tuning);
+		if (!ps.getTuningAdaptive()) {
+			return new LinearTuningParameter(iter, tng[0], tng[1]);
+		}
+		Double b = ps.getTuningAdaptiveBurninProp();
+		if (b == null || b < 0.0 || b > 1.0) {
+			throw new IllegalArgumentException("Adaptive tuning burn-in proportion must be in [0,1].");
+		}
+		if (ps.getTuningAcceptanceRatio() == null) {
+			throw new IllegalArgumentException("Missing target acceptance ratio for adaptive tuning.");
+		}
+		return new AdaptiveTuningParameter(iter, stats, tng[0], ps.getTuningAcceptanceRatio(), (int) (b * ps.getIterations()), ADAPTATION_INTERVAL);
+	}
+	
 	/**
 	 * Returns a branch swapper proposer.
 	 * @param tree tree.
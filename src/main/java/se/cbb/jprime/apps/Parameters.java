@@ -20,6 +20,16 @@ public abstract class Parameters {
 	@Parameter(names = {"-o", "--outfile"}, description = "Output file. Default: stdout.")
 	public String outfile = null;
 
+	/** Asynchronous sample output. */
+	@Parameter(names = {"-async", "--asyncoutput"}, description = "Convert and write samples in a background thread, so that the chain only " +
+			"takes a compact snapshot of the current state when sampling. Output is identical to ordinary sampling.")
+	public Boolean asyncOutput = false;
+
+	/** Binary sample output. */
+	@Parameter(names = {"-bin", "--binaryoutput"}, description = "Write samples to a compact binary file instead of text. Requires -o. " +
+			"May be converted to text with the SampleConverter app. Cannot be combined with -dbg or realisation sampling.")
+	public Boolean binaryOutput = false;
+
 	/** Info output location. */
 	@Parameter(names = {"-info", "--infofile"}, description = "Info output file. Default: <outfile>.info when -o has been specified, " +
 			"stdout when -o has not been specified, suppressed if -info NONE is specified.")
@@ -33,6 +43,80 @@ public abstract class Parameters {
 	@Parameter(names = {"-s", "--seed"}, description = "PRNG seed. Default: Random seed.")
 	public String seed = null;
 
+	/** Number of independent chains. */
+	@Parameter(names = {"-chains", "--chains"}, description = "Number of fully independent MCMC chains to run concurrently in this JVM. " +
+			"When > 1, chain k writes its samples to <outfile>.chaink, uses a seed drawn from a PRNG seeded with -s if specified, and the info of all chains is combined in a single file.")
+	public Integer chains = 1;
+
+	/** Threads for independent chains. */
+	@Parameter(names = {"-cthreads", "--chainthreads"}, description = "Maximum number of independent chains to run simultaneously. " +
+			"Metropolis-coupled chains always run simultaneously. Default: The number of available processors.")
+	public Integer chainThreads = null;
+
+	/** Heating increment of Metropolis-coupled MCMC. */
+	@Parameter(names = {"-heat", "--heatingincrement"}, description = "Metropolis-coupled MCMC: When > 0 and -chains N > 1, the chains are not independent " +
+			"but form a temperature ladder T = 1 + (k-1)*<value> for chain k=1,...,N, and swaps between adjacent temperatures are proposed regularly. " +
+			"The samples of the cold chain are written to <outfile>.chain1. Default: 0, i.e., independent chains.")
+	public Double heatingIncrement = 0.0;
+
+	/** Swap interval of Metropolis-coupled MCMC. */
+	@Parameter(names = {"-swap", "--swapinterval"}, description = "Metropolis-coupled MCMC: Number of iterations between proposed swaps of adjacent heated chains.")
+	public Integer swapInterval = 10;
+
+	/** Checkpoint file. */
+	@Parameter(names = {"-cp", "--checkpoint"}, description = "Regularly writes a binary checkpoint of the complete chain state to the specified file, " +
+			"from which the chain can later be resumed with -resume. With multiple independent chains, chain k uses <file>.chaink. " +
+			"Derived data is rebuilt at each checkpoint, so a resumed run is identical to the checkpointing run, but may differ slightly from a run without checkpointing. " +
+			"Default: No checkpointing.")
+	public String checkpoint = null;
+
+	/** Checkpoint interval. */
+	@Parameter(names = {"-cpi", "--checkpointinterval"}, description = "Number of iterations between checkpoints.")
+	public Integer checkpointInterval = 100000;
+
+	/** Checkpoint to resume from. */
+	@Parameter(names = {"-resume", "--resume"}, description = "Resumes the chain from the specified checkpoint. All other options must be " +
+			"identical to those of the original run. Samples after the checkpoint are truncated from the output file, and new samples are appended. " +
+			"The resumed chain proceeds exactly like the run that wrote the checkpoint, which may differ slightly from a run without checkpointing, see -cp.")
+	public String resume = null;
+
+	/** Convergence diagnostics. */
+	@Parameter(names = {"-diag", "--diagnostics"}, description = "Maintains streaming convergence diagnostics, i.e., effective sample size (ESS) estimates " +
+			"of all sampled scalar quantities and clade frequencies of sampled trees. These are reported regularly in the info file, and at the end of the run.")
+	public Boolean diagnostics = false;
+
+	/** Convergence diagnostics report interval. */
+	@Parameter(names = {"-diagi", "--diagnosticsinterval"}, description = "Number of iterations between convergence diagnostics reports in the info file.")
+	public Integer diagnosticsInterval = 100000;
+
+	/** Convergence diagnostics burn-in. */
+	@Parameter(names = {"-diagb", "--diagnosticsburninprop"}, description = "Proportion of the iterations (-i) that convergence diagnostics discard as burn-in, e.g. 0.1 for 10%.")
+	public Double diagnosticsBurninProp = 0.1;
+
+	/** ESS threshold for stopping. */
+	@Parameter(names = {"-ess", "--essthreshold"}, description = "Stops the chain once the estimated ESS of every tracked quantity of the convergence diagnostics " +
+			"has reached the specified value, e.g. 200. For trees, this applies to the presence of each clade with frequency >= 0.1. Implies -diag. Default: No stopping.")
+	public Double essThreshold = null;
+
+	/** Profiling. */
+	@Parameter(names = {"-prof", "--profiling"}, description = "Measures the wall time and number of calls of each proposer and each cached data structure or model, " +
+			"the latter split into full and partial updates. The breakdown is reported at the end of the run.")
+	public Boolean profiling = false;
+
+	/** Profiling report interval. */
+	@Parameter(names = {"-profi", "--profilinginterval"}, description = "Number of iterations between profiling reports in the info file. Implies -prof. Default: Only at the end of the run.")
+	public Integer profilingInterval = null;
+
+	/** Threads for concurrent dependents. */
+	@Parameter(names = {"-dthreads", "--dependentthreads"}, description = "Number of threads per chain for updating mutually independent cached data structures " +
+			"and models concurrently, e.g., the substitution model and the DLR model after a guest tree perturbation. Samples are identical to those of a serial run.")
+	public Integer dependentThreads = 1;
+
+	/** Threads for concurrent site patterns. */
+	@Parameter(names = {"-pthreads", "--patternthreads"}, description = "Number of threads for computing the substitution model likelihoods of blocks of " +
+			"unique site patterns concurrently. The threads are shared by all chains. Samples are identical to those of a serial run.")
+	public Integer patternThreads = 1;
+
 	/** Iterations. */
 	@Parameter(names = {"-i", "--iterations"}, description = "Number of iterations (attempted state changes).")
 	public Integer iterations = 1000000;
@@ -45,6 +129,20 @@ public abstract class Parameters {
 	@Parameter(names = {"-sm", "--substitutionmodel"}, description = SubstitutionMatrixHandlerFactory.USER_MESSAGE)
 	public String substitutionModel = "JC69";
 
+	/** Partition file. */
+	@Parameter(names = {"-part", "--partitions"}, description = "File splitting the alignment into partitions, e.g. genes or codon positions, " +
+			"each with its own substitution model, site rates and optional rate multiplier, and sharing the guest tree and branch lengths. " +
+			"Each line holds the name, substitution model (- for the -sm model), positions and optional initial rate multiplier of a partition, e.g. " +
+			"'gene1 HKY85='2;[0.3,0.2,0.2,0.3]' 1-450,901-950' or 'pos3 - 3-900\\3 1.0FIXED'. Positions start at 1, and a-b\\s denotes every s-th position of a range. " +
+			"Partitions must together cover the entire alignment. Estimated rate multipliers are constrained to a site-weighted mean of 1, with a flat " +
+			"Dirichlet prior on their site-weighted shares. All models must have the sequence type of the -sm model. Partition likelihoods are evaluated concurrently when -dthreads > 1. Default: A single partition.")
+	public String partitions = null;
+
+	/** Transition probability matrix cache size. */
+	@Parameter(names = {"-pcache", "--pcachesize"}, description = "Maximum number of transition probability matrices P of the substitution model " +
+			"to cache, keyed on Markov time. Defaults to 4 times the number of guest tree leaves.")
+	public Integer pCacheSize = null;
+
 	/** Duplication rate. */
 	@Parameter(names = {"-dup", "--duplicationrate"}, description = "Initial duplication rate. Append with FIXED for no " +
 			"perturbation, e.g. 0.1FIXED. Default: Simple rule-of-thumb.")
@@ -140,6 +238,21 @@ public abstract class Parameters {
 	@Parameter(names = {"-tngl", "--tuninglengths"}, description = "Tuning parameter: Governs branch lengths proposal distribution's CV.")
 	public String tuningLengths = "[0.6,0.6]";
 
+	/** Adaptive tuning of normal proposers. */
+	@Parameter(names = {"-tngadapt", "--tuningadaptive"}, description = "Tuning parameter: Adapts the CV of each normal-distributed proposer (rates, " +
+			"relaxed clock and site rate parameters, and branch lengths) during burn-in, so that its acceptance ratio approaches the target -tngar. " +
+			"The first value of the proposer's CV tuning option is used as start value. Adaptation is frozen after burn-in, see -tngadaptb.")
+	public Boolean tuningAdaptive = false;
+
+	/** Adaptive tuning target acceptance ratio. */
+	@Parameter(names = {"-tngar", "--tuningacceptanceratio"}, description = "Tuning parameter: Target acceptance ratio of adaptive tuning.")
+	public Double tuningAcceptanceRatio = 0.3;
+
+	/** Adaptive tuning burn-in. */
+	@Parameter(names = {"-tngadaptb", "--tuningadaptiveburninprop"}, description = "Tuning parameter: Proportion of the iterations (-i) during which " +
+			"adaptive tuning is performed, e.g. 0.1 for 10%.")
+	public Double tuningAdaptiveBurninProp = 0.1;
+
 	/** Tuning parameter: branch lengths selector weights. */
 	@Parameter(names = {"-tnglw", "--tuninglengthsweights"}, description = "Tuning parameter: Governs how often 1,2,... branch lengths " +
 			"will be perturbed simultaneously, e.g., [0.5,0.5] for an equal chance of 1 or 2 branch lengths.")
@@ -171,6 +284,34 @@ public abstract class Parameters {
 	@Parameter(names = {"-tngwsrshape", "--tuningweightsiterateshape"}, description = "Tuning parameter: Relative activation weight for site rate shape proposer.")
 	public String tuningWeightSiteRateShape = "[0.25,0.25]";
 
+	/** Tuning parameter: substitution model exchangeabilities. */
+	@Parameter(names = {"-tngex", "--tuningexchangeabilities"}, description = "Tuning parameter: Governs the concentration c=1/s^2 of the Dirichlet " +
+			"proposal distribution of estimated substitution model exchangeabilities, as [s_start,s_end].")
+	public String tuningExchangeabilities = "[0.05,0.05]";
+
+	/** Tuning parameter: substitution model stationary frequencies. */
+	@Parameter(names = {"-tngpi", "--tuningstationaryfrequencies"}, description = "Tuning parameter: Governs the concentration c=1/s^2 of the Dirichlet " +
+			"proposal distribution of estimated substitution model stationary frequencies, as [s_start,s_end].")
+	public String tuningStationaryFrequencies = "[0.05,0.05]";
+
+	/** Tuning parameter: exchangeabilities proposer weight. */
+	@Parameter(names = {"-tngwex", "--tuningweightexchangeabilities"}, description = "Tuning parameter: Relative activation weight for estimated " +
+			"substitution model exchangeabilities proposer.")
+	public String tuningWeightExchangeabilities = "[0.5,0.5]";
+
+	/** Tuning parameter: stationary frequencies proposer weight. */
+	@Parameter(names = {"-tngwpi", "--tuningweightstationaryfrequencies"}, description = "Tuning parameter: Relative activation weight for estimated " +
+			"substitution model stationary frequencies proposer.")
+	public String tuningWeightStationaryFrequencies = "[0.5,0.5]";
+
+	/** Tuning parameter: partition rate multipliers. */
+	@Parameter(names = {"-tngrm", "--tuningratemultipliers"}, description = "Tuning parameter: Governs the CV of the Dirichlet proposal distribution of the site-weighted shares of estimated partition rate multipliers.")
+	public String tuningRateMultipliers = "[0.10,0.10]";
+
+	/** Tuning parameter: partition rate multipliers proposer weight. */
+	@Parameter(names = {"-tngwrm", "--tuningweightratemultipliers"}, description = "Tuning parameter: Relative activation weight for the joint proposer of estimated partition rate multipliers.")
+	public String tuningWeightRateMultipliers = "[0.25,0.25]";
+
 	/** Tuning parameter: guest tree proposer weight. */
 	@Parameter(names = {"-tngwg", "--tuningweightguesttree"}, description = "Tuning parameter: Relative activation weight for guest tree topology proposer.")
 	public String tuningWeightG = "[2.0,2.0]";
@@ -191,6 +332,14 @@ public abstract class Parameters {
 		return outfile;
 	}
 
+	public Boolean getAsyncOutput() {
+		return asyncOutput;
+	}
+
+	public Boolean getBinaryOutput() {
+		return binaryOutput;
+	}
+
 	public String getInfofile() {
 		return infofile;
 	}
@@ -203,6 +352,66 @@ public abstract class Parameters {
 		return seed;
 	}
 
+	public Integer getChains() {
+		return chains;
+	}
+
+	public Integer getChainThreads() {
+		return chainThreads;
+	}
+
+	public Double getHeatingIncrement() {
+		return heatingIncrement;
+	}
+
+	public Integer getSwapInterval() {
+		return swapInterval;
+	}
+
+	public String getCheckpoint() {
+		return checkpoint;
+	}
+
+	public Integer getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public String getResume() {
+		return resume;
+	}
+
+	public Boolean getDiagnostics() {
+		return diagnostics;
+	}
+
+	public Integer getDiagnosticsInterval() {
+		return diagnosticsInterval;
+	}
+
+	public Double getDiagnosticsBurninProp() {
+		return diagnosticsBurninProp;
+	}
+
+	public Double getEssThreshold() {
+		return essThreshold;
+	}
+
+	public Boolean getProfiling() {
+		return profiling;
+	}
+
+	public Integer getProfilingInterval() {
+		return profilingInterval;
+	}
+
+	public Integer getDependentThreads() {
+		return dependentThreads;
+	}
+
+	public Integer getPatternThreads() {
+		return patternThreads;
+	}
+
 	public Integer getIterations() {
 		return iterations;
 	}
@@ -215,6 +424,14 @@ public abstract class Parameters {
 		return substitutionModel;
 	}
 
+	public String getPartitions() {
+		return partitions;
+	}
+
+	public Integer getPCacheSize() {
+		return pCacheSize;
+	}
+
 	public String getDupRate() {
 		return dupRate;
 	}
@@ -299,6 +516,18 @@ public abstract class Parameters {
 		return tuningLengths;
 	}
 
+	public Boolean getTuningAdaptive() {
+		return tuningAdaptive;
+	}
+
+	public Double getTuningAcceptanceRatio() {
+		return tuningAcceptanceRatio;
+	}
+
+	public Double getTuningAdaptiveBurninProp() {
+		return tuningAdaptiveBurninProp;
+	}
+
 	public abstract String getTuningGuestTreeMoveWeights();
 
 	public String getTuningLengthsSelectorWeights() {
@@ -329,6 +558,30 @@ public abstract class Parameters {
 		return tuningWeightSiteRateShape;
 	}
 
+	public String getTuningExchangeabilities() {
+		return tuningExchangeabilities;
+	}
+
+	public String getTuningStationaryFrequencies() {
+		return tuningStationaryFrequencies;
+	}
+
+	public String getTuningWeightExchangeabilities() {
+		return tuningWeightExchangeabilities;
+	}
+
+	public String getTuningWeightStationaryFrequencies() {
+		return tuningWeightStationaryFrequencies;
+	}
+
+	public String getTuningRateMultipliers() {
+		return tuningRateMultipliers;
+	}
+
+	public String getTuningWeightRateMultipliers() {
+		return tuningWeightRateMultipliers;
+	}
+
 	public String getTuningWeightG() {
 		return tuningWeightG;
 	}
@@ -16,9 +16,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Scanner;
 
-import org.biojava.nbio.core.sequence.template.Compound;
-import org.biojava.nbio.core.sequence.template.Sequence;
-
 import se.cbb.jprime.apps.JPrIMEApp;
 import se.cbb.jprime.apps.realise.Realisation;
 import se.cbb.jprime.io.JCommanderUsageWrapper;
@@ -75,6 +72,13 @@ public class Age implements JPrIMEApp {
 			
 			// ================ READ AND CREATE ALL PARAMETERS ================
 			
+			if (AgeParameterParser.getNoOfChains(params) > 1) {
+				throw new IllegalArgumentException("Multiple chains are not supported by Age.");
+			}
+			if (params.getCheckpoint() != null || AgeParameterParser.isResuming(params)) {
+				throw new IllegalArgumentException("Checkpointing is not supported by Age.");
+			}
+			
 			// MCMC chain output and auxiliary info.
 //			SampleWriter sampler = ParameterParser.getOut(params);
 			info = AgeParameterParser.getInfo(params);
@@ -94,9 +98,8 @@ public class Age implements JPrIMEApp {
 			GuestHostMap gsMap = AgeParameterParser.getGSMap(params);
 			
 			// Substitution model first, then sequence alignment D and site rates.
-			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, 4 * gsMap.getNoOfLeafNames());
-			LinkedHashMap<String, ? extends Sequence<? extends Compound>> sequences = AgeParameterParser.getMultialignment(params, Q.getSequenceType());
-			MSAData D = new MSAData(Q.getSequenceType(), sequences);
+			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, AgeParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+			MSAData D = AgeParameterParser.getMSAData(params, Q.getSequenceType());
 			
 			// Pseudo-random number generator.
 			PRNG prng = AgeParameterParser.getPRNG(params);
@@ -114,7 +117,7 @@ public class Age implements JPrIMEApp {
 							params.guestTreeSetFileRelColNo, burninProp, minCvg);
 				}
 			}
-			Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = AgeParameterParser.getGuestTreeAndLengths(params, gsMap, prng, sequences, info, guestTreeSamples, D);
+			Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = AgeParameterParser.getGuestTreeAndLengths(params, gsMap, prng, info, guestTreeSamples, D);
 			// Create discretisation of S.
 			RBTreeArcDiscretiser dtimes = AgeParameterParser.getDiscretizer(params, sNamesTimes.first, sNamesTimes.second, sNamesTimes.third, gNamesLengths.first);
 			info.close();
@@ -1,15 +1,21 @@
 package se.cbb.jprime.apps.dlrs;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import se.cbb.jprime.io.LogDoubleSampleable;
 import se.cbb.jprime.io.SampleLogDouble;
 import se.cbb.jprime.math.Continuous1DPDDependent;
 import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.LogSpace;
 import se.cbb.jprime.mcmc.ChangeInfo;
 import se.cbb.jprime.mcmc.Dependent;
 import se.cbb.jprime.mcmc.InferenceModel;
-import se.cbb.jprime.topology.DoubleArrayLogMap;
 import se.cbb.jprime.topology.DoubleMap;
+import se.cbb.jprime.topology.LogArrayMap;
 import se.cbb.jprime.topology.RootedBifurcatingTreeParameter;
 import se.cbb.jprime.topology.TreeAlgorithms;
 
@@ -29,13 +35,18 @@ import se.cbb.jprime.topology.TreeAlgorithms;
  * <p/>
  * To sum all probability density contributions of ways to temporally embed G within S,
  * S is discretised and a dynamic programming algorithm is applied w.r.t. the
- * discretisation points.
+ * discretisation points. The DP tables are kept in log space in flat primitive arrays, see
+ * <code>LogArrayMap</code>, so that no objects are allocated during updates.
+ * <p/>
+ * Optionally, full updates process disjoint subtrees of G concurrently as fork-join tasks,
+ * given a pool upon construction. Each vertex is computed exactly as in a serial update,
+ * so the probability is identical.
  * 
  * @author Joel Sjöstrand.
  * @author Sayyed Auwn Muhammad.
  * @author Raja Hashim Ali.
  */
-public class DLRModel implements InferenceModel {
+public class DLRModel implements InferenceModel, LogDoubleSampleable {
 
 	/** The guest tree G. */
 	protected RootedBifurcatingTreeParameter g;
@@ -56,18 +67,41 @@ public class DLRModel implements InferenceModel {
 	protected Continuous1DPDDependent substPD;
 	
 	/**
-	 * Probability of rooted subtree G_u for each valid placement of u in S'.
+	 * Log probability of rooted subtree G_u for each valid placement of u in S'.
 	 */
-	protected DoubleArrayLogMap ats;
+	protected LogArrayMap ats;
 	
 	/**
-	 * Probability of planted subtree G^u for each valid placement of tip of u's
+	 * Log probability of planted subtree G^u for each valid placement of tip of u's
 	 * parent arc in S'.
 	 */
-	protected DoubleArrayLogMap belows;
+	protected LogArrayMap belows;
+	
+	/** Array length of each vertex of the belows, reused for layout changes. */
+	private int[] belowLengths;
+	
+	/** Default minimum number of vertices of a subtree of G for it to be split into concurrent tasks. */
+	public static final int DEFAULT_SUBTREE_CUTOFF = 16;
+	
+	/** Scratch arrays of each thread. */
+	private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+	
+	/** Pool for processing subtrees of G concurrently in full updates. Null for serial processing. */
+	private final ForkJoinPool pool;
+	
+	/** Minimum number of vertices of a subtree for it to be split into concurrent tasks. */
+	private final int subtreeCutoff;
+	
+	/** Number of vertices of the subtree of each vertex of G, valid during concurrent full updates. */
+	private int[] subtreeSizes;
 	
 	/**
-	 * Constructor.
+	 * Constructor. All updates are serial.
 	 * @param g the guest tree G.
 	 * @param s the host tree S.
 	 * @param reconcHelper the reconciliations helper.
@@ -78,14 +112,40 @@ public class DLRModel implements InferenceModel {
 	 */
 	public DLRModel(RootedBifurcatingTreeParameter g, RootedBifurcatingTreeParameter s, ReconciliationHelper reconcHelper,
 			DoubleMap lengths, DupLossProbs dupLossProbs, Continuous1DPDDependent substPD) {
+		this(g, s, reconcHelper, lengths, dupLossProbs, substPD, null, DEFAULT_SUBTREE_CUTOFF);
+	}
+	
+	/**
+	 * Constructor. Disjoint subtrees of G are processed concurrently in full updates.
+	 * Partial updates are always serial.
+	 * @param g the guest tree G.
+	 * @param s the host tree S.
+	 * @param reconcHelper the reconciliations helper.
+	 * @param lengths the branch lengths of G.
+	 * @param dupLossProbs the duplication-loss probabilities over discretised S.
+	 * @param substPD the iid rate probability distribution over arcs of G,
+	 *  (relaxing the molecular clock).
+	 * @param pool the pool, possibly shared with other models. Null for serial processing.
+	 * @param subtreeCutoff the minimum number of vertices of a subtree for it to be split into two
+	 *        concurrent tasks, e.g. <code>DEFAULT_SUBTREE_CUTOFF</code>.
+	 */
+	public DLRModel(RootedBifurcatingTreeParameter g, RootedBifurcatingTreeParameter s, ReconciliationHelper reconcHelper,
+			DoubleMap lengths, DupLossProbs dupLossProbs, Continuous1DPDDependent substPD, ForkJoinPool pool, int subtreeCutoff) {
+		if (subtreeCutoff < 3) {
+			throw new IllegalArgumentException("Guest subtree cutoff must be at least 3.");
+		}
 		this.g = g;
 		this.s = s;
 		this.reconcHelper = reconcHelper;
 		this.lengths = lengths;
 		this.dupLossProbs = dupLossProbs;
 		this.substPD = substPD;
-		this.ats = new DoubleArrayLogMap("DLR.ats", g.getNoOfVertices());
-		this.belows = new DoubleArrayLogMap("DLR.belows", g.getNoOfVertices());
+		this.pool = pool;
+		this.subtreeCutoff = subtreeCutoff;
+		this.ats = new LogArrayMap("DLR.ats", g.getNoOfVertices());
+		this.belows = new LogArrayMap("DLR.belows", g.getNoOfVertices());
+		this.belowLengths = new int[g.getNoOfVertices()];
+		this.subtreeSizes = new int[g.getNoOfVertices()];
 				
 		// Update.
 		this.fullUpdate();
@@ -108,28 +168,65 @@ public class DLRModel implements InferenceModel {
 		// One could think of many optimisations here, especially when there are 
 		// time perturbations involved, possibly combined with length perturbations.
 		// However, it is easy to make algorithmic mistakes in such situations,
-		// so at the only moment solitary length changes result in a partial DP update.
-		if (gci == null && sci == null && rhci == null && dpci == null && rci == null) {
-			if (lci != null && lci.getAffectedElements() != null) {
-				// Only certain branch lengths have changed. We do a partial update.
-				
-				int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.g, lci.getAffectedElements());
-				this.ats.cache(affected);
-				this.belows.cache(affected);
-				this.partialUpdate(affected);
-				changeInfos.put(this, new ChangeInfo(this, "Partial DLR update", affected));
-			} else if (lci != null) {
-				this.ats.cache(null);
-				this.belows.cache(null);
-				this.fullUpdate();
-				changeInfos.put(this, new ChangeInfo(this, "Full DLR update."));
-			}
-		} else {
+		// so at the moment only solitary length and guest tree changes result in a partial DP update.
+		int[] changed = ChangeInfo.getAffectedElements(gci, rhci, lci);
+		if (sci != null || dpci != null || rci != null || changed == null) {
 			this.ats.cache(null);
 			this.belows.cache(null);
 			this.fullUpdate();
 			changeInfos.put(this, new ChangeInfo(this, "Full DLR update."));
+		} else if (gci != null || rhci != null) {
+			// Disclosed guest tree changes. The number of placements may change,
+			// so we cache everything, but only recompute the affected vertices.
+			int[] nos = this.reconcHelper.getNoOfPlacements();
+			int[] affected = this.getAffectedVertices(changed, nos);
+			this.ats.cache(null);
+			this.belows.cache(null);
+			this.relayoutAtsAndBelows(nos);
+			this.partialUpdate(affected);
+			changeInfos.put(this, new ChangeInfo(this, "Partial DLR update", affected));
+		} else if (lci != null) {
+			// Only certain branch lengths have changed. We do a partial update.
+			
+			int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.g, changed);
+			this.ats.cache(affected);
+			this.belows.cache(affected);
+			this.partialUpdate(affected);
+			changeInfos.put(this, new ChangeInfo(this, "Partial DLR update", affected));
+		}
+	}
+	
+	/**
+	 * Returns the vertices which must be recomputed after disclosed changes of G, i.e., the vertices
+	 * on the root paths of the changed vertices, of vertices whose number of placements has changed,
+	 * and of vertices whose parent is such a vertex.
+	 * @param changed the changed vertices, i.e., vertices whose parent, lower limit or length has changed.
+	 * @param nos the new number of placements of each vertex.
+	 * @return the affected vertices, sorted in reverse topological order.
+	 */
+	private int[] getAffectedVertices(int[] changed, int[] nos) {
+		int n = this.g.getNoOfVertices();
+		boolean[] isChanged = new boolean[n];
+		for (int u : TreeAlgorithms.getSpanningRootSubtree(this.g, changed)) {
+			isChanged[u] = true;
+		}
+		for (int u = 0; u < n; ++u) {
+			if (nos[u] != this.ats.getLength(u)) {
+				isChanged[u] = true;
+			}
+		}
+		ArrayList<Integer> affected = new ArrayList<Integer>(n);
+		for (int u = 0; u < n; ++u) {
+			// The below probabilities of u depend on the placements of its parent.
+			if (isChanged[u] || (!this.g.isRoot(u) && isChanged[this.g.getParent(u)])) {
+				affected.add(u);
+			}
+		}
+		int[] vertices = new int[affected.size()];
+		for (int i = 0; i < vertices.length; ++i) {
+			vertices[i] = affected.get(i);
 		}
+		return TreeAlgorithms.getSpanningRootSubtree(this.g, vertices);
 	}
 
 	@Override
@@ -159,25 +256,48 @@ public class DLRModel implements InferenceModel {
 		return this.getDataProbability().toString();
 	}
 
+	@Override
+	public LogDouble getSampleLogDouble(SamplingMode mode) {
+		return this.getDataProbability();
+	}
+
 	@Override
 	public LogDouble getDataProbability() {
-		return new LogDouble(this.belows.get(this.g.getRoot(), 0));
+		return LogSpace.toLogDouble(this.belows.get(this.g.getRoot(), 0));
 	}
 	
 	
 	/**
-	 * Creates (and thus clears) the DP data structures.
-	 * @param u the root of the subtree of G.
-	 * @param noOfAncestors the number of ancestors of u.
+	 * Lays out (and thus clears) the DP data structures for the current number of placements.
 	 */
 	protected void clearAtsAndBelows() {
 		int[] nos = this.reconcHelper.getNoOfPlacements();
+		this.updateBelowLengths(nos);
+		this.ats.setLengths(nos);
+		this.belows.setLengths(this.belowLengths);
+	}
+	
+	/**
+	 * Changes the layout of the DP data structures for a new number of placements, retaining
+	 * the values of vertices whose number of placements is unchanged.
+	 * @param nos the number of placements of each vertex.
+	 */
+	protected void relayoutAtsAndBelows(int[] nos) {
+		this.updateBelowLengths(nos);
+		this.ats.setLengthsRetainingValues(nos);
+		this.belows.setLengthsRetainingValues(this.belowLengths);
+	}
+	
+	/**
+	 * Sets the number of placements of the tip of each vertex's parent arc.
+	 * @param nos the number of placements of each vertex.
+	 */
+	private void updateBelowLengths(int[] nos) {
 		for (int u = 0; u < this.g.getNoOfVertices(); ++u) {
-			this.ats.set(u, new LogDouble[nos[u]]);
 			if (this.g.isRoot(u)) {
-				this.belows.set(u, new LogDouble[1]);  // Only tip of host tree.
+				this.belowLengths[u] = 1;  // Only tip of host tree.
 			} else {
-				this.belows.set(u, new LogDouble[nos[this.g.getParent(u)]]);
+				this.belowLengths[u] = nos[this.g.getParent(u)];
 			}	
 		}
 	}
@@ -188,7 +308,64 @@ public class DLRModel implements InferenceModel {
 	protected void fullUpdate() {
 		int r = this.g.getRoot();
 		this.clearAtsAndBelows();
-		this.updateAtProbs(r, true);
+		if (this.pool == null || this.g.getNoOfVertices() < this.subtreeCutoff) {
+			this.updateAtProbs(r, true, this.workspaces.get());
+		} else {
+			this.prepareP11(this.workspaces.get());
+			this.computeSubtreeSizes(r);
+			this.pool.invoke(new SubtreeTask(r));
+		}
+	}
+	
+	/**
+	 * Computes the p11 values between arcs of S which may be read by the concurrent tasks of a full update.
+	 * <code>DupLossProbs</code> otherwise computes such values lazily upon request, which must not happen
+	 * concurrently. For each vertex u of G, these are the values from the arcs of the placements of the tip of u's
+	 * parent arc to the arcs below them of the placements of u. Values between other arcs are left to be
+	 * computed lazily. It is assumed that the DP data structures are laid out for the current placements.
+	 * @param ws scratch arrays of the invoking thread.
+	 */
+	private void prepareP11(Workspace ws) {
+		for (int u = 0; u < this.g.getNoOfVertices(); ++u) {
+			// Lowermost and uppermost arcs of the placements of the tip of u's parent arc.
+			int[] x_i = (this.g.isRoot(u) ? this.reconcHelper.getTipPt(ws.x_i) : this.reconcHelper.getLoLim(this.g.getParent(u), ws.x_i));
+			int xLo = x_i[0];
+			for (int i = 1; i < this.belows.getLength(u); ++i) {
+				this.reconcHelper.incrementPt(x_i);
+			}
+			int xHi = x_i[0];
+			
+			// Lowermost and uppermost arcs of the placements of u.
+			int[] y_j = this.reconcHelper.getLoLim(u, ws.y_j);
+			int yLo = y_j[0];
+			for (int j = 1; j < this.ats.getLength(u); ++j) {
+				this.reconcHelper.incrementPt(y_j);
+			}
+			int yHi = y_j[0];
+			
+			for (int x = xLo; ; x = this.s.getParent(x)) {
+				for (int y = yLo; y != x; y = this.s.getParent(y)) {
+					this.dupLossProbs.computeP11(x, y);
+					if (y == yHi) { break; }
+				}
+				if (x == xHi) { break; }
+			}
+		}
+	}
+	
+	/**
+	 * Computes the number of vertices of each subtree of G.
+	 * @param u the root of the subtree.
+	 * @return the number of vertices of the subtree.
+	 */
+	private int computeSubtreeSizes(int u) {
+		int sz = 1;
+		if (!this.g.isLeaf(u)) {
+			sz += this.computeSubtreeSizes(this.g.getLeftChild(u));
+			sz += this.computeSubtreeSizes(this.g.getRightChild(u));
+		}
+		this.subtreeSizes[u] = sz;
+		return sz;
 	}
 	
 	/**
@@ -198,8 +375,9 @@ public class DLRModel implements InferenceModel {
 	 * @param sortedAffectedVertices all affected vertices, sorted in reverse topological order.
 	 */
 	private void partialUpdate(int[] sortedAffectedVertices) {
+		Workspace ws = this.workspaces.get();
 		for (int u : sortedAffectedVertices) {
-			this.updateAtProbs(u, false);
+			this.updateAtProbs(u, false, ws);
 		}
 	}
 
@@ -209,46 +387,51 @@ public class DLRModel implements InferenceModel {
 	 * tabulated.
 	 * @param u the vertex of G.
 	 * @param doRecurse true to recursively process all descendants of u.
+	 * @param ws scratch arrays of the invoking thread.
 	 */
-	protected void updateAtProbs(int u, boolean doRecurse) {
+	protected void updateAtProbs(int u, boolean doRecurse, Workspace ws) {
 		if (this.g.isLeaf(u)) {
-			this.ats.set(u, 0, new LogDouble(1.0));
+			this.ats.set(u, 0, 0.0);
 		} else {
 			int lc = this.g.getLeftChild(u);
 			int rc = this.g.getRightChild(u);
 
 			// Must do children first, if specified.
 			if (doRecurse) {
-				this.updateAtProbs(lc, true);
-				this.updateAtProbs(rc, true);
+				this.updateAtProbs(lc, true, ws);
+				this.updateAtProbs(rc, true, ws);
 			}
 
 			// Retrieve placement start.
-			int[] x_i = this.reconcHelper.getLoLim(u);
+			int[] x_i = this.reconcHelper.getLoLim(u, ws.x_i);
 			int idx = 0;                                // No. of processed viable placements.
 
-			LogDouble[] uAts = this.ats.get(u);
-			LogDouble[] lcBelows = this.belows.get(lc);
-			LogDouble[] rcBelows = this.belows.get(rc);
+			double[] ats = this.ats.getValues();
+			double[] belows = this.belows.getValues();
+			int uOff = this.ats.getOffset(u);
+			int noOfPlacements = this.ats.getLength(u);
+			int lcOff = this.belows.getOffset(lc);
+			int rcOff = this.belows.getOffset(rc);
 			
 			// First placement might correspond to a speciation.
 			if (x_i[1] == 0) {
-				uAts[0] = lcBelows[0].multToNew(rcBelows[0]);
+				ats[uOff] = LogSpace.logMult(belows[lcOff], belows[rcOff]);
 				++idx;
 				++x_i[1];
 			}
 			
 			// Remaining placements correspond to duplications for sure.
-			for (; idx < uAts.length; ++idx) {
-				double dupRateSliceTimeProduct = 2 * this.dupLossProbs.getDuplicationRate() * this.reconcHelper.getSliceTime(x_i);
-				uAts[idx] = lcBelows[idx].multToNew(rcBelows[idx]).multToNew(dupRateSliceTimeProduct);	
+			double logDupFactor = Math.log(2 * this.dupLossProbs.getDuplicationRate());
+			for (; idx < noOfPlacements; ++idx) {
+				double logDupRateSliceTimeProduct = logDupFactor + Math.log(this.reconcHelper.getSliceTime(x_i));
+				ats[uOff + idx] = LogSpace.logMult(LogSpace.logMult(belows[lcOff + idx], belows[rcOff + idx]), logDupRateSliceTimeProduct);
 				// Move onto next pure discretisation point above.
 				this.reconcHelper.incrementPt(x_i);
 			}
 		}
 
 		// Update planted tree probs. afterwards.
-		this.updateBelowProbs(u);
+		this.updateBelowProbs(u, ws);
 	}
 
 	/**
@@ -256,39 +439,62 @@ public class DLRModel implements InferenceModel {
 	 * planted tree G^u when ^the tip of u's parent arc is placed on point x_i.
 	 * All viable placements x_i are tabulated.
 	 * @param u the vertex of G.
+	 * @param ws scratch arrays of the invoking thread.
 	 */
-	protected void updateBelowProbs(int u) {
+	protected void updateBelowProbs(int u, Workspace ws) {
 		// x refers to point of tip of planted tree G^u.
 		// y refers to point where u is placed (strictly below x).
 
 		double length = this.lengths.get(u);
-		LogDouble[] uAts = this.ats.get(u);
-		LogDouble[] uBelows = this.belows.get(u);
+		double[] ats = this.ats.getValues();
+		double[] belows = this.belows.getValues();
+		int uAtsOff = this.ats.getOffset(u);
+		int noOfAts = this.ats.getLength(u);
+		int uBelowsOff = this.belows.getOffset(u);
+		int noOfBelows = this.belows.getLength(u);
+		ws.ensureCapacity(noOfAts * noOfBelows, noOfBelows);
+		double[] rates = ws.rates;
+		double[] p11s = ws.p11s;
+		double[] terms = ws.terms;
+		int[] noOfTerms = ws.noOfTerms;
 		
 		// Get limits.
-		int[] x_i = (this.g.isRoot(u) ? this.reconcHelper.getTipPt() : this.reconcHelper.getLoLim(this.g.getParent(u)));
+		int[] x_i = (this.g.isRoot(u) ? this.reconcHelper.getTipPt(ws.x_i) : this.reconcHelper.getLoLim(this.g.getParent(u), ws.x_i));
 		
-		// For each x_i.
-		for (int xcnt = 0; xcnt < uBelows.length; ++xcnt) {
-			// Clear old value.
-			uBelows[xcnt] = new LogDouble(0.0);
-			// For each y_j strictly below x_i.
-			int[] y_j = this.reconcHelper.getLoLim(u);
+		// First, tabulate the edge rates, p11 and ats for each x_i and each y_j strictly below x_i.
+		int k = 0;
+		for (int xcnt = 0; xcnt < noOfBelows; ++xcnt) {
+			int[] y_j = this.reconcHelper.getLoLim(u, ws.y_j);
 			double xt = this.reconcHelper.getDiscretisationTime(x_i);
-			for (int ycnt = 0; ycnt < uAts.length; ++ycnt) {
+			int kStart = k;
+			for (int ycnt = 0; ycnt < noOfAts; ++ycnt) {
 				double yt = this.reconcHelper.getDiscretisationTime(y_j);
 				// Note: We now allow edge rates over stem arc as well.
-				double rateDens = this.substPD.getPDF(length / (xt - yt));
-				double p11 = this.dupLossProbs.getP11Probability(x_i[0], x_i[1], y_j[0], y_j[1]);
-				LogDouble product = uAts[ycnt].multToNew(rateDens * p11);
-				uBelows[xcnt].add(product);
+				rates[k] = length / (xt - yt);
+				p11s[k] = this.dupLossProbs.getP11Probability(x_i[0], x_i[1], y_j[0], y_j[1]);
+				terms[k] = ats[uAtsOff + ycnt];
+				++k;
 				// Move y_j onto next pure discretisation point above.
 				this.reconcHelper.incrementPt(y_j);
 				if (y_j[0] == x_i[0] && y_j[1] >= x_i[1]) { break; }
 			}
+			noOfTerms[xcnt] = k - kStart;
 			// Move x_i onto next pure discretisation point above.
 			this.reconcHelper.incrementPt(x_i);
 		}
+		
+		// Evaluate all edge rate densities at once, reusing the rate array.
+		this.substPD.getLogPDF(rates, rates, k);
+		for (int i = 0; i < k; ++i) {
+			terms[i] = LogSpace.logMult(terms[i], rates[i]);
+		}
+		
+		// For each x_i, sum over y_j.
+		k = 0;
+		for (int xcnt = 0; xcnt < noOfBelows; ++xcnt) {
+			belows[uBelowsOff + xcnt] = LogSpace.logSumExp(terms, p11s, k, k + noOfTerms[xcnt]);
+			k += noOfTerms[xcnt];
+		}
 	}
 	
 	@Override
@@ -298,11 +504,11 @@ public class DLRModel implements InferenceModel {
 		for (int u = 0; u < this.g.getNoOfVertices(); ++u) {
 			sb.append(u).append('\t');
 			sb.append(this.reconcHelper.getLoLimAsString(u)).append('\t');
-			sb.append(this.ats.get(u).length).append('\t');
+			sb.append(this.ats.getLength(u)).append('\t');
 			//sb.append((this.upLims.get(u) << 16) >>> 16).append('_').append(this.upLims.get(u) >>> 16).append('\t');
 			sb.append(this.g.isLeaf(u) ? "Leaf" : (this.reconcHelper.isDuplication(u) ? "Duplication" : "Speciation/duplication")).append('\t');
-			sb.append(Arrays.toString(this.ats.get(u))).append('\t');
-			sb.append(Arrays.toString(this.belows.get(u))).append('\n');
+			sb.append(Arrays.toString(this.ats.getExp(u))).append('\t');
+			sb.append(Arrays.toString(this.belows.getExp(u))).append('\n');
 		}
 		return sb.toString();
 	}
@@ -314,6 +520,7 @@ public class DLRModel implements InferenceModel {
 		sb.append(prefix).append("Number of vertices of host tree: ").append(this.s.getNoOfVertices()).append('\n');
 		sb.append(prefix).append("Number of vertices of guest tree: ").append(this.g.getNoOfVertices()).append('\n');
 		sb.append(prefix).append("IID edge rate distribution: ").append(this.substPD.getName()).append('\n');
+		sb.append(prefix).append("Concurrent guest subtrees in full updates: ").append(this.pool == null ? "None" : this.pool.getParallelism() + " threads, subtrees of at least " + this.subtreeCutoff + " vertices split").append('\n');
 		sb.append(prefix).append("Reconciliation helper:\n");
 		sb.append(this.reconcHelper.getPreInfo(prefix + '\t'));
 		//sb.append(this.toString());
@@ -331,5 +538,75 @@ public class DLRModel implements InferenceModel {
 	public String getModelName() {
 		return "DLR";
 	}
+	
+	/**
+	 * Scratch arrays and discretisation point cursors for updating a vertex, one instance per thread.
+	 */
+	protected static final class Workspace {
+		
+		/** Edge rate of the current vertex for each pair of placements (x_i,y_j). */
+		double[] rates = new double[64];
+		
+		/** p11 for each pair of placements (x_i,y_j). */
+		double[] p11s = new double[64];
+		
+		/** Log terms of the sums over placements y_j for each pair of placements (x_i,y_j). */
+		double[] terms = new double[64];
+		
+		/** Number of placements y_j for each placement x_i. */
+		int[] noOfTerms = new int[16];
+		
+		/** Cursor of upper points. */
+		final int[] x_i = new int[2];
+		
+		/** Cursor of lower points. */
+		final int[] y_j = new int[2];
+		
+		/**
+		 * Grows the arrays if required.
+		 * @param noOfPairs the number of pairs of placements.
+		 * @param noOfUpperPts the number of upper placements.
+		 */
+		void ensureCapacity(int noOfPairs, int noOfUpperPts) {
+			if (this.rates.length < noOfPairs) {
+				this.rates = new double[noOfPairs];
+				this.p11s = new double[noOfPairs];
+				this.terms = new double[noOfPairs];
+			}
+			if (this.noOfTerms.length < noOfUpperPts) {
+				this.noOfTerms = new int[noOfUpperPts];
+			}
+		}
+	}
+	
+	/**
+	 * Processes a subtree of G, recursively split into concurrent tasks for its child subtrees.
+	 */
+	private final class SubtreeTask extends RecursiveAction {
+
+		/** Eclipse-generated serial version UID. */
+		private static final long serialVersionUID = -2381754360251148923L;
+
+		/** Root of the subtree. */
+		private final int u;
+
+		/**
+		 * Constructor.
+		 * @param u the root of the subtree.
+		 */
+		SubtreeTask(int u) {
+			this.u = u;
+		}
+
+		@Override
+		protected void compute() {
+			if (subtreeSizes[this.u] < subtreeCutoff) {
+				updateAtProbs(this.u, true, workspaces.get());
+			} else {
+				invokeAll(new SubtreeTask(g.getLeftChild(this.u)), new SubtreeTask(g.getRightChild(this.u)));
+				updateAtProbs(this.u, false, workspaces.get());
+			}
+		}
+	}
 
 }
@@ -8,7 +8,6 @@ import se.cbb.jprime.apps.dlrs.DLRSParameters;
 import se.cbb.jprime.apps.dlrs.DupLossProbs;
 import se.cbb.jprime.apps.dlrs.ReconciliationHelper;
 
-import se.cbb.jprime.io.SampleDoubleArray;
 
 import se.cbb.jprime.math.PRNG;
 import se.cbb.jprime.math.RealInterval;
@@ -16,7 +15,6 @@ import se.cbb.jprime.math.RealInterval;
 import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.mcmc.FineProposerStatistics;
 import se.cbb.jprime.mcmc.Iteration;
-import se.cbb.jprime.mcmc.LinearTuningParameter;
 import se.cbb.jprime.mcmc.NormalProposer;
 import se.cbb.jprime.mcmc.RealParameter;
 import se.cbb.jprime.misc.Triple;
@@ -34,6 +32,18 @@ import se.cbb.jprime.topology.RBTreeArcDiscretiser;
  */
 public class DLRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 	
+	/**
+	 * Returns the number of threads for processing guest subtrees of the DLR model concurrently.
+	 * @param ps parameters.
+	 * @return the number of threads, 1 for serial processing.
+	 */
+	public static int getNoOfGuestSubtreeThreads(DLRSParameters ps) {
+		if (ps.getGuestSubtreeThreads() == null || ps.getGuestSubtreeThreads() < 1) {
+			throw new IllegalArgumentException("Number of guest subtree threads must be at least 1.");
+		}
+		return ps.getGuestSubtreeThreads();
+	}
+	
 	/**
 	 * Returns a reconciliation helper.
 	 * @param params parameters.
@@ -60,8 +70,32 @@ public class DLRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 	 * @throws IOException.
 	 */
 	public static RealisationSampler getRealisationSampler(DLRSParameters ps, Iteration iter, PRNG prng, DLRModel model, NamesMap names) throws IOException {
+		return getRealisationSampler(ps, iter, prng, model, names, 1);
+	}
+	
+	/**
+	 * Returns a realisation sampler of a chain when running multiple independent chains.
+	 * @param ps parameters.
+	 * @param iter iteration.
+	 * @param prng PRNG.
+	 * @param model DLR model.
+	 * @param names names of guest tree leaves.
+	 * @param chain the chain number, starting at 1.
+	 * @return the sampler.
+	 * @throws IOException.
+	 */
+	public static RealisationSampler getRealisationSampler(DLRSParameters ps, Iteration iter, PRNG prng, DLRModel model, NamesMap names, int chain) throws IOException {
 		if (ps.getSampleRealisations() == null) { return null; }
-		String fn = ps.getSampleRealisations().get(0);
+		if (ps.getBinaryOutput()) {
+			throw new IllegalArgumentException("Realisation sampling is not supported with binary output.");
+		}
+		if (isResuming(ps)) {
+			throw new IllegalArgumentException("Realisation sampling is not supported when resuming from a checkpoint.");
+		}
+		if (isMetropolisCoupled(ps)) {
+			throw new IllegalArgumentException("Realisation sampling is not supported for Metropolis-coupled chains.");
+		}
+		String fn = getChainFilename(ps, ps.getSampleRealisations().get(0), chain);
 		int n = Integer.parseInt(ps.getSampleRealisations().get(1));
 		return new RealisationSampler(fn, n, iter, prng, model, names);
 	}
@@ -90,10 +124,9 @@ public class DLRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 	 * @return proposer.
 	 */
 	public static NormalProposer getTruncatedNormalProposer(DLRSParameters ps, RealInterval interval, RealParameter p, Iteration iter, PRNG prng, String tuning) {
-		double[] tng = SampleDoubleArray.toDoubleArray(tuning);
-		LinearTuningParameter tcv = new LinearTuningParameter(iter, tng[0], tng[1]);
-		NormalProposer proposer = new NormalProposer(p, interval, tcv, prng);
-		proposer.setStatistics(new FineProposerStatistics(iter, 8));
+		FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+		NormalProposer proposer = new NormalProposer(p, interval, getTuningParameter(ps, iter, stats, tuning), prng);
+		proposer.setStatistics(stats);
 		return proposer;
 	}
 	
@@ -44,6 +44,13 @@ public class DLRSParameters extends Parameters {
 					+ "be considered viable.")
 	public Integer maxLosses = 3;
 
+	/** Threads for concurrent guest subtrees. */
+	@Parameter(names = { "-gthreads",
+			"--guestsubtreethreads" }, description = "Number of threads for computing the DLR probabilities of disjoint "
+					+ "guest subtrees concurrently in full updates, e.g., after guest tree perturbations. The threads are shared by "
+					+ "all chains. Samples are identical to those of a serial run.")
+	public Integer guestSubtreeThreads = 1;
+
 	/** Sample realisations. */
 	@Parameter(names = { "-real",
 			"--samplerealisations" }, arity = 2, description = "When sampling, output dated reconciliations to a file. "
@@ -121,6 +128,10 @@ public class DLRSParameters extends Parameters {
 		return maxLosses;
 	}
 
+	public Integer getGuestSubtreeThreads() {
+		return guestSubtreeThreads;
+	}
+
 	public List<String> getSampleRealisations() {
 		return sampleRealisations;
 	}
@@ -7,19 +7,19 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
-
-import org.biojava.nbio.core.sequence.template.Compound;
-import org.biojava.nbio.core.sequence.template.Sequence;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import se.cbb.jprime.apps.JPrIMEApp;
 import se.cbb.jprime.io.JCommanderUsageWrapper;
 import se.cbb.jprime.io.NewickRBTreeSamples;
 import se.cbb.jprime.io.RBTreeSampleWrapper;
 import se.cbb.jprime.io.SampleDoubleArray;
-import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.io.Sampleable;
+import se.cbb.jprime.io.Sampler;
 import se.cbb.jprime.math.Continuous1DPDDependent;
 import se.cbb.jprime.math.PRNG;
 import se.cbb.jprime.math.RealInterval;
@@ -27,16 +27,19 @@ import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.mcmc.FineProposerStatistics;
 import se.cbb.jprime.mcmc.Iteration;
 import se.cbb.jprime.mcmc.MCMCManager;
+import se.cbb.jprime.mcmc.MultiChainRunner;
 import se.cbb.jprime.mcmc.MultiProposerSelector;
 import se.cbb.jprime.mcmc.NormalProposer;
 import se.cbb.jprime.mcmc.ProposalAcceptor;
 import se.cbb.jprime.mcmc.Proposer;
 import se.cbb.jprime.mcmc.RealParameterUniformPrior;
 import se.cbb.jprime.mcmc.Thinner;
+import se.cbb.jprime.mcmc.WeightedDirichletPrior;
 import se.cbb.jprime.misc.Pair;
 import se.cbb.jprime.misc.Triple;
 import se.cbb.jprime.seqevo.GammaSiteRateHandler;
 import se.cbb.jprime.seqevo.MSAData;
+import se.cbb.jprime.seqevo.MSAPartition;
 import se.cbb.jprime.seqevo.SubstitutionMatrixHandler;
 import se.cbb.jprime.seqevo.SubstitutionMatrixHandlerFactory;
 import se.cbb.jprime.seqevo.SubstitutionModel;
@@ -67,6 +70,8 @@ public class Delirious implements JPrIMEApp {
 	@Override
 	public void main(String[] args) {
 		BufferedWriter info = null;
+		ForkJoinPool subtreePool = null;
+		ForkJoinPool patternPool = null;
 		try {
 			
 			// ================ PARSE USER OPTIONS AND ARGUMENTS ================
@@ -122,8 +127,7 @@ public class Delirious implements JPrIMEApp {
 			
 			// ================ READ AND CREATE ALL PARAMETERS ================
 			
-			// MCMC chain output and auxiliary info.
-			SampleWriter sampler = DLRSParameterParser.getOut(params);
+			// Auxiliary info.
 			info = DLRSParameterParser.getInfo(params);
 			info.write("# =========================================================================\n");
 			info.write("# ||                             PRE-RUN INFO                            ||\n");
@@ -134,165 +138,63 @@ public class Delirious implements JPrIMEApp {
 		    SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
 			info.write("# Current time: " + df.format(cal.getTime()) + '\n');
 			
-			// Read S and t.
-			Triple<RBTree, NamesMap, TimesMap> sNamesTimes = DLRSParameterParser.getHostTree(params, info);
-			
-			// Read guest-to-host leaf map.
-			GuestHostMap gsMap = DLRSParameterParser.getGSMap(params);
-			
-			// Substitution model first, then sequence alignment D and site rates.
-			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, 4 * gsMap.getNoOfLeafNames());
-			LinkedHashMap<String, ? extends Sequence<? extends Compound>> sequences = DLRSParameterParser.getMultialignment(params, Q.getSequenceType());
-			MSAData D = new MSAData(Q.getSequenceType(), sequences);
-			Pair<DoubleParameter, GammaSiteRateHandler> siteRates = DLRSParameterParser.getSiteRates(params);
-			
-			// Pseudo-random number generator.
-			PRNG prng = DLRSParameterParser.getPRNG(params);
-			
-			// Read/create G and l.
-			NewickRBTreeSamples guestTreeSamples = null;
-			if (params.guestTreeSet != null) {
-				Double burninProp = Double.parseDouble(params.guestTreeSetBurninProp);
-				Double minCvg = Double.parseDouble(params.guestTreeSetMinCvg);
-				if (params.guestTreeSetWithLengths) {
-					guestTreeSamples = NewickRBTreeSamples.readTreesWithLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
-							params.guestTreeSetFileRelColNo, burninProp, minCvg);
-				} else {
-					guestTreeSamples = NewickRBTreeSamples.readTreesWithoutLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
-							params.guestTreeSetFileRelColNo, burninProp, minCvg);
+			// ================ CREATE ONE MCMC HIERARCHY PER CHAIN ================
+			
+			// Threads for concurrent guest subtrees and site patterns are shared by all chains.
+			int noOfSubtreeThreads = DLRSParameterParser.getNoOfGuestSubtreeThreads(params);
+			subtreePool = (noOfSubtreeThreads > 1 ? new ForkJoinPool(noOfSubtreeThreads) : null);
+			int noOfPatternThreads = DLRSParameterParser.getNoOfPatternThreads(params);
+			patternPool = (noOfPatternThreads > 1 ? new ForkJoinPool(noOfPatternThreads) : null);
+			int noOfChains = DLRSParameterParser.getNoOfChains(params);
+			ArrayList<MCMCManager> managers = new ArrayList<MCMCManager>(noOfChains);
+			ArrayList<Sampler> samplers = new ArrayList<Sampler>(noOfChains);
+			ArrayList<RealisationSampler> realisationSamplers = new ArrayList<RealisationSampler>(noOfChains);
+			for (int chain = 1; chain <= noOfChains; ++chain) {
+				if (noOfChains > 1) {
+					info.write("# Chain " + chain + ":\n");
+				}
+				Triple<MCMCManager, Sampler, RealisationSampler> mcmc = this.createChain(params, chain, subtreePool, patternPool, info);
+				managers.add(mcmc.first);
+				samplers.add(mcmc.second);
+				if (mcmc.third != null) {
+					realisationSamplers.add(mcmc.third);
 				}
 			}
-			Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = DLRSParameterParser.getGuestTreeAndLengths(params, gsMap, prng, sequences, info, guestTreeSamples, D);
-			
-			for(int i = 0; i < gNamesLengths.third.getSize(); i++)
-				gNamesLengths.third.set(i, gNamesLengths.third.get(i)/Double.parseDouble(params.normp));
-			
-			// Read number of iterations and thinning factor.
-			Iteration iter = DLRSParameterParser.getIteration(params);
-			Thinner thinner = DLRSParameterParser.getThinner(params, iter);
-			
-			// Sigma (mapping between G and S).
-			MPRMap mprMap = new MPRMap(gsMap, gNamesLengths.first, gNamesLengths.second, sNamesTimes.first, sNamesTimes.second);
-			
-			// Read probability distribution for iid guest tree edge rates (molecular clock relaxation). 
-			Triple<DoubleParameter, DoubleParameter, Continuous1DPDDependent> edgeRatePD = DLRSParameterParser.getEdgeRatePD(params);
-			
-			// Create discretisation of S.
-			RBTreeArcDiscretiser dtimes = DLRSParameterParser.getDiscretizer(params, sNamesTimes.first, sNamesTimes.second, sNamesTimes.third, gNamesLengths.first);
-			
-			// Create reconciliation helper.
-			ReconciliationHelper rHelper = DLRSParameterParser.getReconciliationHelper(params, gNamesLengths.first, sNamesTimes.first, dtimes, mprMap);
-			
-			// Duplication-loss probabilities over discretised S.
-			Triple<DoubleParameter, DoubleParameter, DupLossProbs> dupLoss = DLRSParameterParser.getDupLossProbs(params, mprMap, sNamesTimes.first, gNamesLengths.first, dtimes);
-			
-			// ================ CREATE MODELS, PROPOSERS, ETC. ================
-			
-			// Priors. We only have them for parameters which might cause issues.
-			RealInterval priorRange = new RealInterval(1e-16, 1e16, false, false);
-			RealParameterUniformPrior edgeRateMeanPrior = new RealParameterUniformPrior(edgeRatePD.first, priorRange);
-			RealParameterUniformPrior edgeRateCVPrior = new RealParameterUniformPrior(edgeRatePD.second, priorRange);
-			RealParameterUniformPrior lengthsPrior = new RealParameterUniformPrior(gNamesLengths.third, priorRange);
-			
-			// Substitution model. NOTE: Root arc is turned on!!!!
-			SubstitutionModel sm = new SubstitutionModel("SubstitutionModel", D, siteRates.second, Q, gNamesLengths.first, gNamesLengths.second, gNamesLengths.third, true);
-			
-			// DLR model.
-			DLRModel dlr = new DLRModel(gNamesLengths.first, sNamesTimes.first, rHelper, gNamesLengths.third, dupLoss.third, edgeRatePD.third);
-			
-			// Realisation sampler.
-			RealisationSampler realisationSampler = DLRSParameterParser.getRealisationSampler(params, iter, prng, dlr, gNamesLengths.second);
-			
-			// Proposers.
-			NormalProposer dupRateProposer = DLRSParameterParser.getNormalProposer(params, dupLoss.first, iter, prng, params.tuningDupRate);
-			NormalProposer lossRateProposer = DLRSParameterParser.getNormalProposer(params, dupLoss.second, iter, prng, params.tuningLossRate);
-			NormalProposer edgeRateMeanProposer = DLRSParameterParser.getNormalProposer(params, edgeRatePD.first, iter, prng, params.tuningEdgeRateMean);
-			NormalProposer edgeRateCVProposer = DLRSParameterParser.getNormalProposer(params, edgeRatePD.second, iter, prng, params.tuningEdgeRateCV);
-			NormalProposer siteRateShapeProposer = DLRSParameterParser.getNormalProposer(params, siteRates.first, iter, prng, params.tuningSiteRateShape);
-			Proposer guestTreeProposer = DLRSParameterParser.getBranchSwapper(params, gNamesLengths.first, gNamesLengths.third, mprMap, iter, prng, guestTreeSamples);
-			RealInterval lengthsBounds = new RealInterval(0, 10, true, true); // Branchlengths should be limited to this open (true, true) interval. Main point: do no allow lengths >10.
-			NormalProposer lengthsProposer = DLRSParameterParser.getTruncatedNormalProposer(params, lengthsBounds, gNamesLengths.third, iter, prng, params.tuningLengths);
-			double[] lengthsWeights = SampleDoubleArray.toDoubleArray(params.tuningLengthsSelectorWeights);
-			lengthsProposer.setSubParameterWeights(lengthsWeights);
-			
-			// Proposer selector.
-			MultiProposerSelector selector = DLRSParameterParser.getSelector(params, prng);
-			selector.add(dupRateProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightDupRate, iter));
-			selector.add(lossRateProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightLossRate, iter));
-			selector.add(edgeRateMeanProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateMean, iter));
-			selector.add(edgeRateCVProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateCV, iter));
-			selector.add(siteRateShapeProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightSiteRateShape, iter));
-			selector.add(guestTreeProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightG, iter));
-			selector.add(lengthsProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightLengths, iter));
-			
-			// Inactivate fixed proposers.
-			String fixedRegex = ".+[fF][iI][xX][eE][dD]"; // Notice the starting ".+". The regex has to match the whole jaevla string!
-			if (params.dupRate != null        && params.dupRate.matches(fixedRegex))        { dupRateProposer.setEnabled(false); }
-			if (params.lossRate != null       && params.lossRate.matches(fixedRegex))       { lossRateProposer.setEnabled(false); }
-			if (params.edgeRatePDMean != null && params.edgeRatePDMean.matches(fixedRegex)) { edgeRateMeanProposer.setEnabled(false); }
-			if (params.edgeRatePDCV != null   && params.edgeRatePDCV.matches(fixedRegex))   { edgeRateCVProposer.setEnabled(false); }
-			if (params.siteRateCats == 1      || params.siteRateShape.matches(fixedRegex))  { siteRateShapeProposer.setEnabled(false); }
-			if (params.guestTreeFixed)                                                      { guestTreeProposer.setEnabled(false); }
-			if (params.lengthsFixed)                                                        { lengthsProposer.setEnabled(false); }
-			
-			// Proposal acceptor.
-			ProposalAcceptor acceptor = DLRSParameterParser.getAcceptor(params, prng);
-			
-			// Overall statistics.
-			FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
-			
-			// ================ SETUP MCMC HIERARCHY ================
-			
-			MCMCManager manager = new MCMCManager(iter, thinner, selector, acceptor, sampler, prng, stats);
-			manager.setDebugMode(params.debug);
-			
-			manager.addModel(edgeRateMeanPrior);
-			manager.addModel(edgeRateCVPrior);
-			manager.addModel(lengthsPrior);
-			manager.addModel(sm);
-			manager.addModel(dlr);
-			
-			manager.addSampleable(iter);
-			manager.addSampleable(manager);			// Overall likelihood.
-			//manager.addSampleable(edgeRateMeanPrior);
-			//manager.addSampleable(edgeRateCVPrior);
-			//manager.addSampleable(lengthsPrior);
-			manager.addSampleable(sm);
-			manager.addSampleable(dlr);
-			manager.addSampleable(dupLoss.first);
-			manager.addSampleable(dupLoss.second);
-			manager.addSampleable(edgeRatePD.first);
-			manager.addSampleable(edgeRatePD.second);
-			if (siteRateShapeProposer.isEnabled()) {
-				manager.addSampleable(siteRates.first);
-			}
-			manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second));
-			if (params.outputLengths) {
-				manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second, gNamesLengths.third));
-			}
-			if (realisationSampler != null) {
-				manager.addSampleable(realisationSampler);
-			}
+			MultiChainRunner runner = DLRSParameterParser.getChainRunner(params, managers);
 			
 			// ================ WRITE PRE-INFO ================
-			info.write("# MCMC manager:\n");
-			info.write(manager.getPreInfo("# \t"));
+			if (noOfChains == 1) {
+				info.write("# MCMC manager:\n");
+				info.write(managers.get(0).getPreInfo("# \t"));
+			} else {
+				info.write("# Multi-chain runner:\n");
+				info.write(runner.getPreInfo("# \t"));
+			}
 			info.flush();   // Don't close, maybe use stdout for both sampling and info...
 			
 			// ================ RUN ================
-			manager.run();
+			runner.run();
 			
 			// ================ WRITE POST-INFO ================
 			info.write("# =========================================================================\n");
 			info.write("# ||                             POST-RUN INFO                           ||\n");
 			info.write("# =========================================================================\n");
 			info.write("# DELIRIOUS\n");
-			info.write("# MCMC manager:\n");
-			info.write(manager.getPostInfo("# \t"));
+			if (noOfChains == 1) {
+				info.write("# MCMC manager:\n");
+				info.write(managers.get(0).getPostInfo("# \t"));
+			} else {
+				info.write("# Multi-chain runner:\n");
+				info.write(runner.getPostInfo("# \t"));
+			}
 			info.flush();
-			sampler.close();
+			for (Sampler sampler : samplers) {
+				sampler.close();
+			}
 			info.close();
-			if (realisationSampler != null) { realisationSampler.close(); }
+			for (RealisationSampler realisationSampler : realisationSamplers) {
+				realisationSampler.close();
+			}
 			
 			
 		} catch (Exception e) {
@@ -311,8 +213,190 @@ public class Delirious implements JPrIMEApp {
 				} catch (IOException f) {
 				}
 			}
+		} finally {
+			if (subtreePool != null) {
+				subtreePool.shutdown();
+			}
+			if (patternPool != null) {
+				patternPool.shutdown();
+			}
 		}
 	}
 	
+	/**
+	 * Reads the input and creates a complete, self-contained MCMC hierarchy of one chain.
+	 * No mutable objects are shared between chains, so that they may be run concurrently.
+	 * @param params parameters.
+	 * @param chain the chain number, starting at 1.
+	 * @param subtreePool pool for processing guest subtrees concurrently, shared by all chains. Null for serial processing.
+	 * @param patternPool pool for processing site patterns concurrently, shared by all chains. Null for serial processing.
+	 * @param info auxiliary info output.
+	 * @return the MCMC manager, its sampler and its realisation sampler (possibly null).
+	 * @throws Exception if the input could not be read.
+	 */
+	private Triple<MCMCManager, Sampler, RealisationSampler> createChain(DLRSParameters params, int chain, ForkJoinPool subtreePool, ForkJoinPool patternPool, BufferedWriter info) throws Exception {
+		// Read S and t.
+		Triple<RBTree, NamesMap, TimesMap> sNamesTimes = DLRSParameterParser.getHostTree(params, info);
+		
+		// Read guest-to-host leaf map.
+		GuestHostMap gsMap = DLRSParameterParser.getGSMap(params);
+		
+		// Substitution model first, then sequence alignment D and site rates.
+		SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, DLRSParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+		MSAData D = DLRSParameterParser.getMSAData(params, Q.getSequenceType());
+		Pair<DoubleParameter, GammaSiteRateHandler> siteRates = DLRSParameterParser.getSiteRates(params);
+		
+		// Pseudo-random number generator.
+		PRNG prng = DLRSParameterParser.getPRNG(params, chain);
+		
+		// Read/create G and l.
+		NewickRBTreeSamples guestTreeSamples = null;
+		if (params.guestTreeSet != null) {
+			Double burninProp = Double.parseDouble(params.guestTreeSetBurninProp);
+			Double minCvg = Double.parseDouble(params.guestTreeSetMinCvg);
+			if (params.guestTreeSetWithLengths) {
+				guestTreeSamples = NewickRBTreeSamples.readTreesWithLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
+						params.guestTreeSetFileRelColNo, burninProp, minCvg);
+			} else {
+				guestTreeSamples = NewickRBTreeSamples.readTreesWithoutLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
+						params.guestTreeSetFileRelColNo, burninProp, minCvg);
+			}
+		}
+		Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = DLRSParameterParser.getGuestTreeAndLengths(params, gsMap, prng, info, guestTreeSamples, D);
+		
+		for(int i = 0; i < gNamesLengths.third.getSize(); i++)
+			gNamesLengths.third.set(i, gNamesLengths.third.get(i)/Double.parseDouble(params.normp));
+		
+		// Read number of iterations and thinning factor.
+		Iteration iter = DLRSParameterParser.getIteration(params);
+		Thinner thinner = DLRSParameterParser.getThinner(params, iter);
+		
+		// Sigma (mapping between G and S).
+		MPRMap mprMap = new MPRMap(gsMap, gNamesLengths.first, gNamesLengths.second, sNamesTimes.first, sNamesTimes.second);
+		
+		// Read probability distribution for iid guest tree edge rates (molecular clock relaxation). 
+		Triple<DoubleParameter, DoubleParameter, Continuous1DPDDependent> edgeRatePD = DLRSParameterParser.getEdgeRatePD(params);
+		
+		// Create discretisation of S.
+		RBTreeArcDiscretiser dtimes = DLRSParameterParser.getDiscretizer(params, sNamesTimes.first, sNamesTimes.second, sNamesTimes.third, gNamesLengths.first);
+		
+		// Create reconciliation helper.
+		ReconciliationHelper rHelper = DLRSParameterParser.getReconciliationHelper(params, gNamesLengths.first, sNamesTimes.first, dtimes, mprMap);
+		
+		// Duplication-loss probabilities over discretised S.
+		Triple<DoubleParameter, DoubleParameter, DupLossProbs> dupLoss = DLRSParameterParser.getDupLossProbs(params, mprMap, sNamesTimes.first, gNamesLengths.first, dtimes);
+		
+		// ================ CREATE MODELS, PROPOSERS, ETC. ================
+		
+		// Priors. We only have them for parameters which might cause issues.
+		RealInterval priorRange = new RealInterval(1e-16, 1e16, false, false);
+		RealParameterUniformPrior edgeRateMeanPrior = new RealParameterUniformPrior(edgeRatePD.first, priorRange);
+		RealParameterUniformPrior edgeRateCVPrior = new RealParameterUniformPrior(edgeRatePD.second, priorRange);
+		RealParameterUniformPrior lengthsPrior = new RealParameterUniformPrior(gNamesLengths.third, priorRange);
+		
+		// Substitution models, one per partition of D. NOTE: Root arc is turned on!!!!
+		List<MSAPartition> partitions = DLRSParameterParser.getMSAPartitions(params, D, Q, siteRates, DLRSParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+		ArrayList<SubstitutionModel> sms = new ArrayList<SubstitutionModel>(partitions.size());
+		for (MSAPartition part : partitions) {
+			SubstitutionModel sm = new SubstitutionModel(part.getName(), part.getData(), part.getSiteRates(), part.getSubstitutionMatrixHandler(),
+					gNamesLengths.first, gNamesLengths.second, gNamesLengths.third, part.getRateMultiplier(), true);
+			sm.setPatternPool(patternPool, SubstitutionModel.DEFAULT_PATTERN_BLOCK_SIZE);
+			sms.add(sm);
+		}
+		
+		// DLR model.
+		DLRModel dlr = new DLRModel(gNamesLengths.first, sNamesTimes.first, rHelper, gNamesLengths.third, dupLoss.third, edgeRatePD.third,
+				subtreePool, DLRModel.DEFAULT_SUBTREE_CUTOFF);
+		
+		// Realisation sampler.
+		RealisationSampler realisationSampler = DLRSParameterParser.getRealisationSampler(params, iter, prng, dlr, gNamesLengths.second, chain);
+		
+		// Proposers.
+		NormalProposer dupRateProposer = DLRSParameterParser.getNormalProposer(params, dupLoss.first, iter, prng, params.tuningDupRate);
+		NormalProposer lossRateProposer = DLRSParameterParser.getNormalProposer(params, dupLoss.second, iter, prng, params.tuningLossRate);
+		NormalProposer edgeRateMeanProposer = DLRSParameterParser.getNormalProposer(params, edgeRatePD.first, iter, prng, params.tuningEdgeRateMean);
+		NormalProposer edgeRateCVProposer = DLRSParameterParser.getNormalProposer(params, edgeRatePD.second, iter, prng, params.tuningEdgeRateCV);
+		Proposer guestTreeProposer = DLRSParameterParser.getBranchSwapper(params, gNamesLengths.first, gNamesLengths.third, mprMap, iter, prng, guestTreeSamples);
+		RealInterval lengthsBounds = new RealInterval(0, 10, true, true); // Branchlengths should be limited to this open (true, true) interval. Main point: do no allow lengths >10.
+		NormalProposer lengthsProposer = DLRSParameterParser.getTruncatedNormalProposer(params, lengthsBounds, gNamesLengths.third, iter, prng, params.tuningLengths);
+		double[] lengthsWeights = SampleDoubleArray.toDoubleArray(params.tuningLengthsSelectorWeights);
+		lengthsProposer.setSubParameterWeights(lengthsWeights);
+		
+		// Proposer selector.
+		MultiProposerSelector selector = DLRSParameterParser.getSelector(params, prng);
+		selector.add(dupRateProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightDupRate, iter));
+		selector.add(lossRateProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightLossRate, iter));
+		selector.add(edgeRateMeanProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateMean, iter));
+		selector.add(edgeRateCVProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateCV, iter));
+		List<Sampleable> partitionParams = DLRSParameterParser.addPartitionProposers(params, partitions, selector, iter, prng, params.tuningSiteRateShape);
+		WeightedDirichletPrior rateMultiplierPrior = DLRSParameterParser.getRateMultiplierPrior(partitions);
+		selector.add(guestTreeProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightG, iter));
+		selector.add(lengthsProposer, DLRSParameterParser.getProposerWeight(params.tuningWeightLengths, iter));
+		
+		// Inactivate fixed proposers.
+		if (params.dupRate != null        && params.dupRate.matches(DLRSParameterParser.FIXED_REGEX))        { dupRateProposer.setEnabled(false); }
+		if (params.lossRate != null       && params.lossRate.matches(DLRSParameterParser.FIXED_REGEX))       { lossRateProposer.setEnabled(false); }
+		if (params.edgeRatePDMean != null && params.edgeRatePDMean.matches(DLRSParameterParser.FIXED_REGEX)) { edgeRateMeanProposer.setEnabled(false); }
+		if (params.edgeRatePDCV != null   && params.edgeRatePDCV.matches(DLRSParameterParser.FIXED_REGEX))   { edgeRateCVProposer.setEnabled(false); }
+		if (params.guestTreeFixed)                                                      { guestTreeProposer.setEnabled(false); }
+		if (params.lengthsFixed)                                                        { lengthsProposer.setEnabled(false); }
+		
+		// Proposal acceptor.
+		ProposalAcceptor acceptor = DLRSParameterParser.getAcceptor(params, prng, chain);
+		
+		// Overall statistics.
+		FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+		
+		// ================ SETUP MCMC HIERARCHY ================
+		
+		// MCMC chain output.
+		Sampler sampler = DLRSParameterParser.getOut(params, chain);
+		
+		MCMCManager manager = new MCMCManager(iter, thinner, selector, acceptor, sampler, prng, stats);
+		manager.setDebugMode(params.debug);
+		
+		manager.addModel(edgeRateMeanPrior);
+		manager.addModel(edgeRateCVPrior);
+		manager.addModel(lengthsPrior);
+		if (rateMultiplierPrior != null) {
+			manager.addModel(rateMultiplierPrior);
+		}
+		for (SubstitutionModel sm : sms) {
+			manager.addModel(sm);
+		}
+		manager.addModel(dlr);
+		
+		manager.addSampleable(iter);
+		manager.addSampleable(manager);			// Overall likelihood.
+		//manager.addSampleable(edgeRateMeanPrior);
+		//manager.addSampleable(edgeRateCVPrior);
+		//manager.addSampleable(lengthsPrior);
+		for (SubstitutionModel sm : sms) {
+			manager.addSampleable(sm);		// Likelihood of each partition.
+		}
+		manager.addSampleable(dlr);
+		manager.addSampleable(dupLoss.first);
+		manager.addSampleable(dupLoss.second);
+		manager.addSampleable(edgeRatePD.first);
+		manager.addSampleable(edgeRatePD.second);
+		for (Sampleable p : partitionParams) {
+			manager.addSampleable(p);
+		}
+		manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second));
+		if (params.outputLengths) {
+			manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second, gNamesLengths.third));
+		}
+		if (realisationSampler != null) {
+			manager.addSampleable(realisationSampler);
+		}
+		
+		// Convergence diagnostics, profiling, checkpointing and resuming.
+		DLRSParameterParser.setupDiagnostics(params, manager, iter, chain, info);
+		DLRSParameterParser.setupProfiling(params, manager, iter, chain, info);
+		manager.setDependentThreads(params.getDependentThreads());
+		DLRSParameterParser.setupCheckpointing(params, manager, chain);
+		
+		return new Triple<MCMCManager, Sampler, RealisationSampler>(manager, sampler, realisationSampler);
+	}
 	
 }
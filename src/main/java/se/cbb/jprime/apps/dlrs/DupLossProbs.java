@@ -1,6 +1,7 @@
 package se.cbb.jprime.apps.dlrs;
 
 import java.util.Map;
+
 import se.cbb.jprime.mcmc.ChangeInfo;
 import se.cbb.jprime.mcmc.Dependent;
 import se.cbb.jprime.mcmc.DoubleParameter;
@@ -9,10 +10,17 @@ import se.cbb.jprime.topology.DoubleArrayMatrixMap;
 import se.cbb.jprime.topology.DoubleMap;
 import se.cbb.jprime.topology.RBTree;
 import se.cbb.jprime.topology.RBTreeArcDiscretiser;
+import se.cbb.jprime.topology.TreeAlgorithms;
 
 /**
  * Point-wise duplication and loss probabilities for a
  * discretised host tree.
+ * <p/>
+ * The p11 and extinction probabilities within each arc are computed eagerly. When only the discretisation
+ * of certain arcs has changed, only those arcs and their ancestors are recomputed, since the extinction
+ * probability of an arc depends on those of its descendants. p11 between points of an arc x and
+ * a proper descendant arc y is computed lazily when first requested, and is discarded whenever
+ * arc x is recomputed (which is always the case if any arc between x and y, or a sibling thereof, has changed).
  * 
  * @author Joel Sjöstrand.
  */
@@ -30,12 +38,21 @@ public class DupLossProbs implements ProperDependent {
 	/** Loss (death) rate. */
 	protected DoubleParameter mu;
 	
-	/** P11 between points. */
+	/** P11 between points. For proper ancestor-descendant arc pairs, null until requested. */
 	protected DoubleArrayMatrixMap p11;
 	
 	/** Death probabilites for planted subtrees. */
 	protected DoubleMap extinction;
 	
+	/** Arcs whose p11 values are cached. Null if nothing cached. */
+	protected int[] cacheArcs = null;
+	
+	/** Cached p11 values from points of each cached arc to points of every arc. Reused, with room for all arcs. */
+	protected double[][][] cacheP11;
+	
+	/** All arcs, cached on full updates. */
+	private int[] allArcs;
+	
 	/**
 	 * Constructor.
 	 * @param s
@@ -50,6 +67,11 @@ public class DupLossProbs implements ProperDependent {
 		this.mu = mu;
 		this.p11 = new DoubleArrayMatrixMap(s.getNoOfVertices());
 		this.extinction = new DoubleMap("extinction", s.getNoOfVertices());
+		this.cacheP11 = new double[s.getNoOfVertices()][s.getNoOfVertices()][];
+		this.allArcs = new int[s.getNoOfVertices()];
+		for (int x = 0; x < this.allArcs.length; ++x) {
+			this.allArcs[x] = x;
+		}
 		this.fullUpdate();
 	}
 
@@ -61,20 +83,18 @@ public class DupLossProbs implements ProperDependent {
 	@Override
 	public void cacheAndUpdate(Map<Dependent, ChangeInfo> changeInfos, boolean willSample) {
 		ChangeInfo tci = changeInfos.get(this.times);
-		int maxAffectedVertices = 8;
 		if (changeInfos.get(this.s) == null && changeInfos.get(this.lambda) == null &&
-			changeInfos.get(this.mu) == null && tci != null && tci.getAffectedElements() != null &&
-			tci.getAffectedElements().length < maxAffectedVertices) {
-			// TODO: Here one could find the parts of the tree spanned by
-			// tci.getAffectedElements() and do partial update.
-			this.p11.cache(null);
-			this.extinction.cache(null);
-			fullUpdate();
-			changeInfos.put(this, new ChangeInfo(this, "DupLossProbs - full update"));
+			changeInfos.get(this.mu) == null && tci != null && tci.getAffectedElements() != null) {
+			// Only the discretisation of certain arcs has changed. Recompute those and their ancestors.
+			int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.s, tci.getAffectedElements());
+			this.cacheArcs(affected);
+			this.extinction.cache(affected);
+			this.partialUpdate(affected);
+			changeInfos.put(this, new ChangeInfo(this, "DupLossProbs - partial update", affected));
 		} else {
-			this.p11.cache(null);
+			this.cacheArcs(null);
 			this.extinction.cache(null);
-			fullUpdate();
+			this.fullUpdate();
 			changeInfos.put(this, new ChangeInfo(this, "DupLossProbs - full update"));
 		}
 	}
@@ -84,16 +104,51 @@ public class DupLossProbs implements ProperDependent {
 	 */
 	private void fullUpdate() {
 		this.computeP11AndExtinctionForArc(this.s.getRoot(), true);
-		this.computeP11ForRootPath(this.s.getRoot(), true);
+		for (int x = 0; x < this.s.getNoOfVertices(); ++x) {
+			this.clearP11ForDescendants(x);
+		}
 	}
 
 	/**
-	 * Partial update. Not implemented.
-	 * @param affectedElements.
+	 * Partial update. Recomputes certain arcs, and discards p11 from their points to points of descendant arcs.
+	 * @param arcs the arcs, closed under ancestry and sorted so that descendants precede ancestors.
+	 */
+	private void partialUpdate(int[] arcs) {
+		for (int x : arcs) {
+			this.computeP11AndExtinctionForArc(x, false);
+			this.clearP11ForDescendants(x);
+		}
+	}
+	
+	/**
+	 * Caches the p11 values from points of certain arcs to points of every arc.
+	 * Arrays are never modified after having been computed, so only references are stored.
+	 * @param arcs the arcs. Null will cache all arcs.
+	 */
+	private void cacheArcs(int[] arcs) {
+		int n = this.s.getNoOfVertices();
+		if (arcs == null) {
+			arcs = this.allArcs;
+		}
+		this.cacheArcs = arcs;
+		for (int i = 0; i < arcs.length; ++i) {
+			for (int y = 0; y < n; ++y) {
+				this.cacheP11[i][y] = this.p11.get(arcs[i], y);
+			}
+		}
+	}
+	
+	/**
+	 * Discards p11 from points of an arc to points of its proper descendant arcs, so that it
+	 * is recomputed when next requested.
+	 * @param x the arc.
 	 */
-	@SuppressWarnings("unused")
-	private void partialUpdate(int[] affectedElements) {
-		// TODO: Implement. Probably mostly useful if tree and/or discretisation has changed.
+	private void clearP11ForDescendants(int x) {
+		for (int y = 0; y < this.s.getNoOfVertices(); ++y) {
+			if (y != x) {
+				this.p11.set(x, y, null);
+			}
+		}
 	}
 	
 	/**
@@ -121,13 +176,20 @@ public class DupLossProbs implements ProperDependent {
 
 	@Override
 	public void clearCache(boolean willSample) {
-		this.p11.clearCache();
+		this.cacheArcs = null;
 		this.extinction.clearCache();
 	}
 
 	@Override
 	public void restoreCache(boolean willSample) {
-		this.p11.restoreCache();
+		if (this.cacheArcs != null) {
+			for (int i = 0; i < this.cacheArcs.length; ++i) {
+				for (int y = 0; y < this.s.getNoOfVertices(); ++y) {
+					this.p11.set(this.cacheArcs[i], y, this.cacheP11[i][y]);
+				}
+			}
+		}
+		this.cacheArcs = null;
 		this.extinction.restoreCache();
 	}
 
@@ -161,6 +223,7 @@ public class DupLossProbs implements ProperDependent {
 	 * Indexing as follows. Index 0 is the head vertex of an arc (i.e., closest to the leaves),
 	 * index 1,...,k are the k pure discretisation points, and index k+1
 	 * is the tail vertex of the arc (or tip of the stem arc).
+	 * Values between different arcs are computed upon the first request after a change.
 	 * @param x the ancestral arc (equalling the arc's head vertex).
 	 * @param i the point on the ancestral arc.
 	 * @param y the descendant arc (equalling the arc's head vertex).
@@ -168,9 +231,26 @@ public class DupLossProbs implements ProperDependent {
 	 * @return p11 between point x_i and point y_j.
 	 */
 	public double getP11Probability(int x, int i, int y, int j) {
-		return this.p11.get(x, y, this.times.getDiscretisationTimes(y).length * i + j);
+		double[] xyp11 = this.p11.get(x, y);
+		if (xyp11 == null) {
+			xyp11 = this.computeP11ForArcPair(x, y);
+		}
+		return xyp11[this.times.getDiscretisationTimes(y).length * i + j];
 	}
 	
+	/**
+	 * Computes p11 between points of an ancestral arc and a descendant arc unless already computed
+	 * since the last change. Since values are otherwise computed upon request, this must be invoked
+	 * for every pair of arcs requested before <code>getP11Probability()</code> is invoked concurrently.
+	 * @param x the ancestral arc.
+	 * @param y the proper descendant arc.
+	 */
+	void computeP11(int x, int y) {
+		if (this.p11.get(x, y) == null) {
+			this.computeP11ForArcPair(x, y);
+		}
+	}
+
 	/**
 	 * Retrieves p11 for an entire arc of the host tree.
 	 * @param x the arc (equalling the arc's head vertex).
@@ -248,84 +328,62 @@ public class DupLossProbs implements ProperDependent {
 	}
 
 	/**
-	 * For an arc y, computes and stores p11 for each proper ancestral arc x.
-	 * @param y the arc (or arc with head vertex y, if you wish).
-	 * @param doRecurse true to process all of the tree rooted at y.
+	 * Computes and stores p11 between points of an arc x and points of a proper descendant arc y.
+	 * @param x the ancestral arc.
+	 * @param y the descendant arc.
+	 * @return p11 between x and y.
 	 */
-	private void computeP11ForRootPath(int y, boolean doRecurse) {
+	private double[] computeP11ForArcPair(int x, int y) {
+		
+		// No. of points on x and y, including speciation endpoints.
+		int xSz = this.times.getDiscretisationTimes(x).length;
+		int ySz = this.times.getDiscretisationTimes(y).length;
 		
-		// Edge y refers to the lower most arc, i.e. the descendant edge.
+		// p11 for points within ancestral arc x and descendant arc y.
+		double[] xp11 = this.p11.get(x, x);
+		double[] yp11 = this.p11.get(y, y);
 		
-		// Perform computations from leaves to root.
-		if (!this.s.isLeaf(y) && doRecurse) {
-			this.computeP11ForRootPath(this.s.getLeftChild(y), true);
-			this.computeP11ForRootPath(this.s.getRightChild(y), true);
+		// One-to-one for intermediate arcs between x and y, including losses
+		// of planted subtrees of other clades than y.
+		double p11ForIntermediateArcs = 1.0;
+		int z = y;
+		while (this.s.getParent(z) != x) {
+			p11ForIntermediateArcs *= this.extinction.get(this.s.getSibling(z));
+			z = this.s.getParent(z);
+			double[] zp11 = this.p11.get(z, z);
+			int zSz = this.times.getDiscretisationTimes(z).length;
+			p11ForIntermediateArcs *= zp11[zSz * (zSz - 1) + 0];
 		}
 		
-		if (!this.s.isRoot(y)) {
-			
-			// No. of points on y, including speciation endpoints.
-			int ySz = this.times.getDiscretisationTimes(y).length;
-
-			// Arc x refers to the ancestral arc. We are calculating p11 from
-			// points on x to points on y.
-			int x = this.s.getParent(y);
-
-			// One-to-one for intermediate arcs between x and y, including losses.
-			double p11ForIntermediateArcs = 1.0;
-
-			// Loss for planted subtree ending in y but of other clade than x.
-			double loss = this.extinction.get(this.s.getSibling(y));
-
-			// p11 for points within descendant edge y.
-			double[] yp11 = this.p11.get(y, y);
-			
-			// For each ancestral arc x, compute probabilities between points on x and points on y.
-			while (true) {
-				
-				// No. of points on x, including speciation endpoints.
-				int xSz = this.times.getDiscretisationTimes(x).length;
-				
-				// p11 for points within ancestral arc y.
-				double[] xp11 = this.p11.get(x, x);
-				
-				// What we're computing: p11 between x and y.
-				double[] xyp11 = new double[xSz * ySz];
-
-				// Compute p11 from the first point on x (the speciation)
-				// to each point j on y.
-				for (int j = 0; j < ySz; ++j) {
-					xyp11[ySz * 0 + j] = p11ForIntermediateArcs * yp11[ySz * (ySz - 1) + j];
-				}
-
-				// The next iterations will be to points above the
-				// speciation, so add the current loss factor to p11.
-				p11ForIntermediateArcs *= loss;
-
-				// For each point i on x:
-				//    for each point j on y:
-				//        calculate p11(a, b)
-				for (int i = 1; i < xSz; ++i) {
-					double p11ToSpec = xp11[xSz * i + 0];
-					for (int j = 0; j < ySz; ++j) {
-						xyp11[ySz * i + j] = p11ToSpec * p11ForIntermediateArcs * yp11[ySz * (ySz - 1) + j];
-					}
-				}
+		// Loss for planted subtree ending in x's child but of other clade than y.
+		double loss = this.extinction.get(this.s.getSibling(z));
+		
+		// What we're computing: p11 between x and y.
+		double[] xyp11 = new double[xSz * ySz];
 
-				// Store the values.
-				this.p11.set(x, y, xyp11);
-				
-				// If we have completed the root we are done
-				if (this.s.isRoot(x)) {
-					break;
-				}
+		// Compute p11 from the first point on x (the speciation)
+		// to each point j on y.
+		for (int j = 0; j < ySz; ++j) {
+			xyp11[ySz * 0 + j] = p11ForIntermediateArcs * yp11[ySz * (ySz - 1) + j];
+		}
 
-				// Update p11 for intermediate arcs for the next round.
-				p11ForIntermediateArcs *= xp11[xSz * (xSz - 1) + 0];
-				loss = this.extinction.get(this.s.getSibling(x));
-				x = this.s.getParent(x);
+		// The next iterations will be to points above the
+		// speciation, so add the loss factor to p11.
+		p11ForIntermediateArcs *= loss;
+
+		// For each point i on x:
+		//    for each point j on y:
+		//        calculate p11(a, b)
+		for (int i = 1; i < xSz; ++i) {
+			double p11ToSpec = xp11[xSz * i + 0];
+			for (int j = 0; j < ySz; ++j) {
+				xyp11[ySz * i + j] = p11ToSpec * p11ForIntermediateArcs * yp11[ySz * (ySz - 1) + j];
 			}
 		}
+
+		// Store the values.
+		this.p11.set(x, y, xyp11);
+		return xyp11;
 	}
 
 	@Override
@@ -12,6 +12,7 @@ import se.cbb.jprime.topology.MPRMap;
 import se.cbb.jprime.topology.RBTree;
 import se.cbb.jprime.topology.RBTreeArcDiscretiser;
 import se.cbb.jprime.topology.RootedBifurcatingTreeParameter;
+import se.cbb.jprime.topology.TreeAlgorithms;
 
 /**
  * Keeps track of the various things related to allowed reconciliations
@@ -61,14 +62,15 @@ public class ReconciliationHelper implements ProperDependent, InfoProvider {
 		this.gsMap = gsMap;
 		this.maxImpliedLosses = maxImpliedLosses;
 		this.loLims = new IntMap("DLRS.lolims", g.getNoOfVertices());
-		this.updateLoLims(this.g.getRoot());
+		this.updateLoLims(this.g.getRoot(), true);
 	}
 	
 	/**
-	 * Recursively computes the lowermost viable placement of each guest tree vertex.
+	 * Computes the lowermost viable placement of a guest tree vertex, and, optionally, recursively for its descendants.
 	 * @param u the subtree of G rooted at u.
+	 * @param doRecurse true to process all descendants of u first; false to only do u.
 	 */
-	protected void updateLoLims(int u) {
+	protected void updateLoLims(int u, boolean doRecurse) {
 		
 		// HACK: At the moment we store a point x_i in a single int v by having x in the
 		// rightmost bits, and i shifted 16 bits left.
@@ -83,9 +85,11 @@ public class ReconciliationHelper implements ProperDependent, InfoProvider {
 			int lc = this.g.getLeftChild(u);
 			int rc = this.g.getRightChild(u);
 
-			// Update children first.
-			this.updateLoLims(lc);
-			this.updateLoLims(rc);
+			// Update children first, if specified.
+			if (doRecurse) {
+				this.updateLoLims(lc, true);
+				this.updateLoLims(rc, true);
+			}
 
 			int lcLo = this.loLims.get(lc);
 			int rcLo = this.loLims.get(rc);
@@ -142,9 +146,23 @@ public class ReconciliationHelper implements ProperDependent, InfoProvider {
 
 	@Override
 	public void cacheAndUpdate(Map<Dependent, ChangeInfo> changeInfos, boolean willSample) {
-		this.loLims.cache(null);
-		this.updateLoLims(this.g.getRoot());
-		changeInfos.put(this, new ChangeInfo(this, "Reconciliation helper update."));
+		ChangeInfo gci = changeInfos.get(this.g);
+		ChangeInfo gsci = changeInfos.get(this.gsMap);
+		int[] changed = ChangeInfo.getAffectedElements(gci, gsci);
+		if (changeInfos.get(this.s) == null && changeInfos.get(this.times) == null && changed != null) {
+			// Only disclosed guest tree changes. Lower limits are computed bottom-up, and can therefore
+			// only have changed on the root paths of the affected vertices.
+			int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.g, changed);
+			this.loLims.cache(affected);
+			for (int u : affected) {
+				this.updateLoLims(u, false);
+			}
+			changeInfos.put(this, new ChangeInfo(this, "Partial reconciliation helper update.", affected));
+		} else {
+			this.loLims.cache(null);
+			this.updateLoLims(this.g.getRoot(), true);
+			changeInfos.put(this, new ChangeInfo(this, "Reconciliation helper update."));
+		}
 	}
 
 	@Override
@@ -169,6 +187,19 @@ public class ReconciliationHelper implements ProperDependent, InfoProvider {
 		return new int[] {x, i};
 	}
 	
+	/**
+	 * Sets a point to the lowermost viable placement in S' for a guest tree vertex
+	 * u. Useful for reusing a discretisation point cursor, e.g. in concurrent tasks.
+	 * @param u the guest tree vertex.
+	 * @param x_i the point to set, as {x,index}.
+	 * @return the point.
+	 */
+	public int[] getLoLim(int u, int[] x_i) {
+		x_i[0] = (this.loLims.get(u) << 16) >>> 16;
+		x_i[1] = this.loLims.get(u) >>> 16;
+		return x_i;
+	}
+	
 	/**
 	 * Returns the lowermost viable placement in S' for a guest tree vertex
 	 * u on a string format.
@@ -191,6 +222,17 @@ public class ReconciliationHelper implements ProperDependent, InfoProvider {
 		return new int[] {x, i};
 	}
 	
+	/**
+	 * Sets a point to the very tip of the discretised host tree.
+	 * @param x_i the point to set, as {x,index}.
+	 * @return the point.
+	 */
+	public int[] getTipPt(int[] x_i) {
+		x_i[0] = this.s.getRoot();
+		x_i[1] = this.getNoOfSlices(x_i[0]) + 1;
+		return x_i;
+	}
+	
 	/**
 	 * Returns whether a guest tree vertex is an obligate duplication or not.
 	 * @param u guest tree vertex.
@@ -1,8 +1,10 @@
 package se.cbb.jprime.apps.dltrs;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import se.cbb.jprime.apps.dltrs.ReconciliationHelper;
+import se.cbb.jprime.io.LogDoubleSampleable;
 import se.cbb.jprime.io.SampleLogDouble;
 import se.cbb.jprime.math.Continuous1DPDDependent;
 import se.cbb.jprime.math.LogDouble;
@@ -47,7 +49,7 @@ import se.cbb.jprime.topology.TreeAlgorithms;
  * 
  * @author Joel Sjöstrand.
  */
-public class DLTRModel implements InferenceModel {
+public class DLTRModel implements InferenceModel, LogDoubleSampleable {
 
 	/** The guest tree G. */
 	protected RootedBifurcatingTreeParameter g;
@@ -73,6 +75,12 @@ public class DLTRModel implements InferenceModel {
 	/** Probability of planted subtree G^u for each valid placement of tip of u's parent arc in S'. */
 	protected GenericMap<EpochPtMap> belows;
 	
+	/** Edge rate of the current vertex for each of its placements t below a lineage start s, reused. */
+	private double[] rates;
+	
+	/** Epoch and time index of each placement t below a lineage start s, reused. */
+	private int[][] ts;
+	
 	/**
 	 * Constructor.
 	 * @param g the guest tree G.
@@ -93,6 +101,8 @@ public class DLTRModel implements InferenceModel {
 		this.substPD = substPD;
 		this.ats = new GenericMap<EpochPtMap>("DLTR.ats", g.getNoOfVertices());
 		this.belows = new GenericMap<EpochPtMap>("DLTR.belows", g.getNoOfVertices());
+		this.rates = new double[64];
+		this.ts = new int[64][];
 				
 		// Update.
 		this.fullUpdate();
@@ -115,28 +125,24 @@ public class DLTRModel implements InferenceModel {
 		// One could think of many optimisations here, especially when there are 
 		// time perturbations involved, possibly combined with length perturbations.
 		// However, it is easy to make algorithmic mistakes in such situations,
-		// so at the only moment solitary length changes result in a partial DP update.
+		// so at the moment only solitary length and guest tree changes result in a partial DP update.
 		try {
-			if (gci == null && sci == null && rhci == null && dpci == null && rci == null) {
-				if (lci != null && lci.getAffectedElements() != null) {
-					// Only certain branch lengths have changed. We do a partial update.
-					
-					int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.g, lci.getAffectedElements());
-					this.ats.cache(affected);
-					this.belows.cache(affected);
-					this.partialUpdate(affected);
-					changeInfos.put(this, new ChangeInfo(this, "Partial DLTR update", affected));
-				} else if (lci != null) {
-					this.ats.cache(null);
-					this.belows.cache(null);
-					this.fullUpdate();
-					changeInfos.put(this, new ChangeInfo(this, "Full DLTR update."));
-				}
-			} else {
+			int[] changed = ChangeInfo.getAffectedElements(gci, rhci, lci);
+			if (sci != null || dpci != null || rci != null || changed == null) {
 				this.ats.cache(null);
 				this.belows.cache(null);
 				this.fullUpdate();
 				changeInfos.put(this, new ChangeInfo(this, "Full DLTR update."));
+			} else if (gci != null || rhci != null || lci != null) {
+				// Only certain branch lengths, vertex limits and/or parents have changed. We do a partial update.
+				// The below probabilities of unaffected children of affected vertices are overwritten too, but with
+				// values that only depend on unaffected data.
+				
+				int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.g, changed);
+				this.ats.cache(affected);
+				this.belows.cache(affected);
+				this.partialUpdate(affected);
+				changeInfos.put(this, new ChangeInfo(this, "Partial DLTR update", affected));
 			}
 		} catch (CloneNotSupportedException ex) {
 		}
@@ -293,9 +299,25 @@ public class DLTRModel implements InferenceModel {
 				t = new int[] {t[0]+1, 0};
 			}
 			
-			// For each valid time t where u can be placed (strictly beneath s).
+			// Tabulate the edge rates for each valid time t where u can be placed (strictly beneath s),
+			// and evaluate their densities at once.
+			int n = 0;
 			while (t[0] < s[0] || (!(s[0] < t[0]) && t[1] < s[1])) {
-				double rateDens = substPD.getPDF(l / (sTime - reconcHelper.getTime(t)));
+				if (n == this.rates.length) {
+					this.rates = Arrays.copyOf(this.rates, 2 * n);
+					this.ts = Arrays.copyOf(this.ts, 2 * n);
+				}
+				this.rates[n] = l / (sTime - reconcHelper.getTime(t));
+				this.ts[n] = t;
+				++n;
+				t = reconcHelper.getEpochTimeAboveNotLast(t);
+			}
+			substPD.getLogPDF(this.rates, this.rates, n);
+			
+			// For each valid time t where u can be placed (strictly beneath s).
+			for (int k = 0; k < n; ++k) {
+				t = this.ts[k];
+				double rateDens = Math.exp(this.rates[k]);
 						
 				// For each edge e where lineage can start at time s.
 				double[] ats = this.ats.get(u).get(t[0], t[1]);
@@ -305,8 +327,6 @@ public class DLTRModel implements InferenceModel {
 						lins[e] += dltProbs.getOneToOneProbs().get(t[0], t[1], f, s[0], s[1], e) * rateDens * ats[f];
 					}
 				}
-				
-				t = reconcHelper.getEpochTimeAboveNotLast(t);
 			}
 		}
 	}
@@ -382,6 +402,11 @@ public class DLTRModel implements InferenceModel {
 		return this.getDataProbability().toString();
 	}
 
+	@Override
+	public LogDouble getSampleLogDouble(SamplingMode mode) {
+		return this.getDataProbability();
+	}
+
 	@Override
 	public String getPreInfo(String prefix) {
 		StringBuilder sb = new StringBuilder(65536);
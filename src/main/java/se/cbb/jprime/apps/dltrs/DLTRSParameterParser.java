@@ -27,13 +27,13 @@ import se.cbb.jprime.math.UniformDistribution;
 import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.mcmc.FineProposerStatistics;
 import se.cbb.jprime.mcmc.Iteration;
-import se.cbb.jprime.mcmc.LinearTuningParameter;
 import se.cbb.jprime.mcmc.NormalProposer;
 import se.cbb.jprime.mcmc.Proposer;
 import se.cbb.jprime.mcmc.RealParameter;
 import se.cbb.jprime.misc.Pair;
 import se.cbb.jprime.misc.Quadruple;
 import se.cbb.jprime.misc.Triple;
+import se.cbb.jprime.seqevo.MSAData;
 import se.cbb.jprime.seqevo.MultiAlignment;
 import se.cbb.jprime.topology.DoubleMap;
 import se.cbb.jprime.topology.RBTreeEpochDiscretiser;
@@ -66,12 +66,13 @@ public class DLTRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 	 * @param ps parameters.
 	 * @param gsMap guest-to-host leaf map.
 	 * @param prng PRNG.
-	 * @param alignment alignment of sequences.
+	 * @param msa alignment of sequences.
+	 * @param info information output.
 	 * @param samples guest tree set samples.
 	 * @return guest tree, names and branch lengths.
 	 */
 	public static Triple<RBTree, NamesMap, DoubleMap>
-		getGuestTreeAndLengths(DLTRSParameters ps, GuestHostMap gsMap, PRNG prng, LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs, BufferedWriter info, NewickRBTreeSamples samples) {
+		getGuestTreeAndLengths(DLTRSParameters ps, GuestHostMap gsMap, PRNG prng, MSAData msa, BufferedWriter info, NewickRBTreeSamples samples) {
 		Triple<RBTree, NamesMap, DoubleMap> guestTreeAndLengths = null;
 		if (ps.msaFastPhyloTree && ps.guestTreeSet != null) {
 			throw new IllegalArgumentException("Cannot use a fixed guest tree set and Fast Phylo at the same time.");
@@ -80,7 +81,7 @@ public class DLTRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 		} else if (ps.guestTreeSet != null) {
 			guestTreeAndLengths = getGuestTreeAndLengthsFromSet(ps, prng, info, samples);
 		} else {
-			guestTreeAndLengths = getGuestTreeAndLengthsSimple(ps, gsMap, prng, seqs, info);
+			guestTreeAndLengths = getGuestTreeAndLengthsSimple(ps, gsMap, prng, msa, info);
 		}
 		return guestTreeAndLengths;
 	}
@@ -91,11 +92,11 @@ public class DLTRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 	 * @param ps parameters.
 	 * @param gsMap guest-to-host leaf map.
 	 * @param prng PRNG.
-	 * @param seqs alignment of sequences.
+	 * @param msa alignment of sequences.
 	 * @param info information output.
 	 * @return guest tree, names and branch lengths.
 	 */
-	private static Triple<RBTree, NamesMap, DoubleMap> getGuestTreeAndLengthsSimple(DLTRSParameters ps, GuestHostMap gsMap, PRNG prng, LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs, BufferedWriter info) {
+	private static Triple<RBTree, NamesMap, DoubleMap> getGuestTreeAndLengthsSimple(DLTRSParameters ps, GuestHostMap gsMap, PRNG prng, MSAData msa, BufferedWriter info) {
 		RBTree g = null;
 		NamesMap gNames = null;
 		DoubleMap gLengths = null;
@@ -103,6 +104,7 @@ public class DLTRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 			if (ps.guestTree == null || ps.guestTree.equalsIgnoreCase("NJ")) {
 				// "Randomly rooted" NJ tree. Produced lengths seem suspicious, so we won't use'em.
 				info.append("# Initial guest tree: Produced with NJ on sequence identity (arbitrarily rooted).\n");
+				LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs = getMultialignment(ps, msa.getSequenceType());
 				@SuppressWarnings({ "unchecked", "rawtypes" })
 				NewickTree gRaw = NeighbourJoiningTreeGenerator.createNewickTree(new MultiAlignment(seqs, false));
 				g = new RBTree(gRaw, "GuestTree");
@@ -252,10 +254,9 @@ public class DLTRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 	 * @return proposer.
 	 */
 	public static NormalProposer getTruncatedNormalProposer(DLTRSParameters ps, RealInterval interval, RealParameter p, Iteration iter, PRNG prng, String tuning) {
-		double[] tng = SampleDoubleArray.toDoubleArray(tuning);
-		LinearTuningParameter tcv = new LinearTuningParameter(iter, tng[0], tng[1]);
-		NormalProposer proposer = new NormalProposer(p, interval, tcv, prng);
-		proposer.setStatistics(new FineProposerStatistics(iter, 8));
+		FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+		NormalProposer proposer = new NormalProposer(p, interval, getTuningParameter(ps, iter, stats, tuning), prng);
+		proposer.setStatistics(stats);
 		return proposer;
 	}
 	
@@ -309,9 +310,35 @@ public class DLTRSParameterParser extends se.cbb.jprime.apps.ParameterParser {
 	 * @throws IOException.
 	 */
 	public static RealisationSampler getRealisationSampler(DLTRSParameters ps, Iteration iter, PRNG prng, DLTRModel model, DLTRMAPModel msModel, NamesMap names, Boolean maxRealizationFlag) throws IOException {
+		return getRealisationSampler(ps, iter, prng, model, msModel, names, maxRealizationFlag, 1);
+	}
+	
+	/**
+	 * Returns a realisation sampler of a chain when running multiple independent chains.
+	 * @param ps parameters.
+	 * @param iter iteration.
+	 * @param prng PRNG.
+	 * @param model DLTR model.
+	 * @param msModel DLTR MAP model.
+	 * @param names names of guest tree leaves.
+	 * @param maxRealizationFlag whether to sample the maximum realisation.
+	 * @param chain the chain number, starting at 1.
+	 * @return the sampler.
+	 * @throws IOException.
+	 */
+	public static RealisationSampler getRealisationSampler(DLTRSParameters ps, Iteration iter, PRNG prng, DLTRModel model, DLTRMAPModel msModel, NamesMap names, Boolean maxRealizationFlag, int chain) throws IOException {
 		if (ps.sampleRealisations == false && ps.maxRealizationFlag == false ) { return null; }
 		if (ps.sampleRealisations == true && ps.maxRealizationFlag == true ) { return null; }
-		String fn = ps.outfile.trim() + ".disct.host.tree";
+		if (ps.getBinaryOutput()) {
+			throw new IllegalArgumentException("Realisation sampling is not supported with binary output.");
+		}
+		if (isResuming(ps)) {
+			throw new IllegalArgumentException("Realisation sampling is not supported when resuming from a checkpoint.");
+		}
+		if (isMetropolisCoupled(ps)) {
+			throw new IllegalArgumentException("Realisation sampling is not supported for Metropolis-coupled chains.");
+		}
+		String fn = getChainFilename(ps, ps.outfile.trim(), chain) + ".disct.host.tree";
 		int NO_OF_REALIZATION_PER_SATATE= 1;
 		return new RealisationSampler(fn,NO_OF_REALIZATION_PER_SATATE, iter, prng, model, msModel, names, maxRealizationFlag);
 	}
@@ -7,12 +7,11 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
-
-import org.biojava.nbio.core.sequence.template.Compound;
-import org.biojava.nbio.core.sequence.template.Sequence;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import se.cbb.jprime.apps.JPrIMEApp;
 import se.cbb.jprime.apps.dltrs.DLTRSParameterParser;
@@ -21,7 +20,8 @@ import se.cbb.jprime.io.JCommanderUsageWrapper;
 import se.cbb.jprime.io.NewickRBTreeSamples;
 import se.cbb.jprime.io.RBTreeSampleWrapper;
 import se.cbb.jprime.io.SampleDoubleArray;
-import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.io.Sampleable;
+import se.cbb.jprime.io.Sampler;
 import se.cbb.jprime.math.Continuous1DPDDependent;
 import se.cbb.jprime.math.PRNG;
 import se.cbb.jprime.math.RealInterval;
@@ -29,17 +29,20 @@ import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.mcmc.FineProposerStatistics;
 import se.cbb.jprime.mcmc.Iteration;
 import se.cbb.jprime.mcmc.MCMCManager;
+import se.cbb.jprime.mcmc.MultiChainRunner;
 import se.cbb.jprime.mcmc.MultiProposerSelector;
 import se.cbb.jprime.mcmc.NormalProposer;
 import se.cbb.jprime.mcmc.ProposalAcceptor;
 import se.cbb.jprime.mcmc.Proposer;
 import se.cbb.jprime.mcmc.RealParameterUniformPrior;
 import se.cbb.jprime.mcmc.Thinner;
+import se.cbb.jprime.mcmc.WeightedDirichletPrior;
 import se.cbb.jprime.misc.Pair;
 import se.cbb.jprime.misc.Quadruple;
 import se.cbb.jprime.misc.Triple;
 import se.cbb.jprime.seqevo.GammaSiteRateHandler;
 import se.cbb.jprime.seqevo.MSAData;
+import se.cbb.jprime.seqevo.MSAPartition;
 import se.cbb.jprime.seqevo.SubstitutionMatrixHandler;
 import se.cbb.jprime.seqevo.SubstitutionMatrixHandlerFactory;
 import se.cbb.jprime.seqevo.SubstitutionModel;
@@ -71,6 +74,7 @@ public class Deleterious implements JPrIMEApp {
 	@Override
 	public void main(String[] args) {
 		BufferedWriter info = null;
+		ForkJoinPool patternPool = null;
 		DLTRSParameters params = null;
 		try {
 			
@@ -104,8 +108,7 @@ public class Deleterious implements JPrIMEApp {
 			
 			// ================ READ AND CREATE ALL PARAMETERS ================
 			
-			// MCMC chain output and auxiliary info.
-			SampleWriter sampler = DLTRSParameterParser.getOut(params);
+			// Auxiliary info.
 			info = DLTRSParameterParser.getInfo(params);
 			info.write("# =========================================================================\n");
 			info.write("# ||                             PRE-RUN INFO                            ||\n");
@@ -116,184 +119,55 @@ public class Deleterious implements JPrIMEApp {
 		    SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
 			info.write("# Current time: " + df.format(cal.getTime()) + '\n');
 			
-			// Read S and t.
-			Triple<RBTree, NamesMap, TimesMap> sNamesTimes = DLTRSParameterParser.getHostTree(params, info);
-			
-			// Read guest-to-host leaf map.
-			GuestHostMap gsMap = DLTRSParameterParser.getGSMap(params);
-			
-			// Substitution model first, then sequence alignment D and site rates.
-			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, 4 * gsMap.getNoOfLeafNames());
-			LinkedHashMap<String, ? extends Sequence<? extends Compound>> sequences = DLTRSParameterParser.getMultialignment(params, Q.getSequenceType());
-			MSAData D = new MSAData(Q.getSequenceType(), sequences);
-			Pair<DoubleParameter, GammaSiteRateHandler> siteRates = DLTRSParameterParser.getSiteRates(params);
-			
-			// Pseudo-random number generator.
-			PRNG prng = DLTRSParameterParser.getPRNG(params);
-			
-			
-			// Read/create G and l.
-			NewickRBTreeSamples guestTreeSamples = null;
-			if (params.guestTreeSet != null) {
-				Double burninProp = Double.parseDouble(params.guestTreeSetBurninProp);
-				Double minCvg = Double.parseDouble(params.guestTreeSetMinCvg);
-				if (params.guestTreeSetWithLengths) {
-					guestTreeSamples = NewickRBTreeSamples.readTreesWithLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
-							params.guestTreeSetFileRelColNo, burninProp, minCvg);
-				} else {
-					guestTreeSamples = NewickRBTreeSamples.readTreesWithoutLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
-							params.guestTreeSetFileRelColNo, burninProp, minCvg);
+			// ================ CREATE ONE MCMC HIERARCHY PER CHAIN ================
+			
+			// Threads for concurrent site patterns are shared by all chains.
+			int noOfPatternThreads = DLTRSParameterParser.getNoOfPatternThreads(params);
+			patternPool = (noOfPatternThreads > 1 ? new ForkJoinPool(noOfPatternThreads) : null);
+			int noOfChains = DLTRSParameterParser.getNoOfChains(params);
+			ArrayList<MCMCManager> managers = new ArrayList<MCMCManager>(noOfChains);
+			ArrayList<Sampler> samplers = new ArrayList<Sampler>(noOfChains);
+			for (int chain = 1; chain <= noOfChains; ++chain) {
+				if (noOfChains > 1) {
+					info.write("# Chain " + chain + ":\n");
 				}
+				Pair<MCMCManager, Sampler> mcmc = this.createChain(params, chain, patternPool, info);
+				managers.add(mcmc.first);
+				samplers.add(mcmc.second);
 			}
-			Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = DLTRSParameterParser.getGuestTreeAndLengths(params, gsMap, prng, sequences, info, guestTreeSamples);
-			
-			// Read number of iterations and thinning factor.
-			Iteration iter = DLTRSParameterParser.getIteration(params);
-			Thinner thinner = DLTRSParameterParser.getThinner(params, iter);
-			
-			// Read probability distribution for iid guest tree edge rates (molecular clock relaxation). 
-			Triple<DoubleParameter, DoubleParameter, Continuous1DPDDependent> edgeRatePD = DLTRSParameterParser.getEdgeRatePD(params);
-			
-			// Create discretisation of S.
-			RBTreeEpochDiscretiser dtimes = DLTRSParameterParser.getDiscretizer(params, sNamesTimes.first, sNamesTimes.second, sNamesTimes.third, gNamesLengths.first);
-                        info.write("# Host tree: " + dtimes.toString() + "\n");
-			
-			// Create reconciliation helper.
-			ReconciliationHelper rHelper = DLTRSParameterParser.getReconciliationHelper(params, gNamesLengths.first, sNamesTimes.first, dtimes,
-					new LeafLeafMap(gsMap, gNamesLengths.first, gNamesLengths.second, sNamesTimes.first, sNamesTimes.second));
-			
-			// Duplication-loss probabilities over discretised S.
-			Quadruple<DoubleParameter, DoubleParameter, DoubleParameter, EpochDLTProbs> dlt = DLTRSParameterParser.getDLTProbs(params, sNamesTimes.first, sNamesTimes.second,
-					gNamesLengths.first, gNamesLengths.second, gsMap, dtimes);
-			
-			// ================ CREATE MODELS, PROPOSERS, ETC. ================
-			
-			// Priors. We only have them for parameters which might cause issues.
-			RealInterval priorRange = new RealInterval(1e-16, 1e16, false, false);
-			RealParameterUniformPrior edgeRateMeanPrior = new RealParameterUniformPrior(edgeRatePD.first, priorRange);
-			RealParameterUniformPrior edgeRateCVPrior = new RealParameterUniformPrior(edgeRatePD.second, priorRange);
-			RealParameterUniformPrior lengthsPrior = new RealParameterUniformPrior(gNamesLengths.third, priorRange);
-			
-			// Substitution model. NOTE: Root arc is turned on!!!!
-			SubstitutionModel sm = new SubstitutionModel("SubstitutionModel", D, siteRates.second, Q, gNamesLengths.first, gNamesLengths.second, gNamesLengths.third, true);
-			
-			// DLTR model.
-			DLTRModel dltr = new DLTRModel(gNamesLengths.first, sNamesTimes.first, rHelper, gNamesLengths.third, dlt.fourth, edgeRatePD.third);
-			// mehmood's addtition here Ma7 24 2013
-			// Sigma (mapping between G and S).	
-			// DLTRMaxSampling model.
-			DLTRMAPModel dltrMs = new DLTRMAPModel(gNamesLengths.first, sNamesTimes.first, rHelper, gNamesLengths.third, dlt.fourth, edgeRatePD.third);
-			
-			// Realisation sampler.
-			RealisationSampler realisationSampler = DLTRSParameterParser.getRealisationSampler(params, iter, prng, dltr, dltrMs, gNamesLengths.second, params.maxRealizationFlag);
-			
-			// Proposers.
-			NormalProposer dupRateProposer 		= DLTRSParameterParser.getNormalProposer(params, dlt.first, iter, prng, params.tuningDupRate);
-			NormalProposer lossRateProposer 	= DLTRSParameterParser.getNormalProposer(params, dlt.second, iter, prng, params.tuningLossRate);
-			NormalProposer transRateProposer 	= DLTRSParameterParser.getNormalProposer(params, dlt.third, iter, prng, params.tuningTransferRate);
-			NormalProposer edgeRateMeanProposer = DLTRSParameterParser.getNormalProposer(params, edgeRatePD.first, iter, prng, params.tuningEdgeRateMean);
-			NormalProposer edgeRateCVProposer 	= DLTRSParameterParser.getNormalProposer(params, edgeRatePD.second, iter, prng, params.tuningEdgeRateCV);
-			NormalProposer siteRateShapeProposer= DLTRSParameterParser.getNormalProposer(params, siteRates.first, iter, prng, params.tuningSiteRateShape);
-			Proposer guestTreeProposer 			= DLTRSParameterParser.getBranchSwapper(params, gNamesLengths.first, gNamesLengths.third, iter, prng, guestTreeSamples);
-			RealInterval lengthsBounds = new RealInterval(0, 10, true, true); // Branchlengths should be limited to this open (true, true) interval. Main point: do no allow lengths >10.
-			NormalProposer lengthsProposer = DLTRSParameterParser.getTruncatedNormalProposer(params, lengthsBounds, gNamesLengths.third, iter, prng, params.tuningLengths);
-			double[] lengthsWeights 			= SampleDoubleArray.toDoubleArray(params.tuningLengthsSelectorWeights);
-			lengthsProposer.setSubParameterWeights(lengthsWeights);
-			
-			// Proposer selector.
-			MultiProposerSelector selector=		DLTRSParameterParser.getSelector(params, prng);
-			selector.add(dupRateProposer, 		DLTRSParameterParser.getProposerWeight(params.tuningWeightDupRate, iter));
-			selector.add(lossRateProposer, 		DLTRSParameterParser.getProposerWeight(params.tuningWeightLossRate, iter));
-			selector.add(transRateProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightTransferRate, iter));
-			selector.add(edgeRateMeanProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateMean, iter));
-			selector.add(edgeRateCVProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateCV, iter));
-			selector.add(siteRateShapeProposer, DLTRSParameterParser.getProposerWeight(params.tuningWeightSiteRateShape, iter));
-			selector.add(guestTreeProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightG, iter));
-			selector.add(lengthsProposer, 		DLTRSParameterParser.getProposerWeight(params.tuningWeightLengths, iter));
-			
-			// Inactivate fixed proposers.
-			String fixedRegex = ".+[fF][iI][xX][eE][dD]"; // Notice the starting ".+". The regex has to match the whole jaevla string!
-			if (params.dupRate != null        && params.dupRate.matches(fixedRegex))        { dupRateProposer.setEnabled(false); }
-			if (params.lossRate != null       && params.lossRate.matches(fixedRegex))       { lossRateProposer.setEnabled(false); }
-			if (params.transRate != null      && params.transRate.matches(fixedRegex))      { transRateProposer.setEnabled(false); }
-			if (params.edgeRatePDMean != null && params.edgeRatePDMean.matches(fixedRegex)) { edgeRateMeanProposer.setEnabled(false); }
-			if (params.edgeRatePDCV != null   && params.edgeRatePDCV.matches(fixedRegex))   { edgeRateCVProposer.setEnabled(false); }
-			if (params.siteRateCats == 1      || params.siteRateShape.matches(fixedRegex))  { siteRateShapeProposer.setEnabled(false); }
-			if (params.guestTreeFixed)                                                      { guestTreeProposer.setEnabled(false); }
-			if (params.lengthsFixed)                                                        { lengthsProposer.setEnabled(false); }
-			
-			// Proposal acceptor.
-			ProposalAcceptor acceptor = DLTRSParameterParser.getAcceptor(params, prng);
-			
-			// Overall statistics.
-			FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
-			
-			// ================ SETUP MCMC HIERARCHY ================
-			
-			MCMCManager manager = new MCMCManager(iter, thinner, selector, acceptor, sampler, prng, stats);
-			manager.setDebugMode(params.debug);
-			
-			manager.addModel(edgeRateMeanPrior);
-			manager.addModel(edgeRateCVPrior);
-			manager.addModel(lengthsPrior);
-			manager.addModel(sm);
-			
-			if (params.sampleRealisations == true){
-				manager.addModel(dltr);
-			}else if (params.maxRealizationFlag == true ){
-				manager.addModel(dltrMs);
-			}
-
-			
-			manager.addSampleable(iter);
-			manager.addSampleable(manager);			// Overall likelihood.
-			//manager.addSampleable(edgeRateMeanPrior);
-			//manager.addSampleable(edgeRateCVPrior);
-			//manager.addSampleable(lengthsPrior);
-			manager.addSampleable(sm);
-			if (params.sampleRealisations == true){
-				manager.addSampleable(dltr);
-			}else if (params.maxRealizationFlag == true ){
-				manager.addSampleable(dltrMs);
-			}
-			
-			
-			manager.addSampleable(dlt.first);
-			manager.addSampleable(dlt.second);
-			manager.addSampleable(dlt.third);
-			manager.addSampleable(edgeRatePD.first);
-			manager.addSampleable(edgeRatePD.second);
-			if (siteRateShapeProposer.isEnabled()) {
-				manager.addSampleable(siteRates.first);
-			}
-			manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second));
-			if (params.outputLengths) {
-				manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second, gNamesLengths.third));
-			}
-			// mehmood's addition here
-			if (realisationSampler != null) {
-				manager.addSampleable(realisationSampler);
-			}
+			MultiChainRunner runner = DLTRSParameterParser.getChainRunner(params, managers);
 			
 			// ================ WRITE PRE-INFO ================
-			info.write("# MCMC manager:\n");
-			info.write(manager.getPreInfo("# \t"));
+			if (noOfChains == 1) {
+				info.write("# MCMC manager:\n");
+				info.write(managers.get(0).getPreInfo("# \t"));
+			} else {
+				info.write("# Multi-chain runner:\n");
+				info.write(runner.getPreInfo("# \t"));
+			}
 			info.flush();   // Don't close, maybe using stdout for both sampling and info...
 			
 			//if(Integer.parseInt(params.heatmap.get(1)) != 1)			// Dont run MCMC chain if only generating heatmaps
 			// ================ RUN ================
 			
-			manager.run();	
+			runner.run();	
 
 			// ================ WRITE POST-INFO ================
 			info.write("# =========================================================================\n");
 			info.write("# ||                             POST-RUN INFO                           ||\n");
 			info.write("# =========================================================================\n");
 			info.write("# DELETERIOUS\n");
-			info.write("# MCMC manager:\n");
-			info.write(manager.getPostInfo("# \t"));
+			if (noOfChains == 1) {
+				info.write("# MCMC manager:\n");
+				info.write(managers.get(0).getPostInfo("# \t"));
+			} else {
+				info.write("# Multi-chain runner:\n");
+				info.write(runner.getPostInfo("# \t"));
+			}
 			info.flush();
-			sampler.close();
+			for (Sampler sampler : samplers) {
+				sampler.close();
+			}
 			info.close();
 			
 			
@@ -392,8 +266,204 @@ public class Deleterious implements JPrIMEApp {
 			if (params != null && params.uncatch) {
 				throw new RuntimeException(e);
 			}
+		} finally {
+			if (patternPool != null) {
+				patternPool.shutdown();
+			}
 		}
 	}
 	
+	/**
+	 * Reads the input and creates a complete, self-contained MCMC hierarchy of one chain.
+	 * No mutable objects are shared between chains, so that they may be run concurrently.
+	 * @param params parameters.
+	 * @param chain the chain number, starting at 1.
+	 * @param patternPool pool for processing site patterns concurrently, shared by all chains. Null for serial processing.
+	 * @param info auxiliary info output.
+	 * @return the MCMC manager and its sampler.
+	 * @throws Exception if the input could not be read.
+	 */
+	private Pair<MCMCManager, Sampler> createChain(DLTRSParameters params, int chain, ForkJoinPool patternPool, BufferedWriter info) throws Exception {
+		// Read S and t.
+		Triple<RBTree, NamesMap, TimesMap> sNamesTimes = DLTRSParameterParser.getHostTree(params, info);
+		
+		// Read guest-to-host leaf map.
+		GuestHostMap gsMap = DLTRSParameterParser.getGSMap(params);
+		
+		// Substitution model first, then sequence alignment D and site rates.
+		SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, DLTRSParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+		MSAData D = DLTRSParameterParser.getMSAData(params, Q.getSequenceType());
+		Pair<DoubleParameter, GammaSiteRateHandler> siteRates = DLTRSParameterParser.getSiteRates(params);
+		
+		// Pseudo-random number generator.
+		PRNG prng = DLTRSParameterParser.getPRNG(params, chain);
+		
+		
+		// Read/create G and l.
+		NewickRBTreeSamples guestTreeSamples = null;
+		if (params.guestTreeSet != null) {
+			Double burninProp = Double.parseDouble(params.guestTreeSetBurninProp);
+			Double minCvg = Double.parseDouble(params.guestTreeSetMinCvg);
+			if (params.guestTreeSetWithLengths) {
+				guestTreeSamples = NewickRBTreeSamples.readTreesWithLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
+						params.guestTreeSetFileRelColNo, burninProp, minCvg);
+			} else {
+				guestTreeSamples = NewickRBTreeSamples.readTreesWithoutLengths(new File(params.guestTreeSet), params.guestTreeSetFileHasHeader,
+						params.guestTreeSetFileRelColNo, burninProp, minCvg);
+			}
+		}
+		Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = DLTRSParameterParser.getGuestTreeAndLengths(params, gsMap, prng, D, info, guestTreeSamples);
+		
+		// Read number of iterations and thinning factor.
+		Iteration iter = DLTRSParameterParser.getIteration(params);
+		Thinner thinner = DLTRSParameterParser.getThinner(params, iter);
+		
+		// Read probability distribution for iid guest tree edge rates (molecular clock relaxation). 
+		Triple<DoubleParameter, DoubleParameter, Continuous1DPDDependent> edgeRatePD = DLTRSParameterParser.getEdgeRatePD(params);
+		
+		// Create discretisation of S.
+		RBTreeEpochDiscretiser dtimes = DLTRSParameterParser.getDiscretizer(params, sNamesTimes.first, sNamesTimes.second, sNamesTimes.third, gNamesLengths.first);
+                        info.write("# Host tree: " + dtimes.toString() + "\n");
+		
+		// Create reconciliation helper.
+		ReconciliationHelper rHelper = DLTRSParameterParser.getReconciliationHelper(params, gNamesLengths.first, sNamesTimes.first, dtimes,
+				new LeafLeafMap(gsMap, gNamesLengths.first, gNamesLengths.second, sNamesTimes.first, sNamesTimes.second));
+		
+		// Duplication-loss probabilities over discretised S.
+		Quadruple<DoubleParameter, DoubleParameter, DoubleParameter, EpochDLTProbs> dlt = DLTRSParameterParser.getDLTProbs(params, sNamesTimes.first, sNamesTimes.second,
+				gNamesLengths.first, gNamesLengths.second, gsMap, dtimes);
+		
+		// ================ CREATE MODELS, PROPOSERS, ETC. ================
+		
+		// Priors. We only have them for parameters which might cause issues.
+		RealInterval priorRange = new RealInterval(1e-16, 1e16, false, false);
+		RealParameterUniformPrior edgeRateMeanPrior = new RealParameterUniformPrior(edgeRatePD.first, priorRange);
+		RealParameterUniformPrior edgeRateCVPrior = new RealParameterUniformPrior(edgeRatePD.second, priorRange);
+		RealParameterUniformPrior lengthsPrior = new RealParameterUniformPrior(gNamesLengths.third, priorRange);
+		
+		// Substitution models, one per partition of D. NOTE: Root arc is turned on!!!!
+		List<MSAPartition> partitions = DLTRSParameterParser.getMSAPartitions(params, D, Q, siteRates, DLTRSParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+		ArrayList<SubstitutionModel> sms = new ArrayList<SubstitutionModel>(partitions.size());
+		for (MSAPartition part : partitions) {
+			SubstitutionModel sm = new SubstitutionModel(part.getName(), part.getData(), part.getSiteRates(), part.getSubstitutionMatrixHandler(),
+					gNamesLengths.first, gNamesLengths.second, gNamesLengths.third, part.getRateMultiplier(), true);
+			sm.setPatternPool(patternPool, SubstitutionModel.DEFAULT_PATTERN_BLOCK_SIZE);
+			sms.add(sm);
+		}
+		
+		// DLTR model.
+		DLTRModel dltr = new DLTRModel(gNamesLengths.first, sNamesTimes.first, rHelper, gNamesLengths.third, dlt.fourth, edgeRatePD.third);
+		// mehmood's addtition here Ma7 24 2013
+		// Sigma (mapping between G and S).	
+		// DLTRMaxSampling model.
+		DLTRMAPModel dltrMs = new DLTRMAPModel(gNamesLengths.first, sNamesTimes.first, rHelper, gNamesLengths.third, dlt.fourth, edgeRatePD.third);
+		
+		// Realisation sampler.
+		RealisationSampler realisationSampler = DLTRSParameterParser.getRealisationSampler(params, iter, prng, dltr, dltrMs, gNamesLengths.second, params.maxRealizationFlag, chain);
+		
+		// Proposers.
+		NormalProposer dupRateProposer 		= DLTRSParameterParser.getNormalProposer(params, dlt.first, iter, prng, params.tuningDupRate);
+		NormalProposer lossRateProposer 	= DLTRSParameterParser.getNormalProposer(params, dlt.second, iter, prng, params.tuningLossRate);
+		NormalProposer transRateProposer 	= DLTRSParameterParser.getNormalProposer(params, dlt.third, iter, prng, params.tuningTransferRate);
+		NormalProposer edgeRateMeanProposer = DLTRSParameterParser.getNormalProposer(params, edgeRatePD.first, iter, prng, params.tuningEdgeRateMean);
+		NormalProposer edgeRateCVProposer 	= DLTRSParameterParser.getNormalProposer(params, edgeRatePD.second, iter, prng, params.tuningEdgeRateCV);
+		Proposer guestTreeProposer 			= DLTRSParameterParser.getBranchSwapper(params, gNamesLengths.first, gNamesLengths.third, iter, prng, guestTreeSamples);
+		RealInterval lengthsBounds = new RealInterval(0, 10, true, true); // Branchlengths should be limited to this open (true, true) interval. Main point: do no allow lengths >10.
+		NormalProposer lengthsProposer = DLTRSParameterParser.getTruncatedNormalProposer(params, lengthsBounds, gNamesLengths.third, iter, prng, params.tuningLengths);
+		double[] lengthsWeights 			= SampleDoubleArray.toDoubleArray(params.tuningLengthsSelectorWeights);
+		lengthsProposer.setSubParameterWeights(lengthsWeights);
+		
+		// Proposer selector.
+		MultiProposerSelector selector=		DLTRSParameterParser.getSelector(params, prng);
+		selector.add(dupRateProposer, 		DLTRSParameterParser.getProposerWeight(params.tuningWeightDupRate, iter));
+		selector.add(lossRateProposer, 		DLTRSParameterParser.getProposerWeight(params.tuningWeightLossRate, iter));
+		selector.add(transRateProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightTransferRate, iter));
+		selector.add(edgeRateMeanProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateMean, iter));
+		selector.add(edgeRateCVProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateCV, iter));
+		List<Sampleable> partitionParams = DLTRSParameterParser.addPartitionProposers(params, partitions, selector, iter, prng, params.tuningSiteRateShape);
+		WeightedDirichletPrior rateMultiplierPrior = DLTRSParameterParser.getRateMultiplierPrior(partitions);
+		selector.add(guestTreeProposer, 	DLTRSParameterParser.getProposerWeight(params.tuningWeightG, iter));
+		selector.add(lengthsProposer, 		DLTRSParameterParser.getProposerWeight(params.tuningWeightLengths, iter));
+		
+		// Inactivate fixed proposers.
+		if (params.dupRate != null        && params.dupRate.matches(DLTRSParameterParser.FIXED_REGEX))        { dupRateProposer.setEnabled(false); }
+		if (params.lossRate != null       && params.lossRate.matches(DLTRSParameterParser.FIXED_REGEX))       { lossRateProposer.setEnabled(false); }
+		if (params.transRate != null      && params.transRate.matches(DLTRSParameterParser.FIXED_REGEX))      { transRateProposer.setEnabled(false); }
+		if (params.edgeRatePDMean != null && params.edgeRatePDMean.matches(DLTRSParameterParser.FIXED_REGEX)) { edgeRateMeanProposer.setEnabled(false); }
+		if (params.edgeRatePDCV != null   && params.edgeRatePDCV.matches(DLTRSParameterParser.FIXED_REGEX))   { edgeRateCVProposer.setEnabled(false); }
+		if (params.guestTreeFixed)                                                      { guestTreeProposer.setEnabled(false); }
+		if (params.lengthsFixed)                                                        { lengthsProposer.setEnabled(false); }
+		
+		// Proposal acceptor.
+		ProposalAcceptor acceptor = DLTRSParameterParser.getAcceptor(params, prng, chain);
+		
+		// Overall statistics.
+		FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+		
+		// ================ SETUP MCMC HIERARCHY ================
+		
+		// MCMC chain output.
+		Sampler sampler = DLTRSParameterParser.getOut(params, chain);
+		
+		MCMCManager manager = new MCMCManager(iter, thinner, selector, acceptor, sampler, prng, stats);
+		manager.setDebugMode(params.debug);
+		
+		manager.addModel(edgeRateMeanPrior);
+		manager.addModel(edgeRateCVPrior);
+		manager.addModel(lengthsPrior);
+		if (rateMultiplierPrior != null) {
+			manager.addModel(rateMultiplierPrior);
+		}
+		for (SubstitutionModel sm : sms) {
+			manager.addModel(sm);
+		}
+		
+		if (params.sampleRealisations == true){
+			manager.addModel(dltr);
+		}else if (params.maxRealizationFlag == true ){
+			manager.addModel(dltrMs);
+		}
+
+		
+		manager.addSampleable(iter);
+		manager.addSampleable(manager);			// Overall likelihood.
+		//manager.addSampleable(edgeRateMeanPrior);
+		//manager.addSampleable(edgeRateCVPrior);
+		//manager.addSampleable(lengthsPrior);
+		for (SubstitutionModel sm : sms) {
+			manager.addSampleable(sm);		// Likelihood of each partition.
+		}
+		if (params.sampleRealisations == true){
+			manager.addSampleable(dltr);
+		}else if (params.maxRealizationFlag == true ){
+			manager.addSampleable(dltrMs);
+		}
+		
+		
+		manager.addSampleable(dlt.first);
+		manager.addSampleable(dlt.second);
+		manager.addSampleable(dlt.third);
+		manager.addSampleable(edgeRatePD.first);
+		manager.addSampleable(edgeRatePD.second);
+		for (Sampleable p : partitionParams) {
+			manager.addSampleable(p);
+		}
+		manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second));
+		if (params.outputLengths) {
+			manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second, gNamesLengths.third));
+		}
+		// mehmood's addition here
+		if (realisationSampler != null) {
+			manager.addSampleable(realisationSampler);
+		}
+		
+		// Convergence diagnostics, profiling, checkpointing and resuming.
+		DLTRSParameterParser.setupDiagnostics(params, manager, iter, chain, info);
+		DLTRSParameterParser.setupProfiling(params, manager, iter, chain, info);
+		manager.setDependentThreads(params.getDependentThreads());
+		DLTRSParameterParser.setupCheckpointing(params, manager, chain);
+		
+		return new Pair<MCMCManager, Sampler>(manager, sampler);
+	}
 	
 }
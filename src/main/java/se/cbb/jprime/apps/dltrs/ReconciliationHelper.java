@@ -1,5 +1,6 @@
 package se.cbb.jprime.apps.dltrs;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import se.cbb.jprime.mcmc.ChangeInfo;
@@ -10,6 +11,7 @@ import se.cbb.jprime.topology.RBTreeEpochDiscretiser;
 import se.cbb.jprime.topology.IntMap;
 import se.cbb.jprime.topology.LeafLeafMap;
 import se.cbb.jprime.topology.RBTree;
+import se.cbb.jprime.topology.TreeAlgorithms;
 
 /**
  * Keeps track of the various things related to allowed reconciliations
@@ -81,21 +83,24 @@ public class ReconciliationHelper implements ProperDependent, InfoProvider {
 				}
 			}
 		}
-		this.updateLoLim(this.g.getRoot());
+		this.updateLoLim(this.g.getRoot(), true);
 		this.updateUpLim(this.g.getRoot());
 	}
 	
 	/**
-	 * Recursively updates lowermost allowed placements.
+	 * Updates lowermost allowed placements.
 	 * @param u root of guest subtree. 
+	 * @param doRecurse true to process all descendants of u first; false to only do u.
 	 */
-	private void updateLoLim(int u) {
+	private void updateLoLim(int u, boolean doRecurse) {
 		if (g.isLeaf(u)) {
 			loLims.set(u, 0 + (0 << 16));
 		} else {
-			// Update children first.
-			updateLoLim(g.getLeftChild(u));
-			updateLoLim(g.getRightChild(u));
+			// Update children first, if specified.
+			if (doRecurse) {
+				updateLoLim(g.getLeftChild(u), true);
+				updateLoLim(g.getRightChild(u), true);
+			}
 			
 			// Set limit of u to above childrens' limits.
 			int lcLo = loLims.get(g.getLeftChild(u));
@@ -201,10 +206,37 @@ public class ReconciliationHelper implements ProperDependent, InfoProvider {
 
 	@Override
 	public void cacheAndUpdate(Map<Dependent, ChangeInfo> changeInfos, boolean willSample) {
-		this.loLims.cache(null);
-		this.upLims.cache(null);
-		this.update();
-		changeInfos.put(this, new ChangeInfo(this, "Reconciliation helper update."));
+		ChangeInfo gci = changeInfos.get(this.g);
+		if (changeInfos.get(this.s) == null && changeInfos.get(this.times) == null && gci != null && gci.getAffectedElements() != null) {
+			// Only disclosed guest tree changes. Lower limits can only have changed on the root paths of
+			// the affected vertices, whereas upper limits are set top-down and change with the depth of a vertex.
+			int[] loAffected = TreeAlgorithms.getSpanningRootSubtree(this.g, gci.getAffectedElements());
+			this.loLims.cache(loAffected);
+			this.upLims.cache(null);
+			for (int u : loAffected) {
+				this.updateLoLim(u, false);
+			}
+			int n = this.g.getNoOfVertices();
+			int[] oldUpLims = new int[n];
+			for (int u = 0; u < n; ++u) {
+				oldUpLims[u] = this.upLims.get(u);
+			}
+			this.updateUpLim(this.g.getRoot());
+			int[] changed = Arrays.copyOf(loAffected, loAffected.length + n);
+			int k = loAffected.length;
+			for (int u = 0; u < n; ++u) {
+				if (this.upLims.get(u) != oldUpLims[u]) {
+					changed[k++] = u;
+				}
+			}
+			int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.g, Arrays.copyOf(changed, k));
+			changeInfos.put(this, new ChangeInfo(this, "Partial reconciliation helper update.", affected));
+		} else {
+			this.loLims.cache(null);
+			this.upLims.cache(null);
+			this.update();
+			changeInfos.put(this, new ChangeInfo(this, "Reconciliation helper update."));
+		}
 	}
 
 	@Override
@@ -8,10 +8,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
 import java.util.Scanner;
-import org.biojava.nbio.core.sequence.template.Compound;
-import org.biojava.nbio.core.sequence.template.Sequence;
 
 import se.cbb.jprime.apps.JPrIMEApp;
 import se.cbb.jprime.apps.dltrs.DLTRSParameterParser;
@@ -21,8 +18,8 @@ import se.cbb.jprime.io.NewickTree;
 import se.cbb.jprime.io.NewickTreeReader;
 import se.cbb.jprime.io.PrIMENewickTree;
 import se.cbb.jprime.io.PrIMENewickTreeReader;
-import se.cbb.jprime.io.SampleWriter;
 import se.cbb.jprime.io.Sampleable.SamplingMode;
+import se.cbb.jprime.io.Sampler;
 import se.cbb.jprime.math.Continuous1DPDDependent;
 import se.cbb.jprime.math.PRNG;
 import se.cbb.jprime.mcmc.DoubleParameter;
@@ -139,7 +136,7 @@ public class SampRealFromPosterior implements JPrIMEApp {
 			// ================ READ AND CREATE ALL PARAMETERS ================
 
 			// MCMC chain output and auxiliary info.
-			SampleWriter sampler = DLTRSParameterParser.getOut(params);
+			Sampler sampler = DLTRSParameterParser.getOut(params);
 			info = DLTRSParameterParser.getInfo(params);
 			Calendar cal = Calendar.getInstance();
 			SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
@@ -153,9 +150,8 @@ public class SampRealFromPosterior implements JPrIMEApp {
 			GuestHostMap gsMap = DLTRSParameterParser.getGSMap(params);
 
 			// Substitution model first, then sequence alignment D and site rates.
-			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, 4 * gsMap.getNoOfLeafNames());
-			LinkedHashMap<String, ? extends Sequence<? extends Compound>> sequences = DLTRSParameterParser.getMultialignment(params, Q.getSequenceType());
-			MSAData D = new MSAData(Q.getSequenceType(), sequences);
+			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, DLTRSParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+			MSAData D = DLTRSParameterParser.getMSAData(params, Q.getSequenceType());
 			Pair<DoubleParameter, GammaSiteRateHandler> siteRates = DLTRSParameterParser.getSiteRates(params);
 
 			// Pseudo-random number generator.
@@ -64,6 +64,15 @@ public class DLRModel implements InferenceModel {
 	 */
 	protected DoubleArrayMap belows;
 	
+	/** Edge rate of the current vertex for each pair of placements (x_i,y_j), reused. */
+	private double[] rates;
+	
+	/** Product of p11 and at-probability for each pair of placements (x_i,y_j), reused. */
+	private double[] prods;
+	
+	/** Number of placements y_j for each placement x_i, reused. */
+	private int[] noOfTerms;
+	
 	/**
 	 * Constructor.
 	 * @param g the guest tree G.
@@ -84,6 +93,9 @@ public class DLRModel implements InferenceModel {
 		this.substPD = substPD;
 		this.ats = new DoubleArrayMap("DLR.ats", g.getNoOfVertices());
 		this.belows = new DoubleArrayMap("DLR.belows", g.getNoOfVertices());
+		this.rates = new double[64];
+		this.prods = new double[64];
+		this.noOfTerms = new int[16];
 				
 		// Update.
 		this.fullUpdate();
@@ -262,30 +274,55 @@ public class DLRModel implements InferenceModel {
 		double length = this.lengths.get(u);
 		double[] uAts = this.ats.get(u);
 		double[] uBelows = this.belows.get(u);
+		int maxNoOfPairs = uAts.length * uBelows.length;
+		if (this.rates.length < maxNoOfPairs) {
+			this.rates = new double[maxNoOfPairs];
+			this.prods = new double[maxNoOfPairs];
+		}
+		if (this.noOfTerms.length < uBelows.length) {
+			this.noOfTerms = new int[uBelows.length];
+		}
+		double[] rates = this.rates;
+		double[] prods = this.prods;
+		int[] noOfTerms = this.noOfTerms;
 		
 		// Get limits.
 		int[] x_i = (this.g.isRoot(u) ? this.reconcHelper.getTipPt() : this.reconcHelper.getLoLim(this.g.getParent(u)));
 		
-		// For each x_i.
+		// First, tabulate the edge rates and the remaining factors for each x_i and each y_j strictly below x_i.
+		int k = 0;
 		for (int xcnt = 0; xcnt < uBelows.length; ++xcnt) {
-			// Clear old value.
-			uBelows[xcnt] = 0.0;
-			// For each y_j strictly below x_i.
 			int[] y_j = this.reconcHelper.getLoLim(u);
 			double xt = this.reconcHelper.getDiscretisationTime(x_i);
+			int kStart = k;
 			for (int ycnt = 0; ycnt < uAts.length; ++ycnt) {
 				double yt = this.reconcHelper.getDiscretisationTime(y_j);
 				// Note: We now allow edge rates over stem arc as well.
-				double rateDens = this.substPD.getPDF(length / (xt - yt));
-				double p11 = this.dupLossProbs.getP11Probability(x_i[0], x_i[1], y_j[0], y_j[1]);
-				uBelows[xcnt] += rateDens * p11 * uAts[ycnt];
+				rates[k] = length / (xt - yt);
+				prods[k] = this.dupLossProbs.getP11Probability(x_i[0], x_i[1], y_j[0], y_j[1]) * uAts[ycnt];
+				++k;
 				// Move y_j onto next pure discretisation point above.
 				this.reconcHelper.incrementPt(y_j);
 				if (y_j[0] == x_i[0] && y_j[1] >= x_i[1]) { break; }
 			}
+			noOfTerms[xcnt] = k - kStart;
 			// Move x_i onto next pure discretisation point above.
 			this.reconcHelper.incrementPt(x_i);
 		}
+		
+		// Evaluate all edge rate densities at once, reusing the rate array.
+		this.substPD.getLogPDF(rates, rates, k);
+		
+		// For each x_i, sum over y_j.
+		k = 0;
+		for (int xcnt = 0; xcnt < uBelows.length; ++xcnt) {
+			int kEnd = k + noOfTerms[xcnt];
+			double sum = 0.0;
+			for (; k < kEnd; ++k) {
+				sum += Math.exp(rates[k]) * prods[k];
+			}
+			uBelows[xcnt] = sum;
+		}
 	}
 	
 	@Override
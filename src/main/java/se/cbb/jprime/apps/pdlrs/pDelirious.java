@@ -7,20 +7,19 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
 import java.util.List;
-
-import org.biojava.nbio.core.sequence.template.Compound;
-import org.biojava.nbio.core.sequence.template.Sequence;
+import java.util.concurrent.ForkJoinPool;
 
 import se.cbb.jprime.apps.JPrIMEApp;
 import se.cbb.jprime.io.JCommanderUsageWrapper;
 import se.cbb.jprime.io.NewickRBTreeSamples;
 import se.cbb.jprime.io.RBTreeSampleWrapper;
 import se.cbb.jprime.io.SampleDoubleArray;
-import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.io.Sampleable;
+import se.cbb.jprime.io.Sampler;
 import se.cbb.jprime.math.Continuous1DPDDependent;
 import se.cbb.jprime.math.PRNG;
 import se.cbb.jprime.math.RealInterval;
@@ -34,10 +33,12 @@ import se.cbb.jprime.mcmc.ProposalAcceptor;
 import se.cbb.jprime.mcmc.Proposer;
 import se.cbb.jprime.mcmc.RealParameterUniformPrior;
 import se.cbb.jprime.mcmc.Thinner;
+import se.cbb.jprime.mcmc.WeightedDirichletPrior;
 import se.cbb.jprime.misc.Pair;
 import se.cbb.jprime.misc.Triple;
 import se.cbb.jprime.seqevo.GammaSiteRateHandler;
 import se.cbb.jprime.seqevo.MSAData;
+import se.cbb.jprime.seqevo.MSAPartition;
 import se.cbb.jprime.seqevo.SubstitutionMatrixHandler;
 import se.cbb.jprime.seqevo.SubstitutionMatrixHandlerFactory;
 import se.cbb.jprime.seqevo.SubstitutionModel;
@@ -69,6 +70,7 @@ public class pDelirious implements JPrIMEApp {
 	@Override
 	public void main(String[] args) {
 		BufferedWriter info = null;
+		ForkJoinPool patternPool = null;
 		try {
 			
 			// ================ PARSE USER OPTIONS AND ARGUMENTS ================
@@ -103,8 +105,15 @@ public class pDelirious implements JPrIMEApp {
 			
 			// ================ READ AND CREATE ALL PARAMETERS ================
 			
+			if (PDLRSParameterParser.getNoOfChains(params) > 1) {
+				throw new IllegalArgumentException("Multiple chains are not supported by pDelirious.");
+			}
+			if (params.getCheckpoint() != null || PDLRSParameterParser.isResuming(params)) {
+				throw new IllegalArgumentException("Checkpointing is not supported by pDelirious.");
+			}
+			
 			// MCMC chain output and auxiliary info.
-			SampleWriter sampler = PDLRSParameterParser.getOut(params);
+			Sampler sampler = PDLRSParameterParser.getOut(params);
 			info = PDLRSParameterParser.getInfo(params);
 			info.write("# =========================================================================\n");
 			info.write("# ||                             PRE-RUN INFO                            ||\n");
@@ -123,9 +132,8 @@ public class pDelirious implements JPrIMEApp {
 			
 			
 			// Substitution model first, then sequence alignment D and site rates.
-			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, 4 * gsMap.getNoOfLeafNames());
-			LinkedHashMap<String, ? extends Sequence<? extends Compound>> sequences = PDLRSParameterParser.getMultialignment(params, Q.getSequenceType());
-			MSAData D = new MSAData(Q.getSequenceType(), sequences);
+			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(params.substitutionModel, PDLRSParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+			MSAData D = PDLRSParameterParser.getMSAData(params, Q.getSequenceType());
 			Pair<DoubleParameter, GammaSiteRateHandler> siteRates = PDLRSParameterParser.getSiteRates(params);
 			
 			// Pseudo-random number generator.
@@ -144,7 +152,7 @@ public class pDelirious implements JPrIMEApp {
 							params.guestTreeSetFileRelColNo, burninProp, minCvg);
 				}
 			}
-			Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = PDLRSParameterParser.getGuestTreeAndLengths(params, gsMap, prng, sequences, info, guestTreeSamples, D);
+			Triple<RBTree, NamesMap, DoubleMap> gNamesLengths = PDLRSParameterParser.getGuestTreeAndLengths(params, gsMap, prng, info, guestTreeSamples, D);
 			
 			DoubleMap pgSwitches = new DoubleMap("G-PGSwitches", gNamesLengths.first.getNoOfVertices(), 1);
 			IntMap edgeModels = new IntMap("EdgeModels", gNamesLengths.first.getNoOfVertices(), 1);
@@ -183,8 +191,17 @@ public class pDelirious implements JPrIMEApp {
 			RealParameterUniformPrior edgeRateCVPrior = new RealParameterUniformPrior(edgeRatePD.second, priorRange);
 			RealParameterUniformPrior lengthsPrior = new RealParameterUniformPrior(gNamesLengths.third, priorRange);
 			
-			// Substitution model. NOTE: Root arc is turned on!!!!
-			SubstitutionModel sm = new SubstitutionModel("SubstitutionModel", D, siteRates.second, Q, gNamesLengths.first, gNamesLengths.second, gNamesLengths.third, true);
+			// Substitution models, one per partition of D. NOTE: Root arc is turned on!!!!
+			List<MSAPartition> partitions = PDLRSParameterParser.getMSAPartitions(params, D, Q, siteRates, PDLRSParameterParser.getPCacheSize(params, gsMap.getNoOfLeafNames()));
+			ArrayList<SubstitutionModel> sms = new ArrayList<SubstitutionModel>(partitions.size());
+			int noOfPatternThreads = PDLRSParameterParser.getNoOfPatternThreads(params);
+			patternPool = (noOfPatternThreads > 1 ? new ForkJoinPool(noOfPatternThreads) : null);
+			for (MSAPartition part : partitions) {
+				SubstitutionModel sm = new SubstitutionModel(part.getName(), part.getData(), part.getSiteRates(), part.getSubstitutionMatrixHandler(),
+						gNamesLengths.first, gNamesLengths.second, gNamesLengths.third, part.getRateMultiplier(), true);
+				sm.setPatternPool(patternPool, SubstitutionModel.DEFAULT_PATTERN_BLOCK_SIZE);
+				sms.add(sm);
+			}
 			
 			// DLR model.
 			DLRModel dlr = new DLRModel(gNamesLengths.first, sNamesTimes.first, rHelper, gNamesLengths.third, dupLoss.third, edgeRatePD.third);
@@ -197,7 +214,6 @@ public class pDelirious implements JPrIMEApp {
 			NormalProposer lossRateProposer = PDLRSParameterParser.getNormalProposer(params, dupLoss.second, iter, prng, params.tuningLossRate);
 			NormalProposer edgeRateMeanProposer = PDLRSParameterParser.getNormalProposer(params, edgeRatePD.first, iter, prng, params.tuningEdgeRateMean);
 			NormalProposer edgeRateCVProposer = PDLRSParameterParser.getNormalProposer(params, edgeRatePD.second, iter, prng, params.tuningEdgeRateCV);
-			NormalProposer siteRateShapeProposer = PDLRSParameterParser.getNormalProposer(params, siteRates.first, iter, prng, params.tuningSiteRateShape);
 			Proposer guestTreeProposer = PDLRSParameterParser.getBranchSwapper(params, gNamesLengths.first, gNamesLengths.third, mprMap, iter, prng, guestTreeSamples);
 			NormalProposer lengthsProposer = PDLRSParameterParser.getNormalProposer(params, gNamesLengths.third, iter, prng, params.tuningLengths);
 			double[] lengthsWeights = SampleDoubleArray.toDoubleArray(params.tuningLengthsSelectorWeights);
@@ -209,7 +225,8 @@ public class pDelirious implements JPrIMEApp {
 			selector.add(lossRateProposer, PDLRSParameterParser.getProposerWeight(params.tuningWeightLossRate, iter));
 			selector.add(edgeRateMeanProposer, PDLRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateMean, iter));
 			selector.add(edgeRateCVProposer, PDLRSParameterParser.getProposerWeight(params.tuningWeightEdgeRateCV, iter));
-			selector.add(siteRateShapeProposer, PDLRSParameterParser.getProposerWeight(params.tuningWeightSiteRateShape, iter));
+			List<Sampleable> partitionParams = PDLRSParameterParser.addPartitionProposers(params, partitions, selector, iter, prng, params.tuningSiteRateShape);
+			WeightedDirichletPrior rateMultiplierPrior = PDLRSParameterParser.getRateMultiplierPrior(partitions);
 			selector.add(guestTreeProposer, PDLRSParameterParser.getProposerWeight(params.tuningWeightG, iter));
 			selector.add(lengthsProposer, PDLRSParameterParser.getProposerWeight(params.tuningWeightLengths, iter));
 			
@@ -218,7 +235,6 @@ public class pDelirious implements JPrIMEApp {
 			if (params.lossRate != null       && params.lossRate.matches("FIXED|Fixed|fixed"))       { lossRateProposer.setEnabled(false); }
 			if (params.edgeRatePDMean != null && params.edgeRatePDMean.matches("FIXED|Fixed|fixed")) { edgeRateMeanProposer.setEnabled(false); }
 			if (params.edgeRatePDCV != null   && params.edgeRatePDCV.matches("FIXED|Fixed|fixed"))   { edgeRateCVProposer.setEnabled(false); }
-			if (params.siteRateCats == 1      || params.siteRateShape.matches("FIXED|Fixed|fixed"))  { siteRateShapeProposer.setEnabled(false); }
 			if (params.guestTreeFixed)                                                               { guestTreeProposer.setEnabled(false); }
 			if (params.lengthsFixed)                                                                 { lengthsProposer.setEnabled(false); }
 			
@@ -236,7 +252,12 @@ public class pDelirious implements JPrIMEApp {
 			manager.addModel(edgeRateMeanPrior);
 			manager.addModel(edgeRateCVPrior);
 			manager.addModel(lengthsPrior);
-			manager.addModel(sm);
+			if (rateMultiplierPrior != null) {
+				manager.addModel(rateMultiplierPrior);
+			}
+			for (SubstitutionModel sm : sms) {
+				manager.addModel(sm);
+			}
 			manager.addModel(dlr);
 			
 			manager.addSampleable(iter);
@@ -244,14 +265,16 @@ public class pDelirious implements JPrIMEApp {
 			//manager.addSampleable(edgeRateMeanPrior);
 			//manager.addSampleable(edgeRateCVPrior);
 			//manager.addSampleable(lengthsPrior);
-			manager.addSampleable(sm);
+			for (SubstitutionModel sm : sms) {
+				manager.addSampleable(sm);		// Likelihood of each partition.
+			}
 			manager.addSampleable(dlr);
 			manager.addSampleable(dupLoss.first);
 			manager.addSampleable(dupLoss.second);
 			manager.addSampleable(edgeRatePD.first);
 			manager.addSampleable(edgeRatePD.second);
-			if (siteRateShapeProposer.isEnabled()) {
-				manager.addSampleable(siteRates.first);
+			for (Sampleable p : partitionParams) {
+				manager.addSampleable(p);
 			}
 			manager.addSampleable(new RBTreeSampleWrapper(gNamesLengths.first, gNamesLengths.second));
 			if (params.outputLengths) {
@@ -261,6 +284,11 @@ public class pDelirious implements JPrIMEApp {
 				manager.addSampleable(realisationSampler);
 			}
 			
+			// Convergence diagnostics and profiling.
+			PDLRSParameterParser.setupDiagnostics(params, manager, iter, 1, info);
+			PDLRSParameterParser.setupProfiling(params, manager, iter, 1, info);
+			manager.setDependentThreads(params.getDependentThreads());
+			
 			// ================ WRITE PRE-INFO ================
 			info.write("# MCMC manager:\n");
 			info.write(manager.getPreInfo("# \t"));
@@ -298,6 +326,10 @@ public class pDelirious implements JPrIMEApp {
 				} catch (IOException f) {
 				}
 			}
+		} finally {
+			if (patternPool != null) {
+				patternPool.shutdown();
+			}
 		}
 	}
 	
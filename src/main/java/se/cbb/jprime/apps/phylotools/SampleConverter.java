@@ -0,0 +1,68 @@
+package se.cbb.jprime.apps.phylotools;
+
+import java.io.File;
+
+import com.beust.jcommander.JCommander;
+
+import se.cbb.jprime.apps.JPrIMEApp;
+import se.cbb.jprime.io.BinarySampleConverter;
+import se.cbb.jprime.io.JCommanderUsageWrapper;
+
+/**
+ * Converts MCMC sample files between the ordinary tab-delimited text format and the
+ * compact binary format of <code>BinarySampleWriter</code>.
+ */
+public class SampleConverter implements JPrIMEApp {
+	
+	@Override
+	public String getAppName() {
+		return "SampleConverter";
+	}
+	
+	/**
+	 * Starter.
+	 * @param args.
+	 */
+	public void main(String[] args) {
+		try {
+			
+			// ================ PARSE USER OPTIONS AND ARGUMENTS ================
+			
+			SampleConverterParameters params = new SampleConverterParameters();
+			JCommander jc = new JCommander(params, args);
+			if (args.length == 0 || params.help) {
+				StringBuilder sb = new StringBuilder(65536);
+				sb.append(
+						"================================================================================\n" +
+						" Converts an MCMC sample file from the compact binary format (as written with\n" +
+						" option -bin) to the ordinary tab-delimited text format, or vice versa.\n" +
+						" When converting to text, initial samples may be discarded as burn-in without\n" +
+						" reading them.\n" +
+						"================================================================================\n");
+				sb.append("Usage:\n" +
+						"    java -jar jprime-X.Y.Z.jar SampleConverter [options] <infile> <outfile>\n");
+				JCommanderUsageWrapper.getUnsortedUsage(jc, params, sb);
+				System.out.println(sb.toString());
+				return;
+			}
+			if (params.files.size() != 2) {
+				throw new IllegalArgumentException("Must have one input file and one output file.");
+			}
+			
+			// ================ CONVERT ================
+			
+			File in = new File(params.files.get(0));
+			File out = new File(params.files.get(1));
+			if (params.toBinary) {
+				BinarySampleConverter.toBinary(in, out, params.blockSize);
+			} else {
+				BinarySampleConverter.toText(in, out, params.burnIn);
+			}
+			
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			System.err.print("\nUse option -h or --help to show usage.\n");
+		}
+	}
+
+}
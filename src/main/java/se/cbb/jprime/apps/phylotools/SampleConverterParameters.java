@@ -0,0 +1,35 @@
+package se.cbb.jprime.apps.phylotools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+
+import se.cbb.jprime.io.BinarySampleWriter;
+
+/**
+ * JCommander parameters for <code>SampleConverter</code>.
+ */
+public class SampleConverterParameters {
+
+	/** Required parameters: Input and output file. */
+	@Parameter(description = "<Infile> <Outfile>.")
+	public List<String> files = new ArrayList<String>();
+	
+	/** Help. */
+	@Parameter(names = {"-h", "--help"}, description = "Display help.")
+	public Boolean help = false;
+	
+	/** Convert to binary. */
+	@Parameter(names = {"-b", "--tobinary"}, description = "Convert a text sample file to a binary sample file. Default: binary to text.")
+	public Boolean toBinary = false;
+	
+	/** Burn-in. */
+	@Parameter(names = {"-burnin", "--burnin"}, description = "Number of initial samples to discard when converting to text.")
+	public Long burnIn = 0L;
+	
+	/** Block size. */
+	@Parameter(names = {"-bs", "--blocksize"}, description = "Number of samples per block when converting to binary.")
+	public Integer blockSize = BinarySampleWriter.DEFAULT_BLOCK_SIZE;
+	
+}
@@ -0,0 +1,388 @@
+package se.cbb.jprime.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+import se.cbb.jprime.mcmc.Checkpointable;
+
+/**
+ * Sampler which moves string conversion and output off the calling (MCMC) thread.
+ * When sampling, only a compact snapshot of the current values is recorded into a preallocated
+ * ring buffer of slots; for <code>SnapshotSampleable</code> objects this is a plain copy of their state,
+ * while other sampleables are converted to strings immediately. A background thread converts the
+ * snapshots, and hands them to an ordinary <code>SampleWriter</code>, which thus performs the concise
+ * output and buffered writing exactly as if used directly. Consequently, the output is
+ * byte-identical to that of the wrapped writer.
+ * <p/>
+ * The calling thread only blocks when the ring buffer is full. Flushing, closing and checkpointing
+ * first wait for all pending samples to be written. Errors of the background thread are reported
+ * by the next call made by the calling thread.
+ */
+public class AsyncSampleWriter implements Sampler, Checkpointable {
+
+	/** Default number of slots of the ring buffer. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/** Slot kind: sample. */
+	private static final int SAMPLE = 0;
+
+	/** Slot kind: header line. */
+	private static final int HEADER = 1;
+
+	/** Slot kind: verbatim string. */
+	private static final int STRING = 2;
+
+	/**
+	 * Ring buffer slot. Owned by the calling thread while being filled, and by the
+	 * background thread while being written.
+	 */
+	private static class Slot {
+
+		/** Kind of slot. */
+		int kind;
+
+		/** Header or verbatim string. */
+		String text;
+
+		/** Sampling mode. */
+		Sampleable.SamplingMode mode;
+
+		/** Number of sampleables. */
+		int size = 0;
+
+		/** Sampleables, in list order. */
+		Sampleable[] sources = new Sampleable[0];
+
+		/** Snapshots of snapshot sampleables. */
+		Object[] snapshots = new Object[0];
+
+		/** Values of other sampleables. */
+		String[] values = new String[0];
+	}
+
+	/** Wrapped writer. Only accessed by the background thread, or when there are no pending slots. */
+	private final SampleWriter writer;
+
+	/** Ring buffer. */
+	private final Slot[] slots;
+
+	/** Index of next slot to fill. Calling thread only. */
+	private int head;
+
+	/** Index of next slot to write. Background thread only. */
+	private int tail;
+
+	/** Number of pending slots. */
+	private int count;
+
+	/** True when closed. */
+	private boolean isClosed;
+
+	/** First error of the background thread. */
+	private IOException failure;
+
+	/** Lock guarding the count, the closed flag and the error. */
+	private final Object lock = new Object();
+
+	/** Background thread. */
+	private final Thread thread;
+
+	/**
+	 * Constructor. Uses the default capacity.
+	 * @param writer the writer to which output is handed.
+	 */
+	public AsyncSampleWriter(SampleWriter writer) {
+		this(writer, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 * @param writer the writer to which output is handed.
+	 * @param capacity the number of slots of the ring buffer.
+	 */
+	public AsyncSampleWriter(SampleWriter writer, int capacity) {
+		if (writer == null) {
+			throw new IllegalArgumentException("Cannot write samples asynchronously to null writer.");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity of asynchronous sample writer must be at least 1.");
+		}
+		this.writer = writer;
+		this.slots = new Slot[capacity];
+		for (int i = 0; i < capacity; ++i) {
+			this.slots[i] = new Slot();
+		}
+		this.head = 0;
+		this.tail = 0;
+		this.count = 0;
+		this.isClosed = false;
+		this.failure = null;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeSlots();
+			}
+		}, "AsyncSampleWriter");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Returns the wrapped writer. It must not be used directly while samples are pending.
+	 * @return the writer.
+	 */
+	public SampleWriter getWriter() {
+		return this.writer;
+	}
+
+	@Override
+	public void writeSampleHeader(List<Sampleable> sampleables) throws IOException {
+		if (sampleables.size() == 0) { return; }
+		Slot slot = this.acquire();
+		slot.kind = HEADER;
+		slot.text = this.writer.getSampleHeader(sampleables);
+		this.publish();
+	}
+
+	@Override
+	public void writeSample(List<Sampleable> sampleables, Sampleable.SamplingMode mode) throws IOException {
+		Slot slot = this.acquire();
+		int n = sampleables.size();
+		if (slot.sources.length < n) {
+			slot.sources = new Sampleable[n];
+			slot.snapshots = new Object[n];
+			slot.values = new String[n];
+		}
+		for (int i = 0; i < n; ++i) {
+			Sampleable s = sampleables.get(i);
+			if (s instanceof SnapshotSampleable) {
+				SnapshotSampleable ss = (SnapshotSampleable) s;
+				if (slot.sources[i] != s) {
+					slot.snapshots[i] = ss.createSnapshot();
+				}
+				ss.copyToSnapshot(slot.snapshots[i], mode);
+			} else {
+				slot.values[i] = s.getSampleValue(mode);
+			}
+			slot.sources[i] = s;
+		}
+		slot.kind = SAMPLE;
+		slot.size = n;
+		slot.mode = mode;
+		this.publish();
+	}
+
+	@Override
+	public void writeString(String str) throws IOException {
+		Slot slot = this.acquire();
+		slot.kind = STRING;
+		slot.text = str;
+		this.publish();
+	}
+
+	@Override
+	public String getSampleHeader(List<Sampleable> sampleables) {
+		return this.writer.getSampleHeader(sampleables);
+	}
+
+	@Override
+	public String getSample(List<Sampleable> sampleables, Sampleable.SamplingMode mode) {
+		return this.writer.getSample(sampleables, mode);
+	}
+
+	/**
+	 * Waits for all pending samples to be written, then flushes the wrapped writer.
+	 * @throws IOException.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.drain();
+		this.writer.flush();
+	}
+
+	/**
+	 * Waits for all pending samples to be written, stops the background thread,
+	 * and closes the wrapped writer. Has no effect if already closed.
+	 * @throws IOException.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this.lock) {
+			if (this.isClosed) { return; }
+		}
+		this.drain();
+		synchronized (this.lock) {
+			this.isClosed = true;
+			this.lock.notifyAll();
+		}
+		try {
+			this.thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while closing asynchronous sample writer.");
+		}
+		this.writer.close();
+	}
+
+	/**
+	 * Waits for all pending samples to be written, then checkpoints the wrapped writer.
+	 * @param out the checkpoint output.
+	 * @throws IOException.
+	 */
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		this.drain();
+		this.writer.writeCheckpoint(out);
+	}
+
+	/**
+	 * Waits for all pending samples to be written, then restores the wrapped writer.
+	 * @param in the checkpoint input.
+	 * @throws IOException.
+	 */
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		this.drain();
+		this.writer.readCheckpoint(in);
+	}
+
+	/**
+	 * Waits for a free slot.
+	 * @return the slot at the head.
+	 * @throws IOException if closed, interrupted, or if the background thread has failed.
+	 */
+	private Slot acquire() throws IOException {
+		synchronized (this.lock) {
+			if (this.isClosed) {
+				throw new IOException("Cannot sample to closed asynchronous sample writer.");
+			}
+			this.checkFailure();
+			while (this.count == this.slots.length) {
+				this.await();
+				this.checkFailure();
+			}
+		}
+		return this.slots[this.head];
+	}
+
+	/**
+	 * Hands the slot at the head over to the background thread.
+	 */
+	private void publish() {
+		this.head = (this.head + 1) % this.slots.length;
+		synchronized (this.lock) {
+			this.count++;
+			this.lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until all pending slots have been written.
+	 * @throws IOException if interrupted, or if the background thread has failed.
+	 */
+	private void drain() throws IOException {
+		synchronized (this.lock) {
+			while (this.count > 0) {
+				this.await();
+			}
+			this.checkFailure();
+		}
+	}
+
+	/**
+	 * Waits on the lock, which must be held.
+	 * @throws InterruptedIOException if interrupted.
+	 */
+	private void await() throws InterruptedIOException {
+		try {
+			this.lock.wait();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for asynchronous sample writer.");
+		}
+	}
+
+	/**
+	 * Throws the error of the background thread, if any. The lock must be held.
+	 * @throws IOException.
+	 */
+	private void checkFailure() throws IOException {
+		if (this.failure != null) {
+			throw new IOException("Asynchronous sample writing failed: " + this.failure.getMessage(), this.failure);
+		}
+	}
+
+	/**
+	 * Main loop of the background thread. Writes pending slots until closed. After an error, pending slots
+	 * are discarded, so that the calling thread never blocks indefinitely.
+	 */
+	private void writeSlots() {
+		while (true) {
+			boolean hasFailed;
+			synchronized (this.lock) {
+				while (this.count == 0 && !this.isClosed) {
+					try {
+						this.lock.wait();
+					} catch (InterruptedException ex) {
+						// Only closing stops the thread.
+					}
+				}
+				if (this.count == 0) {
+					return;
+				}
+				hasFailed = (this.failure != null);
+			}
+			Slot slot = this.slots[this.tail];
+			IOException ex = null;
+			if (!hasFailed) {
+				try {
+					this.writeSlot(slot);
+				} catch (IOException e) {
+					ex = e;
+				} catch (RuntimeException e) {
+					ex = new IOException(e.toString(), e);
+				}
+			}
+			slot.text = null;
+			this.tail = (this.tail + 1) % this.slots.length;
+			synchronized (this.lock) {
+				if (ex != null && this.failure == null) {
+					this.failure = ex;
+				}
+				this.count--;
+				this.lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes a slot using the wrapped writer.
+	 * @param slot the slot.
+	 * @throws IOException.
+	 */
+	private void writeSlot(Slot slot) throws IOException {
+		switch (slot.kind) {
+		case HEADER:
+			this.writer.writeHeaderLine(slot.text);
+			break;
+		case STRING:
+			this.writer.writeString(slot.text);
+			break;
+		default:
+			// A new array each time, since the writer may hold on to it for concise output.
+			String[] values = new String[slot.size];
+			for (int i = 0; i < slot.size; ++i) {
+				if (slot.sources[i] instanceof SnapshotSampleable) {
+					values[i] = ((SnapshotSampleable) slot.sources[i]).getSnapshotValue(slot.snapshots[i], slot.mode);
+				} else {
+					values[i] = slot.values[i];
+				}
+			}
+			this.writer.writeSampleValues(values);
+		}
+	}
+
+}
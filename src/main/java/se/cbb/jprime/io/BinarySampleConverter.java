@@ -0,0 +1,179 @@
+package se.cbb.jprime.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import se.cbb.jprime.math.LogDouble;
+
+/**
+ * Converts between the tab-delimited text output of <code>SampleWriter</code> and the binary
+ * output of <code>BinarySampleWriter</code>. Lines of the text file starting with '#' are ignored.
+ * <p/>
+ * Since the text file holds no sample types, the type of a column is inferred when converting to
+ * binary: the most compact of integer, double, log-double and Newick tree for which all values of the
+ * column are reproduced exactly, and string otherwise. This requires reading the text file twice.
+ */
+public class BinarySampleConverter {
+
+	/** Candidate type: integer. */
+	private static final int INT = 1;
+
+	/** Candidate type: double. */
+	private static final int DOUBLE = 2;
+
+	/** Candidate type: log-double. */
+	private static final int LOG_DOUBLE = 4;
+
+	/** Candidate type: Newick tree. */
+	private static final int NEWICK_TREE = 8;
+
+	/**
+	 * Converts a binary sample file to a text file, identical to the output of <code>SampleWriter</code>.
+	 * @param in the binary file.
+	 * @param out the text file.
+	 * @param fromRow the first row to include, e.g. to discard burn-in.
+	 * @throws IOException.
+	 */
+	public static void toText(File in, File out, long fromRow) throws IOException {
+		BinarySampleReader reader = new BinarySampleReader(in);
+		BufferedWriter writer = new BufferedWriter(new FileWriter(out), SampleWriter.DEFAULT_BUFFER_SIZE);
+		try {
+			int n = reader.getNoOfColumns();
+			if (n == 0) { return; }
+			for (int i = 0; i < n; ++i) {
+				if (i > 0) { writer.write(SampleWriter.DEFAULT_DELIM); }
+				writer.write(reader.getColumnName(i));
+			}
+			writer.newLine();
+			if (fromRow >= reader.getNoOfRows()) { return; }
+			String[][] block = new String[n][];
+			for (int b = reader.getBlock(Math.max(fromRow, 0)); b < reader.getNoOfBlocks(); ++b) {
+				for (int i = 0; i < n; ++i) {
+					block[i] = reader.readBlock(b, i);
+				}
+				for (int r = 0; r < reader.getNoOfRows(b); ++r) {
+					if (reader.getBlockFirstRow(b) + r < fromRow) { continue; }
+					for (int i = 0; i < n; ++i) {
+						if (i > 0) { writer.write(SampleWriter.DEFAULT_DELIM); }
+						writer.write(block[i][r]);
+					}
+					writer.newLine();
+				}
+			}
+		} finally {
+			writer.close();
+			reader.close();
+		}
+	}
+
+	/**
+	 * Converts a text sample file to a binary file.
+	 * @param in the text file.
+	 * @param out the binary file.
+	 * @param blockSize the number of rows per block.
+	 * @throws IOException.
+	 */
+	public static void toBinary(File in, File out, int blockSize) throws IOException {
+		// First pass: infer types.
+		BufferedReader reader = new BufferedReader(new FileReader(in), SampleWriter.DEFAULT_BUFFER_SIZE);
+		String[] names;
+		int[] candidates;
+		try {
+			String line = readLine(reader);
+			if (line == null) {
+				throw new IOException("Sample file " + in + " lacks header.");
+			}
+			names = line.split(SampleWriter.DEFAULT_DELIM, -1);
+			candidates = new int[names.length];
+			for (int i = 0; i < names.length; ++i) {
+				candidates[i] = INT | DOUBLE | LOG_DOUBLE | NEWICK_TREE;
+			}
+			while ((line = readLine(reader)) != null) {
+				String[] vals = split(line, names.length);
+				for (int i = 0; i < vals.length; ++i) {
+					candidates[i] &= getCandidates(vals[i]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		Class<?>[] types = new Class<?>[names.length];
+		for (int i = 0; i < names.length; ++i) {
+			int c = candidates[i];
+			types[i] = ((c & INT) != 0 ? SampleInt.class : (c & DOUBLE) != 0 ? SampleDouble.class :
+				(c & LOG_DOUBLE) != 0 ? SampleLogDouble.class : (c & NEWICK_TREE) != 0 ? SampleNewickTree.class : SampleString.class);
+		}
+
+		// Second pass: write.
+		reader = new BufferedReader(new FileReader(in), SampleWriter.DEFAULT_BUFFER_SIZE);
+		BinarySampleWriter writer = new BinarySampleWriter(out, blockSize);
+		try {
+			readLine(reader);
+			writer.writeHeader(names, types);
+			String line;
+			while ((line = readLine(reader)) != null) {
+				writer.writeRow(split(line, names.length));
+			}
+		} finally {
+			writer.close();
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads the next line which is not a comment.
+	 * @param reader the reader.
+	 * @return the line; null at end of file.
+	 * @throws IOException.
+	 */
+	private static String readLine(BufferedReader reader) throws IOException {
+		String line = reader.readLine();
+		while (line != null && line.startsWith("#")) {
+			line = reader.readLine();
+		}
+		return line;
+	}
+
+	/**
+	 * Splits a line into values.
+	 * @param line the line.
+	 * @param n the expected number of values.
+	 * @return the values.
+	 * @throws IOException if the number of values is wrong.
+	 */
+	private static String[] split(String line, int n) throws IOException {
+		String[] vals = line.split(SampleWriter.DEFAULT_DELIM, -1);
+		if (vals.length != n) {
+			throw new IOException("Wrong number of values in sample file line: " + line);
+		}
+		return vals;
+	}
+
+	/**
+	 * Returns the candidate types which reproduce a value exactly.
+	 * @param s the value.
+	 * @return the candidates.
+	 */
+	private static int getCandidates(String s) {
+		int c = 0;
+		if (SampleInt.toString(BinarySampleWriter.parseInt(s)).equals(s)) {
+			c |= INT;
+		}
+		if (SampleDouble.toString(BinarySampleWriter.parseDouble(s)).equals(s)) {
+			c |= DOUBLE;
+		}
+		LogDouble p = BinarySampleWriter.parseLogDouble(s);
+		if (p != null && p.toString().equals(s)) {
+			c |= LOG_DOUBLE;
+		}
+		if (s.startsWith("(") && s.endsWith(";") && s.indexOf(BinarySampleWriter.LENGTH_MARK) < 0) {
+			c |= NEWICK_TREE;
+		}
+		return c;
+	}
+
+}
@@ -0,0 +1,372 @@
+package se.cbb.jprime.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import se.cbb.jprime.math.LogDouble;
+
+/**
+ * Reader of files written by <code>BinarySampleWriter</code>. The header and the index are read
+ * when opening the file. Thereafter, only the chunks of the requested columns and rows are read,
+ * by seeking directly to them. Rows are numbered from 0.
+ * <p/>
+ * Example: Obtaining the values of a parameter, discarding the first 10% of the samples as burn-in:
+ * <pre>
+ * BinarySampleReader r = new BinarySampleReader(f);
+ * double[] vals = r.readDoubles(r.getColumnIndex("MyParameter"), r.getNoOfRows() / 10);
+ * r.close();
+ * </pre>
+ */
+public class BinarySampleReader implements Closeable {
+
+	/** File. */
+	private RandomAccessFile file;
+
+	/** Column names. */
+	private String[] names;
+
+	/** Column sample types, as class names. */
+	private String[] types;
+
+	/** Column encodings. */
+	private byte[] encodings;
+
+	/** Total number of rows. */
+	private long noOfRows;
+
+	/** First row of each block. */
+	private long[] blockFirstRows;
+
+	/** Number of rows of each block. */
+	private int[] blockNoOfRows;
+
+	/** Offset of each chunk, per block and column. */
+	private long[][] chunkOffsets;
+
+	/** Compressed length of each chunk, per block and column. */
+	private int[][] chunkLengths;
+
+	/** Uncompressed length of each chunk, per block and column. */
+	private int[][] chunkRawLengths;
+
+	/** Tree templates, per column. Null for other columns. */
+	private String[][] treeTemplates;
+
+	/** Decompressor. */
+	private Inflater inflater;
+
+	/**
+	 * Constructor. Opens the file and reads its header and index.
+	 * @param f the file.
+	 * @throws IOException if the file cannot be read or is not a complete binary sample file.
+	 */
+	public BinarySampleReader(File f) throws IOException {
+		this.file = new RandomAccessFile(f, "r");
+		try {
+			if (this.file.length() < 28 || this.file.readInt() != BinarySampleWriter.MAGIC) {
+				throw new IOException("File " + f + " is not a binary sample file.");
+			}
+			int version = this.file.readInt();
+			if (version != BinarySampleWriter.VERSION) {
+				throw new IOException("Unsupported binary sample file version: " + version + ".");
+			}
+			this.file.readInt();    // Block size, only informative.
+			int n = this.file.readInt();
+			this.names = new String[n];
+			this.types = new String[n];
+			this.encodings = new byte[n];
+			for (int i = 0; i < n; ++i) {
+				this.names[i] = BinarySampleWriter.readString(this.file);
+				this.types[i] = BinarySampleWriter.readString(this.file);
+				this.encodings[i] = this.file.readByte();
+			}
+
+			// Footer.
+			this.file.seek(this.file.length() - 12);
+			long footer = this.file.readLong();
+			if (this.file.readInt() != BinarySampleWriter.MAGIC) {
+				throw new IOException("Binary sample file " + f + " is incomplete.");
+			}
+			this.file.seek(footer);
+			this.noOfRows = this.file.readLong();
+			int noOfBlocks = this.file.readInt();
+			this.blockFirstRows = new long[noOfBlocks];
+			this.blockNoOfRows = new int[noOfBlocks];
+			this.chunkOffsets = new long[noOfBlocks][n];
+			this.chunkLengths = new int[noOfBlocks][n];
+			this.chunkRawLengths = new int[noOfBlocks][n];
+			for (int b = 0; b < noOfBlocks; ++b) {
+				this.blockFirstRows[b] = this.file.readLong();
+				this.blockNoOfRows[b] = this.file.readInt();
+				for (int i = 0; i < n; ++i) {
+					this.chunkOffsets[b][i] = this.file.readLong();
+					this.chunkLengths[b][i] = this.file.readInt();
+					this.chunkRawLengths[b][i] = this.file.readInt();
+				}
+			}
+			this.treeTemplates = new String[n][];
+			for (int i = 0; i < n; ++i) {
+				if (this.encodings[i] == BinarySampleWriter.NEWICK_TREE) {
+					this.treeTemplates[i] = new String[this.file.readInt()];
+					for (int j = 0; j < this.treeTemplates[i].length; ++j) {
+						this.treeTemplates[i][j] = BinarySampleWriter.readString(this.file);
+					}
+				}
+			}
+		} catch (IOException ex) {
+			this.file.close();
+			throw ex;
+		}
+		this.inflater = new Inflater();
+	}
+
+	/**
+	 * Returns the number of columns.
+	 * @return the number of columns.
+	 */
+	public int getNoOfColumns() {
+		return this.names.length;
+	}
+
+	/**
+	 * Returns the name of a column, i.e., the sample header of the sampled object.
+	 * @param col the column.
+	 * @return the name.
+	 */
+	public String getColumnName(int col) {
+		return this.names[col];
+	}
+
+	/**
+	 * Returns the index of a column.
+	 * @param name the name of the column.
+	 * @return the index; -1 if there is no such column.
+	 */
+	public int getColumnIndex(String name) {
+		for (int i = 0; i < this.names.length; ++i) {
+			if (this.names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the sample type of a column, e.g. <code>SampleDouble.class</code>.
+	 * @param col the column.
+	 * @return the type; <code>SampleString.class</code> if the type is unknown.
+	 */
+	public Class<?> getColumnType(int col) {
+		try {
+			return Class.forName(this.types[col]);
+		} catch (ClassNotFoundException ex) {
+			return SampleString.class;
+		}
+	}
+
+	/**
+	 * Returns the number of rows.
+	 * @return the number of rows.
+	 */
+	public long getNoOfRows() {
+		return this.noOfRows;
+	}
+
+	/**
+	 * Returns the number of blocks.
+	 * @return the number of blocks.
+	 */
+	public int getNoOfBlocks() {
+		return this.blockFirstRows.length;
+	}
+
+	/**
+	 * Returns the number of rows of a block.
+	 * @param block the block.
+	 * @return the number of rows.
+	 */
+	public int getNoOfRows(int block) {
+		return this.blockNoOfRows[block];
+	}
+
+	/**
+	 * Returns the first row of a block.
+	 * @param block the block.
+	 * @return the first row.
+	 */
+	public long getBlockFirstRow(int block) {
+		return this.blockFirstRows[block];
+	}
+
+	/**
+	 * Returns the block holding a certain row.
+	 * @param row the row.
+	 * @return the block.
+	 */
+	public int getBlock(long row) {
+		if (row < 0 || row >= this.noOfRows) {
+			throw new IllegalArgumentException("Row " + row + " out of range in binary sample file.");
+		}
+		int lo = 0;
+		int hi = this.blockFirstRows.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (this.blockFirstRows[mid] <= row) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the values of a double or integer column, from a certain row to the last row.
+	 * @param col the column.
+	 * @param fromRow the first row, e.g. the number of burn-in samples.
+	 * @return the values.
+	 * @throws IOException.
+	 */
+	public double[] readDoubles(int col, long fromRow) throws IOException {
+		byte enc = this.encodings[col];
+		if (enc != BinarySampleWriter.DOUBLE && enc != BinarySampleWriter.INT) {
+			throw new IllegalArgumentException("Column " + this.names[col] + " of binary sample file is not numeric.");
+		}
+		double[] vals = new double[this.getNoOfValues(fromRow)];
+		if (vals.length == 0) { return vals; }
+		int k = 0;
+		for (int b = this.getBlock(fromRow); b < this.blockFirstRows.length; ++b) {
+			DataInputStream in = this.readChunk(b, col);
+			for (long r = this.blockFirstRows[b]; r < this.blockFirstRows[b] + this.blockNoOfRows[b]; ++r) {
+				double d = (enc == BinarySampleWriter.DOUBLE ? in.readDouble() : in.readInt());
+				if (r >= fromRow) {
+					vals[k++] = d;
+				}
+			}
+		}
+		return vals;
+	}
+
+	/**
+	 * Returns the values of a column as strings, from a certain row to the last row.
+	 * The strings are identical to those of the corresponding text output.
+	 * @param col the column.
+	 * @param fromRow the first row, e.g. the number of burn-in samples.
+	 * @return the values.
+	 * @throws IOException.
+	 */
+	public String[] readStrings(int col, long fromRow) throws IOException {
+		String[] vals = new String[this.getNoOfValues(fromRow)];
+		if (vals.length == 0) { return vals; }
+		int k = 0;
+		for (int b = this.getBlock(fromRow); b < this.blockFirstRows.length; ++b) {
+			String[] block = this.readBlock(b, col);
+			int from = (int) Math.max(fromRow - this.blockFirstRows[b], 0);
+			System.arraycopy(block, from, vals, k, block.length - from);
+			k += block.length - from;
+		}
+		return vals;
+	}
+
+	/**
+	 * Returns the values of a column of a block as strings.
+	 * The strings are identical to those of the corresponding text output.
+	 * @param block the block.
+	 * @param col the column.
+	 * @return the values.
+	 * @throws IOException.
+	 */
+	public String[] readBlock(int block, int col) throws IOException {
+		DataInputStream in = this.readChunk(block, col);
+		String[] vals = new String[this.blockNoOfRows[block]];
+		StringBuilder sb = new StringBuilder();
+		LogDouble p = new LogDouble();
+		for (int r = 0; r < vals.length; ++r) {
+			switch (this.encodings[col]) {
+			case BinarySampleWriter.DOUBLE:
+				vals[r] = SampleDouble.toString(in.readDouble());
+				break;
+			case BinarySampleWriter.INT:
+				vals[r] = SampleInt.toString(in.readInt());
+				break;
+			case BinarySampleWriter.LOG_DOUBLE:
+				int sign = in.readByte();
+				vals[r] = p.set(in.readDouble(), sign).toString();
+				break;
+			case BinarySampleWriter.NEWICK_TREE:
+				String t = this.treeTemplates[col][in.readInt()];
+				sb.setLength(0);
+				for (int i = 0; i < t.length(); ++i) {
+					char c = t.charAt(i);
+					if (c == BinarySampleWriter.LENGTH_MARK) {
+						sb.append(SampleDouble.toString(in.readDouble()));
+					} else {
+						sb.append(c);
+					}
+				}
+				vals[r] = sb.toString();
+				break;
+			default:
+				vals[r] = BinarySampleWriter.readString(in);
+			}
+		}
+		return vals;
+	}
+
+	/**
+	 * Returns the number of values from a row to the last row.
+	 * @param fromRow the first row.
+	 * @return the number of values.
+	 */
+	private int getNoOfValues(long fromRow) {
+		if (fromRow < 0) {
+			throw new IllegalArgumentException("Negative row in binary sample file.");
+		}
+		long n = Math.max(this.noOfRows - fromRow, 0);
+		if (n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many rows to read from binary sample file at once.");
+		}
+		return (int) n;
+	}
+
+	/**
+	 * Reads and decompresses a chunk.
+	 * @param block the block.
+	 * @param col the column.
+	 * @return the uncompressed chunk.
+	 * @throws IOException.
+	 */
+	private DataInputStream readChunk(int block, int col) throws IOException {
+		byte[] compressed = new byte[this.chunkLengths[block][col]];
+		this.file.seek(this.chunkOffsets[block][col]);
+		this.file.readFully(compressed);
+		byte[] raw = new byte[this.chunkRawLengths[block][col]];
+		this.inflater.reset();
+		this.inflater.setInput(compressed);
+		try {
+			int len = 0;
+			while (len < raw.length && !this.inflater.finished()) {
+				len += this.inflater.inflate(raw, len, raw.length - len);
+			}
+			if (len != raw.length) {
+				throw new IOException("Corrupt chunk in binary sample file.");
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupt chunk in binary sample file.", ex);
+		}
+		return new DataInputStream(new ByteArrayInputStream(raw));
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+		this.inflater.end();
+	}
+
+}
@@ -0,0 +1,587 @@
+package se.cbb.jprime.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import se.cbb.jprime.math.LogDouble;
+
+/**
+ * MCMC sampler writing a compact binary file, organised in columns and blocks of rows. In contrast to
+ * the text output of <code>SampleWriter</code>, values are stored according to the sample type
+ * of each column: doubles and integers as such, log-doubles as their sign and logarithm, and
+ * Newick trees dictionary-encoded by topology, so that the branch lengths are the only per-sample data
+ * of a tree. Values of other types are stored as strings. The chunk of each column in a block is
+ * compressed separately, and the file ends with an index of all chunks, so that
+ * <code>BinarySampleReader</code> may seek directly to the blocks and columns of interest, e.g. when skipping burn-in.
+ * <p/>
+ * All values are stored losslessly in the sense that the reader reproduces the exact strings of the
+ * text output. Sampleables implementing <code>DoubleSampleable</code>, <code>IntSampleable</code> or
+ * <code>LogDoubleSampleable</code> have their values written directly; other values are obtained as strings
+ * and parsed, in which case an exception is thrown if e.g. a double column holds a value that is not
+ * formatted as by <code>SampleDouble</code>. The file is complete only when the writer has been closed.
+ * Free-text output (debug info) is not supported.
+ * <p/>
+ * File layout (big-endian): a header with the magic number, version, block size, and the name, type and
+ * encoding of each column; the blocks, each consisting of one compressed chunk per column; and a footer
+ * with the index of all chunks and the tree dictionaries, followed by the footer's offset and the magic number.
+ */
+public class BinarySampleWriter implements Sampler {
+
+	/** Magic number, "JPRS". */
+	static final int MAGIC = 0x4A505253;
+
+	/** File format version. */
+	static final int VERSION = 1;
+
+	/** Column encoding: string. */
+	static final byte STRING = 0;
+
+	/** Column encoding: double. */
+	static final byte DOUBLE = 1;
+
+	/** Column encoding: int. */
+	static final byte INT = 2;
+
+	/** Column encoding: log-double. */
+	static final byte LOG_DOUBLE = 3;
+
+	/** Column encoding: Newick tree. */
+	static final byte NEWICK_TREE = 4;
+
+	/** Placeholder for a branch length in a tree template. */
+	static final char LENGTH_MARK = '\0';
+
+	/** Default number of rows per block. */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	/** Output stream. */
+	private DataOutputStream out;
+
+	/** Number of bytes written. */
+	private long position;
+
+	/** Number of rows per block. */
+	private int blockSize;
+
+	/** Column names. Null until the header has been written. */
+	private String[] names = null;
+
+	/** Column encodings. */
+	private byte[] encodings;
+
+	/** Chunks of the current block. */
+	private ByteArrayOutputStream[] chunkBytes;
+
+	/** Data outputs of the chunks of the current block. */
+	private DataOutputStream[] chunks;
+
+	/** Number of rows of the current block. */
+	private int noOfBlockRows;
+
+	/** Total number of rows. */
+	private long noOfRows;
+
+	/** Index: first row of each block. */
+	private ArrayList<Long> blockFirstRows;
+
+	/** Index: number of rows of each block. */
+	private ArrayList<Integer> blockNoOfRows;
+
+	/** Index: offset, compressed length and uncompressed length of each chunk, per block and column. */
+	private ArrayList<long[]> chunkIndex;
+
+	/** Tree template IDs, per column. Null for other columns. */
+	private HashMap<String, Integer>[] treeIds;
+
+	/** Tree templates in ID order, per column. Null for other columns. */
+	private ArrayList<String>[] treeTemplates;
+
+	/** Compressor. */
+	private Deflater deflater;
+
+	/** Compression buffer. */
+	private byte[] buffer;
+
+	/** Delimiter used by <code>getSample...(...)</code>. */
+	private String delim = SampleWriter.DEFAULT_DELIM;
+
+	/**
+	 * Constructor. Uses the default block size.
+	 * @param f the file to write to.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public BinarySampleWriter(File f) throws IOException {
+		this(f, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 * @param f the file to write to.
+	 * @param blockSize the number of rows per block.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public BinarySampleWriter(File f, int blockSize) throws IOException {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size of binary sample file must be at least 1.");
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), SampleWriter.DEFAULT_BUFFER_SIZE));
+		this.position = 0;
+		this.blockSize = blockSize;
+		this.noOfBlockRows = 0;
+		this.noOfRows = 0;
+		this.blockFirstRows = new ArrayList<Long>();
+		this.blockNoOfRows = new ArrayList<Integer>();
+		this.chunkIndex = new ArrayList<long[]>();
+		this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		this.buffer = new byte[65536];
+	}
+
+	/**
+	 * Returns the column encoding of a sample type.
+	 * @param type the sample type.
+	 * @return the encoding.
+	 */
+	static byte getEncoding(Class<?> type) {
+		if (type == SampleDouble.class) { return DOUBLE; }
+		if (type == SampleInt.class) { return INT; }
+		if (type == SampleLogDouble.class) { return LOG_DOUBLE; }
+		if (type == SampleNewickTree.class) { return NEWICK_TREE; }
+		return STRING;
+	}
+
+	/**
+	 * Writes the header, defining the columns. Must be invoked once, before any rows are written.
+	 * @param names the column names.
+	 * @param types the sample types of the columns.
+	 * @throws IOException.
+	 */
+	@SuppressWarnings("unchecked")
+	public void writeHeader(String[] names, Class<?>[] types) throws IOException {
+		if (this.names != null) {
+			throw new IOException("Header of binary sample file has already been written.");
+		}
+		if (names.length != types.length) {
+			throw new IllegalArgumentException("Number of column names and types of binary sample file differ.");
+		}
+		int n = names.length;
+		this.names = names.clone();
+		this.encodings = new byte[n];
+		this.chunkBytes = new ByteArrayOutputStream[n];
+		this.chunks = new DataOutputStream[n];
+		this.treeIds = new HashMap[n];
+		this.treeTemplates = new ArrayList[n];
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(VERSION);
+		this.out.writeInt(this.blockSize);
+		this.out.writeInt(n);
+		for (int i = 0; i < n; ++i) {
+			this.encodings[i] = getEncoding(types[i]);
+			writeString(this.out, names[i]);
+			writeString(this.out, types[i].getName());
+			this.out.writeByte(this.encodings[i]);
+			this.chunkBytes[i] = new ByteArrayOutputStream(this.blockSize * 8);
+			this.chunks[i] = new DataOutputStream(this.chunkBytes[i]);
+			if (this.encodings[i] == NEWICK_TREE) {
+				this.treeIds[i] = new HashMap<String, Integer>();
+				this.treeTemplates[i] = new ArrayList<String>();
+			}
+		}
+		this.position = this.out.size();
+	}
+
+	/**
+	 * Writes a row of values, given as they would have been output by <code>SampleWriter</code>.
+	 * @param values the values, in column order.
+	 * @throws IOException if a value cannot be stored losslessly according to the column encoding.
+	 */
+	public void writeRow(String[] values) throws IOException {
+		this.checkRow(values.length);
+		for (int i = 0; i < values.length; ++i) {
+			this.writeValue(i, values[i]);
+		}
+		this.endRow();
+	}
+
+	/**
+	 * Verifies that the header has been written and that a row has the right number of values.
+	 * @param n the number of values.
+	 * @throws IOException if not.
+	 */
+	private void checkRow(int n) throws IOException {
+		if (this.names == null) {
+			throw new IOException("Header of binary sample file has not been written.");
+		}
+		if (n != this.names.length) {
+			throw new IOException("Wrong number of values for binary sample file: expected " + this.names.length + " but got " + n + ".");
+		}
+	}
+
+	/**
+	 * Writes a value given as a string to the chunk of its column.
+	 * @param col the column.
+	 * @param s the value.
+	 * @throws IOException if the value cannot be stored losslessly according to the column encoding.
+	 */
+	private void writeValue(int col, String s) throws IOException {
+		DataOutputStream chunk = this.chunks[col];
+		switch (this.encodings[col]) {
+		case DOUBLE:
+			double d = parseDouble(s);
+			if (!SampleDouble.toString(d).equals(s)) { throw this.getLossError(col, s); }
+			chunk.writeDouble(d);
+			break;
+		case INT:
+			int k = parseInt(s);
+			if (!SampleInt.toString(k).equals(s)) { throw this.getLossError(col, s); }
+			chunk.writeInt(k);
+			break;
+		case LOG_DOUBLE:
+			LogDouble p = parseLogDouble(s);
+			if (p == null || !p.toString().equals(s)) { throw this.getLossError(col, s); }
+			writeLogDouble(chunk, p);
+			break;
+		case NEWICK_TREE:
+			this.writeTree(col, s);
+			break;
+		default:
+			writeString(chunk, s);
+		}
+	}
+
+	/**
+	 * Writes the value of a sampleable to the chunk of its column, directly if the sampleable
+	 * provides a value matching the column encoding, and as a string otherwise.
+	 * @param col the column.
+	 * @param s the sampleable.
+	 * @param mode the sampling mode.
+	 * @throws IOException if the value cannot be stored losslessly according to the column encoding.
+	 */
+	private void writeValue(int col, Sampleable s, Sampleable.SamplingMode mode) throws IOException {
+		switch (this.encodings[col]) {
+		case DOUBLE:
+			if (s instanceof DoubleSampleable) {
+				this.chunks[col].writeDouble(((DoubleSampleable) s).getSampleDouble(mode));
+				return;
+			}
+			break;
+		case INT:
+			if (s instanceof IntSampleable) {
+				this.chunks[col].writeInt(((IntSampleable) s).getSampleInt(mode));
+				return;
+			}
+			break;
+		case LOG_DOUBLE:
+			if (s instanceof LogDoubleSampleable) {
+				writeLogDouble(this.chunks[col], ((LogDoubleSampleable) s).getSampleLogDouble(mode));
+				return;
+			}
+			break;
+		default:
+		}
+		this.writeValue(col, s.getSampleValue(mode));
+	}
+
+	/**
+	 * Completes a row, writing the current block if full.
+	 * @throws IOException.
+	 */
+	private void endRow() throws IOException {
+		this.noOfBlockRows++;
+		this.noOfRows++;
+		if (this.noOfBlockRows == this.blockSize) {
+			this.writeBlock();
+		}
+	}
+
+	/**
+	 * Writes a tree as the ID of its template, followed by its branch lengths.
+	 * @param col the column.
+	 * @param s the Newick string.
+	 * @throws IOException.
+	 */
+	private void writeTree(int col, String s) throws IOException {
+		if (s.indexOf(LENGTH_MARK) >= 0) {
+			throw this.getLossError(col, s);
+		}
+		StringBuilder template = new StringBuilder(s.length());
+		ArrayList<Double> lengths = new ArrayList<Double>();
+		int i = 0;
+		while (i < s.length()) {
+			char c = s.charAt(i++);
+			template.append(c);
+			if (c == ':') {
+				// Replace the length by a placeholder, provided it is reproduced exactly.
+				int j = i;
+				while (j < s.length() && "0123456789.eE+-".indexOf(s.charAt(j)) >= 0) {
+					++j;
+				}
+				if (j > i) {
+					String tok = s.substring(i, j);
+					double l = parseDouble(tok);
+					if (SampleDouble.toString(l).equals(tok)) {
+						template.append(LENGTH_MARK);
+						lengths.add(l);
+						i = j;
+					}
+				}
+			}
+		}
+		String t = template.toString();
+		Integer id = this.treeIds[col].get(t);
+		if (id == null) {
+			id = this.treeTemplates[col].size();
+			this.treeIds[col].put(t, id);
+			this.treeTemplates[col].add(t);
+		}
+		DataOutputStream chunk = this.chunks[col];
+		chunk.writeInt(id);
+		for (double l : lengths) {
+			chunk.writeDouble(l);
+		}
+	}
+
+	/**
+	 * Compresses and writes the chunks of the current block, and records them in the index.
+	 * @throws IOException.
+	 */
+	private void writeBlock() throws IOException {
+		if (this.noOfBlockRows == 0) { return; }
+		this.blockFirstRows.add(this.noOfRows - this.noOfBlockRows);
+		this.blockNoOfRows.add(this.noOfBlockRows);
+		for (int i = 0; i < this.names.length; ++i) {
+			this.chunks[i].flush();
+			byte[] raw = this.chunkBytes[i].toByteArray();
+			long offset = this.position;
+			this.deflater.reset();
+			this.deflater.setInput(raw);
+			this.deflater.finish();
+			while (!this.deflater.finished()) {
+				int len = this.deflater.deflate(this.buffer);
+				this.out.write(this.buffer, 0, len);
+				this.position += len;
+			}
+			this.chunkIndex.add(new long[] { offset, this.position - offset, raw.length });
+			this.chunkBytes[i].reset();
+		}
+		this.noOfBlockRows = 0;
+	}
+
+	/**
+	 * Returns an exception for a value that cannot be stored losslessly.
+	 * @param col the column.
+	 * @param s the value.
+	 * @return the exception.
+	 */
+	private IOException getLossError(int col, String s) {
+		return new IOException("Value " + s + " of column " + this.names[col] + " cannot be stored exactly in binary sample file.");
+	}
+
+	/**
+	 * Writes a log-double of a column of log-doubles, as its sign and logarithm.
+	 * @param out output.
+	 * @param p the value.
+	 * @throws IOException.
+	 */
+	private static void writeLogDouble(DataOutput out, LogDouble p) throws IOException {
+		out.writeByte(p.getSign());
+		out.writeDouble(p.getLogValue());
+	}
+
+	/**
+	 * Writes a string of arbitrary length, possibly null, as its length followed by its UTF-8 bytes.
+	 * @param out output.
+	 * @param s the string.
+	 * @throws IOException.
+	 */
+	static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * Reads a string written with <code>writeString(...)</code>.
+	 * @param in input.
+	 * @return the string, possibly null.
+	 * @throws IOException.
+	 */
+	static String readString(DataInput in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] b = new byte[len];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a double.
+	 * @param s the string.
+	 * @return the double; NaN if not parsable.
+	 */
+	static double parseDouble(String s) {
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException ex) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Parses an integer.
+	 * @param s the string.
+	 * @return the integer; 0 if not parsable.
+	 */
+	static int parseInt(String s) {
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Parses a log-double.
+	 * @param s the string.
+	 * @return the log-double; null if not parsable.
+	 */
+	static LogDouble parseLogDouble(String s) {
+		try {
+			return LogDouble.parseLogDouble(s);
+		} catch (RuntimeException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the number of rows written.
+	 * @return the number of rows.
+	 */
+	public long getNoOfRows() {
+		return this.noOfRows;
+	}
+
+	@Override
+	public void writeSampleHeader(List<Sampleable> sampleables) throws IOException {
+		int n = sampleables.size();
+		String[] names = new String[n];
+		Class<?>[] types = new Class<?>[n];
+		for (int i = 0; i < n; ++i) {
+			names[i] = sampleables.get(i).getSampleHeader();
+			types[i] = sampleables.get(i).getSampleType();
+		}
+		this.writeHeader(names, types);
+	}
+
+	@Override
+	public void writeSample(List<Sampleable> sampleables, Sampleable.SamplingMode mode) throws IOException {
+		if (this.names == null) {
+			this.writeSampleHeader(sampleables);
+		}
+		this.checkRow(sampleables.size());
+		for (int i = 0; i < this.names.length; ++i) {
+			this.writeValue(i, sampleables.get(i), mode);
+		}
+		this.endRow();
+	}
+
+	/**
+	 * Not supported, since the file only holds samples.
+	 * @param str the string.
+	 * @throws IOException always.
+	 */
+	@Override
+	public void writeString(String str) throws IOException {
+		throw new IOException("Cannot write free text to binary sample file.");
+	}
+
+	@Override
+	public String getSampleHeader(List<Sampleable> sampleables) {
+		StringBuilder sb = new StringBuilder(sampleables.size() * 32);
+		for (int i = 0; i < sampleables.size(); ++i) {
+			if (i > 0) { sb.append(this.delim); }
+			sb.append(sampleables.get(i).getSampleHeader());
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getSample(List<Sampleable> sampleables, Sampleable.SamplingMode mode) {
+		StringBuilder sb = new StringBuilder(sampleables.size() * 32);
+		for (int i = 0; i < sampleables.size(); ++i) {
+			if (i > 0) { sb.append(this.delim); }
+			sb.append(sampleables.get(i).getSampleValue(mode));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the rows of the current, incomplete block, and flushes the output.
+	 * The file is not readable until closed.
+	 * @throws IOException.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.names != null) {
+			this.writeBlock();
+		}
+		this.out.flush();
+	}
+
+	/**
+	 * Writes any remaining rows and the footer, and closes the file. Has no effect if already closed.
+	 * @throws IOException.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.out == null) { return; }
+		if (this.names == null) {
+			this.writeHeader(new String[0], new Class<?>[0]);
+		}
+		this.writeBlock();
+		long footer = this.position;
+		int n = this.names.length;
+		this.out.writeLong(this.noOfRows);
+		this.out.writeInt(this.blockFirstRows.size());
+		for (int b = 0; b < this.blockFirstRows.size(); ++b) {
+			this.out.writeLong(this.blockFirstRows.get(b));
+			this.out.writeInt(this.blockNoOfRows.get(b));
+			for (int i = 0; i < n; ++i) {
+				long[] chunk = this.chunkIndex.get(b * n + i);
+				this.out.writeLong(chunk[0]);
+				this.out.writeInt((int) chunk[1]);
+				this.out.writeInt((int) chunk[2]);
+			}
+		}
+		for (int i = 0; i < n; ++i) {
+			if (this.encodings[i] == NEWICK_TREE) {
+				this.out.writeInt(this.treeTemplates[i].size());
+				for (String t : this.treeTemplates[i]) {
+					writeString(this.out, t);
+				}
+			}
+		}
+		this.out.writeLong(footer);
+		this.out.writeInt(MAGIC);
+		this.out.close();
+		this.out = null;
+		this.deflater.end();
+	}
+
+}
@@ -0,0 +1,17 @@
+package se.cbb.jprime.io;
+
+/**
+ * Sampleable of sample type <code>SampleDouble</code> which also provides its current value as such,
+ * so that binary samplers need not format and re-parse it.
+ */
+public interface DoubleSampleable extends Sampleable {
+
+	/**
+	 * Returns this object's current value. Must agree with <code>getSampleValue(...)</code>,
+	 * i.e., the latter must equal <code>SampleDouble.toString(...)</code> of this value.
+	 * @param mode the sampling mode.
+	 * @return the value.
+	 */
+	public double getSampleDouble(SamplingMode mode);
+
+}
@@ -0,0 +1,20 @@
+package se.cbb.jprime.io;
+
+import se.cbb.jprime.math.LogDouble;
+
+/**
+ * Sampleable of sample type <code>SampleLogDouble</code> which also provides its current value as such,
+ * so that binary samplers need not format and re-parse it.
+ */
+public interface LogDoubleSampleable extends Sampleable {
+
+	/**
+	 * Returns this object's current value. Must agree with <code>getSampleValue(...)</code>,
+	 * i.e., the latter must equal <code>SampleLogDouble.toString(...)</code> of this value.
+	 * The returned object is only read, and may be the instance held internally.
+	 * @param mode the sampling mode.
+	 * @return the value.
+	 */
+	public LogDouble getSampleLogDouble(SamplingMode mode);
+
+}
@@ -0,0 +1,67 @@
+package se.cbb.jprime.io;
+
+/**
+ * Holds the definition of a user-defined partition of a multiple sequence alignment, e.g. a gene or
+ * a codon position, as read by <code>MSAPartitionReader</code>.
+ */
+public class MSAPartitionDefinition {
+
+	/** Name. */
+	private String name;
+
+	/** Substitution model identifier. Null for the default model. */
+	private String model;
+
+	/** Positions of the alignment, starting at 0. */
+	private int[] positions;
+
+	/** Initial rate multiplier, possibly appended with FIXED. Null if none. */
+	private String rateMultiplier;
+
+	/**
+	 * Constructor.
+	 * @param name name of the partition.
+	 * @param model substitution model identifier, see <code>SubstitutionMatrixHandlerFactory</code>. Null for the default model.
+	 * @param positions positions (columns) of the alignment, starting at 0.
+	 * @param rateMultiplier initial rate multiplier, possibly appended with FIXED. Null if none.
+	 */
+	public MSAPartitionDefinition(String name, String model, int[] positions, String rateMultiplier) {
+		this.name = name;
+		this.model = model;
+		this.positions = positions;
+		this.rateMultiplier = rateMultiplier;
+	}
+
+	/**
+	 * Returns the name.
+	 * @return the name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the substitution model identifier.
+	 * @return the identifier; null for the default model.
+	 */
+	public String getModel() {
+		return this.model;
+	}
+
+	/**
+	 * Returns the positions of the alignment.
+	 * @return the positions, starting at 0.
+	 */
+	public int[] getPositions() {
+		return this.positions;
+	}
+
+	/**
+	 * Returns the initial rate multiplier, possibly appended with FIXED.
+	 * @return the rate multiplier; null if none.
+	 */
+	public String getRateMultiplier() {
+		return this.rateMultiplier;
+	}
+
+}
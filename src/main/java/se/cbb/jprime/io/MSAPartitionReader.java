@@ -0,0 +1,150 @@
+package se.cbb.jprime.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Reads a file defining partitions of a multiple sequence alignment, e.g. genes or codon positions.
+ * Each line holds the name of a partition, its substitution model, its positions and, optionally, its
+ * initial rate multiplier, separated by whitespace, e.g.
+ * <pre>
+ * # Name   Model                          Positions        Rate multiplier
+ * gene1    HKY85='2.0;[0.3,0.2,0.2,0.3]'  1-450
+ * gene2    -                              451-900          1.0
+ * pos3     GTR                            3-900\3,903      1.0FIXED
+ * </pre>
+ * The model is any identifier accepted by <code>SubstitutionMatrixHandlerFactory</code>, or - for the default model.
+ * Positions are numbered from 1 (codons count as 1 position), and are given as a comma-separated list of
+ * single positions and inclusive ranges, where a range a-b\s holds every s-th position starting at a.
+ * Partitions must be disjoint and, see <code>checkCoverage()</code>, together cover the entire alignment.
+ * Blank lines and lines starting with # are ignored.
+ */
+public class MSAPartitionReader {
+
+	/**
+	 * Reads a partition file.
+	 * @param f the file.
+	 * @return the partitions, in file order.
+	 * @throws FileNotFoundException if no file was found.
+	 */
+	public static List<MSAPartitionDefinition> readPartitions(File f) throws FileNotFoundException {
+		return readPartitions(new Scanner(f));
+	}
+
+	/**
+	 * Reads partitions from a string.
+	 * @param s the string with the partitions.
+	 * @return the partitions, in string order.
+	 */
+	public static List<MSAPartitionDefinition> readPartitions(String s) {
+		return readPartitions(new Scanner(s));
+	}
+
+	/**
+	 * Reads partitions.
+	 * @param sc the Scanner with the partitions. Closed when done.
+	 * @return the partitions, in input order.
+	 */
+	public static List<MSAPartitionDefinition> readPartitions(Scanner sc) {
+		ArrayList<MSAPartitionDefinition> parts = new ArrayList<MSAPartitionDefinition>();
+		HashSet<String> names = new HashSet<String>();
+		BitSet used = new BitSet();
+		try {
+			while (sc.hasNextLine()) {
+				String ln = sc.nextLine().trim();
+				if (ln.isEmpty() || ln.startsWith("#")) {
+					continue;
+				}
+				String[] cols = ln.split("\\s+");
+				if (cols.length < 3 || cols.length > 4) {
+					throw new IllegalArgumentException("Invalid partition definition: " + ln);
+				}
+				String name = cols[0];
+				if (!names.add(name)) {
+					throw new IllegalArgumentException("Invalid partition definition: duplicate partition name " + name + ".");
+				}
+				String model = (cols[1].equals("-") ? null : cols[1]);
+				int[] positions = parsePositions(name, cols[2]);
+				for (int pos : positions) {
+					if (used.get(pos)) {
+						throw new IllegalArgumentException("Invalid partition definition: position " + (pos + 1) + " of partition " + name +
+								" is already included in another partition.");
+					}
+					used.set(pos);
+				}
+				parts.add(new MSAPartitionDefinition(name, model, positions, cols.length == 4 ? cols[3] : null));
+			}
+		} finally {
+			sc.close();
+		}
+		if (parts.isEmpty()) {
+			throw new IllegalArgumentException("Invalid partition definition: no partitions.");
+		}
+		return parts;
+	}
+
+	/**
+	 * Verifies that partitions cover every position of an alignment exactly once, so that no sites are silently dropped.
+	 * @param parts the partitions, which must be disjoint.
+	 * @param noOfPositions the number of positions of the alignment.
+	 */
+	public static void checkCoverage(List<MSAPartitionDefinition> parts, int noOfPositions) {
+		BitSet used = new BitSet(noOfPositions);
+		for (MSAPartitionDefinition part : parts) {
+			for (int pos : part.getPositions()) {
+				if (pos >= noOfPositions) {
+					throw new IllegalArgumentException("Invalid partition definition: position " + (pos + 1) + " of partition " + part.getName() +
+							" is outside of the alignment.");
+				}
+				used.set(pos);
+			}
+		}
+		int pos = used.nextClearBit(0);
+		if (pos < noOfPositions) {
+			throw new IllegalArgumentException("Invalid partition definition: position " + (pos + 1) + " of the alignment is not included " +
+					"in any partition. Partitions must cover the entire alignment.");
+		}
+	}
+
+	/**
+	 * Parses a comma-separated list of positions and ranges, e.g. "1-300,451,3-900\3".
+	 * @param name the partition name, for error messages.
+	 * @param s the list.
+	 * @return the positions, starting at 0, in list order.
+	 */
+	private static int[] parsePositions(String name, String s) {
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		try {
+			for (String item : s.split(",")) {
+				int stride = 1;
+				int sep = item.indexOf('\\');
+				if (sep >= 0) {
+					stride = Integer.parseInt(item.substring(sep + 1));
+					item = item.substring(0, sep);
+				}
+				int dash = item.indexOf('-');
+				int from = Integer.parseInt(dash < 0 ? item : item.substring(0, dash));
+				int to = (dash < 0 ? from : Integer.parseInt(item.substring(dash + 1)));
+				if (from < 1 || to < from || stride < 1) {
+					throw new IllegalArgumentException("Invalid positions " + s + " of partition " + name + ".");
+				}
+				for (int pos = from; pos <= to; pos += stride) {
+					positions.add(pos - 1);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid positions " + s + " of partition " + name + ".", e);
+		}
+		int[] a = new int[positions.size()];
+		for (int i = 0; i < a.length; ++i) {
+			a[i] = positions.get(i);
+		}
+		return a;
+	}
+
+}
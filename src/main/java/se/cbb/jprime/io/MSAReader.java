@@ -0,0 +1,242 @@
+package se.cbb.jprime.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.biojava.nbio.core.sequence.DNASequence;
+import org.biojava.nbio.core.sequence.compound.NucleotideCompound;
+import org.biojava.nbio.core.sequence.io.GenericFastaHeaderParser;
+
+import se.cbb.jprime.seqevo.MSAData;
+import se.cbb.jprime.seqevo.SequenceType;
+
+/**
+ * Reads a multiple sequence alignment in FASTA or PHYLIP format straight into an <code>MSAData</code> object.
+ * Sequences are streamed line by line and encoded into states as they are read, without creating
+ * BioJava sequences of the data or intermediate strings of entire sequences.
+ * <p/>
+ * For FASTA, the sequence identifier is derived from the header line like for alignments read with BioJava's
+ * <code>FastaReaderHelper</code> elsewhere, so that names agree with e.g. initial NJ trees: the header is parsed
+ * with BioJava's <code>GenericFastaHeaderParser</code>, and the resulting accession is truncated after its first word.
+ * For PHYLIP, the first line holds the number of sequences and the number of characters
+ * (nucleotides for codons). The relaxed format is assumed, where identifiers are separated from the data by whitespace.
+ * The data may be sequential with each sequence on a single line, or interleaved, where the first block holds
+ * the identifiers and subsequent blocks do not. Whitespace within sequences is ignored.
+ * The format is detected automatically from the first non-blank character.
+ */
+public class MSAReader {
+
+	/**
+	 * Reads an alignment file.
+	 * @param f the file.
+	 * @param seqType the sequence type.
+	 * @return the alignment.
+	 * @throws IOException if unable to read the file.
+	 */
+	public static MSAData readMSA(File f, SequenceType seqType) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(f), 1 << 16);
+		try {
+			return readMSA(br, seqType);
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Reads an alignment from a string.
+	 * @param s the alignment.
+	 * @param seqType the sequence type.
+	 * @return the alignment.
+	 * @throws IOException if unable to read the alignment.
+	 */
+	public static MSAData readMSA(String s, SequenceType seqType) throws IOException {
+		return readMSA(new StringReader(s), seqType);
+	}
+
+	/**
+	 * Reads an alignment, detecting the format.
+	 * @param r the reader. Not closed.
+	 * @param seqType the sequence type.
+	 * @return the alignment.
+	 * @throws IOException if unable to read the alignment.
+	 */
+	public static MSAData readMSA(Reader r, SequenceType seqType) throws IOException {
+		BufferedReader br = (r instanceof BufferedReader ? (BufferedReader) r : new BufferedReader(r));
+		int c;
+		do {
+			br.mark(1);
+			c = br.read();
+		} while (c != -1 && Character.isWhitespace(c));
+		br.reset();
+		if (c == '>') {
+			return readFASTA(br, seqType);
+		}
+		if (c >= '0' && c <= '9') {
+			return readPHYLIP(br, seqType);
+		}
+		throw new IllegalArgumentException("Unknown alignment format: expected FASTA or PHYLIP.");
+	}
+
+	/**
+	 * Reads an alignment in FASTA format.
+	 * @param br the reader. Not closed.
+	 * @param seqType the sequence type.
+	 * @return the alignment.
+	 * @throws IOException if unable to read the alignment.
+	 */
+	public static MSAData readFASTA(BufferedReader br, SequenceType seqType) throws IOException {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<byte[]> states = new ArrayList<byte[]>();
+		ResidueBuffer buf = new ResidueBuffer(1024);
+		String name = null;
+		String ln;
+		while ((ln = br.readLine()) != null) {
+			if (ln.startsWith(">")) {
+				if (name != null) {
+					names.add(name);
+					states.add(MSAData.encode(seqType, name, buf.chars, buf.size));
+				}
+				name = getFASTAIdentifier(ln);
+				buf.size = 0;
+			} else if (ln.startsWith(";")) {
+				// Comment.
+			} else if (name != null) {
+				buf.append(ln, 0);
+			} else if (!ln.trim().isEmpty()) {
+				throw new IllegalArgumentException("Invalid FASTA alignment: sequence data before the first header.");
+			}
+		}
+		if (name != null) {
+			names.add(name);
+			states.add(MSAData.encode(seqType, name, buf.chars, buf.size));
+		}
+		return new MSAData(seqType, names, states);
+	}
+
+	/**
+	 * Returns the sequence identifier of a FASTA header line, using the same rules as when reading with
+	 * <code>FastaReaderHelper</code> and truncating after the first word.
+	 * E.g., ">sp|P1|N_H desc" yields "P1" and ">y some description" yields "y".
+	 * @param ln the header line, including the leading '>'.
+	 * @return the identifier.
+	 */
+	public static String getFASTAIdentifier(String ln) {
+		DNASequence seq = new DNASequence();
+		new GenericFastaHeaderParser<DNASequence, NucleotideCompound>().parseHeader(ln.substring(1).trim(), seq);
+		return seq.getAccession().getID().trim().split("[,\\s]+")[0];
+	}
+
+	/**
+	 * Reads an alignment in relaxed PHYLIP format, sequential or interleaved.
+	 * @param br the reader. Not closed.
+	 * @param seqType the sequence type.
+	 * @return the alignment.
+	 * @throws IOException if unable to read the alignment.
+	 */
+	public static MSAData readPHYLIP(BufferedReader br, SequenceType seqType) throws IOException {
+		String[] header = nextLine(br).trim().split("\\s+");
+		int noOfSeqs;
+		int noOfChars;
+		try {
+			noOfSeqs = Integer.parseInt(header[0]);
+			noOfChars = Integer.parseInt(header[1]);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid PHYLIP alignment: first line must hold the number of sequences and characters.");
+		}
+		if (noOfSeqs < 1 || noOfChars < 0) {
+			throw new IllegalArgumentException("Invalid PHYLIP alignment: invalid number of sequences or characters.");
+		}
+
+		// First block, with identifiers.
+		ArrayList<String> names = new ArrayList<String>(noOfSeqs);
+		ResidueBuffer[] bufs = new ResidueBuffer[noOfSeqs];
+		for (int i = 0; i < noOfSeqs; ++i) {
+			String ln = nextLine(br).trim();
+			int sep = 0;
+			while (sep < ln.length() && !Character.isWhitespace(ln.charAt(sep))) {
+				++sep;
+			}
+			names.add(ln.substring(0, sep));
+			bufs[i] = new ResidueBuffer(noOfChars);
+			bufs[i].append(ln, sep);
+		}
+
+		// Subsequent blocks, if interleaved.
+		while (bufs[noOfSeqs - 1].size < noOfChars) {
+			for (int i = 0; i < noOfSeqs; ++i) {
+				bufs[i].append(nextLine(br), 0);
+			}
+		}
+		ArrayList<byte[]> states = new ArrayList<byte[]>(noOfSeqs);
+		for (int i = 0; i < noOfSeqs; ++i) {
+			if (bufs[i].size != noOfChars) {
+				throw new IllegalArgumentException("Invalid PHYLIP alignment: sequence " + names.get(i) + " does not have " + noOfChars + " characters.");
+			}
+			states.add(MSAData.encode(seqType, names.get(i), bufs[i].chars, bufs[i].size));
+			bufs[i] = null;
+		}
+		return new MSAData(seqType, names, states);
+	}
+
+	/**
+	 * Returns the next non-blank line.
+	 * @param br the reader.
+	 * @return the line.
+	 * @throws IOException if unable to read, or at end of input.
+	 */
+	private static String nextLine(BufferedReader br) throws IOException {
+		String ln;
+		while ((ln = br.readLine()) != null) {
+			if (!ln.trim().isEmpty()) {
+				return ln;
+			}
+		}
+		throw new IllegalArgumentException("Invalid PHYLIP alignment: unexpected end of input.");
+	}
+
+	/**
+	 * Growable buffer of sequence characters in ASCII.
+	 */
+	private static final class ResidueBuffer {
+
+		/** Characters. */
+		byte[] chars;
+
+		/** Number of characters. */
+		int size;
+
+		/**
+		 * Constructor.
+		 * @param capacity initial capacity.
+		 */
+		ResidueBuffer(int capacity) {
+			this.chars = new byte[Math.max(capacity, 16)];
+			this.size = 0;
+		}
+
+		/**
+		 * Appends the non-whitespace characters of a line. Non-ASCII characters become invalid characters.
+		 * @param ln the line.
+		 * @param from the index of the line to start at.
+		 */
+		void append(String ln, int from) {
+			int len = ln.length();
+			if (this.size + len - from > this.chars.length) {
+				this.chars = Arrays.copyOf(this.chars, Math.max(2 * this.chars.length, this.size + len - from));
+			}
+			for (int i = from; i < len; ++i) {
+				char c = ln.charAt(i);
+				if (!Character.isWhitespace(c)) {
+					this.chars[this.size++] = (byte) (c < 128 ? c : 0);
+				}
+			}
+		}
+	}
+
+}
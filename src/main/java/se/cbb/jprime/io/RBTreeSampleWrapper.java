@@ -6,10 +6,11 @@ import se.cbb.jprime.topology.RBTree;
 
 /**
  * Wrapper for combining a RBTree with names and possibly lengths into Newick output.
+ * Snapshots are copies of the tree and lengths, so that the Newick string may be assembled later.
  * 
  * @author Joel Sjöstrand.
  */
-public class RBTreeSampleWrapper implements Sampleable {
+public class RBTreeSampleWrapper implements SnapshotSampleable {
 
 	/** Tree. */
 	private RBTree tree;
@@ -53,11 +54,44 @@ public class RBTreeSampleWrapper implements Sampleable {
 
 	@Override
 	public String getSampleValue(SamplingMode mode) {
+		return this.toNewick(this.tree, this.lengths);
+	}
+
+	@Override
+	public Object createSnapshot() {
+		return new Object[] { new RBTree(this.tree), (this.lengths == null ? null : new DoubleMap(this.lengths)) };
+	}
+
+	@Override
+	public void copyToSnapshot(Object snapshot, SamplingMode mode) {
+		Object[] s = (Object[]) snapshot;
+		((RBTree) s[0]).setTopology(this.tree);
+		if (this.lengths != null) {
+			DoubleMap l = (DoubleMap) s[1];
+			for (int i = 0; i < l.getSize(); ++i) {
+				l.set(i, this.lengths.get(i));
+			}
+		}
+	}
+
+	@Override
+	public String getSnapshotValue(Object snapshot, SamplingMode mode) {
+		Object[] s = (Object[]) snapshot;
+		return this.toNewick((RBTree) s[0], (DoubleMap) s[1]);
+	}
+	
+	/**
+	 * Assembles the Newick string of a tree.
+	 * @param t the tree.
+	 * @param l the branch lengths; null if not output.
+	 * @return the Newick string.
+	 */
+	private String toNewick(RBTree t, DoubleMap l) {
 		try {
-			if (this.lengths == null) {
-				return SampleNewickTree.toString(tree, names);
+			if (l == null) {
+				return SampleNewickTree.toString(t, this.names);
 			}
-			return SampleNewickTree.toString(tree, names, lengths);
+			return SampleNewickTree.toString(t, this.names, l);
 		} catch (NewickIOException ex) {
 			throw new RuntimeException("Could not assemble Newick tree from RBTree.");
 		}
@@ -1,12 +1,17 @@
 package se.cbb.jprime.io;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.util.List;
 
+import se.cbb.jprime.mcmc.Checkpoint;
+import se.cbb.jprime.mcmc.Checkpointable;
 
 /**
  * Ordinary MCMC sampler for sampling to a character output stream.
@@ -25,10 +30,13 @@ import java.util.List;
  * </pre>
  * This may reduce file size when there are discrete parameters concentrated on
  * a small number of values (e.g. trees).
+ * <p/>
+ * When writing to a file, a checkpoint records the file length, so that
+ * a resumed chain truncates any samples written after the checkpoint and continues from there.
  * 
  * @author Joel Sjöstrand.
  */
-public class SampleWriter implements Sampler {
+public class SampleWriter implements Sampler, Checkpointable {
 
 	/** Default delimiter. */
 	public static final String DEFAULT_DELIM = "\t";
@@ -39,6 +47,12 @@ public class SampleWriter implements Sampler {
 	/** Output stream. */
 	private BufferedWriter out;
 	
+	/** Output file. Null if not writing to a file. */
+	private File file = null;
+	
+	/** Output stream buffer size when writing to a file. */
+	private int bufferSz = DEFAULT_BUFFER_SIZE;
+	
 	/** Governs how often automatic sampling is performed. */
 	private int flushFactor;
 	
@@ -81,7 +95,7 @@ public class SampleWriter implements Sampler {
 	 * @throws IOException if output stream cannot be connected to f.
 	 */
 	public SampleWriter(File f, int flushFactor) throws IOException {
-		this(new BufferedWriter(new FileWriter(f), DEFAULT_BUFFER_SIZE), flushFactor);
+		this(f, DEFAULT_BUFFER_SIZE, flushFactor, false);
 	}
 	
 	/**
@@ -92,7 +106,22 @@ public class SampleWriter implements Sampler {
 	 * @throws IOException if output stream cannot be connected to f.
 	 */
 	public SampleWriter(File f, int bufferSz, int flushFactor) throws IOException {
-		this(new BufferedWriter(new FileWriter(f), bufferSz), flushFactor);
+		this(f, bufferSz, flushFactor, false);
+	}
+	
+	/**
+	 * Constructor. Uses the desired buffer size, and may append to an existing file,
+	 * e.g. when resuming from a checkpoint.
+	 * @param f the file to write to.
+	 * @param bufferSz the buffer size.
+	 * @param flushFactor governs how often automatic sampling is performed.
+	 * @param append true to append to f; false to overwrite it.
+	 * @throws IOException if output stream cannot be connected to f.
+	 */
+	public SampleWriter(File f, int bufferSz, int flushFactor, boolean append) throws IOException {
+		this(new BufferedWriter(new FileWriter(f, append), bufferSz), flushFactor);
+		this.file = f;
+		this.bufferSz = bufferSz;
 	}
 
 	/**
@@ -147,7 +176,28 @@ public class SampleWriter implements Sampler {
 	
 	@Override
 	public void writeSample(List<Sampleable> sampleables, Sampleable.SamplingMode mode) throws IOException {
-		String[] sample = this.getValue(sampleables, this.conciseSymbol != null, mode);
+		this.writeSampleValues(this.getValues(sampleables, mode));
+	}
+	
+	/**
+	 * Writes a header line which has already been assembled as by <code>getSampleHeader(...)</code>.
+	 * @param header the header.
+	 * @throws IOException.
+	 */
+	void writeHeaderLine(String header) throws IOException {
+		this.out.write(header);
+		this.out.newLine();
+	}
+	
+	/**
+	 * Writes a sample, given the current values of the sampleables (in list order).
+	 * Values are abbreviated if concise output is on, which is why the array
+	 * must not be reused by the caller.
+	 * @param values the values.
+	 * @throws IOException.
+	 */
+	void writeSampleValues(String[] values) throws IOException {
+		String[] sample = (this.conciseSymbol != null ? this.abbreviate(values) : values);
 		
 		for (int i = 0; i < sample.length - 1; ++i) {
 			this.out.write(sample[i]);
@@ -183,11 +233,10 @@ public class SampleWriter implements Sampler {
 	/**
 	 * Retrieves the sample values.
 	 * @param sampleables the sampleable objects.
-	 * @param doConcise true to shorten repeats.
 	 * @param mode sampling mode.
 	 * @return the sample.
 	 */
-	private String[] getValue(List<Sampleable> sampleables, boolean doConcise, Sampleable.SamplingMode mode) {
+	private String[] getValues(List<Sampleable> sampleables, Sampleable.SamplingMode mode) {
 		if (sampleables.size() == 0) { return new String[0]; }
 		
 		// Retrieve all current parameters.
@@ -195,22 +244,27 @@ public class SampleWriter implements Sampler {
 		for (int i = 0; i < sample.length; ++i) {
 			sample[i] = sampleables.get(i).getSampleValue(mode);
 		}
-		
-		// If desired, exchange unchanged parameters for symbol.
-		if (doConcise) {
-			if (this.lastSample == null) {
-				this.lastSample = sample;
-			} else {
-				for (int i = 0; i < sample.length; ++i) {
-					if (sample[i].equals(this.lastSample[i])) {
-						this.lastSample[i] = this.conciseSymbol;
-					} else {
-						this.lastSample[i] = sample[i];
-					}
-					String[] tmp = this.lastSample;
-					this.lastSample = sample;    // lastSample now up-to-date and non-abbreviated.
-					sample = tmp;                // sample now abbreviated.
+		return sample;
+	}
+	
+	/**
+	 * Exchanges values unchanged since the last sample for the concise symbol.
+	 * @param sample the sample values.
+	 * @return the abbreviated sample.
+	 */
+	private String[] abbreviate(String[] sample) {
+		if (this.lastSample == null) {
+			this.lastSample = sample;
+		} else {
+			for (int i = 0; i < sample.length; ++i) {
+				if (sample[i].equals(this.lastSample[i])) {
+					this.lastSample[i] = this.conciseSymbol;
+				} else {
+					this.lastSample[i] = sample[i];
 				}
+				String[] tmp = this.lastSample;
+				this.lastSample = sample;    // lastSample now up-to-date and non-abbreviated.
+				sample = tmp;                // sample now abbreviated.
 			}
 		}
 		return sample;
@@ -231,7 +285,7 @@ public class SampleWriter implements Sampler {
 
 	@Override
 	public String getSample(List<Sampleable> sampleables, Sampleable.SamplingMode mode) {
-		String[] sample = this.getValue(sampleables, false, mode);
+		String[] sample = this.getValues(sampleables, mode);
 		StringBuilder sb = new StringBuilder(sample.length * 32);
 		for (int i = 0; i < sample.length - 1; ++i) {
 			sb.append(sample[i]);
@@ -249,4 +303,57 @@ public class SampleWriter implements Sampler {
 		this.out.flush();
 	}
 
+	/**
+	 * Flushes the output and stores the current file length (if writing to a file)
+	 * along with the state required for concise output.
+	 * @param out the checkpoint output.
+	 * @throws IOException.
+	 */
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		this.out.flush();
+		out.writeLong(this.file == null ? -1 : this.file.length());
+		if (this.lastSample == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(this.lastSample.length);
+			for (String str : this.lastSample) {
+				Checkpoint.writeString(out, str);
+			}
+		}
+	}
+
+	/**
+	 * Restores the state of a checkpoint. If writing to a file, the file is truncated
+	 * to its length at the time of the checkpoint, and output is appended from there.
+	 * @param in the checkpoint input.
+	 * @throws IOException.
+	 */
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		long len = in.readLong();
+		int n = in.readInt();
+		if (n < 0) {
+			this.lastSample = null;
+		} else {
+			this.lastSample = new String[n];
+			for (int i = 0; i < n; ++i) {
+				this.lastSample[i] = Checkpoint.readString(in);
+			}
+		}
+		if (this.file != null && len >= 0) {
+			this.out.close();
+			if (this.file.length() < len) {
+				throw new IOException("Sample file " + this.file + " is shorter than recorded in checkpoint.");
+			}
+			RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+			try {
+				raf.setLength(len);
+			} finally {
+				raf.close();
+			}
+			this.out = new BufferedWriter(new FileWriter(this.file, true), this.bufferSz);
+			this.noOfUnflushedSamples = 0;
+		}
+	}
 }
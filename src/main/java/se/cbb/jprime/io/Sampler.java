@@ -48,4 +48,16 @@ public interface Sampler {
 	 * @return the sample.
 	 */
 	public String getSample(List<Sampleable> sampleables, Sampleable.SamplingMode mode);
+	
+	/**
+	 * Flushes any buffered output.
+	 * @throws IOException.
+	 */
+	public void flush() throws IOException;
+	
+	/**
+	 * Closes the output, flushing it first.
+	 * @throws IOException.
+	 */
+	public void close() throws IOException;
 }
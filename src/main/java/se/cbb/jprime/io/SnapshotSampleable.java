@@ -0,0 +1,35 @@
+package se.cbb.jprime.io;
+
+/**
+ * Interface for sampleables whose current value may be copied to a compact snapshot,
+ * so that the string conversion can be deferred and carried out by another thread, see
+ * <code>AsyncSampleWriter</code>. Snapshot holders are created once and then reused.
+ * <p/>
+ * <code>getSnapshotValue(...)</code> may be invoked concurrently with changes to the
+ * sampleable itself, and must therefore only rely on the snapshot and on immutable state.
+ */
+public interface SnapshotSampleable extends Sampleable {
+
+	/**
+	 * Creates a snapshot holder, into which the current value may later be copied.
+	 * @return the holder.
+	 */
+	public Object createSnapshot();
+
+	/**
+	 * Copies the current value into a snapshot holder created by this object.
+	 * @param snapshot the holder.
+	 * @param mode sampling mode.
+	 */
+	public void copyToSnapshot(Object snapshot, SamplingMode mode);
+
+	/**
+	 * Returns the value of a snapshot as a string. Must be identical to what
+	 * <code>getSampleValue(...)</code> returned when the snapshot was taken.
+	 * @param snapshot the holder.
+	 * @param mode sampling mode.
+	 * @return the value.
+	 */
+	public String getSnapshotValue(Object snapshot, SamplingMode mode);
+
+}
@@ -22,6 +22,16 @@ public interface Continuous1DPD extends ProbabilityDistribution {
 	 * @return the probability density, f(x).
 	 */
 	public double getPDF(double x);
+	
+	/**
+	 * Returns the natural logarithm of the probability density function, ln f(x), for
+	 * several values at once. Intended for tight loops, e.g. in dynamic programming algorithms,
+	 * where it avoids converting back and forth between densities and log-densities.
+	 * @param x the values where to evaluate density.
+	 * @param logPDF array where the log-densities ln f(x[0]),...,ln f(x[n-1]) are stored.
+	 * @param n the number of values.
+	 */
+	public void getLogPDF(double[] x, double[] logPDF, int n);
 
 	/**
 	 * Returns cumulative density function F(x)=P(X<=x) for a
@@ -42,6 +42,13 @@ public class DiracDeltaOffsetDistribution implements Continuous1DPD {
 		return 0;
 	}
 
+	@Override
+	public void getLogPDF(double[] x, double[] logPDF, int n) {
+		for (int i = 0; i < n; ++i) {
+			logPDF[i] = (Math.abs(x[i] - this.offset) < 1e-8 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY);
+		}
+	}
+
 	@Override
 	public double getCDF(double x) {
 		if (x >= this.offset) {
@@ -70,6 +70,14 @@ public class ExponentialDistribution implements Continuous1DPDDependent {
 		return (this.lambda * Math.exp(-this.lambda * x));
 	}
 
+	@Override
+	public void getLogPDF(double[] x, double[] logPDF, int n) {
+		double logLambda = Math.log(this.lambda);
+		for (int i = 0; i < n; ++i) {
+			logPDF[i] = logLambda - this.lambda * x[i];
+		}
+	}
+
 	@Override
 	public double getCDF(double x) {
 		return (1.0 - Math.exp(-this.lambda * x));
@@ -145,6 +145,15 @@ public class GammaDistribution implements Continuous1DPDDependent {
 		return Math.exp((this.k - 1.0) * Math.log(x) - x / this.theta + this.c);
 	}
 	
+	@Override
+	public void getLogPDF(double[] x, double[] logPDF, int n) {
+		double km1 = this.k - 1.0;
+		double invTheta = 1.0 / this.theta;
+		for (int i = 0; i < n; ++i) {
+			logPDF[i] = km1 * Math.log(x[i]) - x[i] * invTheta + this.c;
+		}
+	}
+	
 	/**
 	 * For speed reasons, provides access to the probability density function f(x) for
 	 * a specified value x, returned as a <code>Probability</code>.
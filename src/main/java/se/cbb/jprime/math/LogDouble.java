@@ -94,6 +94,54 @@ public final class LogDouble implements Comparable<LogDouble> {
 		}
 	}
 	
+	/**
+	 * Assigns this LogDouble the value of another LogDouble.
+	 * @param q the LogDouble to copy.
+	 * @return this LogDouble, not a new instance.
+	 */
+	public LogDouble set(LogDouble q) {
+		this.p = q.p;
+		this.sign = q.sign;
+		return this;
+	}
+	
+	/**
+	 * Assigns this LogDouble from an already logged value.
+	 * @param logProb the log-value. Of no importance if sign == 0.
+	 * @param sign the sign: 1 = positive, 0 = zero, -1 = negative.
+	 * @return this LogDouble, not a new instance.
+	 */
+	public LogDouble set(double logProb, int sign) {
+		assert !Double.isNaN(logProb);
+		assert (sign >= -1 && sign <= 1);
+		if (sign == 0) {
+			this.p = Double.NEGATIVE_INFINITY;    // Dummy.
+			this.sign = 0;
+		} else {
+			this.p = logProb;
+			this.sign = (sign < 0 ? -1 : 1);
+		}
+		return this;
+	}
+	
+	/**
+	 * Helper. Returns the sign of a double, where 1 = positive, 0 = zero, -1 = negative.
+	 * @param d the value.
+	 * @return the sign.
+	 */
+	private static int signOf(double d) {
+		return (d > 0.0 ? 1 : (d == 0.0 ? 0 : -1));
+	}
+	
+	/**
+	 * Helper. Returns log(|d|) for a double d, as stored by the constructor.
+	 * @param d the value.
+	 * @return the log-value.
+	 */
+	private static double logAbs(double d) {
+		return (d > 0.0 ? Math.log(d) : (d == 0.0 ? Double.NEGATIVE_INFINITY : Math.log(-d)));
+	}
+	
 	/**
 	 * Returns log(|v|) for the actual value v. If v==sign==0, the returned
 	 * value may be anything (although commonly Double.NEGATIVE_INFINITY).
@@ -275,7 +323,10 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return this LogDouble, not a new instance.
 	 */
 	public LogDouble mult(double q) {
-		return this.mult(new LogDouble(q));
+		assert !Double.isNaN(q);
+		this.sign *= signOf(q);
+		this.p = (this.sign == 0 ? 0.0 : this.p + logAbs(q));
+		return this;
 	}
 	
 	/**
@@ -322,7 +373,14 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return this LogDouble, not a new instance.
 	 */
 	public LogDouble div(double q) {
-		return this.div(new LogDouble(q));
+		assert !Double.isNaN(q);
+		int qs = signOf(q);
+		if (qs == 0) {
+			throw new ArithmeticException("Division by zero attempted in LogDouble.");
+		}
+		this.sign *= qs;
+		this.p = (this.sign == 0 ? 0.0 : this.p - logAbs(q));
+		return this;
 	}
 	
 	/**
@@ -517,15 +575,25 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if greater than q.
 	 */
 	public boolean greaterThan(LogDouble q) {
-		if (this.sign == q.sign) {
+		return this.greaterThan(q.sign, q.p);
+	}
+	
+	/**
+	 * Helper. Compares this LogDouble with a value in log-form.
+	 * @param qSign the sign of the value.
+	 * @param qp the log-value.
+	 * @return the comparison result.
+	 */
+	private boolean greaterThan(int qSign, double qp) {
+		if (this.sign == qSign) {
 			switch (this.sign) {
 			case 0:  return false;
-			case 1:  return (this.p > q.p);
-			case -1: return (this.p < q.p);
+			case 1:  return (this.p > qp);
+			case -1: return (this.p < qp);
 			default: throw new ArithmeticException("Sign of LogDouble instance has illegal value.");
 			}
 		}
-		return (this.sign > q.sign);
+		return (this.sign > qSign);
 	}
 	
 	/**
@@ -534,7 +602,8 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if greater than q.
 	 */
 	public boolean greaterThan(double q) {
-		return this.greaterThan(new LogDouble(q));
+		assert !Double.isNaN(q);
+		return this.greaterThan(signOf(q), logAbs(q));
 	}
 	
 	/**
@@ -543,15 +612,25 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if greater than or equals q.
 	 */
 	public boolean greaterThanOrEquals(LogDouble q) {
-		if (this.sign == q.sign) {
+		return this.greaterThanOrEquals(q.sign, q.p);
+	}
+	
+	/**
+	 * Helper. Compares this LogDouble with a value in log-form.
+	 * @param qSign the sign of the value.
+	 * @param qp the log-value.
+	 * @return the comparison result.
+	 */
+	private boolean greaterThanOrEquals(int qSign, double qp) {
+		if (this.sign == qSign) {
 			switch (this.sign) {
 			case 0:  return true;
-			case 1:  return (this.p >= q.p);
-			case -1: return (this.p <= q.p);
+			case 1:  return (this.p >= qp);
+			case -1: return (this.p <= qp);
 			default: throw new ArithmeticException("Sign of LogDouble instance has illegal value.");
 			}
 		}
-		return (this.sign > q.sign);
+		return (this.sign > qSign);
 	}
 	
 	/**
@@ -560,7 +639,8 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if greater than or equals q.
 	 */
 	public boolean greaterThanOrEquals(double q) {
-		return this.greaterThanOrEquals(new LogDouble(q));
+		assert !Double.isNaN(q);
+		return this.greaterThanOrEquals(signOf(q), logAbs(q));
 	}
 	
 	/**
@@ -569,15 +649,25 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if less than q.
 	 */
 	public boolean lessThan(LogDouble q) {
-		if (this.sign == q.sign) {
+		return this.lessThan(q.sign, q.p);
+	}
+	
+	/**
+	 * Helper. Compares this LogDouble with a value in log-form.
+	 * @param qSign the sign of the value.
+	 * @param qp the log-value.
+	 * @return the comparison result.
+	 */
+	private boolean lessThan(int qSign, double qp) {
+		if (this.sign == qSign) {
 			switch (this.sign) {
 			case 0:  return false;
-			case 1:  return (this.p < q.p);
-			case -1: return (this.p > q.p);
+			case 1:  return (this.p < qp);
+			case -1: return (this.p > qp);
 			default: throw new ArithmeticException("Sign of LogDouble instance has illegal value.");
 			}
 		}
-		return (this.sign < q.sign);
+		return (this.sign < qSign);
 	}
 	
 	/**
@@ -586,7 +676,8 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if less than q.
 	 */
 	public boolean lessThan(double q) {
-		return this.lessThan(new LogDouble(q));
+		assert !Double.isNaN(q);
+		return this.lessThan(signOf(q), logAbs(q));
 	}
 	
 	/**
@@ -595,15 +686,25 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if less than or equals q.
 	 */
 	public boolean lessThanOrEquals(LogDouble q) {
-		if (this.sign == q.sign) {
+		return this.lessThanOrEquals(q.sign, q.p);
+	}
+	
+	/**
+	 * Helper. Compares this LogDouble with a value in log-form.
+	 * @param qSign the sign of the value.
+	 * @param qp the log-value.
+	 * @return the comparison result.
+	 */
+	private boolean lessThanOrEquals(int qSign, double qp) {
+		if (this.sign == qSign) {
 			switch (this.sign) {
 			case 0:  return true;
-			case 1:  return (this.p <= q.p);
-			case -1: return (this.p >= q.p);
+			case 1:  return (this.p <= qp);
+			case -1: return (this.p >= qp);
 			default: throw new ArithmeticException("Sign of LogDouble instance has illegal value.");
 			}
 		}
-		return (this.sign < q.sign);
+		return (this.sign < qSign);
 	}
 	
 	/**
@@ -612,7 +713,8 @@ public final class LogDouble implements Comparable<LogDouble> {
 	 * @return true if less than or equals q.
 	 */
 	public boolean lessThanOrEquals(double q) {
-		return this.lessThanOrEquals(new LogDouble(q));
+		assert !Double.isNaN(q);
+		return this.lessThanOrEquals(signOf(q), logAbs(q));
 	}
 
 	/**
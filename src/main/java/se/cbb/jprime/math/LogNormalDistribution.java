@@ -81,6 +81,15 @@ public class LogNormalDistribution implements Continuous1DPDDependent {
 		return Math.exp(-0.5 * Math.pow((lnx - this.mu) / this.sigma, 2) + this.logDensFact - lnx);
 	}
 
+	@Override
+	public void getLogPDF(double[] x, double[] logPDF, int n) {
+		for (int i = 0; i < n; ++i) {
+			double lnx = Math.log(x[i]);
+			double z = (lnx - this.mu) / this.sigma;
+			logPDF[i] = -0.5 * z * z + this.logDensFact - lnx;
+		}
+	}
+
 	@Override
 	public double getCDF(double x) {
 		x = (Math.log(x) - this.mu) / this.sigma;
@@ -0,0 +1,97 @@
+package se.cbb.jprime.math;
+
+/**
+ * Arithmetic on non-negative values represented by their natural logarithms, where 0 is
+ * represented by negative infinity. Unlike <code>LogDouble</code>, these operate on primitives and never
+ * allocate objects, and are intended for e.g. dynamic programming tables of probabilities.
+ */
+public class LogSpace {
+
+	/**
+	 * Returns log(exp(a)+exp(b)).
+	 * @param a the first log value.
+	 * @param b the second log value.
+	 * @return the log of the sum.
+	 */
+	public static double logAdd(double a, double b) {
+		if (a < b) {
+			double tmp = a;
+			a = b;
+			b = tmp;
+		}
+		if (b == Double.NEGATIVE_INFINITY) {
+			return a;
+		}
+		return a + Math.log1p(Math.exp(b - a));
+	}
+
+	/**
+	 * Returns log(exp(a)*exp(b)).
+	 * @param a the first log value.
+	 * @param b the second log value.
+	 * @return the log of the product.
+	 */
+	public static double logMult(double a, double b) {
+		return a + b;
+	}
+
+	/**
+	 * Returns log(exp(a[from])+...+exp(a[to-1])), computed stably by factoring out the largest term.
+	 * @param a the log values.
+	 * @param from the first index.
+	 * @param to the index after the last index.
+	 * @return the log of the sum; negative infinity if empty.
+	 */
+	public static double logSumExp(double[] a, int from, int to) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; ++i) {
+			if (a[i] > max) {
+				max = a[i];
+			}
+		}
+		if (max == Double.NEGATIVE_INFINITY || max == Double.POSITIVE_INFINITY) {
+			return max;
+		}
+		double sum = 0.0;
+		for (int i = from; i < to; ++i) {
+			sum += Math.exp(a[i] - max);
+		}
+		return max + Math.log(sum);
+	}
+
+	/**
+	 * Returns log(w[from]*exp(a[from])+...+w[to-1]*exp(a[to-1])) for non-negative weights w not in log space,
+	 * computed stably by factoring out the largest term of a. Avoids taking the logarithm of each weight.
+	 * @param a the log values.
+	 * @param w the weights.
+	 * @param from the first index.
+	 * @param to the index after the last index.
+	 * @return the log of the weighted sum; negative infinity if empty.
+	 */
+	public static double logSumExp(double[] a, double[] w, int from, int to) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; ++i) {
+			if (a[i] > max) {
+				max = a[i];
+			}
+		}
+		if (max == Double.NEGATIVE_INFINITY || max == Double.POSITIVE_INFINITY) {
+			return max;
+		}
+		double sum = 0.0;
+		for (int i = from; i < to; ++i) {
+			sum += w[i] * Math.exp(a[i] - max);
+		}
+		return max + Math.log(sum);
+	}
+
+	/**
+	 * Converts a log value to a <code>LogDouble</code>.
+	 * @param a the log value.
+	 * @return the value.
+	 */
+	public static LogDouble toLogDouble(double a) {
+		return (a == Double.NEGATIVE_INFINITY ? new LogDouble(0.0) : new LogDouble(a, 1));
+	}
+
+}
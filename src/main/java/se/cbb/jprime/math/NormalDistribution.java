@@ -86,6 +86,14 @@ public class NormalDistribution implements Continuous1DPDDependent {
 		return Math.exp(-0.5 * Math.pow(x - this.mean, 2) / this.var + this.logDensFact);
 	}
 
+	@Override
+	public void getLogPDF(double[] x, double[] logPDF, int n) {
+		for (int i = 0; i < n; ++i) {
+			double d = x[i] - this.mean;
+			logPDF[i] = -0.5 * d * d / this.var + this.logDensFact;
+		}
+	}
+
 	@Override
 	public double getCDF(double x) {
 		x = (x - this.mean) / this.stdev;
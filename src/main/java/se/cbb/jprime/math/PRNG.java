@@ -1,26 +1,51 @@
 package se.cbb.jprime.math;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.uncommons.maths.random.MersenneTwisterRNG;
 import org.uncommons.maths.random.SeedException;
 import org.uncommons.maths.random.SeedGenerator;
 
+import se.cbb.jprime.mcmc.Checkpointable;
 import se.cbb.jprime.mcmc.InfoProvider;
 
 /**
- * Extension of a Mersenne twister pseudo-random number generator.
+ * Wrapper of a Mersenne twister pseudo-random number generator.
  * In the future, may be used for adding functionality like specialised serialisation, 
  * statistics, etc.
+ * <p/>
+ * All variates are derived from the 32-bit outputs of the wrapped generator exactly like
+ * <code>MersenneTwisterRNG</code> derives them, so the streams are identical to those of the latter.
+ * The complete generator state may be stored in and restored from a checkpoint, where the wrapped
+ * generator is stored using its serialised form. To this end, Gaussian variates are generated here
+ * rather than in <code>java.util.Random</code> (using the very same polar method) so that the spare
+ * variate is accessible.
  * 
  * @author Joel Sjöstrand.
  */
-public class PRNG extends MersenneTwisterRNG implements InfoProvider {
+public class PRNG extends Random implements InfoProvider, Checkpointable {
 
 	/** Eclipse-generated serial version UID. */
 	private static final long serialVersionUID = 310669248550266600L;
 	
+	/** Wrapped generator. Replaced when restored from a checkpoint. */
+	private MersenneTwisterRNG mt;
+	
+	/** Spare Gaussian variate from the polar method. */
+	private double nextNextGaussian;
+	
+	/** True if there is a spare Gaussian variate. */
+	private boolean haveNextNextGaussian = false;
+	
 	/**
 	 * Makes sure the byte array seed is 16-bytes.
 	 * @param seed the seed.
@@ -40,6 +65,7 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 	 */
 	public PRNG() {
 		super();
+		this.mt = new MersenneTwisterRNG();
 	}
 	
 	/**
@@ -47,7 +73,8 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 	 * @param seed the seed data.
 	 */
 	public PRNG(byte[] seed) {
-		super(get16bytes(seed));
+		super();
+		this.mt = new MersenneTwisterRNG(get16bytes(seed));
 	}
 
 	/**
@@ -56,7 +83,7 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 	 * @param seed the seed data.
 	 */
 	public PRNG(BigInteger seed) {
-		super(get16bytes(seed.toByteArray()));
+		this(seed.toByteArray());
 	}
 	
 	/**
@@ -65,7 +92,7 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 	 * @param seed the seed data.
 	 */
 	public PRNG(int seed) {
-		super(get16bytes((new BigInteger(seed + "")).toByteArray()));
+		this((new BigInteger(seed + "")).toByteArray());
 	}
 	
 	/**
@@ -75,7 +102,27 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 	 * @throws SeedException.
 	 */
 	public PRNG(SeedGenerator seedGenerator) throws SeedException {
-		super(seedGenerator);
+		super();
+		this.mt = new MersenneTwisterRNG(seedGenerator);
+	}
+	
+	/**
+	 * Returns the seed.
+	 * @return a copy of the seed data.
+	 */
+	public byte[] getSeed() {
+		return this.mt.getSeed();
+	}
+	
+	/**
+	 * Generates the next pseudo-random number, being the uppermost bits of the
+	 * next 32-bit output of the wrapped generator, like <code>MersenneTwisterRNG</code> does.
+	 * @param bits the number of random bits.
+	 * @return the number.
+	 */
+	@Override
+	protected int next(int bits) {
+		return (this.mt.nextInt() >>> (32 - bits));
 	}
 
 	@Override
@@ -97,7 +144,7 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 	 * @return the seed.
 	 */
 	public BigInteger getSeedAsBigInteger() {
-		return new BigInteger(super.getSeed());
+		return new BigInteger(this.getSeed());
 	}
 	
 	@Override
@@ -129,8 +176,24 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 	}
 	
 	@Override
-	public double nextGaussian() {
-		double b = super.nextGaussian();
+	public synchronized double nextGaussian() {
+		// Identical to java.util.Random's implementation.
+		double b;
+		if (this.haveNextNextGaussian) {
+			this.haveNextNextGaussian = false;
+			b = this.nextNextGaussian;
+		} else {
+			double v1, v2, s;
+			do {
+				v1 = 2 * this.nextDouble() - 1;
+				v2 = 2 * this.nextDouble() - 1;
+				s = v1 * v1 + v2 * v2;
+			} while (s >= 1 || s == 0);
+			double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+			this.nextNextGaussian = v2 * multiplier;
+			this.haveNextNextGaussian = true;
+			b = v1 * multiplier;
+		}
 		//System.out.println("nextGaussian(): " + b);
 		return b;
 	}
@@ -154,4 +217,47 @@ public class PRNG extends MersenneTwisterRNG implements InfoProvider {
 		super.nextBytes(bytes);
 		//System.out.println("nextBytes(bytes): ");
 	}
+
+	@Override
+	public synchronized void writeCheckpoint(DataOutput out) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(this.mt);
+		oos.close();
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+		out.writeBoolean(this.haveNextNextGaussian);
+		out.writeDouble(this.nextNextGaussian);
+	}
+
+	/**
+	 * Restores the generator state from a checkpoint. The seed is restored as well,
+	 * so that the original seed is reported also for a resumed chain.
+	 * @param in the checkpoint input.
+	 * @throws IOException.
+	 */
+	@Override
+	public synchronized void readCheckpoint(DataInput in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) {
+			throw new IOException("Invalid Mersenne twister state in checkpoint.");
+		}
+		byte[] bytes = new byte[n];
+		in.readFully(bytes);
+		Object restored;
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			restored = ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Invalid Mersenne twister state in checkpoint.", e);
+		} finally {
+			ois.close();
+		}
+		if (!(restored instanceof MersenneTwisterRNG)) {
+			throw new IOException("Invalid Mersenne twister state in checkpoint.");
+		}
+		this.haveNextNextGaussian = in.readBoolean();
+		this.nextNextGaussian = in.readDouble();
+		this.mt = (MersenneTwisterRNG) restored;
+	}
 }
@@ -87,6 +87,14 @@ public class UniformDistribution implements Continuous1DPDDependent {
 		return (this.ab.isWithin(x) ? 1.0 / this.ab.getWidth() : 0.0);
 	}
 
+	@Override
+	public void getLogPDF(double[] x, double[] logPDF, int n) {
+		double logDens = -Math.log(this.ab.getWidth());
+		for (int i = 0; i < n; ++i) {
+			logPDF[i] = (this.ab.isWithin(x[i]) ? logDens : Double.NEGATIVE_INFINITY);
+		}
+	}
+
 	@Override
 	public double getCDF(double x) {
 		if (x <= this.ab.getLowerBound()) {
@@ -0,0 +1,204 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.text.DecimalFormat;
+
+/**
+ * Represents a <code>TuningParameter</code> which is adapted during burn-in so that the
+ * acceptance ratio of a proposer approaches a target ratio. Every k-th iteration, the acceptance
+ * ratio r_j of the proposals made since the previous adaptation is read from the proposer's statistics,
+ * and the value v is updated by the Robbins-Monro rule log(v) += (r_j - target) / j^0.6,
+ * where j is the number of adaptations so far. Thus, a too high acceptance ratio yields a
+ * larger value, i.e., larger proposed state changes. After the burn-in, the value is frozen,
+ * so that the chain remains a valid MCMC chain.
+ * <p/>
+ * The tuning parameter must be used by a single proposer only, and the statistics must
+ * be those of that very proposer.
+ */
+public class AdaptiveTuningParameter implements TuningParameter, IterationListener, Checkpointable {
+
+	/** Minimum value. */
+	public static final double MIN_VALUE = 1e-4;
+
+	/** Maximum value. */
+	public static final double MAX_VALUE = 1e2;
+
+	/** Exponent of the decreasing step size. */
+	public static final double STEP_SIZE_EXPONENT = 0.6;
+
+	/** Iteration. */
+	protected Iteration iter;
+
+	/** Statistics of the tuned proposer. */
+	protected ProposerStatistics stats;
+
+	/** The value at iteration 0. */
+	protected double startValue;
+
+	/** Target acceptance ratio. */
+	protected double targetRatio;
+
+	/** Last iteration at which adaptation may occur. */
+	protected int burnIn;
+
+	/** Number of iterations between adaptations. */
+	protected int interval;
+
+	/** The current value. */
+	protected double value;
+
+	/** Number of adaptations performed. */
+	protected int noOfAdaptations;
+
+	/** Number of accepted proposals at the last adaptation, or when frozen. */
+	protected int lastAccepted;
+
+	/** Number of proposals at the last adaptation, or when frozen. */
+	protected int lastProposals;
+
+	/** True when adaptation has ended. */
+	protected boolean isFrozen;
+
+	/**
+	 * Constructor.
+	 * @param iter the iteration object.
+	 * @param stats the statistics of the tuned proposer.
+	 * @param startValue the value at iteration 0.
+	 * @param targetRatio the target acceptance ratio in (0,1).
+	 * @param burnIn the last iteration at which adaptation may occur.
+	 * @param interval the number of iterations between adaptations.
+	 */
+	public AdaptiveTuningParameter(Iteration iter, ProposerStatistics stats, double startValue, double targetRatio, int burnIn, int interval) {
+		if (iter == null || stats == null) {
+			throw new IllegalArgumentException("Iteration and statistics objects for adaptive tuning parameter must not be null.");
+		}
+		if (!(startValue >= MIN_VALUE && startValue <= MAX_VALUE)) {
+			throw new IllegalArgumentException("Start value for adaptive tuning parameter must be in [" + MIN_VALUE + "," + MAX_VALUE + "].");
+		}
+		if (!(targetRatio > 0.0 && targetRatio < 1.0)) {
+			throw new IllegalArgumentException("Target acceptance ratio for adaptive tuning parameter must be in (0,1).");
+		}
+		if (interval < 1) {
+			throw new IllegalArgumentException("Adaptation interval for adaptive tuning parameter must be at least 1.");
+		}
+		this.iter = iter;
+		this.stats = stats;
+		this.startValue = startValue;
+		this.targetRatio = targetRatio;
+		this.burnIn = burnIn;
+		this.interval = interval;
+		this.value = startValue;
+		this.noOfAdaptations = 0;
+		this.lastAccepted = 0;
+		this.lastProposals = 0;
+		this.isFrozen = false;
+		this.iter.addIterationListener(this);
+	}
+
+	@Override
+	public double getValue() {
+		return this.value;
+	}
+
+	@Override
+	public double getMinValue() {
+		return MIN_VALUE;
+	}
+
+	@Override
+	public double getMaxValue() {
+		return MAX_VALUE;
+	}
+
+	/**
+	 * Returns true if adaptation has ended.
+	 * @return true if frozen.
+	 */
+	public boolean isFrozen() {
+		return this.isFrozen;
+	}
+
+	/**
+	 * Returns the number of adaptations performed.
+	 * @return the number of adaptations.
+	 */
+	public int getNoOfAdaptations() {
+		return this.noOfAdaptations;
+	}
+
+	@Override
+	public void incrementPerformed(int iterCurr, int iterTotal) {
+		if (this.isFrozen) {
+			return;
+		}
+		if (iterCurr > this.burnIn) {
+			// Freeze, and henceforth count proposals from here on.
+			this.isFrozen = true;
+			this.lastAccepted = this.stats.getNoOfAcceptedProposals();
+			this.lastProposals = this.stats.getNoOfProposals();
+			return;
+		}
+		if (iterCurr % this.interval != 0) {
+			return;
+		}
+		int n = this.stats.getNoOfProposals() - this.lastProposals;
+		if (n <= 0) {
+			return;
+		}
+		double ratio = (this.stats.getNoOfAcceptedProposals() - this.lastAccepted) / (double) n;
+		this.noOfAdaptations++;
+		double gamma = 1.0 / Math.pow(this.noOfAdaptations, STEP_SIZE_EXPONENT);
+		this.value = Math.min(Math.max(this.value * Math.exp(gamma * (ratio - this.targetRatio)), MIN_VALUE), MAX_VALUE);
+		this.lastAccepted = this.stats.getNoOfAcceptedProposals();
+		this.lastProposals = this.stats.getNoOfProposals();
+	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		out.writeDouble(this.value);
+		out.writeInt(this.noOfAdaptations);
+		out.writeInt(this.lastAccepted);
+		out.writeInt(this.lastProposals);
+		out.writeBoolean(this.isFrozen);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		this.value = in.readDouble();
+		this.noOfAdaptations = in.readInt();
+		this.lastAccepted = in.readInt();
+		this.lastProposals = in.readInt();
+		this.isFrozen = in.readBoolean();
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(prefix).append("ADAPTIVE TUNING PARAMETER\n");
+		sb.append(prefix).append("Start value: ").append(this.startValue).append('\n');
+		sb.append(prefix).append("Target acceptance ratio: ").append(this.targetRatio).append('\n');
+		sb.append(prefix).append("Adaptation interval: ").append(this.interval).append('\n');
+		sb.append(prefix).append("Adaptation until iteration: ").append(this.burnIn).append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(prefix).append("ADAPTIVE TUNING PARAMETER\n");
+		sb.append(prefix).append("Final value: ").append(this.value).append('\n');
+		sb.append(prefix).append("Number of adaptations: ").append(this.noOfAdaptations).append('\n');
+		if (this.isFrozen) {
+			int n = this.stats.getNoOfProposals() - this.lastProposals;
+			DecimalFormat df = new DecimalFormat("#.###");
+			sb.append(prefix).append("Acceptance ratio after adaptation: ")
+				.append(n == 0 ? "N/A" : df.format((this.stats.getNoOfAcceptedProposals() - this.lastAccepted) / (double) n)).append('\n');
+		} else {
+			sb.append(prefix).append("Adaptation not completed.\n");
+		}
+		return sb.toString();
+	}
+
+}
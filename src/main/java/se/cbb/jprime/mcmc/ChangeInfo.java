@@ -89,7 +89,27 @@ public class ChangeInfo {
 		for (int x : unionhs) { union[i++] = x; }
 		return union;
 	}
-	
+
+	/**
+	 * Helper. Returns the union of the affected elements of changes, where changes which are null
+	 * are ignored. If any non-null change does not detail its affected elements, null is returned.
+	 * The returned elements have been "uniqified".
+	 * @param infos the changes. May contain null.
+	 * @return the union of the affected elements; empty if all changes are null.
+	 */
+	public static int[] getAffectedElements(ChangeInfo... infos) {
+		HashSet<Integer> unionhs = new HashSet<Integer>();
+		for (ChangeInfo info : infos) {
+			if (info == null) { continue; }
+			if (info.affectedElements == null) { return null; }
+			for (int x : info.affectedElements) { unionhs.add(x); }
+		}
+		int[] union = new int[unionhs.size()];
+		int i = 0;
+		for (int x : unionhs) { union[i++] = x; }
+		return union;
+	}
+
 	/**
 	 * Returns the object which the information refers to.
 	 * @return the changed object.
@@ -115,4 +135,13 @@ public class ChangeInfo {
 	public int[] getAffectedElements() {
 		return this.affectedElements;
 	}
+	
+	/**
+	 * Sets the affected elements. Enables an object to reuse a single instance
+	 * for its changes rather than creating a new one each time.
+	 * @param affectedElements the indices of affected elements. May be null.
+	 */
+	public void setAffectedElements(int[] affectedElements) {
+		this.affectedElements = affectedElements;
+	}
 }
@@ -0,0 +1,233 @@
+package se.cbb.jprime.mcmc;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map holding the change info of the dependents perturbed or updated during an MCMC iteration.
+ * Dependents are registered beforehand and thereby obtain dense integer IDs, and the change info
+ * of each such dependent is held in a preallocated slot. Each slot is stamped with a generation counter,
+ * so that clearing the map in-between iterations amounts to incrementing the current generation.
+ * Consequently, no objects are created when accessing registered dependents. Unregistered
+ * dependents are supported too, albeit stored in an ordinary hash map.
+ * <p/>
+ * Keys are compared by identity, not equality. The entry set is a snapshot that is not backed by the map.
+ * <p/>
+ * Distinct registered dependents may put their change info concurrently, as they write to separate
+ * slots only. All other modifications require exclusive access.
+ */
+public class ChangeInfoMap extends AbstractMap<Dependent, ChangeInfo> {
+
+	/** IDs of registered dependents. */
+	private IdentityHashMap<Dependent, Integer> ids;
+
+	/** Registered dependents, indexed by ID. */
+	private Dependent[] dependents;
+
+	/** Change info slots, indexed by ID. Only valid if the slot's generation is current. */
+	private ChangeInfo[] infos;
+
+	/** Generation of each slot. */
+	private int[] generations;
+
+	/** Current generation. */
+	private int generation;
+
+	/** Number of registered dependents. */
+	private int noOfRegistered;
+
+	/** Change info of unregistered dependents. */
+	private HashMap<Dependent, ChangeInfo> unregistered;
+
+	/**
+	 * Constructor.
+	 * @param capacity initial capacity of registered dependents.
+	 */
+	public ChangeInfoMap(int capacity) {
+		capacity = Math.max(capacity, 4);
+		this.ids = new IdentityHashMap<Dependent, Integer>(capacity);
+		this.dependents = new Dependent[capacity];
+		this.infos = new ChangeInfo[capacity];
+		this.generations = new int[capacity];
+		this.generation = 1;
+		this.noOfRegistered = 0;
+		this.unregistered = new HashMap<Dependent, ChangeInfo>(4);
+	}
+
+	/**
+	 * Registers a dependent. Has no effect if already registered.
+	 * @param dep the dependent.
+	 * @return the ID of the dependent.
+	 */
+	public int register(Dependent dep) {
+		Integer id = this.ids.get(dep);
+		if (id != null) {
+			return id;
+		}
+		if (this.noOfRegistered == this.dependents.length) {
+			int cap = this.dependents.length * 2;
+			this.dependents = Arrays.copyOf(this.dependents, cap);
+			this.infos = Arrays.copyOf(this.infos, cap);
+			this.generations = Arrays.copyOf(this.generations, cap);
+		}
+		int i = this.noOfRegistered++;
+		this.dependents[i] = dep;
+		this.ids.put(dep, i);
+		ChangeInfo info = this.unregistered.remove(dep);
+		if (info != null) {
+			this.infos[i] = info;
+			this.generations[i] = this.generation;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the ID of a dependent.
+	 * @param dep the dependent.
+	 * @return the ID; -1 if not registered.
+	 */
+	public int getId(Object dep) {
+		Integer id = this.ids.get(dep);
+		return (id == null ? -1 : id);
+	}
+
+	/**
+	 * Returns the number of registered dependents.
+	 * @return the number of dependents.
+	 */
+	public int getNoOfRegistered() {
+		return this.noOfRegistered;
+	}
+
+	/**
+	 * Returns true if there is change info for a registered dependent.
+	 * @param id the ID of the dependent.
+	 * @return true if changed.
+	 */
+	public boolean isChanged(int id) {
+		return (this.generations[id] == this.generation);
+	}
+
+	/**
+	 * Returns true if there is change info for any of a number of registered dependents.
+	 * @param ids the IDs of the dependents.
+	 * @return true if any has changed.
+	 */
+	public boolean isAnyChanged(int[] ids) {
+		for (int i = 0; i < ids.length; ++i) {
+			if (this.generations[ids[i]] == this.generation) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the change info of a registered dependent.
+	 * @param id the ID of the dependent.
+	 * @return the change info; null if unchanged.
+	 */
+	public ChangeInfo get(int id) {
+		return (this.generations[id] == this.generation ? this.infos[id] : null);
+	}
+
+	@Override
+	public ChangeInfo get(Object key) {
+		Integer id = this.ids.get(key);
+		if (id == null) {
+			return (this.unregistered.isEmpty() ? null : this.unregistered.get(key));
+		}
+		return this.get(id.intValue());
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		Integer id = this.ids.get(key);
+		if (id == null) {
+			return (!this.unregistered.isEmpty() && this.unregistered.containsKey(key));
+		}
+		return this.isChanged(id.intValue());
+	}
+
+	@Override
+	public ChangeInfo put(Dependent key, ChangeInfo value) {
+		Integer id = this.ids.get(key);
+		if (id == null) {
+			return this.unregistered.put(key, value);
+		}
+		int i = id.intValue();
+		ChangeInfo old = this.get(i);
+		this.infos[i] = value;
+		this.generations[i] = this.generation;
+		return old;
+	}
+
+	@Override
+	public ChangeInfo remove(Object key) {
+		Integer id = this.ids.get(key);
+		if (id == null) {
+			return (this.unregistered.isEmpty() ? null : this.unregistered.remove(key));
+		}
+		int i = id.intValue();
+		ChangeInfo old = this.get(i);
+		if (this.generations[i] == this.generation) {
+			this.generations[i] = 0;
+			this.infos[i] = null;
+		}
+		return old;
+	}
+
+	/**
+	 * Removes all change info. For registered dependents, this is done in constant time.
+	 */
+	@Override
+	public void clear() {
+		if (this.generation == Integer.MAX_VALUE) {
+			Arrays.fill(this.generations, 0);
+			this.generation = 0;
+		}
+		this.generation++;
+		if (!this.unregistered.isEmpty()) {
+			this.unregistered.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of current entries. Takes time linear in the number of registered dependents.
+	 * @return the number of entries.
+	 */
+	@Override
+	public int size() {
+		int sz = this.unregistered.size();
+		for (int i = 0; i < this.noOfRegistered; ++i) {
+			if (this.generations[i] == this.generation) {
+				sz++;
+			}
+		}
+		return sz;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return (this.size() == 0);
+	}
+
+	@Override
+	public Set<Map.Entry<Dependent, ChangeInfo>> entrySet() {
+		LinkedHashSet<Map.Entry<Dependent, ChangeInfo>> entries = new LinkedHashSet<Map.Entry<Dependent, ChangeInfo>>(this.size() * 2 + 1);
+		for (int i = 0; i < this.noOfRegistered; ++i) {
+			if (this.generations[i] == this.generation) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<Dependent, ChangeInfo>(this.dependents[i], this.infos[i]));
+			}
+		}
+		entries.addAll(this.unregistered.entrySet());
+		return Collections.unmodifiableSet(entries);
+	}
+
+}
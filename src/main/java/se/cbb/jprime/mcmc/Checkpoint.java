@@ -0,0 +1,233 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import se.cbb.jprime.math.LogDouble;
+
+/**
+ * Helpers for reading and writing binary MCMC checkpoints, see <code>Checkpointable</code>.
+ * A checkpoint file consists of a magic number and a format version, followed by the state
+ * of the <code>MCMCManager</code> and its constituents. Files are replaced atomically, so that
+ * a crash while writing leaves the previous checkpoint intact.
+ */
+public class Checkpoint {
+
+	/** Magic number ("JPCK") at the beginning of a checkpoint file. */
+	public static final int MAGIC = 0x4A50434B;
+	
+	/** Current format version. */
+	public static final int VERSION = 1;
+	
+	/**
+	 * Opens a checkpoint file for writing to a temporary file next to the target. The
+	 * header is written immediately. Use <code>commit(...)</code> after closing the stream.
+	 * @param f the target checkpoint file.
+	 * @return the output stream.
+	 * @throws IOException.
+	 */
+	public static DataOutputStream openForWriting(File f) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getTempFile(f)), 65536));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		return out;
+	}
+	
+	/**
+	 * Atomically replaces the target checkpoint file with the temporary file just written.
+	 * @param f the target checkpoint file.
+	 * @throws IOException.
+	 */
+	public static void commit(File f) throws IOException {
+		try {
+			Files.move(getTempFile(f).toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(getTempFile(f).toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Opens a checkpoint file for reading, validating its header.
+	 * @param f the checkpoint file.
+	 * @return the input stream.
+	 * @throws IOException if unreadable or not a valid checkpoint.
+	 */
+	public static DataInputStream openForReading(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 65536));
+		if (in.readInt() != MAGIC) {
+			in.close();
+			throw new IOException("Not a valid checkpoint file: " + f);
+		}
+		int v = in.readInt();
+		if (v != VERSION) {
+			in.close();
+			throw new IOException("Unsupported checkpoint format version " + v + " in " + f);
+		}
+		return in;
+	}
+	
+	/**
+	 * Returns the temporary file used while writing a checkpoint.
+	 * @param f the target checkpoint file.
+	 * @return the temporary file.
+	 */
+	private static File getTempFile(File f) {
+		return new File(f.getPath() + ".tmp");
+	}
+	
+	/**
+	 * Writes a string of arbitrary length, possibly null.
+	 * @param out output.
+	 * @param s the string.
+	 * @throws IOException.
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+	
+	/**
+	 * Reads a string written with <code>writeString(...)</code>.
+	 * @param in input.
+	 * @return the string, possibly null.
+	 * @throws IOException.
+	 */
+	public static String readString(DataInput in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] b = new byte[len];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Writes a log-double, possibly null.
+	 * @param out output.
+	 * @param d the value.
+	 * @throws IOException.
+	 */
+	public static void writeLogDouble(DataOutput out, LogDouble d) throws IOException {
+		out.writeBoolean(d != null);
+		if (d != null) {
+			out.writeDouble(d.getLogValue());
+			out.writeInt(d.getSign());
+		}
+	}
+	
+	/**
+	 * Reads a log-double written with <code>writeLogDouble(...)</code>.
+	 * @param in input.
+	 * @return the value, possibly null.
+	 * @throws IOException.
+	 */
+	public static LogDouble readLogDouble(DataInput in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		double p = in.readDouble();
+		int sign = in.readInt();
+		return new LogDouble(p, sign);
+	}
+	
+	/**
+	 * Writes an int array, possibly null.
+	 * @param out output.
+	 * @param a the array.
+	 * @throws IOException.
+	 */
+	public static void writeIntArray(DataOutput out, int[] a) throws IOException {
+		if (a == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(a.length);
+		for (int x : a) {
+			out.writeInt(x);
+		}
+	}
+	
+	/**
+	 * Reads an int array written with <code>writeIntArray(...)</code>.
+	 * @param in input.
+	 * @return the array, possibly null.
+	 * @throws IOException.
+	 */
+	public static int[] readIntArray(DataInput in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			return null;
+		}
+		int[] a = new int[len];
+		for (int i = 0; i < len; ++i) {
+			a[i] = in.readInt();
+		}
+		return a;
+	}
+	
+	/**
+	 * Writes a double array, possibly null.
+	 * @param out output.
+	 * @param a the array.
+	 * @throws IOException.
+	 */
+	public static void writeDoubleArray(DataOutput out, double[] a) throws IOException {
+		if (a == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(a.length);
+		for (double x : a) {
+			out.writeDouble(x);
+		}
+	}
+	
+	/**
+	 * Reads a double array written with <code>writeDoubleArray(...)</code>.
+	 * @param in input.
+	 * @return the array, possibly null.
+	 * @throws IOException.
+	 */
+	public static double[] readDoubleArray(DataInput in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			return null;
+		}
+		double[] a = new double[len];
+		for (int i = 0; i < len; ++i) {
+			a[i] = in.readDouble();
+		}
+		return a;
+	}
+	
+	/**
+	 * Reads a name and verifies that it matches the expected one.
+	 * @param in input.
+	 * @param expected the expected name.
+	 * @throws IOException if the names differ.
+	 */
+	public static void readAndMatchName(DataInput in, String expected) throws IOException {
+		String name = readString(in);
+		if (expected == null ? name != null : !expected.equals(name)) {
+			throw new IOException("Checkpoint does not match current chain: expected " + expected + " but found " + name + ".");
+		}
+	}
+}
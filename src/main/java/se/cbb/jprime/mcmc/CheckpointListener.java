@@ -0,0 +1,17 @@
+package se.cbb.jprime.mcmc;
+
+/**
+ * Interface for dependents that hold derived data which is not fully determined by the
+ * current state, e.g. lookup caches with lossy keys or LRU eviction. Such data must be
+ * discarded whenever a checkpoint is written or read, so that a resumed chain proceeds
+ * exactly like the original one.
+ */
+public interface CheckpointListener {
+
+	/**
+	 * Callback invoked prior to the dependent being rebuilt from scratch in connection
+	 * with a checkpoint being written or read.
+	 */
+	public void checkpointPerformed();
+	
+}
@@ -0,0 +1,31 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface for objects whose state is stored in, and restored from, a binary checkpoint
+ * of an MCMC chain, see <code>MCMCManager</code>. Only the "true" state should be included, i.e., that
+ * which cannot be recomputed from other objects. In particular, cached data structures of
+ * <code>ProperDependent</code> objects are rebuilt rather than stored.
+ * <p/>
+ * The state must be read in exactly the same order as it was written.
+ */
+public interface Checkpointable {
+
+	/**
+	 * Writes the state of this object to a checkpoint.
+	 * @param out the checkpoint output.
+	 * @throws IOException if unable to write.
+	 */
+	public void writeCheckpoint(DataOutput out) throws IOException;
+	
+	/**
+	 * Restores the state of this object from a checkpoint.
+	 * @param in the checkpoint input.
+	 * @throws IOException if unable to read, or if the checkpoint does not match this object.
+	 */
+	public void readCheckpoint(DataInput in) throws IOException;
+	
+}
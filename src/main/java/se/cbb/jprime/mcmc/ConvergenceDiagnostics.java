@@ -0,0 +1,536 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import se.cbb.jprime.io.DoubleSampleable;
+import se.cbb.jprime.io.IntSampleable;
+import se.cbb.jprime.io.LogDoubleSampleable;
+import se.cbb.jprime.io.NewickIOException;
+import se.cbb.jprime.io.NewickTree;
+import se.cbb.jprime.io.NewickVertex;
+import se.cbb.jprime.io.SampleNewickTree;
+import se.cbb.jprime.io.Sampleable;
+import se.cbb.jprime.io.Sampleable.SamplingMode;
+import se.cbb.jprime.io.SnapshotSampleable;
+
+/**
+ * Streaming convergence diagnostics of an MCMC chain. Fed with every sampled state by the
+ * <code>MCMCManager</code>, it maintains effective sample size (ESS) estimates, see <code>ESSEstimator</code>,
+ * for every scalar numeric sampleable (integers, doubles and log-doubles, the latter in log-form),
+ * and clade frequencies for every sampled Newick tree. For trees, the ESS of the presence/absence
+ * trace of each clade is estimated, and the minimum over clades with a frequency of at least
+ * <code>MIN_CLADE_FREQUENCY</code> is reported. Only the clades of a sampled tree are updated;
+ * the absences of a clade since it was last present are filled in when its ESS is requested. The iteration counter, arrays and non-numeric
+ * sampleables are not tracked.
+ * <p/>
+ * Since the values have already been output when the diagnostics are fed, and obtaining them again might
+ * have side effects, <code>getSampleValue(...)</code> is never invoked. Scalars are only tracked for
+ * sampleables providing typed values, see e.g. <code>DoubleSampleable</code>, and trees only for
+ * <code>SnapshotSampleable</code> objects, whose Newick strings are assembled from a private snapshot.
+ * <p/>
+ * Samples up to a burn-in iteration are ignored. Optionally, a report is written to an info output
+ * regularly, and the chain may be stopped once every tracked quantity has reached an ESS threshold.
+ * Quantities which have remained constant do not prevent stopping, but the chain is never stopped
+ * before <code>MIN_NO_OF_SAMPLES</code> samples have been obtained after burn-in.
+ */
+public class ConvergenceDiagnostics implements InfoProvider, Checkpointable {
+
+	/** Minimum frequency of a clade for it to be considered when stopping. */
+	public static final double MIN_CLADE_FREQUENCY = 0.1;
+
+	/** Minimum number of samples after burn-in before the chain may be stopped. */
+	public static final int MIN_NO_OF_SAMPLES = 256;
+
+	/** Iteration counter. Not tracked. */
+	private Iteration iteration;
+
+	/** Last iteration which is ignored. */
+	private int burnIn;
+
+	/** ESS threshold for stopping the chain. NaN if not used. */
+	private double essThreshold;
+
+	/** Info output for regular reports. Null if not used. */
+	private Writer info;
+
+	/** Number of iterations between reports. */
+	private int reportInterval;
+
+	/** Prefix of reports. */
+	private String reportPrefix;
+
+	/** Names of tracked scalar quantities. Null until the first sample. */
+	private ArrayList<String> names;
+
+	/** Indices of tracked scalar quantities in the list of sampleables. */
+	private ArrayList<Integer> indices;
+
+	/** ESS estimators of tracked scalar quantities. */
+	private ArrayList<ESSEstimator> estimators;
+
+	/** Names of tracked trees. */
+	private ArrayList<String> treeNames;
+
+	/** Indices of tracked trees in the list of sampleables. */
+	private ArrayList<Integer> treeIndices;
+
+	/** Snapshot holders of tracked trees. Null until first needed. */
+	private Object[] treeSnapshots = null;
+
+	/** For each tracked tree, the presence traces of all clades encountered so far, in order of appearance. */
+	private ArrayList<LinkedHashMap<String, CladeTrace>> clades;
+
+	/** Number of samples taken into account. */
+	private long noOfSamples;
+
+	/** Iteration of the last sample, -1 if none. */
+	private int lastIteration;
+
+	/** Iteration at which the threshold was reached, -1 if not reached. */
+	private int convergedIteration;
+
+	/**
+	 * Presence trace of a clade.
+	 */
+	private static class CladeTrace {
+
+		/** Number of samples containing the clade. */
+		long count = 0;
+
+		/** ESS estimator of the 0/1-trace, up to the last sample containing the clade. */
+		ESSEstimator ess = new ESSEstimator();
+	}
+
+	/**
+	 * Constructor.
+	 * @param iteration the iteration counter of the chain.
+	 * @param burnIn the last iteration to be ignored.
+	 * @param essThreshold the ESS threshold for stopping the chain; NaN if the chain should not be stopped.
+	 */
+	public ConvergenceDiagnostics(Iteration iteration, int burnIn, double essThreshold) {
+		if (burnIn < 0) {
+			throw new IllegalArgumentException("Diagnostics burn-in must be non-negative.");
+		}
+		if (!Double.isNaN(essThreshold) && !(essThreshold > 0.0)) {
+			throw new IllegalArgumentException("ESS threshold must be positive.");
+		}
+		this.iteration = iteration;
+		this.burnIn = burnIn;
+		this.essThreshold = essThreshold;
+		this.info = null;
+		this.reportInterval = 0;
+		this.reportPrefix = "";
+		this.noOfSamples = 0;
+		this.lastIteration = -1;
+		this.convergedIteration = -1;
+	}
+
+	/**
+	 * Enables regular reports. The output may be shared between chains, and is therefore synchronised upon.
+	 * @param info the info output.
+	 * @param interval the number of iterations between reports.
+	 * @param prefix prefix of each report line, e.g. identifying the chain.
+	 */
+	public void setReporting(Writer info, int interval, String prefix) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Diagnostics report interval must be at least 1.");
+		}
+		this.info = info;
+		this.reportInterval = interval;
+		this.reportPrefix = prefix;
+	}
+
+	/**
+	 * Returns true if stopping the chain at an ESS threshold is enabled.
+	 * @return true if enabled.
+	 */
+	public boolean isStoppingEnabled() {
+		return !Double.isNaN(this.essThreshold);
+	}
+
+	/**
+	 * Sets up the tracked quantities from the sampleables of the chain.
+	 * @param sampleables the sampleables.
+	 */
+	private void setUp(List<Sampleable> sampleables) {
+		this.names = new ArrayList<String>();
+		this.indices = new ArrayList<Integer>();
+		this.estimators = new ArrayList<ESSEstimator>();
+		this.treeNames = new ArrayList<String>();
+		this.treeIndices = new ArrayList<Integer>();
+		this.clades = new ArrayList<LinkedHashMap<String, CladeTrace>>();
+		for (int i = 0; i < sampleables.size(); ++i) {
+			Sampleable s = sampleables.get(i);
+			if (s == this.iteration) {
+				continue;
+			}
+			if (s instanceof DoubleSampleable || s instanceof IntSampleable || s instanceof LogDoubleSampleable) {
+				this.names.add(s.getSampleHeader());
+				this.indices.add(i);
+				this.estimators.add(new ESSEstimator());
+			} else if (s instanceof SnapshotSampleable && s.getSampleType() == SampleNewickTree.class) {
+				this.treeNames.add(s.getSampleHeader());
+				this.treeIndices.add(i);
+				this.clades.add(new LinkedHashMap<String, CladeTrace>());
+			}
+		}
+	}
+
+	/**
+	 * Adds the current state of the chain as a sample, and writes a report if due.
+	 * @param sampleables the sampleables of the chain, in the same order for every invocation.
+	 * @throws IOException if unable to write a report.
+	 */
+	public void addSample(List<Sampleable> sampleables) throws IOException {
+		if (this.names == null) {
+			this.setUp(sampleables);
+		}
+		int iter = this.iteration.getIteration();
+		if (iter > this.burnIn) {
+			for (int i = 0; i < this.indices.size(); ++i) {
+				double x = getValue(sampleables.get(this.indices.get(i)));
+				if (!Double.isNaN(x) && !Double.isInfinite(x)) {
+					this.estimators.get(i).add(x);
+				}
+			}
+			if (this.treeSnapshots == null) {
+				this.treeSnapshots = new Object[this.treeIndices.size()];
+			}
+			for (int i = 0; i < this.treeIndices.size(); ++i) {
+				SnapshotSampleable s = (SnapshotSampleable) sampleables.get(this.treeIndices.get(i));
+				if (this.treeSnapshots[i] == null) {
+					this.treeSnapshots[i] = s.createSnapshot();
+				}
+				s.copyToSnapshot(this.treeSnapshots[i], SamplingMode.ORDINARY);
+				this.addTree(i, s.getSnapshotValue(this.treeSnapshots[i], SamplingMode.ORDINARY));
+			}
+			this.noOfSamples++;
+			if (this.convergedIteration < 0 && this.isStoppingEnabled() && this.isAboveThreshold()) {
+				this.convergedIteration = iter;
+			}
+		}
+		if (this.info != null && this.lastIteration >= 0 && iter / this.reportInterval > this.lastIteration / this.reportInterval) {
+			String report = this.getReport(this.reportPrefix);
+			synchronized (this.info) {
+				this.info.write(report);
+				this.info.flush();
+			}
+		}
+		this.lastIteration = iter;
+	}
+
+	/**
+	 * Returns the typed value of a tracked scalar sampleable.
+	 * @param s the sampleable.
+	 * @return the value, log-form for log-doubles.
+	 */
+	private static double getValue(Sampleable s) {
+		if (s instanceof LogDoubleSampleable) {
+			return ((LogDoubleSampleable) s).getSampleLogDouble(SamplingMode.ORDINARY).getLogValue();
+		}
+		if (s instanceof DoubleSampleable) {
+			return ((DoubleSampleable) s).getSampleDouble(SamplingMode.ORDINARY);
+		}
+		return ((IntSampleable) s).getSampleInt(SamplingMode.ORDINARY);
+	}
+
+	/**
+	 * Adds a sampled tree.
+	 * @param i the index of the tracked tree.
+	 * @param newick the tree in Newick format.
+	 */
+	private void addTree(int i, String newick) {
+		HashSet<String> current = new HashSet<String>();
+		try {
+			NewickTree tree = SampleNewickTree.toNewickTree(newick);
+			collectClades(tree.getRoot(), true, current, new ArrayList<String>());
+		} catch (NewickIOException e) {
+			throw new IllegalArgumentException("Could not parse sampled tree for convergence diagnostics.", e);
+		}
+		LinkedHashMap<String, CladeTrace> traces = this.clades.get(i);
+		for (String clade : current) {
+			CladeTrace t = traces.get(clade);
+			if (t == null) {
+				t = new CladeTrace();
+				traces.put(clade, t);
+			}
+			// Samples since the clade was last present lacked the clade.
+			t.ess.add(0.0, this.noOfSamples - t.ess.getNoOfValues());
+			t.count++;
+			t.ess.add(1.0);
+		}
+	}
+
+	/**
+	 * Returns the ESS estimator of the complete presence trace of a clade, i.e., with the absences
+	 * since the clade was last present filled in. The estimator of the clade itself is not altered.
+	 * @param t the clade's trace.
+	 * @return the estimator.
+	 */
+	private ESSEstimator getCompleteTrace(CladeTrace t) {
+		long missing = this.noOfSamples - t.ess.getNoOfValues();
+		if (missing == 0) {
+			return t.ess;
+		}
+		ESSEstimator est = new ESSEstimator(t.ess);
+		est.add(0.0, missing);
+		return est;
+	}
+
+	/**
+	 * Recursively collects the clades of a tree, each as a sorted, comma-separated list of leaf names.
+	 * The root clade and leaves are excluded.
+	 * @param v the current vertex.
+	 * @param isRoot true if the vertex is the root.
+	 * @param clades the clades found.
+	 * @param leaves filled with the leaf names of the subtree of v.
+	 */
+	private static void collectClades(NewickVertex v, boolean isRoot, Set<String> clades, List<String> leaves) {
+		if (v.isLeaf()) {
+			leaves.add(v.getName());
+			return;
+		}
+		ArrayList<String> sub = new ArrayList<String>();
+		for (NewickVertex c : v.getChildren()) {
+			collectClades(c, false, clades, sub);
+		}
+		if (!isRoot) {
+			Collections.sort(sub);
+			StringBuilder sb = new StringBuilder(sub.size() * 16);
+			for (int j = 0; j < sub.size(); ++j) {
+				sb.append(j == 0 ? "" : ",").append(sub.get(j));
+			}
+			clades.add(sb.toString());
+		}
+		leaves.addAll(sub);
+	}
+
+	/**
+	 * Returns the ESS of a tracked tree, i.e., the minimum ESS of the presence traces of clades with
+	 * a frequency of at least <code>MIN_CLADE_FREQUENCY</code>.
+	 * @param i the index of the tracked tree.
+	 * @return the ESS; NaN if no clade qualifies, e.g. if the topology is fixed, or if there are too few samples.
+	 */
+	private double getTreeESS(int i) {
+		double min = Double.NaN;
+		for (CladeTrace t : this.clades.get(i).values()) {
+			double freq = t.count / (double) this.noOfSamples;
+			// Every clade has been present at least once, so the trace is constant if never absent.
+			if (freq >= MIN_CLADE_FREQUENCY && t.count < this.noOfSamples) {
+				double ess = this.getCompleteTrace(t).getESS();
+				if (Double.isNaN(ess)) {
+					return Double.NaN;
+				}
+				min = (Double.isNaN(min) ? ess : Math.min(min, ess));
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Returns true if every tracked non-constant quantity has reached the ESS threshold.
+	 * @return true if the threshold has been reached.
+	 */
+	private boolean isAboveThreshold() {
+		if (this.noOfSamples < MIN_NO_OF_SAMPLES) {
+			return false;
+		}
+		for (int i = 0; i < this.estimators.size(); ++i) {
+			ESSEstimator est = this.estimators.get(i);
+			if (!est.isConstant() && !(est.getESS() >= this.essThreshold)) {
+				return false;
+			}
+		}
+		for (int i = 0; i < this.clades.size(); ++i) {
+			boolean isFixed = true;
+			for (CladeTrace t : this.clades.get(i).values()) {
+				if (t.count < this.noOfSamples) {
+					isFixed = false;
+					break;
+				}
+			}
+			if (!isFixed && !(this.getTreeESS(i) >= this.essThreshold)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the chain has reached the ESS threshold, and should thus be stopped.
+	 * @return true if converged according to the threshold; false if not, or if stopping is not enabled.
+	 */
+	public boolean isConverged() {
+		return (this.convergedIteration >= 0);
+	}
+
+	/**
+	 * Returns the ESS estimate of a tracked quantity or tree.
+	 * @param name the sample header of the quantity.
+	 * @return the ESS; NaN if undefined.
+	 */
+	public double getESS(String name) {
+		if (this.names != null) {
+			int i = this.names.indexOf(name);
+			if (i >= 0) {
+				return this.estimators.get(i).getESS();
+			}
+			i = this.treeNames.indexOf(name);
+			if (i >= 0) {
+				return this.getTreeESS(i);
+			}
+		}
+		throw new IllegalArgumentException("No tracked quantity named " + name + ".");
+	}
+
+	/**
+	 * Returns the current diagnostics.
+	 * @param prefix line prefix.
+	 * @return the report.
+	 */
+	private String getReport(String prefix) {
+		StringBuilder sb = new StringBuilder(1024);
+		DecimalFormat df = new DecimalFormat("#.#");
+		sb.append(prefix).append("CONVERGENCE DIAGNOSTICS AT ITERATION ").append(this.iteration.getIteration()).append('\n');
+		sb.append(prefix).append("Samples after burn-in: ").append(this.noOfSamples).append('\n');
+		if (this.names == null) {
+			return sb.toString();
+		}
+		for (int i = 0; i < this.names.size(); ++i) {
+			ESSEstimator est = this.estimators.get(i);
+			sb.append(prefix).append(this.names.get(i)).append(": ESS = ");
+			sb.append(est.isConstant() ? "N/A (constant)" : (Double.isNaN(est.getESS()) ? "N/A" : df.format(est.getESS())));
+			sb.append(", mean = ").append(est.getMean()).append('\n');
+		}
+		for (int i = 0; i < this.treeNames.size(); ++i) {
+			double ess = this.getTreeESS(i);
+			sb.append(prefix).append(this.treeNames.get(i)).append(": clades = ").append(this.clades.get(i).size())
+				.append(", min ESS of clades with frequency >= ").append(MIN_CLADE_FREQUENCY).append(" = ")
+				.append(Double.isNaN(ess) ? "N/A" : df.format(ess)).append('\n');
+		}
+		if (this.isStoppingEnabled()) {
+			sb.append(prefix).append("ESS threshold ").append(this.essThreshold)
+				.append(this.isConverged() ? " reached at iteration " + this.convergedIteration : " not reached").append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(prefix).append("CONVERGENCE DIAGNOSTICS\n");
+		sb.append(prefix).append("Burn-in iterations: ").append(this.burnIn).append('\n');
+		sb.append(prefix).append("ESS threshold for stopping: ").append(this.isStoppingEnabled() ? "" + this.essThreshold : "None").append('\n');
+		sb.append(prefix).append("Report interval: ").append(this.info == null ? "None" : "" + this.reportInterval).append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(4096);
+		sb.append(this.getReport(prefix));
+		if (this.clades != null) {
+			DecimalFormat ff = new DecimalFormat("#.###");
+			for (int i = 0; i < this.treeNames.size(); ++i) {
+				ArrayList<Map.Entry<String, CladeTrace>> l = new ArrayList<Map.Entry<String, CladeTrace>>(this.clades.get(i).entrySet());
+				Collections.sort(l, new Comparator<Map.Entry<String, CladeTrace>>() {
+					@Override
+					public int compare(Map.Entry<String, CladeTrace> a, Map.Entry<String, CladeTrace> b) {
+						return Long.compare(b.getValue().count, a.getValue().count);
+					}
+				});
+				sb.append(prefix).append("Clade frequencies >= ").append(MIN_CLADE_FREQUENCY).append(" of ").append(this.treeNames.get(i)).append(":\n");
+				for (Map.Entry<String, CladeTrace> e : l) {
+					double freq = e.getValue().count / (double) this.noOfSamples;
+					if (freq < MIN_CLADE_FREQUENCY) {
+						break;
+					}
+					sb.append(prefix).append('\t').append(ff.format(freq)).append("\t{").append(e.getKey()).append("}\n");
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		out.writeLong(this.noOfSamples);
+		out.writeInt(this.lastIteration);
+		out.writeInt(this.convergedIteration);
+		out.writeBoolean(this.names != null);
+		if (this.names == null) {
+			return;
+		}
+		out.writeInt(this.names.size());
+		for (int i = 0; i < this.names.size(); ++i) {
+			Checkpoint.writeString(out, this.names.get(i));
+			out.writeInt(this.indices.get(i));
+			this.estimators.get(i).writeCheckpoint(out);
+		}
+		out.writeInt(this.treeNames.size());
+		for (int i = 0; i < this.treeNames.size(); ++i) {
+			Checkpoint.writeString(out, this.treeNames.get(i));
+			out.writeInt(this.treeIndices.get(i));
+			out.writeInt(this.clades.get(i).size());
+			for (Map.Entry<String, CladeTrace> e : this.clades.get(i).entrySet()) {
+				Checkpoint.writeString(out, e.getKey());
+				out.writeLong(e.getValue().count);
+				e.getValue().ess.writeCheckpoint(out);
+			}
+		}
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		this.noOfSamples = in.readLong();
+		this.lastIteration = in.readInt();
+		this.convergedIteration = in.readInt();
+		if (!in.readBoolean()) {
+			this.names = null;
+			return;
+		}
+		this.names = new ArrayList<String>();
+		this.indices = new ArrayList<Integer>();
+		this.estimators = new ArrayList<ESSEstimator>();
+		this.treeNames = new ArrayList<String>();
+		this.treeIndices = new ArrayList<Integer>();
+		this.clades = new ArrayList<LinkedHashMap<String, CladeTrace>>();
+		this.treeSnapshots = null;
+		int n = in.readInt();
+		for (int i = 0; i < n; ++i) {
+			this.names.add(Checkpoint.readString(in));
+			this.indices.add(in.readInt());
+			ESSEstimator est = new ESSEstimator();
+			est.readCheckpoint(in);
+			this.estimators.add(est);
+		}
+		n = in.readInt();
+		for (int i = 0; i < n; ++i) {
+			this.treeNames.add(Checkpoint.readString(in));
+			this.treeIndices.add(in.readInt());
+			int m = in.readInt();
+			LinkedHashMap<String, CladeTrace> traces = new LinkedHashMap<String, CladeTrace>(m * 2 + 1);
+			for (int j = 0; j < m; ++j) {
+				String clade = Checkpoint.readString(in);
+				CladeTrace t = new CladeTrace();
+				t.count = in.readLong();
+				t.ess.readCheckpoint(in);
+				traces.put(clade, t);
+			}
+			this.clades.add(traces);
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package se.cbb.jprime.mcmc;
+
+import java.util.Arrays;
+
+/**
+ * Sub-category keys on the form "&lt;n&gt;&lt;suffix&gt;", e.g. "2 used proposers", for
+ * <code>ProposerStatistics</code>. Each key is only created once, so that statistics per count
+ * may be gathered every iteration without creating new strings.
+ */
+public class CountCategories {
+
+	/** Suffix following the count. */
+	private String suffix;
+
+	/** Keys, indexed by count. Elements are created on demand. */
+	private String[] keys;
+
+	/**
+	 * Constructor.
+	 * @param suffix the suffix following the count, e.g. " used proposers".
+	 */
+	public CountCategories(String suffix) {
+		this.suffix = suffix;
+		this.keys = new String[8];
+	}
+
+	/**
+	 * Returns the key of a count.
+	 * @param n the count, n >= 0.
+	 * @return the key.
+	 */
+	public String get(int n) {
+		if (n >= this.keys.length) {
+			this.keys = Arrays.copyOf(this.keys, Math.max(n + 1, this.keys.length * 2));
+		}
+		String key = this.keys[n];
+		if (key == null) {
+			key = "" + n + this.suffix;
+			this.keys[n] = key;
+		}
+		return key;
+	}
+
+}
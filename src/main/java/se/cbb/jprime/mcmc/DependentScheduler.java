@@ -0,0 +1,312 @@
+package se.cbb.jprime.mcmc;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates, clears and restores the proper dependents of an MCMC chain concurrently. The topologically sorted
+ * dependency DAG is grouped into levels, so that no dependent relies on another dependent of the same or a later level.
+ * Dependents are placed as late as possible, so that e.g. all models end up in the last level, irrespective of how
+ * long their chains of ancestors are. The levels are processed in order, and the dependents of a level which
+ * are affected by the current change are processed concurrently on a fork-join pool, followed by a join.
+ * <p/>
+ * Dependents of the same level may thus run simultaneously and must not modify any shared state, apart from putting their
+ * own change info. Dependents of different levels are never run simultaneously, and ancestors are always up-to-date.
+ * For a given state, the chain proceeds exactly like when processing the dependents serially.
+ */
+public class DependentScheduler {
+
+	/** Operation: cacheAndUpdate. */
+	private static final int UPDATE = 0;
+
+	/** Operation: clearCache. */
+	private static final int CLEAR = 1;
+
+	/** Operation: restoreCache. */
+	private static final int RESTORE = 2;
+
+	/** Proper dependents, in topological order. */
+	private final List<ProperDependent> dependents;
+
+	/** ID in the change info map of each proper dependent. */
+	private final int[] dependentIds;
+
+	/** IDs in the change info map of the parents of each proper dependent. */
+	private final int[][] parentIds;
+
+	/** Indices of the dependents of each level. */
+	private final int[][] levels;
+
+	/** Worker pool. */
+	private final ForkJoinPool pool;
+
+	/** Preallocated task of each dependent. */
+	private final DependentTask[] tasks;
+
+	/** Scratch list of the tasks of a level to run. */
+	private final DependentTask[] ready;
+
+	/** Root task, which processes the levels in order. */
+	private final LevelsTask root;
+
+	/** Change info of the current iteration. */
+	private ChangeInfoMap changeInfos;
+
+	/** Sampling flag of the current iteration. */
+	private boolean willSample;
+
+	/** Current operation. */
+	private int op;
+
+	/** Profiler, null if not used. */
+	private MCMCProfiler profiler;
+
+	/**
+	 * Constructor.
+	 * @param dependents the proper dependents, in topological order.
+	 * @param dependentIds the ID in the change info map of each dependent.
+	 * @param parentIds the IDs in the change info map of the parents of each dependent.
+	 * @param noOfThreads the number of worker threads.
+	 */
+	public DependentScheduler(List<ProperDependent> dependents, int[] dependentIds, int[][] parentIds, int noOfThreads) {
+		if (noOfThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1.");
+		}
+		this.dependents = dependents;
+		this.dependentIds = dependentIds;
+		this.parentIds = parentIds;
+		this.levels = computeLevels(dependents);
+		this.pool = new ForkJoinPool(noOfThreads);
+		int n = dependents.size();
+		this.tasks = new DependentTask[n];
+		for (int i = 0; i < n; ++i) {
+			this.tasks[i] = new DependentTask(i);
+		}
+		this.ready = new DependentTask[n];
+		this.root = new LevelsTask();
+	}
+
+	/**
+	 * Groups topologically sorted dependents into levels, placing each dependent as late as possible.
+	 * @param dependents the dependents, in topological order.
+	 * @return the indices of the dependents of each level.
+	 */
+	public static int[][] computeLevels(List<ProperDependent> dependents) {
+		int n = dependents.size();
+		IdentityHashMap<Dependent, Integer> indices = new IdentityHashMap<Dependent, Integer>(n);
+		for (int i = 0; i < n; ++i) {
+			indices.put(dependents.get(i), i);
+		}
+
+		// Earliest possible level, and the children of each dependent.
+		int[] level = new int[n];
+		int noOfLevels = 0;
+		ArrayList<ArrayList<Integer>> children = new ArrayList<ArrayList<Integer>>(n);
+		for (int i = 0; i < n; ++i) {
+			children.add(new ArrayList<Integer>(2));
+			for (Dependent par : dependents.get(i).getParentDependents()) {
+				Integer j = indices.get(par);
+				if (j != null) {
+					level[i] = Math.max(level[i], level[j] + 1);
+					children.get(j).add(i);
+				}
+			}
+			noOfLevels = Math.max(noOfLevels, level[i] + 1);
+		}
+
+		// Latest possible level.
+		int[] sizes = new int[noOfLevels];
+		for (int i = n - 1; i >= 0; --i) {
+			level[i] = noOfLevels - 1;
+			for (int c : children.get(i)) {
+				level[i] = Math.min(level[i], level[c] - 1);
+			}
+			sizes[level[i]]++;
+		}
+		int[][] levels = new int[noOfLevels][];
+		for (int l = 0; l < noOfLevels; ++l) {
+			levels[l] = new int[sizes[l]];
+			sizes[l] = 0;
+		}
+		for (int i = 0; i < n; ++i) {
+			levels[level[i]][sizes[level[i]]++] = i;
+		}
+		return levels;
+	}
+
+	/**
+	 * Returns the maximum number of dependents of a level, i.e., the maximum attainable concurrency.
+	 * @param levels the levels.
+	 * @return the maximum number of dependents.
+	 */
+	public static int getMaxWidth(int[][] levels) {
+		int w = 0;
+		for (int[] level : levels) {
+			w = Math.max(w, level.length);
+		}
+		return w;
+	}
+
+	/**
+	 * Returns the indices of the dependents of each level.
+	 * @return the levels.
+	 */
+	public int[][] getLevels() {
+		return this.levels;
+	}
+
+	/**
+	 * Invokes <code>cacheAndUpdate()</code> on every dependent with a changed parent.
+	 * @param changeInfos the change info of the current iteration.
+	 * @param willSample true if the pending state will be sampled.
+	 * @param profiler the profiler, may be null.
+	 */
+	public void cacheAndUpdate(ChangeInfoMap changeInfos, boolean willSample, MCMCProfiler profiler) {
+		this.run(UPDATE, changeInfos, willSample, profiler);
+	}
+
+	/**
+	 * Invokes <code>clearCache()</code> on every dependent with change info.
+	 * @param changeInfos the change info of the current iteration.
+	 * @param willSample true if the pending state will be sampled.
+	 * @param profiler the profiler, may be null.
+	 */
+	public void clearCache(ChangeInfoMap changeInfos, boolean willSample, MCMCProfiler profiler) {
+		this.run(CLEAR, changeInfos, willSample, profiler);
+	}
+
+	/**
+	 * Invokes <code>restoreCache()</code> on every dependent with change info.
+	 * @param changeInfos the change info of the current iteration.
+	 * @param willSample true if the pending state will be sampled.
+	 * @param profiler the profiler, may be null.
+	 */
+	public void restoreCache(ChangeInfoMap changeInfos, boolean willSample, MCMCProfiler profiler) {
+		this.run(RESTORE, changeInfos, willSample, profiler);
+	}
+
+	/**
+	 * Processes all levels, and blocks until done.
+	 */
+	private void run(int op, ChangeInfoMap changeInfos, boolean willSample, MCMCProfiler profiler) {
+		this.op = op;
+		this.changeInfos = changeInfos;
+		this.willSample = willSample;
+		this.profiler = profiler;
+		this.root.reinitialize();
+		this.pool.invoke(this.root);
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+	}
+
+	/**
+	 * Processes the levels in order, each level concurrently.
+	 */
+	private final class LevelsTask extends RecursiveAction {
+
+		/** Eclipse-generated serial version UID. */
+		private static final long serialVersionUID = -3305264108460381203L;
+
+		@Override
+		protected void compute() {
+			for (int[] level : levels) {
+				int k = 0;
+				for (int i : level) {
+					if (op == UPDATE ? changeInfos.isAnyChanged(parentIds[i]) : changeInfos.get(dependentIds[i]) != null) {
+						ready[k++] = tasks[i];
+					}
+				}
+				if (k == 0) {
+					continue;
+				}
+				for (int j = 1; j < k; ++j) {
+					ready[j].reinitialize();
+					ready[j].fork();
+				}
+				ready[0].process();
+				for (int j = k - 1; j >= 1; --j) {
+					ready[j].join();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Processes a single dependent.
+	 */
+	private final class DependentTask extends RecursiveAction {
+
+		/** Eclipse-generated serial version UID. */
+		private static final long serialVersionUID = 7390529412237946112L;
+
+		/** Index of the dependent. */
+		private final int index;
+
+		/**
+		 * Constructor.
+		 * @param index index of the dependent.
+		 */
+		DependentTask(int index) {
+			this.index = index;
+		}
+
+		@Override
+		protected void compute() {
+			this.process();
+		}
+
+		/**
+		 * Carries out the current operation, timing it if profiling.
+		 */
+		void process() {
+			ProperDependent dep = dependents.get(this.index);
+			if (profiler == null) {
+				this.execute(dep);
+			} else if (op == UPDATE) {
+				long t = System.nanoTime();
+				this.execute(dep);
+				profiler.addDependentTime(this.index, MCMCProfiler.UPDATE, this.isPartial(), System.nanoTime() - t);
+			} else {
+				boolean isPartial = this.isPartial();
+				long t = System.nanoTime();
+				this.execute(dep);
+				profiler.addDependentTime(this.index, op == CLEAR ? MCMCProfiler.CLEAR : MCMCProfiler.RESTORE, isPartial, System.nanoTime() - t);
+			}
+		}
+
+		/**
+		 * Carries out the current operation.
+		 * @param dep the dependent.
+		 */
+		private void execute(ProperDependent dep) {
+			switch (op) {
+			case UPDATE:
+				dep.cacheAndUpdate(changeInfos, willSample);
+				break;
+			case CLEAR:
+				dep.clearCache(willSample);
+				break;
+			default:
+				dep.restoreCache(willSample);
+			}
+		}
+
+		/**
+		 * Returns whether the change info of the dependent details the affected elements.
+		 * @return true if partially updated.
+		 */
+		private boolean isPartial() {
+			ChangeInfo info = changeInfos.get(dependentIds[this.index]);
+			return (info != null && info.getAffectedElements() != null);
+		}
+	}
+
+}
@@ -0,0 +1,278 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import se.cbb.jprime.math.Gamma;
+import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.PRNG;
+
+/**
+ * Represents a Dirichlet proposal distribution for a parameter on the unit simplex.
+ * That is, given a current state x, it draws a new state Y ~ Dir(c*x), which has mean x.
+ * All sub-parameters are perturbed at once.
+ * <p/>
+ * The concentration c is governed by a user-defined tuning parameter s as c=1/s^2, so that, like for
+ * <code>NormalProposer</code>, a larger tuning value yields larger steps, and s approximately corresponds
+ * to the coefficient of variation of an element close to 0.5.
+ * States where any element falls below <code>MIN_VALUE</code> are rejected outright.
+ * If the tuning parameter has a state of its own, e.g. an <code>AdaptiveTuningParameter</code>,
+ * it is included when checkpointing the proposer.
+ */
+public class DirichletProposer implements Proposer, Checkpointable {
+
+	/** Smallest allowed value of an element. */
+	public static final double MIN_VALUE = 1e-8;
+
+	/** Perturbed parameter. */
+	private SimplexParameter param;
+
+	/** Pseudo-random number generator. */
+	private PRNG prng;
+
+	/** Tuning parameter. Governs the proposal distribution's concentration. */
+	private TuningParameter tuning;
+
+	/** Statistics. */
+	private ProposerStatistics stats = null;
+
+	/** On/off switch. */
+	private boolean isEnabled;
+
+	/** Perturbed parameters, as returned by <code>getParameters()</code>. */
+	private ArrayList<StateParameter> params;
+
+	/** Reused "forward" density. */
+	private LogDouble forward;
+
+	/** Reused "backward" density. */
+	private LogDouble backward;
+
+	/** Reused change info. */
+	private ChangeInfo changeInfo;
+
+	/** Reused proposal. */
+	private MetropolisHastingsProposal proposal;
+
+	/** Reused buffer of the current state. */
+	private double[] x;
+
+	/** Reused buffer of the proposed state. */
+	private double[] y;
+
+	/**
+	 * Constructor.
+	 * @param param state parameter perturbed by this proposer.
+	 * @param tuning tuning parameter s, governing the concentration c=1/s^2.
+	 * @param prng pseudo-random number generator.
+	 */
+	public DirichletProposer(SimplexParameter param, TuningParameter tuning, PRNG prng) {
+		if (tuning.getMinValue() <= 0) {
+			throw new IllegalArgumentException("Illegal tuning parameter for Dirichlet proposer for parameter " + param.getName() + ". Value must be in (0,inf).");
+		}
+		this.param = param;
+		this.tuning = tuning;
+		this.prng = prng;
+		this.isEnabled = true;
+		this.params = new ArrayList<StateParameter>(1);
+		this.params.add(param);
+		this.forward = new LogDouble(1.0);
+		this.backward = new LogDouble(1.0);
+		this.changeInfo = new ChangeInfo(param, "Perturbed by DirichletProposer");
+		this.proposal = new MetropolisHastingsProposal(this, this.forward, this.backward, this.params, 0);
+		this.x = new double[param.getNoOfSubParameters()];
+		this.y = new double[param.getNoOfSubParameters()];
+	}
+
+	@Override
+	public ArrayList<StateParameter> getParameters() {
+		return this.params;
+	}
+
+	@Override
+	public int getNoOfParameters() {
+		return 1;
+	}
+
+	@Override
+	public int getNoOfSubParameters() {
+		return this.param.getNoOfSubParameters();
+	}
+
+	@Override
+	public ProposerStatistics getStatistics() {
+		return this.stats;
+	}
+
+	@Override
+	public void setStatistics(ProposerStatistics stats) {
+		this.stats = stats;
+	}
+
+	@Override
+	public List<TuningParameter> getTuningParameters() {
+		ArrayList<TuningParameter> l = new ArrayList<TuningParameter>(1);
+		l.add(this.tuning);
+		return l;
+	}
+
+	@Override
+	public Proposal cacheAndPerturb(Map<Dependent, ChangeInfo> changeInfos) {
+		int k = this.param.getNoOfSubParameters();
+		double s = this.tuning.getValue();
+		double c = 1.0 / (s * s);
+
+		// Cache.
+		this.param.cache(null);
+		double[] x = this.x;
+		System.arraycopy(this.param.getValues(), 0, x, 0, k);
+
+		// Sample Y ~ Dir(c*x) by normalising independent gamma variates.
+		double[] y = this.y;
+		double sum = 0.0;
+		for (int i = 0; i < k; ++i) {
+			y[i] = sampleGamma(this.prng, c * x[i]);
+			sum += y[i];
+		}
+		for (int i = 0; i < k; ++i) {
+			y[i] /= sum;
+			this.param.setValue(i, y[i]);
+			if (!(y[i] >= MIN_VALUE)) {
+				// Abort with invalid proposal.
+				return new MetropolisHastingsProposal(this, this.param);
+			}
+		}
+
+		// Obtain "forward" and "backward" densities.
+		LogDouble forward = this.forward;
+		LogDouble backward = this.backward;
+		forward.set(getLogDensity(y, x, c), 1);
+		backward.set(getLogDensity(x, y, c), 1);
+
+		// Set change info.
+		this.changeInfo.setAffectedElements(null);
+		changeInfos.put(this.param, this.changeInfo);
+
+		// Generate proposal object.
+		return this.proposal.set(forward, backward, k);
+	}
+
+	/**
+	 * Returns the log density of Dir(c*m) at a point.
+	 * @param y the point.
+	 * @param m the mean.
+	 * @param c the concentration.
+	 * @return the log density.
+	 */
+	public static double getLogDensity(double[] y, double[] m, double c) {
+		double logDens = Gamma.lnGamma(c);
+		for (int i = 0; i < y.length; ++i) {
+			double a = c * m[i];
+			logDens += (a - 1.0) * Math.log(y[i]) - Gamma.lnGamma(a);
+		}
+		return logDens;
+	}
+
+	/**
+	 * Samples from a gamma distribution with unit scale, using the method of Marsaglia & Tsang 2000.
+	 * @param prng the PRNG.
+	 * @param shape the shape parameter.
+	 * @return the value.
+	 */
+	static double sampleGamma(PRNG prng, double shape) {
+		if (shape < 1.0) {
+			// Boost with U^(1/shape).
+			return sampleGamma(prng, shape + 1.0) * Math.pow(prng.nextDouble(), 1.0 / shape);
+		}
+		double d = shape - 1.0 / 3.0;
+		double c = 1.0 / Math.sqrt(9.0 * d);
+		while (true) {
+			double z;
+			double v;
+			do {
+				z = prng.nextGaussian();
+				v = 1.0 + c * z;
+			} while (v <= 0.0);
+			v = v * v * v;
+			double u = prng.nextDouble();
+			if (u < 1.0 - 0.0331 * z * z * z * z || Math.log(u) < 0.5 * z * z + d * (1.0 - v + Math.log(v))) {
+				return d * v;
+			}
+		}
+	}
+
+	@Override
+	public void clearCache() {
+		if (this.stats != null) {
+			this.stats.increment(true);
+		}
+		this.param.clearCache();
+	}
+
+	@Override
+	public void restoreCache() {
+		if (this.stats != null) {
+			this.stats.increment(false);
+		}
+		this.param.restoreCache();
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return this.isEnabled;
+	}
+
+	@Override
+	public void setEnabled(boolean isActive) {
+		this.isEnabled = isActive;
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(prefix).append("DIRICHLET-DISTRIBUTED PROPOSER\n");
+		sb.append(prefix).append("Perturbed parameter: ").append(this.param.getName()).append('\n');
+		sb.append(prefix).append("Is active: ").append(this.isEnabled).append("\n");
+		sb.append(prefix).append("Tuning parameter governing proposal concentration:\n").append(this.tuning.getPreInfo(prefix + '\t'));
+		if (this.stats != null) {
+			sb.append(prefix).append("Statistics:\n").append(this.stats.getPreInfo(prefix + '\t'));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(prefix).append("DIRICHLET-DISTRIBUTED PROPOSER\n");
+		sb.append(prefix).append("Perturbed parameter: ").append(this.param.getName()).append('\n');
+		sb.append(prefix).append("Tuning parameter governing proposal concentration:\n").append(this.tuning.getPostInfo(prefix + '\t'));
+		if (this.stats != null) {
+			sb.append(prefix).append("Statistics:\n").append(this.stats.getPostInfo(prefix + '\t'));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		if (this.tuning instanceof Checkpointable) {
+			((Checkpointable) this.tuning).writeCheckpoint(out);
+		}
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		if (this.tuning instanceof Checkpointable) {
+			((Checkpointable) this.tuning).readCheckpoint(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DirichletProposer perturbing " + this.param.getName();
+	}
+
+}
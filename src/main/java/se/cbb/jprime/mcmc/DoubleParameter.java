@@ -1,6 +1,12 @@
 package se.cbb.jprime.mcmc;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import se.cbb.jprime.io.DoubleSampleable;
 import se.cbb.jprime.io.SampleDouble;
+import se.cbb.jprime.io.SnapshotSampleable;
 import se.cbb.jprime.math.ScaleTransformation;
 
 /**
@@ -8,7 +14,7 @@ import se.cbb.jprime.math.ScaleTransformation;
  * 
  * @author Joel Sjöstrand.
  */
-public class DoubleParameter implements RealParameter {
+public class DoubleParameter implements RealParameter, SnapshotSampleable, DoubleSampleable, Checkpointable {
 
 	/** Name. */
 	protected String name;
@@ -82,8 +88,28 @@ public class DoubleParameter implements RealParameter {
 
 	@Override
 	public String getSampleValue(SamplingMode mode) {
-		return (this.scale == null ? SampleDouble.toString(this.value) :
-			SampleDouble.toString(this.scale.getUnscaled(this.value)));
+		return SampleDouble.toString(this.getSampleDouble(mode));
+	}
+
+	@Override
+	public double getSampleDouble(SamplingMode mode) {
+		return (this.scale == null ? this.value : this.scale.getUnscaled(this.value));
+	}
+
+	@Override
+	public Object createSnapshot() {
+		return new double[1];
+	}
+
+	@Override
+	public void copyToSnapshot(Object snapshot, SamplingMode mode) {
+		// The snapshot holds the unscaled value.
+		((double[]) snapshot)[0] = (this.scale == null ? this.value : this.scale.getUnscaled(this.value));
+	}
+
+	@Override
+	public String getSnapshotValue(Object snapshot, SamplingMode mode) {
+		return SampleDouble.toString(((double[]) snapshot)[0]);
 	}
 
 	@Override
@@ -119,4 +145,16 @@ public class DoubleParameter implements RealParameter {
 		this.value = value;
 	}
 
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		Checkpoint.writeString(out, this.name);
+		out.writeDouble(this.value);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		Checkpoint.readAndMatchName(in, this.name);
+		this.value = in.readDouble();
+		this.cache = Double.NaN;
+	}
 }
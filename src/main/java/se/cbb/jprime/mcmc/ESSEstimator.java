@@ -0,0 +1,236 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Streaming estimator of the effective sample size (ESS) of a real-valued MCMC trace,
+ * based on the method of batch means. Values are accumulated into a fixed number of
+ * batches; when all batches are full, adjacent pairs are merged and the batch size is doubled.
+ * Thus, memory and time per value are constant, regardless of the length of the trace.
+ * <p/>
+ * For n values in complete batches of size b, with sample variance s^2 and batch means variance v,
+ * the asymptotic variance of the mean is estimated as b*v, and ESS = n*s^2/(b*v).
+ */
+public class ESSEstimator implements Checkpointable {
+
+	/** Maximum number of batches. Must be even. */
+	public static final int MAX_NO_OF_BATCHES = 64;
+
+	/** Minimum batch size before an estimate is provided. */
+	public static final int MIN_BATCH_SIZE = 4;
+
+	/** Number of values. */
+	private long n;
+
+	/** Running mean of all values. */
+	private double mean;
+
+	/** Running sum of squared deviations from the mean of all values. */
+	private double m2;
+
+	/** Current batch size. */
+	private long batchSize;
+
+	/** Sum of each complete batch. */
+	private double[] batchSums;
+
+	/** Number of complete batches. */
+	private int noOfBatches;
+
+	/** Sum of the current incomplete batch. */
+	private double partialSum;
+
+	/** Number of values of the current incomplete batch. */
+	private long partialCount;
+
+	/**
+	 * Constructor.
+	 */
+	public ESSEstimator() {
+		this.batchSums = new double[MAX_NO_OF_BATCHES];
+		this.clear();
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param est the estimator to copy.
+	 */
+	public ESSEstimator(ESSEstimator est) {
+		this.n = est.n;
+		this.mean = est.mean;
+		this.m2 = est.m2;
+		this.batchSize = est.batchSize;
+		this.batchSums = est.batchSums.clone();
+		this.noOfBatches = est.noOfBatches;
+		this.partialSum = est.partialSum;
+		this.partialCount = est.partialCount;
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public void clear() {
+		this.n = 0;
+		this.mean = 0.0;
+		this.m2 = 0.0;
+		this.batchSize = 1;
+		this.noOfBatches = 0;
+		this.partialSum = 0.0;
+		this.partialCount = 0;
+	}
+
+	/**
+	 * Adds a value to the trace.
+	 * @param x the value.
+	 */
+	public void add(double x) {
+		this.n++;
+		double delta = x - this.mean;
+		this.mean += delta / this.n;
+		this.m2 += delta * (x - this.mean);
+		this.partialSum += x;
+		this.partialCount++;
+		if (this.partialCount == this.batchSize) {
+			this.completeBatch();
+		}
+	}
+
+	/**
+	 * Adds the same value a number of times. Time is proportional to the number of
+	 * batches spanned rather than to the number of values.
+	 * @param x the value.
+	 * @param count the number of times.
+	 */
+	public void add(double x, long count) {
+		if (count <= 0) {
+			return;
+		}
+		// Merge the mean and squared deviations of the run (which has none) with those of the previous values.
+		long n = this.n + count;
+		double delta = x - this.mean;
+		this.mean += delta * count / n;
+		this.m2 += delta * delta * this.n / n * count;
+		this.n = n;
+		while (count > 0) {
+			long k = Math.min(count, this.batchSize - this.partialCount);
+			this.partialSum += k * x;
+			this.partialCount += k;
+			count -= k;
+			if (this.partialCount == this.batchSize) {
+				this.completeBatch();
+			}
+		}
+	}
+
+	/**
+	 * Stores the current batch, which has just become complete.
+	 */
+	private void completeBatch() {
+		if (this.noOfBatches == MAX_NO_OF_BATCHES) {
+			for (int i = 0; i < MAX_NO_OF_BATCHES / 2; ++i) {
+				this.batchSums[i] = this.batchSums[2 * i] + this.batchSums[2 * i + 1];
+			}
+			this.noOfBatches = MAX_NO_OF_BATCHES / 2;
+			this.batchSize *= 2;
+			// The current batch now counts as the first half of a doubled batch.
+			return;
+		}
+		this.batchSums[this.noOfBatches++] = this.partialSum;
+		this.partialSum = 0.0;
+		this.partialCount = 0;
+	}
+
+	/**
+	 * Returns the number of values.
+	 * @return the number of values.
+	 */
+	public long getNoOfValues() {
+		return this.n;
+	}
+
+	/**
+	 * Returns the mean of all values.
+	 * @return the mean; NaN if there are no values.
+	 */
+	public double getMean() {
+		return (this.n == 0 ? Double.NaN : this.mean);
+	}
+
+	/**
+	 * Returns the sample variance of all values.
+	 * @return the variance; NaN if there are fewer than two values.
+	 */
+	public double getVariance() {
+		return (this.n < 2 ? Double.NaN : this.m2 / (this.n - 1));
+	}
+
+	/**
+	 * Returns true if all values so far are identical, in which case the ESS is undefined.
+	 * @return true if constant.
+	 */
+	public boolean isConstant() {
+		return (this.n > 0 && this.m2 <= 0.0);
+	}
+
+	/**
+	 * Returns the current estimate of the effective sample size. The estimate is never greater than the number
+	 * of values in complete batches.
+	 * @return the ESS; NaN if there are too few values or if the trace is constant.
+	 */
+	public double getESS() {
+		if (this.batchSize < MIN_BATCH_SIZE || this.noOfBatches < 2 || this.isConstant()) {
+			return Double.NaN;
+		}
+		long m = this.noOfBatches * this.batchSize;
+		double bMean = 0.0;
+		for (int i = 0; i < this.noOfBatches; ++i) {
+			bMean += this.batchSums[i] / this.batchSize;
+		}
+		bMean /= this.noOfBatches;
+		double bVar = 0.0;
+		for (int i = 0; i < this.noOfBatches; ++i) {
+			double d = this.batchSums[i] / this.batchSize - bMean;
+			bVar += d * d;
+		}
+		bVar /= (this.noOfBatches - 1);
+		if (bVar <= 0.0) {
+			return m;
+		}
+		double ess = m * this.getVariance() / (this.batchSize * bVar);
+		return Math.min(ess, m);
+	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		out.writeLong(this.n);
+		out.writeDouble(this.mean);
+		out.writeDouble(this.m2);
+		out.writeLong(this.batchSize);
+		out.writeInt(this.noOfBatches);
+		for (int i = 0; i < this.noOfBatches; ++i) {
+			out.writeDouble(this.batchSums[i]);
+		}
+		out.writeDouble(this.partialSum);
+		out.writeLong(this.partialCount);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		this.n = in.readLong();
+		this.mean = in.readDouble();
+		this.m2 = in.readDouble();
+		this.batchSize = in.readLong();
+		this.noOfBatches = in.readInt();
+		if (this.noOfBatches < 0 || this.noOfBatches > MAX_NO_OF_BATCHES) {
+			throw new IOException("Invalid number of batches in ESS estimator checkpoint.");
+		}
+		for (int i = 0; i < this.noOfBatches; ++i) {
+			this.batchSums[i] = in.readDouble();
+		}
+		this.partialSum = in.readDouble();
+		this.partialCount = in.readLong();
+	}
+
+}
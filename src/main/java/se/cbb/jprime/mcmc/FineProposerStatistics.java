@@ -1,5 +1,8 @@
 package se.cbb.jprime.mcmc;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map.Entry;
 
 /**
@@ -134,4 +137,23 @@ public class FineProposerStatistics extends ProposerStatistics implements Iterat
 		}
 		return sb.toString();
 	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		super.writeCheckpoint(out);
+		Checkpoint.writeIntArray(out, this.noOfAcceptedPerWindow);
+		Checkpoint.writeIntArray(out, this.noOfRejectedPerWindow);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		super.readCheckpoint(in);
+		int[] acc = Checkpoint.readIntArray(in);
+		int[] rej = Checkpoint.readIntArray(in);
+		if (acc == null || acc.length != this.noOfAcceptedPerWindow.length || rej.length != acc.length) {
+			throw new IOException("Checkpoint does not match current chain: mismatching number of statistics windows.");
+		}
+		this.noOfAcceptedPerWindow = acc;
+		this.noOfRejectedPerWindow = rej;
+	}
 }
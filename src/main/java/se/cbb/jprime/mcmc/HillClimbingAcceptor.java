@@ -19,6 +19,9 @@ public class HillClimbingAcceptor implements ProposalAcceptor {
 	
 	/** Precision for improvement comparison. */
 	private double precision = 1.0 + 1e-32;
+
+	/** Work space for the comparison, reused between invocations. */
+	private LogDouble threshold = new LogDouble(1.0);
 	
 	/**
 	 * Constructor.
@@ -43,12 +46,12 @@ public class HillClimbingAcceptor implements ProposalAcceptor {
 			LogDouble oldStateLikelihood, List<Proposal> proposals) throws RunAbortedException {
 		// If we do have proposal information, just verify it's OK.
 		if (proposals != null) {
-			for (Proposal prop : proposals) {
-				if (!prop.isValid()) { return false; }
+			for (int i = 0; i < proposals.size(); ++i) {
+				if (!proposals.get(i).isValid()) { return false; }
 			}
 		}
 		boolean isImproved =
-			proposedStateLikelihood.greaterThan(oldStateLikelihood.multToNew(this.precision));
+			proposedStateLikelihood.greaterThan(this.threshold.set(oldStateLikelihood).mult(this.precision));
 		if (isImproved) {
 			this.noOfTries = 0;
 		} else {
@@ -1,13 +1,19 @@
 package se.cbb.jprime.mcmc;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import se.cbb.jprime.io.IntSampleable;
 import se.cbb.jprime.io.SampleInt;
+import se.cbb.jprime.io.SnapshotSampleable;
 
 /**
  * Holds an integer state parameter.
  * 
  * @author Joel Sjöstrand.
  */
-public class IntParameter implements StateParameter {
+public class IntParameter implements StateParameter, SnapshotSampleable, IntSampleable, Checkpointable {
 
 	/** Name. */
 	protected String name;
@@ -72,9 +78,40 @@ public class IntParameter implements StateParameter {
 		return SampleInt.toString(this.value);
 	}
 
+	@Override
+	public int getSampleInt(SamplingMode mode) {
+		return this.value;
+	}
+
+	@Override
+	public Object createSnapshot() {
+		return new int[1];
+	}
+
+	@Override
+	public void copyToSnapshot(Object snapshot, SamplingMode mode) {
+		((int[]) snapshot)[0] = this.value;
+	}
+
+	@Override
+	public String getSnapshotValue(Object snapshot, SamplingMode mode) {
+		return SampleInt.toString(((int[]) snapshot)[0]);
+	}
+
 	@Override
 	public Class<?> getSampleType() {
 		return SampleInt.class;
 	}
 
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		Checkpoint.writeString(out, this.name);
+		out.writeInt(this.value);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		Checkpoint.readAndMatchName(in, this.name);
+		this.value = in.readInt();
+	}
 }
@@ -1,9 +1,13 @@
 package se.cbb.jprime.mcmc;
 
-import java.util.LinkedList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 
+import se.cbb.jprime.io.IntSampleable;
 import se.cbb.jprime.io.SampleInt;
-import se.cbb.jprime.io.Sampleable;
+import se.cbb.jprime.io.SnapshotSampleable;
 
 /**
  * Holds the current and total number of iterations k for e.g. an MCMC chain.
@@ -13,7 +17,7 @@ import se.cbb.jprime.io.Sampleable;
  * 
  * @author Joel Sjöstrand.
  */
-public class Iteration implements Sampleable, InfoProvider {
+public class Iteration implements SnapshotSampleable, IntSampleable, InfoProvider, Checkpointable {
 
 	/** The total number of iterations, start iteration 0 excluded. */
 	private int totalNoOfIterations;
@@ -22,7 +26,7 @@ public class Iteration implements Sampleable, InfoProvider {
 	private int currentIteration;
 	
 	/** Subscribers to changes to this object. */
-	private LinkedList<IterationListener> listeners;
+	private ArrayList<IterationListener> listeners;
 	
 	/** Flag determining whether listeners should be notified or not. */
 	private boolean notifyListeners;
@@ -46,7 +50,7 @@ public class Iteration implements Sampleable, InfoProvider {
 		}
 		this.totalNoOfIterations = totalNoOfIterations;
 		this.currentIteration = initialIteration;
-		this.listeners = new LinkedList<IterationListener>();
+		this.listeners = new ArrayList<IterationListener>(4);
 		this.notifyListeners = true;
 	}
 	
@@ -106,8 +110,8 @@ public class Iteration implements Sampleable, InfoProvider {
 		}
 		this.currentIteration++;
 		if (this.notifyListeners) {
-			for (IterationListener i : this.listeners) {
-				i.incrementPerformed(this.currentIteration, this.totalNoOfIterations);
+			for (int i = 0; i < this.listeners.size(); ++i) {
+				this.listeners.get(i).incrementPerformed(this.currentIteration, this.totalNoOfIterations);
 			}
 		}
 		return true;
@@ -136,6 +140,26 @@ public class Iteration implements Sampleable, InfoProvider {
 		return SampleInt.toString(this.currentIteration);
 	}
 
+	@Override
+	public int getSampleInt(SamplingMode mode) {
+		return this.currentIteration;
+	}
+
+	@Override
+	public Object createSnapshot() {
+		return new int[1];
+	}
+
+	@Override
+	public void copyToSnapshot(Object snapshot, SamplingMode mode) {
+		((int[]) snapshot)[0] = this.currentIteration;
+	}
+
+	@Override
+	public String getSnapshotValue(Object snapshot, SamplingMode mode) {
+		return SampleInt.toString(((int[]) snapshot)[0]);
+	}
+
 	@Override
 	public String getPreInfo(String prefix) {
 		StringBuilder sb = new StringBuilder();
@@ -148,6 +172,29 @@ public class Iteration implements Sampleable, InfoProvider {
 	public String getPostInfo(String prefix) {
 		return (prefix  + "ITERATION\n");
 	}
-	
-}
 
+	/**
+	 * Restores the current iteration from a checkpoint. Listeners are notified so
+	 * that objects which derive their state from the iteration are brought up-to-date.
+	 * @param in the checkpoint input.
+	 * @throws IOException.
+	 */
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		int curr = in.readInt();
+		if (curr < 0 || curr > this.totalNoOfIterations) {
+			throw new IOException("Checkpoint iteration " + curr + " out of range [0, " + this.totalNoOfIterations + "].");
+		}
+		this.currentIteration = curr;
+		if (this.notifyListeners) {
+			for (int i = 0; i < this.listeners.size(); ++i) {
+				this.listeners.get(i).incrementPerformed(this.currentIteration, this.totalNoOfIterations);
+			}
+		}
+	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		out.writeInt(this.currentIteration);
+	}
+}
@@ -1,5 +1,10 @@
 package se.cbb.jprime.mcmc;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -7,6 +12,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 
 import se.cbb.jprime.apps.JPrIMEStarter;
+import se.cbb.jprime.io.LogDoubleSampleable;
 import se.cbb.jprime.io.SampleLogDouble;
 import se.cbb.jprime.io.Sampleable;
 import se.cbb.jprime.io.Sampler;
@@ -57,10 +63,19 @@ import se.cbb.jprime.math.PRNG;
  * </li>
  * <li>Go to 1 or finish.</li>
  * </ol>
+ * Optionally, the chain state may be written to a binary checkpoint every k-th iteration,
+ * and a chain may be resumed from such a checkpoint, see <code>Checkpointable</code>. Dependents
+ * are not stored but rebuilt from the state parameters; to guarantee that a resumed chain proceeds
+ * exactly like the original one, the original chain rebuilds its dependents at each checkpoint as well.
+ * A resumed chain is thus bit-identical to the chain that wrote the checkpoint, but a chain with
+ * checkpointing is in general not bit-identical to one without: rebuilding discards round-off accumulated
+ * by partial updates, and history-dependent caches, e.g. transition matrices looked up by rounded times,
+ * see <code>CheckpointListener</code>. The samples are equally valid.
+ * Also optionally, mutually independent proper dependents may be processed concurrently, see <code>DependentScheduler</code>.
  * 
  * @author Joel Sjöstrand.
  */
-public class MCMCManager implements Sampleable, InfoProvider {
+public class MCMCManager implements LogDoubleSampleable, InfoProvider, Checkpointable {
 
 	/** Iteration of MCMC chain. */
 	protected Iteration iteration;
@@ -110,12 +125,45 @@ public class MCMCManager implements Sampleable, InfoProvider {
 	/** Overall statistics. */
 	protected ProposerStatistics stats;
 
+	/** Change info of the current iteration, with dependents registered after topological sorting. */
+	protected ChangeInfoMap changeInfos;
+
+	/** ID in the change info map of each proper dependent (in topological order). */
+	protected int[] dependentIds;
+
+	/** IDs in the change info map of the parents of each proper dependent (in topological order). */
+	protected int[][] parentIds;
+
+	/** Posterior density of the proposed state. Swapped with the current posterior density upon acceptance. */
+	protected LogDouble proposedPosteriorDensity;
+
+	/** Statistics keys for the number of used proposers. */
+	private CountCategories usedProposersCategories = new CountCategories(" used proposers");
+
 	/** If run was aborted. */
 	protected String runAbortedMessage = null;
 
 	/** Debug flag. */
 	protected boolean doDebug = false;
 
+	/** Checkpoint file. Null if checkpointing is disabled. */
+	protected File checkpointFile = null;
+
+	/** Number of iterations between checkpoints. */
+	protected int checkpointInterval = 0;
+
+	/** Iteration at which the chain was resumed from a checkpoint. -1 if not resumed. */
+	protected int resumedIteration = -1;
+
+	/** Streaming convergence diagnostics. Null if not used. */
+	protected ConvergenceDiagnostics diagnostics = null;
+
+	/** Profiler of proposers and dependents. Null if not used. */
+	protected MCMCProfiler profiler = null;
+
+	/** Number of threads for processing independent proper dependents concurrently. 1 for serial processing. */
+	protected int noOfDependentThreads = 1;
+
 	/**
 	 * Constructor.
 	 * @param iteration iteration object of the chain.
@@ -209,6 +257,24 @@ public class MCMCManager implements Sampleable, InfoProvider {
 				this.properDependents.add((ProperDependent) dep);
 			}
 		}
+
+		// Assign dense IDs for change info lookups.
+		this.changeInfos = new ChangeInfoMap(this.parameters.size() + this.properDependents.size());
+		for (StateParameter param : this.parameters) {
+			this.changeInfos.register(param);
+		}
+		int n = this.properDependents.size();
+		this.dependentIds = new int[n];
+		this.parentIds = new int[n][];
+		for (int i = 0; i < n; ++i) {
+			ProperDependent dep = this.properDependents.get(i);
+			this.dependentIds[i] = this.changeInfos.register(dep);
+			Dependent[] parents = dep.getParentDependents();
+			this.parentIds[i] = new int[parents.length];
+			for (int j = 0; j < parents.length; ++j) {
+				this.parentIds[i][j] = this.changeInfos.register(parents[j]);
+			}
+		}
 	}
 
 	/**
@@ -238,6 +304,150 @@ public class MCMCManager implements Sampleable, InfoProvider {
 		this.doDebug = isOn;
 	}
 
+	/**
+	 * Enables writing of a checkpoint every k-th iteration. The checkpoint file is
+	 * replaced atomically each time.
+	 * @param f the checkpoint file.
+	 * @param interval number of iterations k between checkpoints.
+	 */
+	public void setCheckpointing(File f, int interval) {
+		if (f == null) {
+			throw new IllegalArgumentException("Missing checkpoint file.");
+		}
+		if (interval < 1) {
+			throw new IllegalArgumentException("Checkpoint interval must be at least 1.");
+		}
+		this.checkpointFile = f;
+		this.checkpointInterval = interval;
+	}
+
+	/**
+	 * Enables streaming convergence diagnostics, which are fed with every sampled state.
+	 * If the diagnostics have an ESS threshold, the chain is stopped once it has been reached.
+	 * Must be invoked prior to <code>resume()</code>, if resuming.
+	 * @param diagnostics the diagnostics.
+	 */
+	public void setDiagnostics(ConvergenceDiagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
+	/**
+	 * Returns the convergence diagnostics.
+	 * @return the diagnostics, null if not used.
+	 */
+	public ConvergenceDiagnostics getDiagnostics() {
+		return this.diagnostics;
+	}
+
+	/**
+	 * Enables profiling of the time spent by each proposer and proper dependent.
+	 * When not set, the clock is not queried per proposer and dependent.
+	 * @param profiler the profiler.
+	 */
+	public void setProfiler(MCMCProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Returns the profiler.
+	 * @return the profiler, null if not used.
+	 */
+	public MCMCProfiler getProfiler() {
+		return this.profiler;
+	}
+
+	/**
+	 * Enables concurrent processing of mutually independent proper dependents, see <code>DependentScheduler</code>.
+	 * Has no effect if the dependency DAG offers no such concurrency. The dependents must not share mutable state.
+	 * @param noOfThreads the number of threads; 1 for serial processing.
+	 */
+	public void setDependentThreads(int noOfThreads) {
+		if (noOfThreads < 1) {
+			throw new IllegalArgumentException("Number of dependent threads must be at least 1.");
+		}
+		this.noOfDependentThreads = noOfThreads;
+	}
+
+	/**
+	 * Returns whether the change info a proper dependent has put for itself details the affected elements.
+	 * @param i the index of the dependent (in topological order).
+	 * @return true if the dependent has been partially updated; false if fully updated or not changed at all.
+	 */
+	private boolean isPartial(int i) {
+		ChangeInfo info = this.changeInfos.get(this.dependentIds[i]);
+		return (info != null && info.getAffectedElements() != null);
+	}
+
+	/**
+	 * Restores the chain from a checkpoint. Must be invoked when all models and "sampleables" have
+	 * been added, and prior to <code>run()</code>. The chain must have been set up exactly like
+	 * the chain that wrote the checkpoint.
+	 * @param f the checkpoint file.
+	 * @throws IOException if unable to read, or if the checkpoint does not match the chain.
+	 */
+	public void resume(File f) throws IOException {
+		DataInputStream in = Checkpoint.openForReading(f);
+		try {
+			this.readCheckpoint(in);
+		} finally {
+			in.close();
+		}
+		this.resumedIteration = this.iteration.getIteration();
+	}
+
+	/**
+	 * Rebuilds the chain state at the current iteration, and writes it to the checkpoint file.
+	 * @throws IOException if unable to write.
+	 */
+	private void checkpoint() throws IOException {
+		this.rebuildDependents();
+		this.posteriorDensity = this.computePosteriorDensity();
+		DataOutputStream out = Checkpoint.openForWriting(this.checkpointFile);
+		try {
+			this.writeCheckpoint(out);
+		} finally {
+			out.close();
+		}
+		Checkpoint.commit(this.checkpointFile);
+	}
+
+	/**
+	 * Recomputes all proper dependents from scratch (in topological order), as if all state parameters had changed.
+	 * Objects with history-dependent data are first notified, see <code>CheckpointListener</code>.
+	 */
+	private void rebuildDependents() {
+		for (ProperDependent dep : this.properDependents) {
+			if (dep instanceof CheckpointListener) {
+				((CheckpointListener) dep).checkpointPerformed();
+			}
+		}
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>(this.parameters.size() + this.properDependents.size());
+		for (StateParameter param : this.parameters) {
+			changeInfos.put(param, new ChangeInfo(param, "Checkpoint"));
+		}
+		for (ProperDependent dep : this.properDependents) {
+			dep.cacheAndUpdate(changeInfos, false);
+		}
+		for (ProperDependent dep : this.properDependents) {
+			if (changeInfos.get(dep) != null) {
+				dep.clearCache(false);
+			}
+		}
+	}
+
+	/**
+	 * Returns the (unnormalised) posterior density as collected from the models.
+	 * The dependents must be up-to-date.
+	 * @return the posterior density.
+	 */
+	private LogDouble computePosteriorDensity() {
+		LogDouble pd = new LogDouble(1.0);
+		for (InferenceModel m : this.models) {
+			pd.mult(m.getDataProbability());
+		}
+		return pd;
+	}
+
 	/**
 	 * Starts and executes the MCMC chain.
 	 * @throws IOException if unable to produce sampling output.
@@ -247,28 +457,51 @@ public class MCMCManager implements Sampleable, InfoProvider {
 		// Update the topological ordering of the dependency DAG.
 		this.updateDependencyStructure();
 
-		// Write sample header.
-		this.sampler.writeSampleHeader(this.sampleables);
+		boolean willSample;
+		if (this.resumedIteration >= 0) {
+			// Resumed chain: rebuild dependents from the restored state. Header, samples and best state
+			// up to the checkpoint have already been produced.
+			this.rebuildDependents();
+			this.posteriorDensity = this.computePosteriorDensity();
+		} else {
+			// Write sample header.
+			this.sampler.writeSampleHeader(this.sampleables);
 
-		// First time, assume all objects are up-to-date and compute initial posterior density.
-		this.posteriorDensity = new LogDouble(1.0);
-		boolean willSample = this.thinner.doSample();
-		for (InferenceModel m : this.models) {
+			// First time, assume all objects are up-to-date and compute initial posterior density.
+			this.posteriorDensity = new LogDouble(1.0);
+			willSample = this.thinner.doSample();
+			for (InferenceModel m : this.models) {
 
 
-			this.posteriorDensity.mult(m.getDataProbability());
-			//System.out.println( m.toString() + "\t prob:" + m.getDataProbability(this.prng) + "\t density: " + this.posteriorDensity.getValue());
-		}
-		if (willSample) {
-			this.sampler.writeSample(this.sampleables, SamplingMode.ORDINARY);
+				this.posteriorDensity.mult(m.getDataProbability());
+				//System.out.println( m.toString() + "\t prob:" + m.getDataProbability(this.prng) + "\t density: " + this.posteriorDensity.getValue());
+			}
+			if (willSample) {
+				this.sampler.writeSample(this.sampleables, SamplingMode.ORDINARY);
+				if (this.diagnostics != null) {
+					this.diagnostics.addSample(this.sampleables);
+				}
+			}
+			this.bestPosteriorDensity = new LogDouble(this.posteriorDensity);
+			this.bestState = this.sampler.getSample(this.sampleables, SamplingMode.MAX_RECORD);
 		}
-		this.bestPosteriorDensity = this.posteriorDensity;
-		this.bestState = this.sampler.getSample(this.sampleables, SamplingMode.MAX_RECORD);
 
-		// Iterate.
+		// Iterate. All per-iteration data structures are preallocated, so that the loop as such
+		// does not create any objects.
 		this.startTime = System.nanoTime();
-		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>(16);
+		ChangeInfoMap changeInfos = this.changeInfos;
 		ArrayList<Proposal> proposals = new ArrayList<Proposal>(16);
+		this.proposedPosteriorDensity = new LogDouble(1.0);
+		int noOfDeps = this.properDependents.size();
+		int noOfModels = this.models.size();
+		MCMCProfiler profiler = this.profiler;
+		if (profiler != null) {
+			profiler.setUp(this.proposerSelector.getProposers(), this.properDependents);
+		}
+		DependentScheduler scheduler = null;
+		if (this.noOfDependentThreads > 1 && DependentScheduler.getMaxWidth(DependentScheduler.computeLevels(this.properDependents)) > 1) {
+			scheduler = new DependentScheduler(this.properDependents, this.dependentIds, this.parentIds, this.noOfDependentThreads);
+		}
 		try {
 			while (this.iteration.increment()) {
 
@@ -279,9 +512,9 @@ public class MCMCManager implements Sampleable, InfoProvider {
 				// Query whether this is a sample iteration or not.
 				willSample = this.thinner.doSample();
 
-				// Get proposer(s) to use.
-				;
+				// Get proposer(s) to use. The list is only valid during this iteration.
 				ArrayList<Proposer> shakeItBaby = this.proposerSelector.getDisjointProposers();
+				int noOfProposers = shakeItBaby.size();
 				
 				// Debug info.
 				if (this.doDebug) {
@@ -295,25 +528,37 @@ public class MCMCManager implements Sampleable, InfoProvider {
 				}
 
 				// Perturb state parameters.
-				for (Proposer proposer : shakeItBaby) {
-					Proposal proposal = proposer.cacheAndPerturb(changeInfos);
-					proposals.add(proposal);
+				for (int i = 0; i < noOfProposers; ++i) {
+					if (profiler == null) {
+						proposals.add(shakeItBaby.get(i).cacheAndPerturb(changeInfos));
+					} else {
+						long t = System.nanoTime();
+						proposals.add(shakeItBaby.get(i).cacheAndPerturb(changeInfos));
+						profiler.addProposerTime(shakeItBaby.get(i), MCMCProfiler.PERTURB, System.nanoTime() - t);
+					}
 				}
 
 				// Update in topological order, but only if deemed necessary.
-				for (ProperDependent dep : this.properDependents) {
-					for (Dependent parent : dep.getParentDependents()) {
-						if (changeInfos.get(parent) != null) {
-							dep.cacheAndUpdate(changeInfos, willSample);
-							break;
+				if (scheduler != null) {
+					scheduler.cacheAndUpdate(changeInfos, willSample, profiler);
+				} else {
+					for (int i = 0; i < noOfDeps; ++i) {
+						if (changeInfos.isAnyChanged(this.parentIds[i])) {
+							if (profiler == null) {
+								this.properDependents.get(i).cacheAndUpdate(changeInfos, willSample);
+							} else {
+								long t = System.nanoTime();
+								this.properDependents.get(i).cacheAndUpdate(changeInfos, willSample);
+								profiler.addDependentTime(i, MCMCProfiler.UPDATE, this.isPartial(i), System.nanoTime() - t);
+							}
 						}
 					}
 				}
 
 				// Get posterior density of proposed state.
-				LogDouble newPosteriorDensity = new LogDouble(1.0);
-				for (InferenceModel m : this.models) {
-					newPosteriorDensity.mult(m.getDataProbability());
+				LogDouble newPosteriorDensity = this.proposedPosteriorDensity.set(0.0, 1);
+				for (int i = 0; i < noOfModels; ++i) {
+					newPosteriorDensity.mult(this.models.get(i).getDataProbability());
 				}
 
 				// Finally, decide whether to accept or reject.
@@ -340,28 +585,63 @@ public class MCMCManager implements Sampleable, InfoProvider {
 
 				// Update accordingly.
 				if (doAccept) {
-					stats.increment(true, "" + shakeItBaby.size() + " used proposers");
-					for (Proposer proposer : shakeItBaby) {
-						proposer.clearCache();
+					stats.increment(true, this.usedProposersCategories.get(noOfProposers));
+					for (int i = 0; i < noOfProposers; ++i) {
+						if (profiler == null) {
+							shakeItBaby.get(i).clearCache();
+						} else {
+							long t = System.nanoTime();
+							shakeItBaby.get(i).clearCache();
+							profiler.addProposerTime(shakeItBaby.get(i), MCMCProfiler.CLEAR, System.nanoTime() - t);
+						}
 					}
-					for (ProperDependent dep : this.properDependents) {
-						if (changeInfos.get(dep) != null) {
-							dep.clearCache(willSample);
+					if (scheduler != null) {
+						scheduler.clearCache(changeInfos, willSample, profiler);
+					} else {
+						for (int i = 0; i < noOfDeps; ++i) {
+							if (changeInfos.get(this.dependentIds[i]) != null) {
+								if (profiler == null) {
+									this.properDependents.get(i).clearCache(willSample);
+								} else {
+									boolean isPartial = this.isPartial(i);
+									long t = System.nanoTime();
+									this.properDependents.get(i).clearCache(willSample);
+									profiler.addDependentTime(i, MCMCProfiler.CLEAR, isPartial, System.nanoTime() - t);
+								}
+							}
 						}
 					}
+					this.proposedPosteriorDensity = this.posteriorDensity;
 					this.posteriorDensity = newPosteriorDensity;
 					if (this.bestPosteriorDensity.lessThan(newPosteriorDensity)) {
-						this.bestPosteriorDensity = newPosteriorDensity;
+						this.bestPosteriorDensity.set(newPosteriorDensity);
 						this.bestState = this.sampler.getSample(this.sampleables, SamplingMode.MAX_RECORD);
 					}
 				} else {
-					stats.increment(false, "" + shakeItBaby.size() + " used proposers");
-					for (Proposer proposer : shakeItBaby) {
-						proposer.restoreCache();
+					stats.increment(false, this.usedProposersCategories.get(noOfProposers));
+					for (int i = 0; i < noOfProposers; ++i) {
+						if (profiler == null) {
+							shakeItBaby.get(i).restoreCache();
+						} else {
+							long t = System.nanoTime();
+							shakeItBaby.get(i).restoreCache();
+							profiler.addProposerTime(shakeItBaby.get(i), MCMCProfiler.RESTORE, System.nanoTime() - t);
+						}
 					}
-					for (ProperDependent dep: this.properDependents) {
-						if (changeInfos.get(dep) != null) {
-							dep.restoreCache(willSample);
+					if (scheduler != null) {
+						scheduler.restoreCache(changeInfos, willSample, profiler);
+					} else {
+						for (int i = 0; i < noOfDeps; ++i) {
+							if (changeInfos.get(this.dependentIds[i]) != null) {
+								if (profiler == null) {
+									this.properDependents.get(i).restoreCache(willSample);
+								} else {
+									boolean isPartial = this.isPartial(i);
+									long t = System.nanoTime();
+									this.properDependents.get(i).restoreCache(willSample);
+									profiler.addDependentTime(i, MCMCProfiler.RESTORE, isPartial, System.nanoTime() - t);
+								}
+							}
 						}
 					}
 				}
@@ -372,7 +652,8 @@ public class MCMCManager implements Sampleable, InfoProvider {
 				}
 				
 				if (JPrIMEStarter.shutDown) {
-					// SIGTERM signal received, time to stop running
+					// SIGTERM signal received, time to stop running. Make sure pending samples reach the output.
+					this.sampler.flush();
 					this.endTime = System.nanoTime();
 					return;
 				}
@@ -380,16 +661,111 @@ public class MCMCManager implements Sampleable, InfoProvider {
 				// Sample, if desired.
 				if (willSample) {
 					this.sampler.writeSample(this.sampleables, SamplingMode.ORDINARY);
+					if (this.diagnostics != null) {
+						this.diagnostics.addSample(this.sampleables);
+					}
+				}
+
+				// Checkpoint, if desired.
+				if (this.checkpointFile != null && this.iteration.getIteration() % this.checkpointInterval == 0) {
+					this.checkpoint();
+				}
+
+				// Report profiling, if desired.
+				if (profiler != null) {
+					profiler.reportIfDue();
+				}
+
+				// Stop if the diagnostics deem the chain converged.
+				if (this.diagnostics != null && this.diagnostics.isConverged()) {
+					throw new RunAbortedException("ESS threshold reached by all tracked quantities at iteration " + this.iteration.getIteration() + ".");
 				}
 			}
 		} catch (RunAbortedException rae) {
 			this.runAbortedMessage = rae.getMessage();
+		} finally {
+			if (scheduler != null) {
+				scheduler.shutdown();
+			}
 		}
 
 		// Post-run stuff.
 		this.endTime = System.nanoTime();
 	}
 
+	/**
+	 * Writes the chain state. Proper dependents are not included.
+	 * @param out the checkpoint output.
+	 * @throws IOException if unable to write, or if a state parameter cannot be checkpointed.
+	 */
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		this.iteration.writeCheckpoint(out);
+		this.prng.writeCheckpoint(out);
+		out.writeInt(this.parameters.size());
+		for (StateParameter param : this.parameters) {
+			if (!(param instanceof Checkpointable)) {
+				throw new IOException("Cannot checkpoint state parameter " + param.getName() + ".");
+			}
+			((Checkpointable) param).writeCheckpoint(out);
+		}
+		this.stats.writeCheckpoint(out);
+		for (Proposer proposer : this.proposerSelector.getProposers()) {
+			if (proposer.getStatistics() != null) {
+				proposer.getStatistics().writeCheckpoint(out);
+			}
+			if (proposer instanceof Checkpointable) {
+				((Checkpointable) proposer).writeCheckpoint(out);
+			}
+		}
+		for (Object o : new Object[] { this.thinner, this.proposerSelector, this.proposalAcceptor, this.sampler, this.diagnostics }) {
+			if (o instanceof Checkpointable) {
+				((Checkpointable) o).writeCheckpoint(out);
+			}
+		}
+		Checkpoint.writeLogDouble(out, this.bestPosteriorDensity);
+		Checkpoint.writeString(out, this.bestState);
+	}
+
+	/**
+	 * Restores the chain state. Proper dependents are rebuilt when the chain is run.
+	 * @param in the checkpoint input.
+	 * @throws IOException if unable to read, or if the checkpoint does not match the chain.
+	 */
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		this.updateDependencyStructure();
+		this.iteration.readCheckpoint(in);
+		this.prng.readCheckpoint(in);
+		int n = in.readInt();
+		if (n != this.parameters.size()) {
+			throw new IOException("Checkpoint does not match current chain: expected " + this.parameters.size() +
+					" state parameters but found " + n + ".");
+		}
+		for (StateParameter param : this.parameters) {
+			if (!(param instanceof Checkpointable)) {
+				throw new IOException("Cannot restore state parameter " + param.getName() + " from checkpoint.");
+			}
+			((Checkpointable) param).readCheckpoint(in);
+		}
+		this.stats.readCheckpoint(in);
+		for (Proposer proposer : this.proposerSelector.getProposers()) {
+			if (proposer.getStatistics() != null) {
+				proposer.getStatistics().readCheckpoint(in);
+			}
+			if (proposer instanceof Checkpointable) {
+				((Checkpointable) proposer).readCheckpoint(in);
+			}
+		}
+		for (Object o : new Object[] { this.thinner, this.proposerSelector, this.proposalAcceptor, this.sampler, this.diagnostics }) {
+			if (o instanceof Checkpointable) {
+				((Checkpointable) o).readCheckpoint(in);
+			}
+		}
+		this.bestPosteriorDensity = Checkpoint.readLogDouble(in);
+		this.bestState = Checkpoint.readString(in);
+	}
+
 	@Override
 	public Class<?> getSampleType() {
 		return SampleLogDouble.class;
@@ -405,6 +781,11 @@ public class MCMCManager implements Sampleable, InfoProvider {
 		return this.posteriorDensity.toString();
 	}
 
+	@Override
+	public LogDouble getSampleLogDouble(SamplingMode mode) {
+		return this.posteriorDensity;
+	}
+
 	@Override
 	public String getPreInfo(String prefix) {
 		StringBuilder sb = new StringBuilder(65536);
@@ -426,6 +807,24 @@ public class MCMCManager implements Sampleable, InfoProvider {
 		}
 		sb.append(prefix).append("Overall statistics:\n");
 		sb.append(this.stats.getPreInfo(prefix + '\t'));
+		if (this.checkpointFile != null) {
+			sb.append(prefix).append("Checkpoint file: ").append(this.checkpointFile).append('\n');
+			sb.append(prefix).append("Checkpoint interval: ").append(this.checkpointInterval).append('\n');
+		}
+		if (this.resumedIteration >= 0) {
+			sb.append(prefix).append("Resumed from checkpoint at iteration: ").append(this.resumedIteration).append('\n');
+		}
+		if (this.diagnostics != null) {
+			sb.append(prefix).append("Convergence diagnostics:\n");
+			sb.append(this.diagnostics.getPreInfo(prefix + '\t'));
+		}
+		if (this.profiler != null) {
+			sb.append(prefix).append("Profiling:\n");
+			sb.append(this.profiler.getPreInfo(prefix + '\t'));
+		}
+		if (this.noOfDependentThreads > 1) {
+			sb.append(prefix).append("Threads for concurrent dependents: ").append(this.noOfDependentThreads).append('\n');
+		}
 		return sb.toString();
 	}
 
@@ -466,6 +865,14 @@ public class MCMCManager implements Sampleable, InfoProvider {
 		}
 		sb.append(prefix).append("Statistics:\n");
 		sb.append(this.stats.getPostInfo(prefix + '\t'));
+		if (this.diagnostics != null) {
+			sb.append(prefix).append("Convergence diagnostics:\n");
+			sb.append(this.diagnostics.getPostInfo(prefix + '\t'));
+		}
+		if (this.profiler != null) {
+			sb.append(prefix).append("Profiling:\n");
+			sb.append(this.profiler.getPostInfo(prefix + '\t'));
+		}
 		return sb.toString();
 	}
 }
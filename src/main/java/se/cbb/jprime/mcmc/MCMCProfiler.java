@@ -0,0 +1,264 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Accumulates wall time and number of calls of the operations of an MCMC chain, per proposer
+ * (<code>cacheAndPerturb</code>, <code>clearCache</code> and <code>restoreCache</code>) and per proper dependent
+ * (<code>cacheAndUpdate</code>, <code>clearCache</code> and <code>restoreCache</code>). For dependents, the operations
+ * are further split into full and partial updates: an update is partial if the change info the dependent
+ * put for itself details the affected elements, and full otherwise.
+ * <p/>
+ * The profiler is fed by <code>MCMCManager</code>, which only queries the clock when a profiler has been set.
+ * Optionally, a report is written to an info output regularly.
+ */
+public class MCMCProfiler implements InfoProvider {
+
+	/** Proposer operation: cacheAndPerturb. */
+	public static final int PERTURB = 0;
+
+	/** Dependent operation: cacheAndUpdate. */
+	public static final int UPDATE = 0;
+
+	/** Operation: clearCache. */
+	public static final int CLEAR = 1;
+
+	/** Operation: restoreCache. */
+	public static final int RESTORE = 2;
+
+	/** Names of proposer operations. */
+	private static final String[] PROPOSER_OPS = { "perturb", "clear", "restore" };
+
+	/** Names of dependent operations, full and partial alternating. */
+	private static final String[] DEPENDENT_OPS = { "full update", "partial update", "full clear", "partial clear", "full restore", "partial restore" };
+
+	/** Iteration. */
+	private Iteration iteration;
+
+	/** Index of each proposer. */
+	private IdentityHashMap<Proposer, Integer> proposerIndices;
+
+	/** Proposer names. */
+	private String[] proposerNames;
+
+	/** Time in ns, per proposer operation and proposer. */
+	private long[][] proposerTimes;
+
+	/** Number of calls, per proposer operation and proposer. */
+	private long[][] proposerCalls;
+
+	/** Dependent names, in topological order. */
+	private String[] dependentNames;
+
+	/** Time in ns, per dependent operation (full and partial alternating) and dependent. */
+	private long[][] dependentTimes;
+
+	/** Number of calls, per dependent operation (full and partial alternating) and dependent. */
+	private long[][] dependentCalls;
+
+	/** Time at set-up in ns. */
+	private long startTime;
+
+	/** Info output for regular reports. Null if not used. */
+	private Writer info;
+
+	/** Number of iterations between reports. */
+	private int reportInterval;
+
+	/** Prefix of reports. */
+	private String reportPrefix;
+
+	/**
+	 * Constructor.
+	 * @param iter the iteration of the chain.
+	 */
+	public MCMCProfiler(Iteration iter) {
+		this.iteration = iter;
+		this.info = null;
+		this.reportInterval = 0;
+		this.reportPrefix = "";
+	}
+
+	/**
+	 * Enables regular reports. The output may be shared between chains, and is therefore synchronised upon.
+	 * @param info the info output.
+	 * @param interval the number of iterations between reports.
+	 * @param prefix prefix of each report line, e.g. identifying the chain.
+	 */
+	public void setReporting(Writer info, int interval, String prefix) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Profiling report interval must be at least 1.");
+		}
+		this.info = info;
+		this.reportInterval = interval;
+		this.reportPrefix = prefix;
+	}
+
+	/**
+	 * Sets up the profiled objects and clears all counters. Invoked by the MCMC manager before iterating.
+	 * @param proposers the proposers.
+	 * @param dependents the proper dependents, in topological order.
+	 */
+	public void setUp(List<Proposer> proposers, List<ProperDependent> dependents) {
+		int n = proposers.size();
+		this.proposerIndices = new IdentityHashMap<Proposer, Integer>(n);
+		this.proposerNames = new String[n];
+		for (int i = 0; i < n; ++i) {
+			this.proposerIndices.put(proposers.get(i), i);
+			this.proposerNames[i] = proposers.get(i).toString();
+		}
+		this.proposerTimes = new long[PROPOSER_OPS.length][n];
+		this.proposerCalls = new long[PROPOSER_OPS.length][n];
+		int m = dependents.size();
+		this.dependentNames = new String[m];
+		HashMap<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < m; ++i) {
+			ProperDependent dep = dependents.get(i);
+			String name = (dep instanceof Model ? ((Model) dep).getModelName() : dep.getClass().getSimpleName());
+			Integer k = counts.get(name);
+			counts.put(name, k == null ? 1 : k + 1);
+			this.dependentNames[i] = (k == null ? name : name + " (" + (k + 1) + ")");
+		}
+		this.dependentTimes = new long[DEPENDENT_OPS.length][m];
+		this.dependentCalls = new long[DEPENDENT_OPS.length][m];
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Adds the time of a proposer operation.
+	 * @param proposer the proposer.
+	 * @param op the operation, e.g. <code>PERTURB</code>.
+	 * @param time the time in ns.
+	 */
+	public void addProposerTime(Proposer proposer, int op, long time) {
+		int i = this.proposerIndices.get(proposer);
+		this.proposerTimes[op][i] += time;
+		this.proposerCalls[op][i]++;
+	}
+
+	/**
+	 * Adds the time of a dependent operation.
+	 * @param dep the index of the dependent, in topological order.
+	 * @param op the operation, e.g. <code>UPDATE</code>.
+	 * @param isPartial true if a partial update.
+	 * @param time the time in ns.
+	 */
+	public void addDependentTime(int dep, int op, boolean isPartial, long time) {
+		int k = 2 * op + (isPartial ? 1 : 0);
+		this.dependentTimes[k][dep] += time;
+		this.dependentCalls[k][dep]++;
+	}
+
+	/**
+	 * Writes a report if due. Invoked by the MCMC manager after each iteration.
+	 * @throws IOException if unable to write the report.
+	 */
+	public void reportIfDue() throws IOException {
+		if (this.info != null && this.iteration.getIteration() % this.reportInterval == 0) {
+			String report = this.getReport(this.reportPrefix, "PROFILE AT ITERATION " + this.iteration.getIteration());
+			synchronized (this.info) {
+				this.info.write(report);
+				this.info.flush();
+			}
+		}
+	}
+
+	/**
+	 * Returns the total time of a proposer.
+	 * @param i the index of the proposer.
+	 * @return the time in ns.
+	 */
+	public long getProposerTime(int i) {
+		long t = 0;
+		for (int op = 0; op < PROPOSER_OPS.length; ++op) {
+			t += this.proposerTimes[op][i];
+		}
+		return t;
+	}
+
+	/**
+	 * Returns the total time of a dependent.
+	 * @param i the index of the dependent, in topological order.
+	 * @return the time in ns.
+	 */
+	public long getDependentTime(int i) {
+		long t = 0;
+		for (int op = 0; op < DEPENDENT_OPS.length; ++op) {
+			t += this.dependentTimes[op][i];
+		}
+		return t;
+	}
+
+	/**
+	 * Returns the number of calls of a dependent operation.
+	 * @param i the index of the dependent, in topological order.
+	 * @param op the operation, e.g. <code>UPDATE</code>.
+	 * @param isPartial true for partial updates.
+	 * @return the number of calls.
+	 */
+	public long getDependentCalls(int i, int op, boolean isPartial) {
+		return this.dependentCalls[2 * op + (isPartial ? 1 : 0)][i];
+	}
+
+	/**
+	 * Returns the current breakdown of times.
+	 * @param prefix line prefix.
+	 * @param header header line.
+	 * @return the report.
+	 */
+	private String getReport(String prefix, String header) {
+		StringBuilder sb = new StringBuilder(2048);
+		sb.append(prefix).append(header).append('\n');
+		if (this.proposerNames == null) {
+			return sb.toString();
+		}
+		long total = System.nanoTime() - this.startTime;
+		DecimalFormat pf = new DecimalFormat("0.0");
+		DecimalFormat tf = new DecimalFormat("0.000");
+		sb.append(prefix).append("Wall time: ").append(tf.format(total / 1e9)).append(" s\n");
+		sb.append(prefix).append("Proposers (% of wall time, then per operation: calls, total s, mean us):\n");
+		for (int i = 0; i < this.proposerNames.length; ++i) {
+			this.appendLine(sb, prefix, this.proposerNames[i], this.getProposerTime(i), total, PROPOSER_OPS,
+					this.proposerTimes, this.proposerCalls, i, pf, tf);
+		}
+		sb.append(prefix).append("Dependents (% of wall time, then per operation: calls, total s, mean us):\n");
+		for (int i = 0; i < this.dependentNames.length; ++i) {
+			this.appendLine(sb, prefix, this.dependentNames[i], this.getDependentTime(i), total, DEPENDENT_OPS,
+					this.dependentTimes, this.dependentCalls, i, pf, tf);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the breakdown of an object.
+	 */
+	private void appendLine(StringBuilder sb, String prefix, String name, long time, long total, String[] ops,
+			long[][] times, long[][] calls, int i, DecimalFormat pf, DecimalFormat tf) {
+		sb.append(prefix).append('\t').append(name).append(": ").append(pf.format(total > 0 ? 100.0 * time / total : 0.0)).append('%');
+		for (int op = 0; op < ops.length; ++op) {
+			if (calls[op][i] == 0) { continue; }
+			sb.append(", ").append(ops[op]).append(": ").append(calls[op][i]).append(", ").append(tf.format(times[op][i] / 1e9))
+				.append(", ").append(tf.format(times[op][i] / 1e3 / calls[op][i]));
+		}
+		sb.append('\n');
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(prefix).append("PROFILER\n");
+		sb.append(prefix).append("Report interval: ").append(this.info == null ? "None" : "" + this.reportInterval).append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		return this.getReport(prefix, "PROFILER");
+	}
+
+}
@@ -0,0 +1,205 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.List;
+import java.util.concurrent.Phaser;
+
+import se.cbb.jprime.io.Sampler;
+import se.cbb.jprime.math.PRNG;
+
+/**
+ * Metropolis-coupled MCMC (MC^3, a.k.a. parallel tempering). Runs a ladder of chains concurrently,
+ * one per thread, where the chain at level i has its posterior density raised to 1/T_i through a
+ * <code>TemperedMetropolisHastingsAcceptor</code>, and T_0 = 1 &lt; T_1 &lt; ... Every k iterations,
+ * all chains are halted and a swap between two adjacent levels i and i+1 is proposed; it is accepted
+ * with probability min(1, (P(x_{i+1})/P(x_i))^(1/T_i - 1/T_{i+1})).
+ * <p/>
+ * Rather than exchanging the (potentially huge) model states, the chains exchange temperatures and
+ * samplers. Hence, the samples of level i are always written to the sampler with which the chain at level i
+ * started, and the cold chain's samples end up in the sampler of the first chain.
+ * <p/>
+ * All chains must share the same number of iterations. If a chain terminates prematurely,
+ * no further swaps are performed.
+ */
+public class MetropolisCoupledRunner extends MultiChainRunner {
+
+	/** Number of iterations between swap proposals. */
+	private int swapInterval;
+
+	/** Pseudo-random number generator for swaps. */
+	private PRNG prng;
+
+	/** Temperature of each level, ascending. */
+	private double[] temperatures;
+
+	/** Index of the chain currently at each level. */
+	private int[] levelToChain;
+
+	/** Acceptors of the chains. */
+	private TemperedMetropolisHastingsAcceptor[] acceptors;
+
+	/** Number of proposed swaps between level i and i+1. */
+	private int[] swapsProposed;
+
+	/** Number of accepted swaps between level i and i+1. */
+	private int[] swapsAccepted;
+
+	/** Synchronises the chains at swap iterations. */
+	private Phaser phaser;
+
+	/** False when swapping has been turned off due to a terminated chain. */
+	private volatile boolean isCoupled;
+
+	/**
+	 * Constructor. The chains' acceptors must be of type <code>TemperedMetropolisHastingsAcceptor</code>,
+	 * with strictly increasing temperatures in the order of the chains. Notice that there is one thread per chain.
+	 * @param chains the chains, in order of temperature.
+	 * @param swapInterval number of iterations between swap proposals.
+	 * @param prng pseudo-random number generator used for swaps.
+	 */
+	public MetropolisCoupledRunner(List<MCMCManager> chains, int swapInterval, PRNG prng) {
+		super(chains, chains.size());
+		if (swapInterval < 1) {
+			throw new IllegalArgumentException("Swap interval must be at least 1.");
+		}
+		int n = chains.size();
+		this.swapInterval = swapInterval;
+		this.prng = prng;
+		this.temperatures = new double[n];
+		this.levelToChain = new int[n];
+		this.acceptors = new TemperedMetropolisHastingsAcceptor[n];
+		this.swapsProposed = new int[Math.max(n - 1, 0)];
+		this.swapsAccepted = new int[Math.max(n - 1, 0)];
+		Iteration iter0 = chains.get(0).iteration;
+		for (int i = 0; i < n; ++i) {
+			MCMCManager chain = chains.get(i);
+			if (!(chain.proposalAcceptor instanceof TemperedMetropolisHastingsAcceptor)) {
+				throw new IllegalArgumentException("Metropolis-coupled chains require tempered Metropolis-Hastings acceptors.");
+			}
+			if (chain.iteration.getIteration() != iter0.getIteration() ||
+					chain.iteration.getTotalNoOfIterations() != iter0.getTotalNoOfIterations()) {
+				throw new IllegalArgumentException("Metropolis-coupled chains must have identical iteration ranges.");
+			}
+			this.acceptors[i] = (TemperedMetropolisHastingsAcceptor) chain.proposalAcceptor;
+			this.temperatures[i] = this.acceptors[i].getTemperature();
+			if (i > 0 && this.temperatures[i] <= this.temperatures[i - 1]) {
+				throw new IllegalArgumentException("Metropolis-coupled chains must have strictly increasing temperatures.");
+			}
+			this.levelToChain[i] = i;
+		}
+		this.phaser = new Phaser(n) {
+			@Override
+			protected boolean onAdvance(int phase, int registeredParties) {
+				// Invoked by the last arriving chain while all others are halted.
+				if (isCoupled) {
+					proposeSwap();
+				}
+				return (registeredParties == 0);
+			}
+		};
+		this.isCoupled = true;
+		for (int i = 0; i < n; ++i) {
+			chains.get(i).iteration.addIterationListener(new IterationListener() {
+				@Override
+				public void incrementPerformed(int iterCurr, int iterTotal) {
+					if (isCoupled && iterCurr % MetropolisCoupledRunner.this.swapInterval == 0) {
+						phaser.arriveAndAwaitAdvance();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Proposes a swap between two randomly selected adjacent levels.
+	 * Must only be invoked when all chains are halted.
+	 */
+	private void proposeSwap() {
+		if (this.temperatures.length < 2) {
+			return;
+		}
+		int i = this.prng.nextInt(this.temperatures.length - 1);
+		MCMCManager a = this.chains.get(this.levelToChain[i]);
+		MCMCManager b = this.chains.get(this.levelToChain[i + 1]);
+		double logRatio = (1.0 / this.temperatures[i] - 1.0 / this.temperatures[i + 1]) *
+				(b.posteriorDensity.getLogValue() - a.posteriorDensity.getLogValue());
+		this.swapsProposed[i]++;
+		if (!Double.isNaN(logRatio) && (logRatio >= 0.0 || Math.log(this.prng.nextDouble()) < logRatio)) {
+			this.swapsAccepted[i]++;
+			int tmp = this.levelToChain[i];
+			this.levelToChain[i] = this.levelToChain[i + 1];
+			this.levelToChain[i + 1] = tmp;
+			this.acceptors[this.levelToChain[i]].setTemperature(this.temperatures[i]);
+			this.acceptors[this.levelToChain[i + 1]].setTemperature(this.temperatures[i + 1]);
+			Sampler s = a.sampler;
+			a.sampler = b.sampler;
+			b.sampler = s;
+		}
+	}
+
+	@Override
+	protected void runChain(int i) throws IOException {
+		try {
+			super.runChain(i);
+		} finally {
+			// All chains pass the final swap point before any chain can complete normally,
+			// so this only cancels pending swaps when a chain has been aborted.
+			this.isCoupled = false;
+			this.phaser.arriveAndDeregister();
+		}
+	}
+
+	/**
+	 * Returns the index of the chain currently at the specified temperature level.
+	 * @param level the level, where 0 is the cold chain.
+	 * @return the chain index.
+	 */
+	public int getChainAtLevel(int level) {
+		return this.levelToChain[level];
+	}
+
+	/**
+	 * Returns the swap acceptance ratio between level i and i+1.
+	 * @param i the lower level.
+	 * @return the acceptance ratio, NaN if no swaps have been proposed.
+	 */
+	public double getSwapAcceptanceRatio(int i) {
+		return (this.swapsProposed[i] == 0 ? Double.NaN : this.swapsAccepted[i] / (double) this.swapsProposed[i]);
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(65536 * this.chains.size());
+		sb.append(prefix).append("METROPOLIS-COUPLED RUNNER\n");
+		sb.append(prefix).append("Swap interval: ").append(this.swapInterval).append('\n');
+		sb.append(prefix).append("Temperatures: ");
+		for (int i = 0; i < this.temperatures.length; ++i) {
+			sb.append(i == 0 ? "" : ", ").append(this.temperatures[i]);
+		}
+		sb.append('\n');
+		sb.append(super.getPreInfo(prefix));
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(65536 * this.chains.size());
+		sb.append(prefix).append("METROPOLIS-COUPLED RUNNER\n");
+		DecimalFormat df = new DecimalFormat("#.###");
+		sb.append(prefix).append("Swap statistics between adjacent levels:\n");
+		for (int i = 0; i < this.swapsProposed.length; ++i) {
+			sb.append(prefix).append('\t').append("T=").append(this.temperatures[i]).append(" <-> T=").append(this.temperatures[i + 1])
+				.append(": ").append(this.swapsAccepted[i]).append(" / ").append(this.swapsProposed[i]).append(" = ")
+				.append(this.swapsProposed[i] == 0 ? "N/A" : df.format(this.getSwapAcceptanceRatio(i))).append('\n');
+		}
+		sb.append(prefix).append("Final chain at each level: ");
+		for (int i = 0; i < this.levelToChain.length; ++i) {
+			sb.append(i == 0 ? "" : ", ").append(this.levelToChain[i] + 1);
+		}
+		sb.append('\n');
+		sb.append(super.getPostInfo(prefix));
+		return sb.toString();
+	}
+
+}
@@ -15,7 +15,13 @@ import se.cbb.jprime.math.PRNG;
 public class MetropolisHastingsAcceptor implements ProposalAcceptor {
 
 	/** Pseudo-random number generator. */
-	private PRNG prng;
+	protected PRNG prng;
+
+	/** Work space for the acceptance ratio, reused between invocations. */
+	protected LogDouble ratio = new LogDouble(1.0);
+
+	/** Work space for proposal density ratios, reused between invocations. */
+	protected LogDouble densityRatio = new LogDouble(1.0);
 
 	/**
 	 * Constructor.
@@ -36,16 +42,31 @@ public class MetropolisHastingsAcceptor implements ProposalAcceptor {
 	public boolean acceptProposedState(LogDouble proposedStateLikelihood,
 			LogDouble oldStateLikelihood, List<Proposal> proposals) throws RunAbortedException {
 		
-		LogDouble a = proposedStateLikelihood.divToNew(oldStateLikelihood);
+		LogDouble a = this.ratio.set(proposedStateLikelihood).div(oldStateLikelihood);
+		if (!this.multDensityRatios(a, proposals)) {
+			return false;
+		}
+		return a.greaterThanOrEquals(prng.nextDouble());   // Accounts also for case a >= 1.0.
+	}
+
+	/**
+	 * Multiplies a value with the proposal density ratio Q(x;x')/Q(x';x) of each proposal,
+	 * without creating any new objects.
+	 * @param a the value to be multiplied.
+	 * @param proposals the proposals, may be null. Elements must be of type <code>MetropolisHastingsProposal</code>.
+	 * @return false if any proposal was invalid; otherwise true.
+	 */
+	protected boolean multDensityRatios(LogDouble a, List<Proposal> proposals) {
 		if (proposals != null) {
-			for (Proposal prop : proposals) {
+			for (int i = 0; i < proposals.size(); ++i) {
+				MetropolisHastingsProposal prop = (MetropolisHastingsProposal) proposals.get(i);
 				if (!prop.isValid()) {
 					return false;
 				}
-				a.mult(((MetropolisHastingsProposal) prop).getDensityRatio());
+				a.mult(this.densityRatio.set(prop.getBackwardDensity()).div(prop.getForwardDensity()));
 			}
 		}
-		return a.greaterThanOrEquals(new LogDouble(prng.nextDouble()));   // Accounts also for case a >= 1.0.
+		return true;
 	}
 	
 	@Override
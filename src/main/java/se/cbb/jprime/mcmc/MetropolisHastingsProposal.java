@@ -83,6 +83,21 @@ public class MetropolisHastingsProposal implements Proposal {
 		this(proposer, Arrays.asList(new StateParameter[] {attemptedParam}));
 	}
 	
+	/**
+	 * Reassigns the densities of this proposal, thus enabling a proposer to reuse the same
+	 * instance for every proposal it makes. The perturbed parameters are kept.
+	 * @param forwardDensity the probability density of obtaining the new state given the old one.
+	 * @param backwardDensity the probability density of obtaining the old state given the new one.
+	 * @param noOfPerturbedSubParams the total number of actually changed sub-parameters.
+	 * @return this proposal.
+	 */
+	public MetropolisHastingsProposal set(LogDouble forwardDensity, LogDouble backwardDensity, int noOfPerturbedSubParams) {
+		this.forwardDensity = forwardDensity;
+		this.backwardDensity = backwardDensity;
+		this.noOfSubParams = noOfPerturbedSubParams;
+		return this;
+	}
+	
 	/**
 	 * Returns the probability density Q(x';x) for
 	 * obtaining the new value x' given the old value x.
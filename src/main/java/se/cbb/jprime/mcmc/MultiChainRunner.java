@@ -0,0 +1,182 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs a number of fully independent MCMC chains concurrently on a fixed-size thread pool.
+ * Each chain is an ordinary <code>MCMCManager</code> with its own model hierarchy,
+ * PRNG and sampler; no state whatsoever may be shared between chains, since the
+ * managers are not thread-safe. A single chain is executed directly on the calling thread.
+ */
+public class MultiChainRunner implements InfoProvider {
+
+	/** The chains. */
+	protected ArrayList<MCMCManager> chains;
+
+	/** Number of worker threads. */
+	protected int noOfThreads;
+
+	/** Abortion message of each chain, null if completed normally. */
+	private String[] failures;
+
+	/** Time at start in ns. */
+	private long startTime;
+
+	/** Time at end in ns. */
+	private long endTime;
+
+	/**
+	 * Constructor.
+	 * @param chains the independent chains.
+	 * @param noOfThreads maximum number of chains to execute simultaneously.
+	 */
+	public MultiChainRunner(List<MCMCManager> chains, int noOfThreads) {
+		if (chains.isEmpty()) {
+			throw new IllegalArgumentException("Cannot run an empty set of MCMC chains.");
+		}
+		if (noOfThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1.");
+		}
+		this.chains = new ArrayList<MCMCManager>(chains);
+		this.noOfThreads = Math.min(noOfThreads, chains.size());
+		this.failures = new String[chains.size()];
+		this.startTime = -1;
+		this.endTime = -1;
+	}
+
+	/**
+	 * Returns the number of chains.
+	 * @return the number of chains.
+	 */
+	public int getNoOfChains() {
+		return this.chains.size();
+	}
+
+	/**
+	 * Returns a chain.
+	 * @param i the chain index, starting at 0.
+	 * @return the chain.
+	 */
+	public MCMCManager getChain(int i) {
+		return this.chains.get(i);
+	}
+
+	/**
+	 * Executes all chains and blocks until every one of them has finished.
+	 * A chain failing does not stop the others; once all have terminated, the
+	 * first failure encountered is rethrown.
+	 * @throws IOException if a chain was unable to produce sampling output.
+	 */
+	public void run() throws IOException {
+		this.startTime = System.nanoTime();
+		if (this.chains.size() == 1) {
+			try {
+				this.runChain(0);
+			} finally {
+				this.endTime = System.nanoTime();
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.noOfThreads, new ThreadFactory() {
+			private int cnt = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "mcmc-chain-" + (++cnt));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(this.chains.size());
+		for (int i = 0; i < this.chains.size(); ++i) {
+			final int chain = i;
+			futures.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					runChain(chain);
+					return null;
+				}
+			}));
+		}
+		pool.shutdown();
+
+		Throwable firstFailure = null;
+		for (int i = 0; i < futures.size(); ++i) {
+			try {
+				futures.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.failures[i] = "Interrupted.";
+				if (firstFailure == null) { firstFailure = e; }
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				this.failures[i] = cause.toString();
+				if (firstFailure == null) { firstFailure = cause; }
+			}
+		}
+		this.endTime = System.nanoTime();
+
+		if (firstFailure != null) {
+			if (firstFailure instanceof IOException) {
+				throw (IOException) firstFailure;
+			}
+			if (firstFailure instanceof RuntimeException) {
+				throw (RuntimeException) firstFailure;
+			}
+			if (firstFailure instanceof Error) {
+				throw (Error) firstFailure;
+			}
+			throw new RuntimeException("MCMC chain failed.", firstFailure);
+		}
+	}
+
+	/**
+	 * Executes a single chain. Invoked on the chain's worker thread.
+	 * @param i the chain index, starting at 0.
+	 * @throws IOException if the chain was unable to produce sampling output.
+	 */
+	protected void runChain(int i) throws IOException {
+		this.chains.get(i).run();
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(65536 * this.chains.size());
+		sb.append(prefix).append("MULTI-CHAIN RUNNER\n");
+		sb.append(prefix).append("Number of chains: ").append(this.chains.size()).append('\n');
+		sb.append(prefix).append("Number of threads: ").append(this.noOfThreads).append('\n');
+		for (int i = 0; i < this.chains.size(); ++i) {
+			sb.append(prefix).append("Chain ").append(i + 1).append(":\n");
+			sb.append(this.chains.get(i).getPreInfo(prefix + '\t'));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(65536 * this.chains.size());
+		sb.append(prefix).append("MULTI-CHAIN RUNNER\n");
+		long ns = this.endTime - this.startTime;
+		double s = (double) ns / 1000000000.0;
+		DecimalFormat df = new DecimalFormat("#.##");
+		sb.append(prefix).append("Total wall time: ").append(ns).append(" ns = ").append(df.format(s)).append(" s\n");
+		for (int i = 0; i < this.chains.size(); ++i) {
+			sb.append(prefix).append("Chain ").append(i + 1).append(":\n");
+			if (this.failures[i] != null) {
+				sb.append(prefix).append("\tChain failed: ").append(this.failures[i]).append('\n');
+			}
+			sb.append(this.chains.get(i).getPostInfo(prefix + '\t'));
+		}
+		return sb.toString();
+	}
+
+}
@@ -2,6 +2,7 @@ package se.cbb.jprime.mcmc;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import se.cbb.jprime.math.PRNG;
 
@@ -33,6 +34,15 @@ public class MultiProposerSelector implements ProposerSelector {
 	/** Cumulative number-of-proposers weights, normalised as [0,...,1]. Null if not used. */
 	private double[] cumNoWeights;
 	
+	/** Selected proposers. Reused between selections. */
+	private ArrayList<Proposer> selProps = new ArrayList<Proposer>(16);
+	
+	/** State parameters of the selected proposers. Reused between selections. */
+	private ArrayList<StateParameter> selParams = new ArrayList<StateParameter>(32);
+	
+	/** Accumulated normalised weights of all proposers. Reused between selections. */
+	private double[] accWeights = new double[0];
+	
 	/**
 	 * Creates an instance where only one proposer at a time is invoked.
 	 * @param prng the PRNG used for random selection.
@@ -83,6 +93,11 @@ public class MultiProposerSelector implements ProposerSelector {
 		this.weights.add(weight);
 	}
 	
+	@Override
+	public List<Proposer> getProposers() {
+		return Collections.unmodifiableList(this.proposers);
+	}
+	
 	@Override
 	public ArrayList<Proposer> getDisjointProposers() {
 		
@@ -104,14 +119,16 @@ public class MultiProposerSelector implements ProposerSelector {
 //			return ts;
 //		}
 		// Special cases for speed.
+		ArrayList<Proposer> selProps = this.selProps;
+		selProps.clear();
 		if (this.proposers.size() == 1) {
-			return new ArrayList<Proposer>(this.proposers);
+			selProps.add(this.proposers.get(0));
+			return selProps;
 		}
 		
 		if (this.cumNoWeights.length == 1) {
-			ArrayList<Proposer> ts = new ArrayList<Proposer>(1);
-			ts.add(this.proposers.get(prng.nextInt(this.proposers.size())));
-			return ts;
+			selProps.add(this.proposers.get(prng.nextInt(this.proposers.size())));
+			return selProps;
 		}
 		
 		
@@ -126,7 +143,10 @@ public class MultiProposerSelector implements ProposerSelector {
 		while (d > this.cumNoWeights[noOfProps-1]) { ++noOfProps; }
 		//System.out.println("noOfProps: "+ noOfProps);
 		// Compute an accumulated weight array for the current proposer weights.
-		double[] accWeights = new double[this.proposers.size()];
+		if (this.accWeights.length != this.proposers.size()) {
+			this.accWeights = new double[this.proposers.size()];
+		}
+		double[] accWeights = this.accWeights;
 		double tot = 0.0;
 		for (int i = 0; i < accWeights.length; ++i) {
 			tot += this.weights.get(i).getValue();
@@ -140,8 +160,8 @@ public class MultiProposerSelector implements ProposerSelector {
 		// Try to add proposers.
 //		HashSet<Proposer> selProps = new HashSet<Proposer>(noOfProps);
 //		HashSet<StateParameter> selParams = new HashSet<StateParameter>(noOfProps * 2);
-		ArrayList<Proposer> selProps = new ArrayList<Proposer>(noOfProps);
-		ArrayList<StateParameter> selParams = new ArrayList<StateParameter>(noOfProps * 2);
+		ArrayList<StateParameter> selParams = this.selParams;
+		selParams.clear();
 		int attempts = 0;
 
 		while (attempts < MAX_NO_OF_ATTEMPTS && selProps.size() < noOfProps) {
@@ -190,15 +210,14 @@ public class MultiProposerSelector implements ProposerSelector {
 		//System.out.println("p.getParameters"+ p.getParameters().toString());
 		
 		// If corresponding state parameters not already selected, add the proposer.
-		for (StateParameter sp : p.getParameters()) {
-			if (selParams.contains(sp)) {
+		ArrayList<StateParameter> params = p.getParameters();
+		for (int j = 0; j < params.size(); ++j) {
+			if (selParams.contains(params.get(j))) {
 				return false;
 			}
 		}
 		selProps.add(p);
-		for (StateParameter sp : p.getParameters()) {
-			selParams.add(sp);
-		}
+		selParams.addAll(params);
 		return true;
 	}
 
@@ -1,9 +1,13 @@
 package se.cbb.jprime.mcmc;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+
 import se.cbb.jprime.math.NormalDistribution;
 import se.cbb.jprime.math.PRNG;
 import se.cbb.jprime.math.LogDouble;
@@ -24,10 +28,12 @@ import se.cbb.jprime.math.RealInterval.Type;
  * coefficient of variation (CV). For m = 0, a small epsilon proposal variance
  * is used instead.
  * For bounded domains, v is chosen as if not truncated and sampling is repeated until within the domain. 
+ * If the tuning parameter has a state of its own, e.g. an <code>AdaptiveTuningParameter</code>,
+ * it is included when checkpointing the proposer.
  * 
  * @author Joel Sjöstrand.
  */
-public class NormalProposer implements Proposer {
+public class NormalProposer implements Proposer, Checkpointable {
 	
 	/** Perturbed parameter. */
 	private RealParameter param;
@@ -56,6 +62,33 @@ public class NormalProposer implements Proposer {
 	/** On/off switch. */
 	private boolean isEnabled;
 	
+	/** Perturbed parameters, as returned by <code>getParameters()</code>. */
+	private ArrayList<StateParameter> params;
+	
+	/** Buffers for the indices of perturbed sub-parameters, indexed by their count. */
+	private int[][] indicesBuffers;
+	
+	/** Pool of sub-parameter indices when drawing without replacement. */
+	private int[] indexPool;
+	
+	/** Reused proposal distribution. */
+	private NormalDistribution pd;
+	
+	/** Reused "forward" density. */
+	private LogDouble forward;
+	
+	/** Reused "backward" density. */
+	private LogDouble backward;
+	
+	/** Reused change info. */
+	private ChangeInfo changeInfo;
+	
+	/** Reused proposal. */
+	private MetropolisHastingsProposal proposal;
+	
+	/** Statistics keys for the number of perturbed sub-parameters. */
+	private CountCategories perturbedCategories = new CountCategories(" perturbed sub-parameters");
+	
 	/**
 	 * Constructor. Creates a normal proposal distribution.
 	 * @param param state parameter perturbed by this proposer.
@@ -78,6 +111,16 @@ public class NormalProposer implements Proposer {
 		this.prng = prng;
 		this.cumSubParamWeights = new double[] { 1.0 };
 		this.isEnabled = true;
+		this.params = new ArrayList<StateParameter>(1);
+		this.params.add(param);
+		int k = param.getNoOfSubParameters();
+		this.indicesBuffers = new int[k + 1][];
+		this.indexPool = new int[k];
+		this.pd = new NormalDistribution(0.0, 1.0);
+		this.forward = new LogDouble(1.0);
+		this.backward = new LogDouble(1.0);
+		this.changeInfo = new ChangeInfo(param, "Perturbed by NormalProposer");
+		this.proposal = new MetropolisHastingsProposal(this, this.forward, this.backward, this.params, 0);
 	}
 	
 	/**
@@ -99,9 +142,7 @@ public class NormalProposer implements Proposer {
 //	}
 //	
 	public ArrayList<StateParameter> getParameters() {
-		ArrayList<StateParameter> ps = new ArrayList<StateParameter>(1);
-		ps.add(this.param);
-		return ps;
+		return this.params;
 	}
 
 	@Override
@@ -157,30 +198,35 @@ public class NormalProposer implements Proposer {
 		int m = this.cumSubParamWeights.length;
 		
 		// Determine desired number of sub-parameters and select them.
-		// Some special cases for better speed.
+		// Some special cases for better speed. Index arrays are reused between proposals.
 		int[] indices;
 		if (k == 1) {
 			// Only one to choose from.
-			indices = new int[] { 0 };
+			indices = this.getIndicesBuffer(1);
+			indices[0] = 0;
 		} else if (m == 1) {
 			// Only one to choose.
-			indices = new int[1];
+			indices = this.getIndicesBuffer(1);
 			indices[0] = this.prng.nextInt(k);
 		} else if (m == k && this.cumSubParamWeights[m-2] == 0.0) {
 			// All should be chosen.
-			indices = new int[k];
+			indices = this.getIndicesBuffer(k);
 			for (int i = 0; i < k; ++i) { indices[i] = i; }
 		} else {
-			// Remaining cases.
+			// Remaining cases. Draws without replacement from an ordered pool.
 			int no = 1;
 			double d = this.prng.nextDouble();
 
 			while (d > this.cumSubParamWeights[no-1]) { ++no; }
-			indices = new int[no];
-			ArrayList<Integer> l = new ArrayList<Integer>(k);
-			for (int i = 0; i < k; ++i) { l.add(i); }
+			indices = this.getIndicesBuffer(no);
+			int[] pool = this.indexPool;
+			for (int i = 0; i < k; ++i) { pool[i] = i; }
+			int poolSz = k;
 			for (int i = 0; i < no; ++i) {
-				indices[i] = l.remove(this.prng.nextInt(l.size()));			
+				int j = this.prng.nextInt(poolSz);
+				indices[i] = pool[j];
+				System.arraycopy(pool, j + 1, pool, j, poolSz - j - 1);
+				--poolSz;
 			}
 		}
 		
@@ -188,8 +234,9 @@ public class NormalProposer implements Proposer {
 		this.param.cache(indices);
 		
 		// Perturb all chosen sub-parameters.
-		LogDouble forward = new LogDouble(1.0);
-		LogDouble backward = new LogDouble(1.0);
+		LogDouble forward = this.forward.set(0.0, 1);
+		LogDouble backward = this.backward.set(0.0, 1);
+		NormalDistribution pd = this.pd;
 		for (int i = 0; i < indices.length; ++i) {
 			
 			// Compute variance for current proposal distribution.
@@ -197,7 +244,8 @@ public class NormalProposer implements Proposer {
 			double stdev = Math.max(Math.abs(xOld * this.proposalCV.getValue()), 1e-16);
 			
 			// Sample a new value.
-			NormalDistribution pd = new NormalDistribution(xOld, Math.pow(stdev, 2));
+			pd.setMean(xOld);
+			pd.setVariance(Math.pow(stdev, 2));
 			double x = Double.NaN;
 			int tries = 0;
 			do {
@@ -220,7 +268,7 @@ public class NormalProposer implements Proposer {
 			if (!Double.isInfinite(b)) {
 				nonTails -= (1.0 - pd.getCDF(b));
 			}
-			forward.mult(new LogDouble(Math.max(pd.getPDF(x) / nonTails, 0.0)));
+			forward.mult(Math.max(pd.getPDF(x) / nonTails, 0.0));
 			
 			// Obtain "backward" density.
 			stdev = Math.max(Math.abs(x * this.proposalCV.getValue()), 1e-16);
@@ -233,22 +281,37 @@ public class NormalProposer implements Proposer {
 			if (!Double.isInfinite(b)) {
 				nonTails -= (1.0 - pd.getCDF(b));
 			}
-			backward.mult(new LogDouble(Math.max(pd.getPDF(xOld) / nonTails, 0.0)));
+			backward.mult(Math.max(pd.getPDF(xOld) / nonTails, 0.0));
 		}
 		this.noPerturbed = indices.length;
 		
 		// Set change info.
-		changeInfos.put(this.param, new ChangeInfo(this.param, "Perturbed by NormalProposer", indices));
+		this.changeInfo.setAffectedElements(indices);
+		changeInfos.put(this.param, this.changeInfo);
 		
 		// Generate proposal object.
-		return new MetropolisHastingsProposal(this, forward, backward, this.param, indices.length);
+		return this.proposal.set(forward, backward, indices.length);
+	}
+	
+	/**
+	 * Returns the reused buffer for a certain number of sub-parameter indices.
+	 * @param n the number of indices.
+	 * @return the buffer.
+	 */
+	private int[] getIndicesBuffer(int n) {
+		int[] buf = this.indicesBuffers[n];
+		if (buf == null) {
+			buf = new int[n];
+			this.indicesBuffers[n] = buf;
+		}
+		return buf;
 	}
 
 	@Override
 	public void clearCache() {
 		if (this.stats != null) {
 			if (this.param.getNoOfSubParameters() > 1) {
-				this.stats.increment(true, "" + this.noPerturbed + " perturbed sub-parameters");
+				this.stats.increment(true, this.perturbedCategories.get(this.noPerturbed));
 			} else {
 				this.stats.increment(true);
 			}
@@ -260,7 +323,7 @@ public class NormalProposer implements Proposer {
 	public void restoreCache() {
 		if (this.stats != null) {
 			if (this.param.getNoOfSubParameters() > 1) {
-				this.stats.increment(false, "" + this.noPerturbed + " perturbed sub-parameters");
+				this.stats.increment(false, this.perturbedCategories.get(this.noPerturbed));
 			} else {
 				this.stats.increment(false);
 			}
@@ -312,6 +375,20 @@ public class NormalProposer implements Proposer {
 		this.stats = stats;
 	}
 
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		if (this.proposalCV instanceof Checkpointable) {
+			((Checkpointable) this.proposalCV).writeCheckpoint(out);
+		}
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		if (this.proposalCV instanceof Checkpointable) {
+			((Checkpointable) this.proposalCV).readCheckpoint(in);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "NormalProposer perturbing " + this.param.getName();
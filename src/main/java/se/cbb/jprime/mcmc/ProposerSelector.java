@@ -1,6 +1,7 @@
 package se.cbb.jprime.mcmc;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Interface for selecting one or more MCMC proposers for actual
@@ -25,7 +26,14 @@ public interface ProposerSelector extends InfoProvider {
 	 * decide whether they e.g. return only a single object or multiple
 	 * objects. Furthermore, <b>the returned proposers must be guaranteed to
 	 * be acting on disjoint sets of state parameters</b>.
+	 * The returned list may be reused by the selector, and is thus only valid until the next invocation.
 	 * @return a subset of proposers, no pairs acting on the same state parameter.
 	 */
 	public ArrayList<Proposer> getDisjointProposers();
+	
+	/**
+	 * Returns all proposers available for selection.
+	 * @return the proposers.
+	 */
+	public List<Proposer> getProposers();
 }
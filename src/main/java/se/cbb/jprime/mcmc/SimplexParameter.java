@@ -0,0 +1,177 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import se.cbb.jprime.io.SampleDoubleArray;
+import se.cbb.jprime.io.SnapshotSampleable;
+
+/**
+ * Holds a state parameter on the unit simplex, i.e., an array of positive values which sum to 1,
+ * such as the stationary frequencies of a substitution model.
+ * <p/>
+ * Since a change of one element affects the others, caching always comprises the entire array.
+ * The sum constraint is the responsibility of the perturbing <code>Proposer</code>, see e.g.
+ * <code>DirichletProposer</code>.
+ */
+public class SimplexParameter implements RealParameter, SnapshotSampleable, Checkpointable {
+
+	/** Name. */
+	protected String name;
+
+	/** Current state. */
+	protected double[] values;
+
+	/** Cache. Null if empty. */
+	protected double[] cacheValues;
+
+	/**
+	 * Constructor.
+	 * @param name parameter's name.
+	 * @param initVals initial values. Must be positive, and are normalised to sum to 1.
+	 */
+	public SimplexParameter(String name, double[] initVals) {
+		if (initVals.length < 2) {
+			throw new IllegalArgumentException("Simplex parameter " + name + " must have at least 2 elements.");
+		}
+		double sum = 0.0;
+		for (double x : initVals) {
+			if (!(x > 0.0) || Double.isInfinite(x)) {
+				throw new IllegalArgumentException("Simplex parameter " + name + " must have positive values.");
+			}
+			sum += x;
+		}
+		this.name = name;
+		this.values = new double[initVals.length];
+		for (int i = 0; i < initVals.length; ++i) {
+			this.values[i] = initVals[i] / sum;
+		}
+		this.cacheValues = null;
+	}
+
+	/**
+	 * Constructor. Creates a parameter with all elements equal to 1/n.
+	 * @param name parameter's name.
+	 * @param n number of elements.
+	 */
+	public SimplexParameter(String name, int n) {
+		this(name, uniform(n));
+	}
+
+	/**
+	 * Returns a uniform array.
+	 * @param n the number of elements.
+	 * @return the array.
+	 */
+	private static double[] uniform(int n) {
+		double[] a = new double[n];
+		Arrays.fill(a, 1.0);
+		return a;
+	}
+
+	/**
+	 * Caches all values, regardless of indices. May e.g. be used by a <code>Proposer</code>.
+	 * @param indices is of no importance.
+	 */
+	@Override
+	public void cache(int[] indices) {
+		this.cacheValues = this.values.clone();
+	}
+
+	@Override
+	public void clearCache() {
+		this.cacheValues = null;
+	}
+
+	@Override
+	public void restoreCache() {
+		if (this.cacheValues == null) {
+			return;
+		}
+		this.values = this.cacheValues;
+		this.cacheValues = null;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public int getNoOfSubParameters() {
+		return this.values.length;
+	}
+
+	@Override
+	public double getValue(int idx) {
+		return this.values[idx];
+	}
+
+	@Override
+	public void setValue(int idx, double value) {
+		this.values[idx] = value;
+	}
+
+	/**
+	 * Returns the current values. The array must not be modified, and may be replaced upon
+	 * <code>restoreCache()</code>.
+	 * @return the values.
+	 */
+	public double[] getValues() {
+		return this.values;
+	}
+
+	@Override
+	public Class<?> getSampleType() {
+		return SampleDoubleArray.class;
+	}
+
+	@Override
+	public String getSampleHeader() {
+		return this.name;
+	}
+
+	@Override
+	public String getSampleValue(SamplingMode mode) {
+		return SampleDoubleArray.toString(this.values);
+	}
+
+	@Override
+	public Object createSnapshot() {
+		return new double[this.values.length];
+	}
+
+	@Override
+	public void copyToSnapshot(Object snapshot, SamplingMode mode) {
+		System.arraycopy(this.values, 0, (double[]) snapshot, 0, this.values.length);
+	}
+
+	@Override
+	public String getSnapshotValue(Object snapshot, SamplingMode mode) {
+		return SampleDoubleArray.toString((double[]) snapshot);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(this.values);
+	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		Checkpoint.writeString(out, this.name);
+		Checkpoint.writeDoubleArray(out, this.values);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		Checkpoint.readAndMatchName(in, this.name);
+		double[] vals = Checkpoint.readDoubleArray(in);
+		if (vals == null || vals.length != this.values.length) {
+			throw new IOException("Checkpoint does not match current chain: size mismatch for " + this.name + ".");
+		}
+		System.arraycopy(vals, 0, this.values, 0, vals.length);
+		this.clearCache();
+	}
+}
@@ -0,0 +1,94 @@
+package se.cbb.jprime.mcmc;
+
+import java.util.List;
+
+import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.PRNG;
+
+/**
+ * Metropolis-Hastings proposal acceptor for a heated chain of Metropolis-coupled MCMC (MC^3).
+ * The (unnormalised) posterior density is raised to 1/T, where T >= 1 is the temperature, so that
+ * a proposed state x' from x is accepted with probability min(1, (P(x')/P(x))^(1/T) * q(x|x')/q(x'|x)).
+ * A temperature of 1 yields the ordinary Metropolis-Hastings scheme. The temperature is
+ * mutable so that chains may exchange temperatures, see <code>MetropolisCoupledRunner</code>.
+ */
+public class TemperedMetropolisHastingsAcceptor extends MetropolisHastingsAcceptor {
+
+	/** Temperature T. */
+	private double temperature;
+
+	/**
+	 * Constructor.
+	 * @param prng pseudo-random number generator.
+	 * @param temperature the temperature T >= 1.
+	 */
+	public TemperedMetropolisHastingsAcceptor(PRNG prng, double temperature) {
+		super(prng);
+		this.setTemperature(temperature);
+	}
+
+	/**
+	 * Returns the current temperature.
+	 * @return the temperature T.
+	 */
+	public double getTemperature() {
+		return this.temperature;
+	}
+
+	/**
+	 * Sets the current temperature.
+	 * @param temperature the temperature T >= 1.
+	 */
+	public void setTemperature(double temperature) {
+		if (!(temperature >= 1.0) || Double.isInfinite(temperature)) {
+			throw new IllegalArgumentException("Temperature of heated chain must be a finite value >= 1.");
+		}
+		this.temperature = temperature;
+	}
+
+	/**
+	 * Returns the inverse temperature 1/T.
+	 * @return the inverse temperature.
+	 */
+	public double getInverseTemperature() {
+		return 1.0 / this.temperature;
+	}
+
+	/**
+	 * Returns true if a proposed state x' should be accepted according to the heated Metropolis-Hastings scheme.
+	 * @param proposedStateLikelihood the likelihood P(x') of the proposed state x'.
+	 * @param oldStateLikelihood the likelihood P(x) of the old state x.
+	 * @param proposals details the proposals made for going from x to x'. Elements must be of type <code>MetropolisHastingsProposal</code>.
+	 * @return true if suggested state accepted; false if rejected.
+	 */
+	@Override
+	public boolean acceptProposedState(LogDouble proposedStateLikelihood,
+			LogDouble oldStateLikelihood, List<Proposal> proposals) throws RunAbortedException {
+
+		LogDouble a = this.ratio.set(proposedStateLikelihood).div(oldStateLikelihood);
+		if (this.temperature != 1.0) {
+			a.pow(1.0 / this.temperature);
+		}
+		if (!this.multDensityRatios(a, proposals)) {
+			return false;
+		}
+		return a.greaterThanOrEquals(prng.nextDouble());   // Accounts also for case a >= 1.0.
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(prefix).append("TEMPERED METROPOLIS-HASTINGS ACCEPTOR\n");
+		sb.append(prefix).append("Initial temperature: ").append(this.temperature).append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(prefix).append("TEMPERED METROPOLIS-HASTINGS ACCEPTOR\n");
+		sb.append(prefix).append("Final temperature: ").append(this.temperature).append('\n');
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,138 @@
+package se.cbb.jprime.mcmc;
+
+import java.util.List;
+import java.util.Map;
+
+import se.cbb.jprime.math.Gamma;
+import se.cbb.jprime.math.LogDouble;
+
+/**
+ * Represents a symmetric Dirichlet prior Dir(alpha,...,alpha) on the shares y_i=n_i*x_i/S of positive parameters
+ * x_1,...,x_k with weights n_i and weighted sum S=n_1*x_1+...+n_k*x_k, e.g. partition rate multipliers perturbed
+ * by a <code>WeightedDirichletProposer</code>. With alpha=1, the prior is flat on the simplex of shares.
+ * The weighted sum is assumed to be kept fixed by the proposer, and the density is that of the shares.
+ */
+public class WeightedDirichletPrior implements InferenceModel {
+
+	/** Parameters. */
+	private DoubleParameter[] params;
+
+	/** Weight of each parameter. */
+	private double[] weights;
+
+	/** Concentration of each share. */
+	private double alpha;
+
+	/** Prior. */
+	private LogDouble priorProbability;
+
+	/** Cache. */
+	private LogDouble priorProbabilityCache = null;
+
+	/**
+	 * Constructor.
+	 * @param params parameters on which prior acts.
+	 * @param weights positive weight of each parameter.
+	 * @param alpha concentration of each share, e.g. 1 for a flat prior.
+	 */
+	public WeightedDirichletPrior(List<DoubleParameter> params, double[] weights, double alpha) {
+		if (params.size() < 2 || weights.length != params.size()) {
+			throw new IllegalArgumentException("Weighted Dirichlet prior requires at least 2 parameters, and one weight per parameter.");
+		}
+		if (!(alpha > 0.0) || Double.isInfinite(alpha)) {
+			throw new IllegalArgumentException("Weighted Dirichlet prior requires a positive concentration.");
+		}
+		this.params = params.toArray(new DoubleParameter[params.size()]);
+		this.weights = weights.clone();
+		this.alpha = alpha;
+		this.priorProbability = new LogDouble(1.0);
+		this.update();
+	}
+
+	@Override
+	public Dependent[] getParentDependents() {
+		return this.params;
+	}
+
+	@Override
+	public void cacheAndUpdate(Map<Dependent, ChangeInfo> changeInfos, boolean willSample) {
+		this.priorProbabilityCache = new LogDouble(this.priorProbability);
+		this.update();
+		changeInfos.put(this, new ChangeInfo(this, "Full weighted Dirichlet prior update."));
+	}
+
+	/**
+	 * Updates the prior probability.
+	 */
+	private void update() {
+		int k = this.params.length;
+		double sum = 0.0;
+		for (int i = 0; i < k; ++i) {
+			sum += this.weights[i] * this.params[i].getValue();
+		}
+		double logDens = Gamma.lnGamma(k * this.alpha) - k * Gamma.lnGamma(this.alpha);
+		if (this.alpha != 1.0) {
+			for (int i = 0; i < k; ++i) {
+				logDens += (this.alpha - 1.0) * Math.log(this.weights[i] * this.params[i].getValue() / sum);
+			}
+		}
+		this.priorProbability = new LogDouble(logDens, 1);
+	}
+
+	@Override
+	public void clearCache(boolean willSample) {
+		this.priorProbabilityCache = null;
+	}
+
+	@Override
+	public void restoreCache(boolean willSample) {
+		this.priorProbability = this.priorProbabilityCache;
+		this.priorProbabilityCache = null;
+	}
+
+	@Override
+	public Class<?> getSampleType() {
+		return LogDouble.class;
+	}
+
+	@Override
+	public String getSampleHeader() {
+		return "WeightedDirichletPriorLikelihood";
+	}
+
+	@Override
+	public String getSampleValue(SamplingMode mode) {
+		return this.priorProbability.toString();
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(prefix).append("WEIGHTED DIRICHLET PRIOR\n");
+		sb.append(prefix).append("Parameters: ");
+		for (int i = 0; i < this.params.length; ++i) {
+			sb.append(i == 0 ? "" : ", ").append(this.params[i].getName());
+		}
+		sb.append('\n');
+		sb.append(prefix).append("Concentration: ").append(this.alpha).append('\n');
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(prefix).append("WEIGHTED DIRICHLET PRIOR\n");
+		return sb.toString();
+	}
+
+	@Override
+	public LogDouble getDataProbability() {
+		return this.priorProbability;
+	}
+
+	@Override
+	public String getModelName() {
+		return "WeightedDirichletPrior";
+	}
+
+}
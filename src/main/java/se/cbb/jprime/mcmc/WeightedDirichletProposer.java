@@ -0,0 +1,270 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.PRNG;
+
+/**
+ * Represents a joint Dirichlet proposal distribution for positive parameters x_1,...,x_k whose weighted sum
+ * n_1*x_1+...+n_k*x_k=S is kept fixed, e.g. partition rate multipliers weighted by the number of sites of each partition.
+ * The shares y_i=n_i*x_i/S lie on the unit simplex, and like for <code>DirichletProposer</code>, new shares
+ * are drawn as Y ~ Dir(c*y), with the concentration c=1/s^2 governed by a tuning parameter s.
+ * All parameters are perturbed at once. The weighted sum S is that of the values when the proposer is created.
+ * States where any share falls below <code>DirichletProposer.MIN_VALUE</code> are rejected outright.
+ */
+public class WeightedDirichletProposer implements Proposer, Checkpointable {
+
+	/** Perturbed parameters. */
+	private DoubleParameter[] params;
+
+	/** Weight of each parameter. */
+	private double[] weights;
+
+	/** Fixed weighted sum of the parameters. */
+	private double sum;
+
+	/** Pseudo-random number generator. */
+	private PRNG prng;
+
+	/** Tuning parameter. Governs the proposal distribution's concentration. */
+	private TuningParameter tuning;
+
+	/** Statistics. */
+	private ProposerStatistics stats = null;
+
+	/** On/off switch. */
+	private boolean isEnabled;
+
+	/** Perturbed parameters, as returned by <code>getParameters()</code>. */
+	private ArrayList<StateParameter> paramList;
+
+	/** Reused "forward" density. */
+	private LogDouble forward;
+
+	/** Reused "backward" density. */
+	private LogDouble backward;
+
+	/** Reused change info of each parameter. */
+	private ChangeInfo[] changeInfos;
+
+	/** Reused proposal. */
+	private MetropolisHastingsProposal proposal;
+
+	/** Reused buffer of the current shares. */
+	private double[] x;
+
+	/** Reused buffer of the proposed shares. */
+	private double[] y;
+
+	/**
+	 * Constructor.
+	 * @param params state parameters perturbed by this proposer. At least 2.
+	 * @param weights positive weight of each parameter.
+	 * @param tuning tuning parameter s, governing the concentration c=1/s^2.
+	 * @param prng pseudo-random number generator.
+	 */
+	public WeightedDirichletProposer(List<DoubleParameter> params, double[] weights, TuningParameter tuning, PRNG prng) {
+		if (params.size() < 2 || weights.length != params.size()) {
+			throw new IllegalArgumentException("Weighted Dirichlet proposer requires at least 2 parameters, and one weight per parameter.");
+		}
+		if (tuning.getMinValue() <= 0) {
+			throw new IllegalArgumentException("Illegal tuning parameter for weighted Dirichlet proposer. Value must be in (0,inf).");
+		}
+		int k = params.size();
+		this.params = params.toArray(new DoubleParameter[k]);
+		this.weights = weights.clone();
+		this.sum = 0.0;
+		for (int i = 0; i < k; ++i) {
+			if (!(this.weights[i] > 0.0) || !(this.params[i].getValue() > 0.0)) {
+				throw new IllegalArgumentException("Weighted Dirichlet proposer requires positive weights and parameter values.");
+			}
+			this.sum += this.weights[i] * this.params[i].getValue();
+		}
+		this.tuning = tuning;
+		this.prng = prng;
+		this.isEnabled = true;
+		this.paramList = new ArrayList<StateParameter>(k);
+		this.changeInfos = new ChangeInfo[k];
+		for (int i = 0; i < k; ++i) {
+			this.paramList.add(this.params[i]);
+			this.changeInfos[i] = new ChangeInfo(this.params[i], "Perturbed by WeightedDirichletProposer");
+		}
+		this.forward = new LogDouble(1.0);
+		this.backward = new LogDouble(1.0);
+		this.proposal = new MetropolisHastingsProposal(this, this.forward, this.backward, this.paramList, 0);
+		this.x = new double[k];
+		this.y = new double[k];
+	}
+
+	/**
+	 * Returns the fixed weighted sum of the parameters.
+	 * @return the sum.
+	 */
+	public double getWeightedSum() {
+		return this.sum;
+	}
+
+	@Override
+	public ArrayList<StateParameter> getParameters() {
+		return this.paramList;
+	}
+
+	@Override
+	public int getNoOfParameters() {
+		return this.params.length;
+	}
+
+	@Override
+	public int getNoOfSubParameters() {
+		return this.params.length;
+	}
+
+	@Override
+	public ProposerStatistics getStatistics() {
+		return this.stats;
+	}
+
+	@Override
+	public void setStatistics(ProposerStatistics stats) {
+		this.stats = stats;
+	}
+
+	@Override
+	public List<TuningParameter> getTuningParameters() {
+		ArrayList<TuningParameter> l = new ArrayList<TuningParameter>(1);
+		l.add(this.tuning);
+		return l;
+	}
+
+	@Override
+	public Proposal cacheAndPerturb(Map<Dependent, ChangeInfo> changeInfos) {
+		int k = this.params.length;
+		double s = this.tuning.getValue();
+		double c = 1.0 / (s * s);
+
+		// Cache, and obtain current shares.
+		double[] x = this.x;
+		for (int i = 0; i < k; ++i) {
+			this.params[i].cache(null);
+			x[i] = this.weights[i] * this.params[i].getValue() / this.sum;
+		}
+
+		// Sample Y ~ Dir(c*x) by normalising independent gamma variates.
+		double[] y = this.y;
+		double ySum = 0.0;
+		for (int i = 0; i < k; ++i) {
+			y[i] = DirichletProposer.sampleGamma(this.prng, c * x[i]);
+			ySum += y[i];
+		}
+		for (int i = 0; i < k; ++i) {
+			y[i] /= ySum;
+			if (!(y[i] >= DirichletProposer.MIN_VALUE)) {
+				// Abort with invalid proposal.
+				return new MetropolisHastingsProposal(this, this.paramList);
+			}
+		}
+		for (int i = 0; i < k; ++i) {
+			this.params[i].setValue(y[i] * this.sum / this.weights[i]);
+			changeInfos.put(this.params[i], this.changeInfos[i]);
+		}
+
+		// Obtain "forward" and "backward" densities of the shares. The linear map to the parameters cancels out.
+		this.forward.set(DirichletProposer.getLogDensity(y, x, c), 1);
+		this.backward.set(DirichletProposer.getLogDensity(x, y, c), 1);
+		return this.proposal.set(this.forward, this.backward, k);
+	}
+
+	@Override
+	public void clearCache() {
+		if (this.stats != null) {
+			this.stats.increment(true);
+		}
+		for (DoubleParameter p : this.params) {
+			p.clearCache();
+		}
+	}
+
+	@Override
+	public void restoreCache() {
+		if (this.stats != null) {
+			this.stats.increment(false);
+		}
+		for (DoubleParameter p : this.params) {
+			p.restoreCache();
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return this.isEnabled;
+	}
+
+	@Override
+	public void setEnabled(boolean isActive) {
+		this.isEnabled = isActive;
+	}
+
+	@Override
+	public String getPreInfo(String prefix) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(prefix).append("WEIGHTED DIRICHLET-DISTRIBUTED PROPOSER\n");
+		sb.append(prefix).append("Perturbed parameters: ").append(this.getParameterNames()).append('\n');
+		sb.append(prefix).append("Fixed weighted sum: ").append(this.sum).append('\n');
+		sb.append(prefix).append("Is active: ").append(this.isEnabled).append("\n");
+		sb.append(prefix).append("Tuning parameter governing proposal concentration:\n").append(this.tuning.getPreInfo(prefix + '\t'));
+		if (this.stats != null) {
+			sb.append(prefix).append("Statistics:\n").append(this.stats.getPreInfo(prefix + '\t'));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getPostInfo(String prefix) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(prefix).append("WEIGHTED DIRICHLET-DISTRIBUTED PROPOSER\n");
+		sb.append(prefix).append("Perturbed parameters: ").append(this.getParameterNames()).append('\n');
+		sb.append(prefix).append("Tuning parameter governing proposal concentration:\n").append(this.tuning.getPostInfo(prefix + '\t'));
+		if (this.stats != null) {
+			sb.append(prefix).append("Statistics:\n").append(this.stats.getPostInfo(prefix + '\t'));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the names of the perturbed parameters, comma-separated.
+	 * @return the names.
+	 */
+	private String getParameterNames() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.params.length; ++i) {
+			sb.append(i == 0 ? "" : ", ").append(this.params[i].getName());
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		if (this.tuning instanceof Checkpointable) {
+			((Checkpointable) this.tuning).writeCheckpoint(out);
+		}
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		if (this.tuning instanceof Checkpointable) {
+			((Checkpointable) this.tuning).readCheckpoint(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WeightedDirichletProposer perturbing " + this.getParameterNames();
+	}
+
+}
@@ -0,0 +1,326 @@
+package se.cbb.jprime.misc;
+
+import java.util.Arrays;
+
+/**
+ * Least-recently-used cache of fixed-length double arrays with double keys, e.g., for
+ * transition probability matrices of varying Markov times. Keys are quantised exactly like in <code>DoubleKeyMap</code>,
+ * so that key k' will return the value of stored key k if abs(k'-k) &lt; eps, where eps is in the order of 5e-8.
+ * <p/>
+ * Unlike <code>DoubleKeyMap</code>, the quantised keys are stored as primitives in an open-addressing hash table,
+ * and the access order is maintained by index-linked lists. The arrays of evicted or cleared entries are handed
+ * out again for new entries, so once the cache is full, misses do not allocate memory.
+ * <p/>
+ * Hits, misses and evictions are counted.
+ */
+public class DoubleKeyArrayCache {
+
+	/** Index denoting no entry. */
+	private static final int NIL = -1;
+
+	/** The maximum number of entries. */
+	private final int maxEntries;
+
+	/** Length of the arrays. */
+	private final int arrayLength;
+
+	/** If to disallow very small keys. */
+	private final boolean disallowEpsKeys;
+
+	/** Hash table of entry indices, with linear probing. NIL for empty slots. Length is a power of 2. */
+	private final int[] table;
+
+	/** Number of bits of the hash table size. */
+	private final int bits;
+
+	/** Quantised key of each entry. */
+	private final long[] keys;
+
+	/** Array of each entry. Kept also for unused entries, for recycling. */
+	private final double[][] values;
+
+	/** Previous (less recently used) entry of each entry. */
+	private final int[] prev;
+
+	/** Next (more recently used) entry of each entry. */
+	private final int[] next;
+
+	/** Least recently used entry. */
+	private int head;
+
+	/** Most recently used entry. */
+	private int tail;
+
+	/** Number of entries. Entries 0,...,size-1 are used. */
+	private int size;
+
+	/** Number of hits. */
+	private long hits;
+
+	/** Number of misses. */
+	private long misses;
+
+	/** Number of evictions. */
+	private long evictions;
+
+	/**
+	 * Constructor.
+	 * @param maxEntries maximum number of simultaneous entries that are stored. The least recently
+	 * accessed entry is evicted for this threshold not to be exceeded. If 0, nothing is stored.
+	 * @param arrayLength length of the arrays.
+	 * @param disallowEpsKeys if true, will refuse to insert an entry if abs(key) is very small.
+	 */
+	public DoubleKeyArrayCache(int maxEntries, int arrayLength, boolean disallowEpsKeys) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("Cannot create cache with negative size.");
+		}
+		this.maxEntries = maxEntries;
+		this.arrayLength = arrayLength;
+		this.disallowEpsKeys = disallowEpsKeys;
+		int b = 1;
+		while ((1 << b) < 2 * maxEntries) {
+			++b;
+		}
+		this.bits = b;
+		this.table = new int[1 << b];
+		this.keys = new long[maxEntries];
+		this.values = new double[maxEntries][];
+		this.prev = new int[maxEntries];
+		this.next = new int[maxEntries];
+		this.clear();
+		this.resetStatistics();
+	}
+
+	/**
+	 * Quantises a key.
+	 * @param key the key.
+	 * @return the quantised key.
+	 */
+	private static long quantise(double key) {
+		return Math.round(key * DoubleKeyMap.PRECISION);
+	}
+
+	/**
+	 * Returns the home slot of a quantised key.
+	 * @param k the quantised key.
+	 * @return the slot.
+	 */
+	private int slot(long k) {
+		return (int) ((k * 0x9E3779B97F4A7C15L) >>> (64 - this.bits));
+	}
+
+	/**
+	 * Returns the slot of a quantised key.
+	 * @param k the quantised key.
+	 * @return the slot, or NIL if not contained.
+	 */
+	private int find(long k) {
+		int mask = this.table.length - 1;
+		for (int i = this.slot(k); this.table[i] != NIL; i = (i + 1) & mask) {
+			if (this.keys[this.table[i]] == k) {
+				return i;
+			}
+		}
+		return NIL;
+	}
+
+	/**
+	 * Returns the array of a key and, if it exists, marks it as most recently used.
+	 * The array may be modified by the caller, and remains valid until its entry is evicted or the cache is cleared.
+	 * @param key the key.
+	 * @return the array; null if no such key exists.
+	 */
+	public double[] get(double key) {
+		int i = (this.maxEntries == 0 ? NIL : this.find(quantise(key)));
+		if (i == NIL) {
+			this.misses++;
+			return null;
+		}
+		this.hits++;
+		int e = this.table[i];
+		this.unlink(e);
+		this.append(e);
+		return this.values[e];
+	}
+
+	/**
+	 * Returns true if the key is contained. Does not affect access order or statistics.
+	 * @param key the key.
+	 * @return true if contained.
+	 */
+	public boolean containsKey(double key) {
+		return (this.maxEntries > 0 && this.find(quantise(key)) != NIL);
+	}
+
+	/**
+	 * Inserts a key which is not contained, evicting the least recently used entry if full.
+	 * The returned array holds arbitrary values and should be filled by the caller.
+	 * @param key the key.
+	 * @param mayRecycle if false, a new array is allocated rather than reusing that of an evicted entry,
+	 * e.g., when the evicted array may still be in use.
+	 * @return the array of the new entry; null if the key is disallowed or the cache has size 0.
+	 */
+	public double[] put(double key, boolean mayRecycle) {
+		long k = quantise(key);
+		if (this.maxEntries == 0 || (k == 0 && this.disallowEpsKeys)) {
+			return null;
+		}
+		int e;
+		if (this.size < this.maxEntries) {
+			e = this.size++;
+			if (this.values[e] == null) {
+				this.values[e] = new double[this.arrayLength];
+			}
+		} else {
+			e = this.head;
+			this.removeSlot(this.find(this.keys[e]));
+			this.unlink(e);
+			this.evictions++;
+			if (!mayRecycle) {
+				this.values[e] = new double[this.arrayLength];
+			}
+		}
+		this.keys[e] = k;
+		int mask = this.table.length - 1;
+		int i = this.slot(k);
+		while (this.table[i] != NIL) {
+			i = (i + 1) & mask;
+		}
+		this.table[i] = e;
+		this.append(e);
+		return this.values[e];
+	}
+
+	/**
+	 * Empties a slot of the hash table, shifting subsequent entries of the probe sequence backwards.
+	 * @param i the slot.
+	 */
+	private void removeSlot(int i) {
+		int mask = this.table.length - 1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (this.table[j] == NIL) {
+				break;
+			}
+			int h = this.slot(this.keys[this.table[j]]);
+			boolean stays = (i <= j ? (i < h && h <= j) : (i < h || h <= j));
+			if (!stays) {
+				this.table[i] = this.table[j];
+				i = j;
+			}
+		}
+		this.table[i] = NIL;
+	}
+
+	/**
+	 * Unlinks an entry from the access order list.
+	 * @param e the entry.
+	 */
+	private void unlink(int e) {
+		if (this.prev[e] == NIL) {
+			this.head = this.next[e];
+		} else {
+			this.next[this.prev[e]] = this.next[e];
+		}
+		if (this.next[e] == NIL) {
+			this.tail = this.prev[e];
+		} else {
+			this.prev[this.next[e]] = this.prev[e];
+		}
+	}
+
+	/**
+	 * Appends an entry as most recently used.
+	 * @param e the entry.
+	 */
+	private void append(int e) {
+		this.prev[e] = this.tail;
+		this.next[e] = NIL;
+		if (this.tail == NIL) {
+			this.head = e;
+		} else {
+			this.next[this.tail] = e;
+		}
+		this.tail = e;
+	}
+
+	/**
+	 * Removes all entries. Their arrays are kept for reuse. Statistics are not affected.
+	 */
+	public void clear() {
+		Arrays.fill(this.table, NIL);
+		this.head = NIL;
+		this.tail = NIL;
+		this.size = 0;
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counters.
+	 */
+	public void resetStatistics() {
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+	}
+
+	/**
+	 * Adds the hit, miss and eviction counters of another cache to those of this cache.
+	 * @param other the other cache.
+	 */
+	public void addStatistics(DoubleKeyArrayCache other) {
+		this.hits += other.hits;
+		this.misses += other.misses;
+		this.evictions += other.evictions;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 * @return the number of entries.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the maximum number of simultaneously stored entries.
+	 * @return the max number.
+	 */
+	public int getMaxNoOfElements() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Returns the number of lookups that found the key.
+	 * @return the number of hits.
+	 */
+	public long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find the key.
+	 * @return the number of misses.
+	 */
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room for new ones.
+	 * @return the number of evictions.
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Returns the fraction of lookups that found the key.
+	 * @return the hit rate; 0 if no lookups.
+	 */
+	public double getHitRate() {
+		long n = this.hits + this.misses;
+		return (n == 0 ? 0.0 : (double) this.hits / n);
+	}
+
+}
@@ -0,0 +1,19 @@
+package se.cbb.jprime.seqevo;
+
+/**
+ * Substitution model definition.
+ */
+public class F81 {
+
+	/**
+	 * Returns the DNA model type described by Felsenstein 1981.
+	 * @param pi stationary frequencies of a, c, g, t.
+	 * @param cacheSize matrix cache size. Probably not useful with more than twice the number
+	 * of arcs in tree...?
+	 * @return the model type.
+	 */
+	public static SubstitutionMatrixHandler createF81(double[] pi, int cacheSize) {
+		return new HKYMatrixHandler("F81", 1.0, pi, cacheSize);
+	}
+	
+}
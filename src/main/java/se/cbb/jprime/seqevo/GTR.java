@@ -0,0 +1,40 @@
+package se.cbb.jprime.seqevo;
+
+import se.cbb.jprime.mcmc.SimplexParameter;
+
+/**
+ * Substitution model definition.
+ */
+public class GTR {
+
+	/**
+	 * Returns the general time-reversible model type of Tavaré 1986, where the exchangeabilities and the
+	 * stationary frequencies are state parameters that may be estimated, see
+	 * <code>SubstitutionMatrixHandler.getExchangeabilityParameter()</code> and
+	 * <code>SubstitutionMatrixHandler.getStationaryFrequencyParameter()</code>.
+	 * All parameters start out uniform. The frequencies are the stationary distribution of Q, with Q_ij=beta*pi_j*r_ij.
+	 * @param seqType sequence type.
+	 * @param cacheSize matrix cache size. Probably not useful with more than twice the number
+	 * of arcs in tree...?
+	 * @return the model type.
+	 */
+	public static SubstitutionMatrixHandler createGTR(SequenceType seqType, int cacheSize) {
+		return createGTR(seqType, cacheSize, "");
+	}
+	
+	/**
+	 * Returns the general time-reversible model type, with prefixed parameter names,
+	 * e.g. "gene1Exchangeabilities".
+	 * @param seqType sequence type.
+	 * @param cacheSize matrix cache size.
+	 * @param paramPrefix prefix of the parameter names.
+	 * @return the model type.
+	 */
+	public static SubstitutionMatrixHandler createGTR(SequenceType seqType, int cacheSize, String paramPrefix) {
+		int dim = seqType.getAlphabetSize();
+		SimplexParameter R = new SimplexParameter(paramPrefix + "Exchangeabilities", dim * (dim - 1) / 2);
+		SimplexParameter Pi = new SimplexParameter(paramPrefix + "StationaryFrequencies", dim);
+		return new SubstitutionMatrixHandler("GTR", seqType, R, Pi, true, true, cacheSize);
+	}
+	
+}
@@ -0,0 +1,20 @@
+package se.cbb.jprime.seqevo;
+
+/**
+ * Substitution model definition.
+ */
+public class HKY85 {
+
+	/**
+	 * Returns the DNA model type described by Hasegawa, Kishino & Yano 1985.
+	 * @param kappa transition/transversion rate ratio.
+	 * @param pi stationary frequencies of a, c, g, t.
+	 * @param cacheSize matrix cache size. Probably not useful with more than twice the number
+	 * of arcs in tree...?
+	 * @return the model type.
+	 */
+	public static SubstitutionMatrixHandler createHKY85(double kappa, double[] pi, int cacheSize) {
+		return new HKYMatrixHandler("HKY85", kappa, pi, cacheSize);
+	}
+	
+}
@@ -0,0 +1,112 @@
+package se.cbb.jprime.seqevo;
+
+/**
+ * Substitution matrix handler for the DNA model of Hasegawa, Kishino & Yano 1985, with
+ * stationary frequencies Pi and a transition/transversion rate ratio kappa. It covers
+ * the models of Jukes & Cantor 1969 (kappa=1, uniform Pi), Kimura 1980 (uniform Pi) and Felsenstein 1981 (kappa=1).
+ * <p/>
+ * The rate from i to j is Q_ij=beta*pi_j*r_ij, where r_ij is kappa for transitions and 1 for transversions.
+ * P=exp(Qw) has a closed form. With Q normalised by beta so that w=1 yields 1 expected event,
+ * t=beta*w, Pi_J being the frequency sum of the purines or pyrimidines that j belongs to, and A_J=1+Pi_J*(kappa-1),
+ * <ul>
+ * <li>P_jj = pi_j + pi_j*(1/Pi_J-1)*exp(-t) + (Pi_J-pi_j)/Pi_J*exp(-t*A_J),</li>
+ * <li>P_ij = pi_j + pi_j*(1/Pi_J-1)*exp(-t) - pi_j/Pi_J*exp(-t*A_J) for transitions i != j,</li>
+ * <li>P_ij = pi_j*(1-exp(-t)) for transversions.</li>
+ * </ul>
+ * Base ordering is 'acgt'.
+ */
+public class HKYMatrixHandler extends SubstitutionMatrixHandler {
+
+	/** Purine/pyrimidine class of each base: 0 for purines (a, g), 1 for pyrimidines (c, t). */
+	private static final int[] BASE_CLASS = new int[] { 0, 1, 0, 1 };
+
+	/** Normalisation factor beta of Q. */
+	private final double beta;
+
+	/** A_J for purines and pyrimidines. */
+	private final double[] A;
+
+	/** Stationary frequencies. */
+	private final double[] pi;
+
+	/** Coefficient pi_j*(1/Pi_J-1) of exp(-t) for each base j. */
+	private final double[] a;
+
+	/** Coefficient pi_j/Pi_J of exp(-t*A_J) for each base j. */
+	private final double[] b;
+
+	/**
+	 * Constructor.
+	 * @param modelName name of substitution model.
+	 * @param kappa transition/transversion rate ratio.
+	 * @param pi stationary frequencies of a, c, g, t. Normalised to sum to 1.
+	 * @param cacheSize number of P matrices to store in cache, e.g., 1000.
+	 */
+	public HKYMatrixHandler(String modelName, double kappa, double[] pi, int cacheSize) {
+		super(modelName, SequenceType.DNA, getExchangeabilities(kappa), normalise(pi), cacheSize, false);
+		this.pi = this.getStationaryFrequencies();
+		double[] PiJ = new double[] { this.pi[0] + this.pi[2], this.pi[1] + this.pi[3] };
+		this.beta = 1.0 / (2.0 * (PiJ[0] * PiJ[1] + kappa * (this.pi[0] * this.pi[2] + this.pi[1] * this.pi[3])));
+		this.A = new double[] { 1.0 + PiJ[0] * (kappa - 1.0), 1.0 + PiJ[1] * (kappa - 1.0) };
+		this.a = new double[4];
+		this.b = new double[4];
+		for (int j = 0; j < 4; ++j) {
+			double PJ = PiJ[BASE_CLASS[j]];
+			this.a[j] = this.pi[j] * (1.0 / PJ - 1.0);
+			this.b[j] = this.pi[j] / PJ;
+		}
+	}
+
+	/**
+	 * Returns the exchangeabilities in row-major format for a transition/transversion rate ratio.
+	 * @param kappa the ratio.
+	 * @return the exchangeabilities of ac, ag, at, cg, ct, gt.
+	 */
+	private static double[] getExchangeabilities(double kappa) {
+		if (!(kappa > 0.0) || Double.isInfinite(kappa)) {
+			throw new IllegalArgumentException("Invalid transition/transversion rate ratio kappa: " + kappa);
+		}
+		return new double[] { 1.0, kappa, 1.0, 1.0, kappa, 1.0 };
+	}
+
+	/**
+	 * Returns normalised stationary frequencies.
+	 * @param pi the frequencies.
+	 * @return the frequencies divided by their sum.
+	 */
+	private static double[] normalise(double[] pi) {
+		if (pi.length != 4) {
+			throw new IllegalArgumentException("Invalid size of stationary frequencies Pi: " + pi.length);
+		}
+		double sum = 0.0;
+		for (double p : pi) {
+			if (!(p > 0.0) || Double.isInfinite(p)) {
+				throw new IllegalArgumentException("Stationary frequencies Pi must be positive.");
+			}
+			sum += p;
+		}
+		double[] norm = new double[4];
+		for (int i = 0; i < 4; ++i) {
+			norm[i] = pi[i] / sum;
+		}
+		return norm;
+	}
+
+	@Override
+	protected void computeTransitionMatrix(double w, double[] p) {
+		double t = this.beta * w;
+		double eT = Math.exp(-t);
+		double eR = Math.exp(-t * this.A[0]);
+		double eY = Math.exp(-t * this.A[1]);
+		for (int j = 0; j < 4; ++j) {
+			double eJ = (BASE_CLASS[j] == 0 ? eR : eY);
+			double transversion = this.pi[j] * (1.0 - eT);
+			double transition = this.pi[j] + this.a[j] * eT - this.b[j] * eJ;
+			for (int i = 0; i < 4; ++i) {
+				p[i * 4 + j] = (BASE_CLASS[i] == BASE_CLASS[j] ? transition : transversion);
+			}
+			p[j * 4 + j] = this.pi[j] + this.a[j] * eT + (1.0 - this.b[j]) * eJ;
+		}
+	}
+
+}
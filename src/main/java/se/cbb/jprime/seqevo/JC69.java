@@ -17,17 +17,7 @@ public class JC69 {
 	 * @return the model type.
 	 */
 	public static SubstitutionMatrixHandler createJC69(int cacheSize) {
-		double[] Pi = new double[4];
-		double[] R = new double[6];
-		for (int i = 0; i < 4; i++) {
-			Pi[i] = 0.25;
-		}
-		// for (int i = 0; i < 4 * (4 - 1) / 2; i++)
-		for (int i = 0; i < 6; i++) {
-			R[i] = 1.0;
-		}
-
-		return new SubstitutionMatrixHandler("JC69", SequenceType.DNA, R, Pi, cacheSize);
+		return new UniformMatrixHandler("JC69", SequenceType.DNA, cacheSize);
 	}
 	
 }
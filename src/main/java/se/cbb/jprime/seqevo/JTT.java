@@ -67,6 +67,14 @@ public class JTT {
 				42.000
 		};
 
+		// The values above are the symmetric counts N_ij of accepted point mutations of Jones et al. (1992),
+		// i.e., proportional to pi_i*Q_ij, rather than exchangeabilities. Convert to r_ij = N_ij/(pi_i*pi_j).
+		int k = 0;
+		for (int i = 0; i < Pi.length; ++i) {
+			for (int j = i + 1; j < Pi.length; ++j) {
+				R[k++] /= (Pi[i] * Pi[j]);
+			}
+		}
 		return new SubstitutionMatrixHandler("JTT", SequenceType.AMINO_ACID, R, Pi, cacheSize);
 	}
 	
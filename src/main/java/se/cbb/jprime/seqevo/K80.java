@@ -0,0 +1,19 @@
+package se.cbb.jprime.seqevo;
+
+/**
+ * Substitution model definition.
+ */
+public class K80 {
+
+	/**
+	 * Returns the DNA model type described by Kimura 1980.
+	 * @param kappa transition/transversion rate ratio.
+	 * @param cacheSize matrix cache size. Probably not useful with more than twice the number
+	 * of arcs in tree...?
+	 * @return the model type.
+	 */
+	public static SubstitutionMatrixHandler createK80(double kappa, int cacheSize) {
+		return new HKYMatrixHandler("K80", kappa, new double[] { 0.25, 0.25, 0.25, 0.25 }, cacheSize);
+	}
+	
+}
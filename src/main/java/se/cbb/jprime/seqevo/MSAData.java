@@ -1,6 +1,8 @@
 package se.cbb.jprime.seqevo;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -17,15 +19,17 @@ import se.cbb.jprime.mcmc.InfoProvider;
  * columns corresponding to aligned positions of these genes. 
  * <p/>
  * The class provides methods for accessing the data and 
- * associated attributes, and also for accessing a hash
- * where a column pattern is the key and the number of occurrences of this
- * pattern is the value.
+ * associated attributes, and also for accessing the unique column patterns.
+ * States are stored as bytes. The patterns are found by hashing the state columns, and
+ * are exposed as dense arrays: the states of each pattern and sequence, and the first position and
+ * number of occurrences (weight) of each pattern. Patterns are ordered by first occurrence.
  * <p/>
- * User defined partitions of data (e.g. independent loci) are currently
- * not supported, see below.
- * TODO: Bens: Add support for disjoint partitions of sequence data. Joel: Perhaps
- * that should be handled at a higher level? Seems reasonable that an
- * instance of this class represents one partition (loci).
+ * Data may be created from BioJava sequences, or directly from encoded states, e.g.
+ * by <code>MSAReader</code>, which avoids BioJava altogether.
+ * <p/>
+ * An instance represents one partition (locus) of data. User defined partitions of an alignment,
+ * e.g. genes or codon positions, are extracted with <code>getPartition()</code>, and are
+ * modelled at a higher level by one <code>SubstitutionModel</code> each.
  *
  * @author Bengt Sennblad.
  * @author Lars Arvestad.
@@ -33,17 +37,39 @@ import se.cbb.jprime.mcmc.InfoProvider;
  */
 public class MSAData implements InfoProvider {
 
+	/** For codons, the state of each nucleotide triplet, indexed by 16a+4b+c for a,b,c in acgt order. */
+	private static final byte[] CODON_STATES = new byte[64];
+	
+	/** For codons, the state of invalid triplets. */
+	private static final byte CODON_AMBIGUITY;
+	
+	/** Encoding table of each sequence type, see <code>createEncodingTable()</code>. */
+	private static final byte[][] ENCODING_TABLES = new byte[SequenceType.values().length][];
+	
+	static {
+		for (SequenceType st : SequenceType.values()) {
+			ENCODING_TABLES[st.ordinal()] = createEncodingTable(st);
+		}
+		String nts = "acgt";
+		for (int a = 0; a < 4; ++a) {
+			for (int b = 0; b < 4; ++b) {
+				for (int c = 0; c < 4; ++c) {
+					String codon = "" + nts.charAt(a) + nts.charAt(b) + nts.charAt(c);
+					CODON_STATES[(a << 4) | (b << 2) | c] = (byte) SequenceType.CODON.codonStr2int(codon);
+				}
+			}
+		}
+		CODON_AMBIGUITY = (byte) SequenceType.CODON.codonStr2int("nnn");
+	}
+	
 	/** Underlying sequence type. */
 	private SequenceType seqType;
 
-	/** Sequences as characters. */
-	private String[] dataAsStrings;
-	
 	/**
-	 * Sequence alignment matrix with states coded as ints. [i][j] for position j in sequence i.
+	 * Sequence alignment matrix with states coded as bytes. [i][j] for position j in sequence i.
 	 * Ambiguity characters may be represented by states beyond the alphabet size.
 	 */
-	private int[][] data;
+	private byte[][] data;
 
 	/** Name-to-index mapping for sequences. */
 	private LinkedHashMap<String, Integer> nameToKey;
@@ -51,11 +77,23 @@ public class MSAData implements InfoProvider {
 	/** Length of sequences. */
 	private int noOfPositions = -1;
 	
+	/** Number of unique column patterns. */
+	private int noOfPatterns;
+	
+	/** States of the patterns. The state of pattern p in sequence i is at p * noOfSequences + i. */
+	private byte[] patternStates;
+	
+	/** First position of each pattern. */
+	private int[] patternPositions;
+	
+	/** Number of occurrences of each pattern. */
+	private int[] patternWeights;
+	
 	/**
 	 * Map where patterns (unique columns) are keys and
-	 * [first position, count] of the patterns are values.
+	 * [first position, count] of the patterns are values. Created on request.
 	 */
-	private LinkedHashMap<String, int[]> patterns;
+	private LinkedHashMap<String, int[]> patterns = null;
 	
 	/**
 	 * Private constructor.
@@ -68,8 +106,7 @@ public class MSAData implements InfoProvider {
 		}
 		this.seqType = seqType;
 		this.nameToKey = new LinkedHashMap<String, Integer>(sz);
-		this.dataAsStrings = new String[sz];
-		this.data = new int[sz][];
+		this.data = new byte[sz][];
 	}
 	
 	/**
@@ -89,6 +126,129 @@ public class MSAData implements InfoProvider {
 		}
 		this.updatePatterns();
 	}
+	
+	/**
+	 * Constructor from encoded states, see <code>encode()</code>.
+	 * @param seqType sequence type.
+	 * @param names sequence identifiers.
+	 * @param states states of each sequence. These are not copied.
+	 */
+	public MSAData(SequenceType seqType, List<String> names, List<byte[]> states) {
+		this(seqType, names.size());
+		if (states.size() != names.size()) {
+			throw new IllegalArgumentException("Invalid sequence data: number of names and sequences differ.");
+		}
+		for (int i = 0; i < names.size(); ++i) {
+			this.setData(names.get(i), states.get(i), i);
+		}
+		this.updatePatterns();
+	}
+	
+	/**
+	 * Returns a partition of the data, i.e., a new alignment holding the specified positions
+	 * of all sequences, in the specified order. Sequence identifiers and indices are retained.
+	 * @param positions the positions (columns), starting at 0.
+	 * @return the partition.
+	 */
+	public MSAData getPartition(int[] positions) {
+		if (positions.length == 0) {
+			throw new IllegalArgumentException("Cannot create a partition without any positions.");
+		}
+		MSAData part = new MSAData(this.seqType, this.data.length);
+		for (Entry<String, Integer> keyval : this.nameToKey.entrySet()) {
+			byte[] src = this.data[keyval.getValue()];
+			byte[] states = new byte[positions.length];
+			for (int k = 0; k < positions.length; ++k) {
+				if (positions[k] < 0 || positions[k] >= this.noOfPositions) {
+					throw new IllegalArgumentException("Partition position " + (positions[k] + 1) + " is outside of the alignment.");
+				}
+				states[k] = src[positions[k]];
+			}
+			part.setData(keyval.getKey(), states, keyval.getValue());
+		}
+		part.updatePatterns();
+		return part;
+	}
+	
+	/**
+	 * Encodes a sequence of characters into states. Case is ignored. For codons, each triplet
+	 * of nucleotides is one state, and triplets which are not unambiguous sense codons, e.g. containing
+	 * gaps or nucleotide ambiguity characters, are given the ambiguity state.
+	 * @param seqType sequence type.
+	 * @param name the sequence identifier, for error messages.
+	 * @param chars the characters, in ASCII.
+	 * @param len the number of characters.
+	 * @return the states.
+	 */
+	public static byte[] encode(SequenceType seqType, String name, byte[] chars, int len) {
+		byte[] table = ENCODING_TABLES[seqType.ordinal()];
+		if (seqType == SequenceType.CODON) {
+			if (len % 3 != 0) {
+				throw new IllegalArgumentException("Sequence " + name + " does not contain an even reading frame: length is not a multiple of 3.");
+			}
+			byte[] states = new byte[len / 3];
+			for (int i = 0, j = 0; i < len; i += 3, ++j) {
+				int a = getState(table, name, chars[i]);
+				int b = getState(table, name, chars[i + 1]);
+				int c = getState(table, name, chars[i + 2]);
+				states[j] = (a > 3 || b > 3 || c > 3 ? CODON_AMBIGUITY : CODON_STATES[(a << 4) | (b << 2) | c]);
+			}
+			return states;
+		}
+		byte[] states = new byte[len];
+		for (int i = 0; i < len; ++i) {
+			states[i] = getState(table, name, chars[i]);
+		}
+		return states;
+	}
+	
+	/**
+	 * Helper. Returns the state of a character from an encoding table.
+	 * @param table the encoding table.
+	 * @param name the sequence identifier, for error messages.
+	 * @param ch the character, in ASCII.
+	 * @return the state.
+	 */
+	private static byte getState(byte[] table, String name, byte ch) {
+		byte st = (ch < 0 ? -1 : table[ch]);
+		if (st < 0) {
+			throw new IllegalArgumentException("Sequence character " + (char) (ch & 0xff) + " of sequence " + name + " is not a valid character.");
+		}
+		return st;
+	}
+	
+	/**
+	 * Returns a table of the state of each ASCII character, -1 for invalid characters.
+	 * For codons, this is the nucleotide index in acgt order, and 4 for other valid nucleotide characters.
+	 * @param seqType sequence type.
+	 * @return the table.
+	 */
+	private static byte[] createEncodingTable(SequenceType seqType) {
+		byte[] table = new byte[128];
+		Arrays.fill(table, (byte) -1);
+		if (seqType == SequenceType.CODON) {
+			byte[] dna = createEncodingTable(SequenceType.DNA);
+			for (int c = 0; c < 128; ++c) {
+				if (dna[c] >= 0) {
+					table[c] = 4;
+				}
+			}
+			String nts = "acgt";
+			for (int i = 0; i < 4; ++i) {
+				table[nts.charAt(i)] = (byte) i;
+				table[Character.toUpperCase(nts.charAt(i))] = (byte) i;
+			}
+			return table;
+		}
+		for (char c = 0; c < 128; ++c) {
+			try {
+				table[c] = (byte) seqType.char2int(c);
+			} catch (IllegalArgumentException e) {
+				// Invalid character.
+			}
+		}
+		return table;
+	}
 
 	/**
 	 * Adds a sequence. All data is converted to lower case internally.
@@ -103,64 +263,129 @@ public class MSAData implements InfoProvider {
 	 * @param seqIdx the integer key of the sequence.
 	 */
 	private void addData(String name, String sequence, int seqIdx) {
-		this.nameToKey.put(name, seqIdx);
-		// Lower case internally.
-		sequence = sequence.toLowerCase();
-		int sz = -1;
-		// Special handling of codons.
-		if (this.seqType == SequenceType.CODON) {
-			StringBuilder c = new StringBuilder(sequence.length() / 3);
-			for (int i = 0; i + 2 < sequence.length(); i += 3) {
-				String codon = sequence.substring(i, i+3);
-				c.append(this.seqType.int2char(this.seqType.codonStr2int(codon)));
-			}
-			this.dataAsStrings[seqIdx] = c.toString();
-			sz = c.length();
-			if (sz * 3 != sequence.length()) {
-				throw new IllegalArgumentException("Sequence " + name + " does not contain an even reading frame: length is not a multiple of 3.");
-			}
-		} else {
-			this.dataAsStrings[seqIdx] = sequence;
-			sz = sequence.length();
+		byte[] chars = new byte[sequence.length()];
+		for (int i = 0; i < chars.length; ++i) {
+			char c = sequence.charAt(i);
+			chars[i] = (byte) (c < 128 ? c : 0);
+		}
+		this.setData(name, encode(this.seqType, name, chars, chars.length), seqIdx);
+	}
+	
+	/**
+	 * Sets the states of a sequence.
+	 * Call updatePatterns() after adding all sequences.
+	 * @param name the sequence identifier.
+	 * @param states the states.
+	 * @param seqIdx the integer key of the sequence.
+	 */
+	private void setData(String name, byte[] states, int seqIdx) {
+		if (this.nameToKey.put(name, seqIdx) != null) {
+			throw new IllegalArgumentException("Invalid sequence data: duplicate sequence identifier " + name + ".");
 		}
 		
 		// Update number of positions.
-		if (this.noOfPositions > 0 && this.noOfPositions != sz) {
+		if (this.noOfPositions > 0 && this.noOfPositions != states.length) {
 			throw new IllegalArgumentException("Invalid sequence data: sequences have varying lengths.");
 		} else {
-			this.noOfPositions = sz;
-		}
-		
-		// Create integer state representation.
-		this.data[seqIdx] = new int[sz];
-		int i = 0;
-		for (char c : this.dataAsStrings[seqIdx].toCharArray()) {
-			this.data[seqIdx][i++] = this.seqType.get(c);
+			this.noOfPositions = states.length;
 		}
+		this.data[seqIdx] = states;
 	}
 	
 	/**
-	 * Updates the pattern hash.
+	 * Finds the unique column patterns by hashing the state columns into an open-addressing table.
 	 */
-	private void updatePatterns() {    
-		this.patterns = new LinkedHashMap<String, int[]>(this.noOfPositions);
+	private void updatePatterns() {
 		int height = this.data.length;
+		int capacity = 16;
+		this.patternStates = new byte[capacity * height];
+		this.patternPositions = new int[capacity];
+		this.patternWeights = new int[capacity];
+		this.noOfPatterns = 0;
+		int[] table = new int[32];
+		Arrays.fill(table, -1);
 		for (int j = 0; j < this.noOfPositions; j++) {
-			// Read the current column's pattern.
-			char[] col = new char[height];
+			// Hash the current column's pattern.
+			int h = 1;
 			for (int i = 0; i < height; ++i) {
-				col[i] = this.dataAsStrings[i].charAt(j);
+				h = 31 * h + this.data[i][j];
 			}
-			String pattern = new String(col);
+			h ^= (h >>> 16);
 			
 			// Retrieve the position and count of the pattern.
-			int[] idxCount = this.patterns.get(pattern);
-			if (idxCount == null) {
-				this.patterns.put(pattern, new int[] {j, 1});
-			} else {
-				idxCount[1] += 1;
+			int mask = table.length - 1;
+			int slot = h & mask;
+			int p;
+			while ((p = table[slot]) != -1 && !this.isPattern(p, j)) {
+				slot = (slot + 1) & mask;
+			}
+			if (p != -1) {
+				this.patternWeights[p]++;
+				continue;
+			}
+			
+			// New pattern.
+			p = this.noOfPatterns++;
+			if (p == capacity) {
+				capacity *= 2;
+				this.patternStates = Arrays.copyOf(this.patternStates, capacity * height);
+				this.patternPositions = Arrays.copyOf(this.patternPositions, capacity);
+				this.patternWeights = Arrays.copyOf(this.patternWeights, capacity);
+			}
+			for (int i = 0; i < height; ++i) {
+				this.patternStates[p * height + i] = this.data[i][j];
+			}
+			this.patternPositions[p] = j;
+			this.patternWeights[p] = 1;
+			table[slot] = p;
+			if (2 * this.noOfPatterns > table.length) {
+				table = this.rehash(table.length * 2);
+			}
+		}
+		this.patternStates = Arrays.copyOf(this.patternStates, this.noOfPatterns * height);
+		this.patternPositions = Arrays.copyOf(this.patternPositions, this.noOfPatterns);
+		this.patternWeights = Arrays.copyOf(this.patternWeights, this.noOfPatterns);
+		this.patterns = null;
+	}
+	
+	/**
+	 * Returns true if a column equals a pattern.
+	 * @param p the pattern.
+	 * @param j the position of the column.
+	 * @return true if equal.
+	 */
+	private boolean isPattern(int p, int j) {
+		int height = this.data.length;
+		for (int i = 0; i < height; ++i) {
+			if (this.patternStates[p * height + i] != this.data[i][j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates a pattern hash table of a new size.
+	 * @param sz the size, a power of 2.
+	 * @return the table.
+	 */
+	private int[] rehash(int sz) {
+		int[] table = new int[sz];
+		Arrays.fill(table, -1);
+		int height = this.data.length;
+		for (int p = 0; p < this.noOfPatterns; ++p) {
+			int h = 1;
+			for (int i = 0; i < height; ++i) {
+				h = 31 * h + this.patternStates[p * height + i];
 			}
+			h ^= (h >>> 16);
+			int slot = h & (sz - 1);
+			while (table[slot] != -1) {
+				slot = (slot + 1) & (sz - 1);
+			}
+			table[slot] = p;
 		}
+		return table;
 	}
 	
 	/**
@@ -243,7 +468,7 @@ public class MSAData implements InfoProvider {
 	 * @return the character.
 	 */
 	public char getCharState(int seqIdx, int pos) {
-		return this.dataAsStrings[seqIdx].charAt(pos);
+		return this.seqType.int2char(this.data[seqIdx][pos]);
 	}
 	
 	/**
@@ -254,7 +479,7 @@ public class MSAData implements InfoProvider {
 	 */
 	public char getCharState(String name, int pos) {
 		assert this.nameToKey.keySet().contains(name);
-		return this.dataAsStrings[this.nameToKey.get(name)].charAt(pos);
+		return this.seqType.int2char(this.data[this.nameToKey.get(name)][pos]);
 	}
 	
 	/**
@@ -285,17 +510,86 @@ public class MSAData implements InfoProvider {
 	 * @return sequence.
 	 */
 	public String getSequence(String name) {
-		return this.dataAsStrings[this.nameToKey.get(name)];
+		return this.getSequence(this.nameToKey.get(name));
+	}
+	
+	/**
+	 * Returns a specific sequence. Codons are coded using internal symbol representation.
+	 * @param seqIdx the sequence index.
+	 * @return sequence.
+	 */
+	private String getSequence(int seqIdx) {
+		byte[] states = this.data[seqIdx];
+		char[] cs = new char[states.length];
+		for (int i = 0; i < cs.length; ++i) {
+			cs[i] = this.seqType.int2char(states[i]);
+		}
+		return new String(cs);
 	}
 
 	/**
 	 * Returns a compact representation of the unique column patterns of the data.
-	 * The pattern is the key, and [first position, count] are the values.
+	 * The pattern is the key, and [first position, count] are the values. The map is
+	 * created on first request; for computations, see <code>getPatternStates()</code> etc.
 	 * @return patterns as keys, first position and count as values.
 	 */
 	public LinkedHashMap<String, int[]> getPatterns() {
+		if (this.patterns == null) {
+			int height = this.data.length;
+			this.patterns = new LinkedHashMap<String, int[]>(this.noOfPatterns * 2);
+			char[] col = new char[height];
+			for (int p = 0; p < this.noOfPatterns; ++p) {
+				for (int i = 0; i < height; ++i) {
+					col[i] = this.seqType.int2char(this.patternStates[p * height + i]);
+				}
+				this.patterns.put(new String(col), new int[] { this.patternPositions[p], this.patternWeights[p] });
+			}
+		}
 		return this.patterns;
 	}
+	
+	/**
+	 * Returns the number of unique column patterns.
+	 * @return the number of patterns.
+	 */
+	public int getNoOfPatterns() {
+		return this.noOfPatterns;
+	}
+	
+	/**
+	 * Returns the states of the unique column patterns. The state of pattern p in sequence i
+	 * is at index p * getNoOfSequences() + i. The array must not be modified.
+	 * @return the states.
+	 */
+	public byte[] getPatternStates() {
+		return this.patternStates;
+	}
+	
+	/**
+	 * Returns the state of a pattern in a sequence.
+	 * @param p the pattern.
+	 * @param seqIdx the sequence index.
+	 * @return the state.
+	 */
+	public int getPatternState(int p, int seqIdx) {
+		return this.patternStates[p * this.data.length + seqIdx];
+	}
+	
+	/**
+	 * Returns the first position of each unique column pattern. The array must not be modified.
+	 * @return the positions.
+	 */
+	public int[] getPatternPositions() {
+		return this.patternPositions;
+	}
+	
+	/**
+	 * Returns the number of occurrences of each unique column pattern. The array must not be modified.
+	 * @return the weights.
+	 */
+	public int[] getPatternWeights() {
+		return this.patternWeights;
+	}
 
 	/**
 	 * Changes the sequence type.
@@ -335,11 +629,11 @@ public class MSAData implements InfoProvider {
 		for (Entry<String, Integer> keyval : this.nameToKey.entrySet()) {
 			sb.append(keyval.getKey()).append('\t');
 			if (this.seqType == SequenceType.CODON) {
-				for (char c : this.dataAsStrings[keyval.getValue()].toCharArray()) {
-					sb.append(this.seqType.codonInt2str(this.seqType.char2int(c)));
+				for (byte st : this.data[keyval.getValue()]) {
+					sb.append(this.seqType.codonInt2str(st));
 				}
 			} else {
-				sb.append(this.dataAsStrings[keyval.getValue()]);
+				sb.append(this.getSequence(keyval.getValue()));
 			}
 			sb.append('\n');
 		}
@@ -356,11 +650,11 @@ public class MSAData implements InfoProvider {
 		for (Entry<String, Integer> keyval : this.nameToKey.entrySet()) {
 			sb.append('>').append(keyval.getKey()).append('\n');
 			if (this.seqType == SequenceType.CODON) {
-				for (char c : this.dataAsStrings[keyval.getValue()].toCharArray()) {
-					sb.append(this.seqType.codonInt2str(this.seqType.char2int(c)));
+				for (byte st : this.data[keyval.getValue()]) {
+					sb.append(this.seqType.codonInt2str(st));
 				}
 			} else {
-				sb.append(this.dataAsStrings[keyval.getValue()]);
+				sb.append(this.getSequence(keyval.getValue()));
 			}
 			sb.append('\n');
 		}
@@ -384,7 +678,7 @@ public class MSAData implements InfoProvider {
 		sb.append(prefix).append("Sequence type: ").append(this.seqType.getType()).append('\n');
 		sb.append(prefix).append("Number of sequences: ").append(this.data.length).append('\n');
 		sb.append(prefix).append("Number of positions: ").append(this.noOfPositions).append('\n');
-		sb.append(prefix).append("Number of unique column patterns: ").append(this.patterns.size()).append('\n');
+		sb.append(prefix).append("Number of unique column patterns: ").append(this.noOfPatterns).append('\n');
 		return sb.toString();
 	}
 
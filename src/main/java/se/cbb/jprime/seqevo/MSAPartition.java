@@ -0,0 +1,113 @@
+package se.cbb.jprime.seqevo;
+
+import se.cbb.jprime.mcmc.DoubleParameter;
+
+/**
+ * Holds the data and the substitution model components of a partition of a multiple sequence alignment,
+ * e.g. a gene or a codon position. Each partition has its own substitution matrix and site rates, and
+ * optionally a rate multiplier of all branch lengths, and is evaluated by a <code>SubstitutionModel</code> of its own.
+ */
+public class MSAPartition {
+
+	/** Name. */
+	private String name;
+
+	/** Sequence data of the partition. */
+	private MSAData D;
+
+	/** Substitution matrix. */
+	private SubstitutionMatrixHandler Q;
+
+	/** Site rate shape parameter. */
+	private DoubleParameter siteRateShape;
+
+	/** Site rates. */
+	private GammaSiteRateHandler siteRates;
+
+	/** Rate multiplier. Null if none. */
+	private DoubleParameter rateMultiplier;
+
+	/** True if the rate multiplier is estimated. */
+	private boolean estimateRateMultiplier;
+
+	/**
+	 * Constructor.
+	 * @param name name of the partition.
+	 * @param D sequence data of the partition.
+	 * @param Q substitution matrix. Must not be shared with other partitions.
+	 * @param siteRateShape site rate shape parameter.
+	 * @param siteRates site rates, governed by the shape parameter.
+	 * @param rateMultiplier rate multiplier of all branch lengths. Null if none.
+	 * @param estimateRateMultiplier true if the rate multiplier is estimated.
+	 */
+	public MSAPartition(String name, MSAData D, SubstitutionMatrixHandler Q, DoubleParameter siteRateShape,
+			GammaSiteRateHandler siteRates, DoubleParameter rateMultiplier, boolean estimateRateMultiplier) {
+		if (D.getSequenceType() != Q.getSequenceType()) {
+			throw new IllegalArgumentException("Sequence type of partition " + name + " differs from that of its substitution model.");
+		}
+		this.name = name;
+		this.D = D;
+		this.Q = Q;
+		this.siteRateShape = siteRateShape;
+		this.siteRates = siteRates;
+		this.rateMultiplier = rateMultiplier;
+		this.estimateRateMultiplier = (rateMultiplier != null && estimateRateMultiplier);
+	}
+
+	/**
+	 * Returns the name.
+	 * @return the name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the sequence data.
+	 * @return the data.
+	 */
+	public MSAData getData() {
+		return this.D;
+	}
+
+	/**
+	 * Returns the substitution matrix.
+	 * @return the matrix.
+	 */
+	public SubstitutionMatrixHandler getSubstitutionMatrixHandler() {
+		return this.Q;
+	}
+
+	/**
+	 * Returns the site rate shape parameter.
+	 * @return the parameter.
+	 */
+	public DoubleParameter getSiteRateShape() {
+		return this.siteRateShape;
+	}
+
+	/**
+	 * Returns the site rates.
+	 * @return the site rates.
+	 */
+	public GammaSiteRateHandler getSiteRates() {
+		return this.siteRates;
+	}
+
+	/**
+	 * Returns the rate multiplier.
+	 * @return the rate multiplier; null if none.
+	 */
+	public DoubleParameter getRateMultiplier() {
+		return this.rateMultiplier;
+	}
+
+	/**
+	 * Returns true if the rate multiplier is estimated.
+	 * @return true if estimated; false if fixed or if there is no multiplier.
+	 */
+	public boolean isRateMultiplierEstimated() {
+		return this.estimateRateMultiplier;
+	}
+
+}
@@ -1,6 +1,5 @@
 package se.cbb.jprime.seqevo;
 
-import org.ejml.data.DenseMatrix64F;
 import org.jfree.util.PublicCloneable;
 
 /**
@@ -9,22 +8,52 @@ import org.jfree.util.PublicCloneable;
  * Used e.g. by <code>SubstitutionModel</code>.
  * <p/>
  * For each unique pattern i and site rate category j, there is a vector r.
- * Each element in r corresponds to a state s in the 
+ * Each element in r corresponds to a state s in the
  * Markov substitution model, representing the probability of the Markov process starting
  * with s at the root of the subtree of interest, and yielding the state pattern
  * corresponding to position i at the leaves of the subtree (under the site rate of category j).
- * 
+ * <p/>
+ * All vectors are stored contiguously in a single array, pattern-major, then site rate category,
+ * then state. That is, the vector of pattern i and category j starts at <code>getOffset(i,j)</code>.
+ * <p/>
+ * The likelihoods are double-buffered for MCMC caching purposes: <code>beginUpdate()</code> redirects
+ * <code>getData()</code> to the inactive buffer, so that new values may be computed without touching
+ * the current ones. <code>commit()</code> then makes the new values current by flipping the active buffer,
+ * whereas <code>discard()</code> reverts to the old values. Neither involves any copying.
+ * <p/>
+ * To avoid underflow in large trees, the vectors of a pattern may be rescaled. The natural logarithm
+ * of the accumulated scale factor of each pattern over the subtree is stored alongside the likelihoods, and is buffered
+ * the same way. That is, the actual likelihoods of pattern i are the stored ones times exp(<code>getScales()[i]</code>).
+ *
  * @author Joel Sjöstrand.
  * @author Bengt Sennblad.
  */
 public class PatternLikelihoods  implements PublicCloneable {
-	
-	/** Likelihoods, [i][j] for pattern i and site rate category j. */
-	private DenseMatrix64F[][] likelihoods;
-	
+
+	/**
+	 * The two buffers of likelihoods. In each, element s of the vector of pattern i and site rate category j
+	 * is at (i * noOfSiteRates + j) * alphabetSize + s.
+	 */
+	private double[][] buffers;
+
+	/** The two buffers of log scale factors, one per pattern. */
+	private double[][] scaleBuffers;
+
+	/** Index of the buffer holding the committed likelihoods. */
+	private int active;
+
+	/** True if an update is pending, i.e., the likelihoods are read from and written to the inactive buffer. */
+	private boolean isPending;
+
+	/** No. of unique patterns. */
+	private int noOfPatterns;
+
+	/** No. of site rate categories. */
+	private int noOfSiteRates;
+
 	/** Alphabet size. */
 	private int alphabetSize;
-	
+
 	/**
 	 * Constructor.
 	 * @param noOfPatterns no. of unique patterns.
@@ -32,63 +61,124 @@ public class PatternLikelihoods  implements PublicCloneable {
 	 * @param alphabetSize alphabet size.
 	 */
 	public PatternLikelihoods(int noOfPatterns, int noOfSiteRates, int alphabetSize) {
-		this.likelihoods = new DenseMatrix64F[noOfPatterns][noOfSiteRates];
+		int sz = noOfPatterns * noOfSiteRates * alphabetSize;
+		this.buffers = new double[][] { new double[sz], new double[sz] };
+		this.scaleBuffers = new double[][] { new double[noOfPatterns], new double[noOfPatterns] };
+		this.active = 0;
+		this.isPending = false;
+		this.noOfPatterns = noOfPatterns;
+		this.noOfSiteRates = noOfSiteRates;
 		this.alphabetSize = alphabetSize;
-		for (int i = 0; i < noOfPatterns; ++i) {
-			for (int j = 0; j < noOfSiteRates; ++j) {
-				this.likelihoods[i][j] = new DenseMatrix64F(alphabetSize, 1);
-			}
-		}
 	}
-	
+
 	/**
-	 * Copy constructor. Deep-copies the likelihoods.
+	 * Copy constructor. Deep-copies the current likelihoods, which become committed in the copy.
 	 * @param pl the object to copy.
 	 */
 	public PatternLikelihoods(PatternLikelihoods pl) {
+		this.buffers = new double[][] { pl.getData().clone(), new double[pl.buffers[0].length] };
+		this.scaleBuffers = new double[][] { pl.getScales().clone(), new double[pl.noOfPatterns] };
+		this.active = 0;
+		this.isPending = false;
+		this.noOfPatterns = pl.noOfPatterns;
+		this.noOfSiteRates = pl.noOfSiteRates;
 		this.alphabetSize = pl.alphabetSize;
-		int m = pl.likelihoods.length;
-		int n = pl.likelihoods[0].length;
-		this.likelihoods = new DenseMatrix64F[m][n];
-		for (int i = 0; i < m; ++i) {
-			for (int j = 0; j < n; ++j) {
-				this.likelihoods[i][j] = new DenseMatrix64F(pl.likelihoods[i][j]);
-			}
+	}
+
+	/**
+	 * Returns the array of all current likelihoods, i.e., of the pending update if there is one,
+	 * and of the committed state otherwise. Changes are reflected in this object.
+	 * @return the likelihoods.
+	 */
+	public double[] getData() {
+		return this.buffers[this.isPending ? 1 - this.active : this.active];
+	}
+
+	/**
+	 * Returns the array of the current log scale factors of the patterns, buffered like <code>getData()</code>.
+	 * Changes are reflected in this object.
+	 * @return the natural logarithm of the scale factor of each pattern.
+	 */
+	public double[] getScales() {
+		return this.scaleBuffers[this.isPending ? 1 - this.active : this.active];
+	}
+
+	/**
+	 * Starts an update, unless already pending. Thereafter, <code>getData()</code> and <code>getScales()</code>
+	 * refer to the inactive buffers, which hold arbitrary values and must be completely overwritten.
+	 */
+	public void beginUpdate() {
+		this.isPending = true;
+	}
+
+	/**
+	 * Makes a pending update current. Has no effect if there is no pending update.
+	 */
+	public void commit() {
+		if (this.isPending) {
+			this.active = 1 - this.active;
+			this.isPending = false;
 		}
 	}
-	
+
 	/**
-	 * Returns the likelihoods of pattern i and site rate category j.
+	 * Discards a pending update, reverting to the committed likelihoods. Has no effect if there is no pending update.
+	 */
+	public void discard() {
+		this.isPending = false;
+	}
+
+	/**
+	 * Returns the index in the likelihoods array where the likelihoods of pattern i and site rate category j start.
 	 * @param i pattern index.
 	 * @param j site rate index.
-	 * @return the likelihoods of pattern i for site rate j.
+	 * @return the index.
 	 */
-	public DenseMatrix64F get(int i, int j) {
-		return this.likelihoods[i][j];
+	public int getOffset(int i, int j) {
+		return (i * this.noOfSiteRates + j) * this.alphabetSize;
 	}
-	
+
 	/**
-	 * Public clone method. Returns a copy of this object with deep-cloned likelihoods.
+	 * Returns the current likelihood of pattern i, site rate category j and state s.
+	 * @param i pattern index.
+	 * @param j site rate index.
+	 * @param s state index.
+	 * @return the likelihood.
+	 */
+	public double get(int i, int j, int s) {
+		return this.getData()[(i * this.noOfSiteRates + j) * this.alphabetSize + s];
+	}
+
+	/**
+	 * Public clone method. Returns a copy of this object with deep-cloned current likelihoods.
 	 * @return this object.
 	 */
 	public Object clone() {
 		return new PatternLikelihoods(this);
 	}
-	
+
 	/**
 	 * Returns the number of patterns.
 	 * @return the number of patterns.
 	 */
 	public int getNoOfPatterns() {
-		return this.likelihoods.length;
+		return this.noOfPatterns;
 	}
-	
+
 	/**
 	 * Returns the number of site rates.
 	 * @return the number of site rates.
 	 */
 	public int getNoOfSiteRateCategories() {
-		return this.likelihoods[0].length;
+		return this.noOfSiteRates;
+	}
+
+	/**
+	 * Returns the alphabet size.
+	 * @return the number of states.
+	 */
+	public int getAlphabetSize() {
+		return this.alphabetSize;
 	}
-	
+
 }
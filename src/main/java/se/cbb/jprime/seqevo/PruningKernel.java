@@ -0,0 +1,186 @@
+package se.cbb.jprime.seqevo;
+
+/**
+ * Computes the inner step of Felsenstein's pruning algorithm, i.e., y = P * (l .* r) for the likelihood vectors
+ * l and r of two children, for a range of patterns at a time. Specialised implementations are provided
+ * for the alphabets of <code>SequenceType</code>:
+ * <ul>
+ * <li>DNA (4 states): fully unrolled, with P held in local variables.</li>
+ * <li>Amino acids (20 states) and codons (61 states): each row of P is applied to several patterns at once,
+ *     so that P is traversed once per group of patterns rather than once per pattern.</li>
+ * </ul>
+ * All implementations sum each element in the same order as EJML's matrix-vector multiplication,
+ * and thus yield identical results. Kernels may be invoked concurrently; any scratch space is kept per thread.
+ */
+public abstract class PruningKernel {
+
+	/** Number of patterns processed at once by the blocked kernel. */
+	public static final int PATTERNS_PER_BLOCK = 4;
+
+	/** Alphabet size. */
+	protected final int dim;
+
+	/**
+	 * Constructor.
+	 * @param dim alphabet size.
+	 */
+	protected PruningKernel(int dim) {
+		this.dim = dim;
+	}
+
+	/**
+	 * Returns the kernel suitable for a sequence type.
+	 * @param type the sequence type.
+	 * @return the kernel.
+	 */
+	public static PruningKernel create(SequenceType type) {
+		switch (type) {
+		case DNA:
+			return new DNAKernel();
+		default:
+			return new BlockedKernel(type.getAlphabetSize());
+		}
+	}
+
+	/**
+	 * Returns the alphabet size.
+	 * @return the number of states.
+	 */
+	public int getAlphabetSize() {
+		return this.dim;
+	}
+
+	/**
+	 * Computes out = P * (left .* right) for a number of vectors of alphabet size, evenly spaced in the arrays.
+	 * @param P the transition probability matrix in row-major order.
+	 * @param left the likelihoods of the left child.
+	 * @param right the likelihoods of the right child.
+	 * @param out the array to write to. Must not be the same as left or right.
+	 * @param offset the index of the first vector.
+	 * @param stride the distance between the starts of consecutive vectors.
+	 * @param count the number of vectors.
+	 */
+	public abstract void prune(double[] P, double[] left, double[] right, double[] out, int offset, int stride, int count);
+
+	/**
+	 * Computes the pruning step for a single vector of arbitrary dimension.
+	 * @param P the transition probability matrix in row-major order.
+	 * @param left the likelihoods of the left child.
+	 * @param right the likelihoods of the right child.
+	 * @param out the array to write to.
+	 * @param off the index of the vector.
+	 * @param x scratch array of at least alphabet size.
+	 */
+	protected final void pruneSingle(double[] P, double[] left, double[] right, double[] out, int off, double[] x) {
+		int dim = this.dim;
+		for (int t = 0; t < dim; ++t) {
+			x[t] = left[off + t] * right[off + t];
+		}
+		int k = 0;
+		for (int s = 0; s < dim; ++s) {
+			double sum = P[k++] * x[0];
+			for (int t = 1; t < dim; ++t) {
+				sum += P[k++] * x[t];
+			}
+			out[off + s] = sum;
+		}
+	}
+
+	/**
+	 * Kernel for 4 states, fully unrolled.
+	 */
+	private static final class DNAKernel extends PruningKernel {
+
+		/**
+		 * Constructor.
+		 */
+		DNAKernel() {
+			super(4);
+		}
+
+		@Override
+		public void prune(double[] P, double[] left, double[] right, double[] out, int offset, int stride, int count) {
+			double p00 = P[0],  p01 = P[1],  p02 = P[2],  p03 = P[3];
+			double p10 = P[4],  p11 = P[5],  p12 = P[6],  p13 = P[7];
+			double p20 = P[8],  p21 = P[9],  p22 = P[10], p23 = P[11];
+			double p30 = P[12], p31 = P[13], p32 = P[14], p33 = P[15];
+			int off = offset;
+			for (int c = 0; c < count; ++c, off += stride) {
+				double x0 = left[off] * right[off];
+				double x1 = left[off + 1] * right[off + 1];
+				double x2 = left[off + 2] * right[off + 2];
+				double x3 = left[off + 3] * right[off + 3];
+				out[off]     = p00 * x0 + p01 * x1 + p02 * x2 + p03 * x3;
+				out[off + 1] = p10 * x0 + p11 * x1 + p12 * x2 + p13 * x3;
+				out[off + 2] = p20 * x0 + p21 * x1 + p22 * x2 + p23 * x3;
+				out[off + 3] = p30 * x0 + p31 * x1 + p32 * x2 + p33 * x3;
+			}
+		}
+	}
+
+	/**
+	 * Kernel for larger alphabets, which applies each row of P to <code>PATTERNS_PER_BLOCK</code> patterns at once.
+	 */
+	private static final class BlockedKernel extends PruningKernel {
+
+		/** Scratch space for the products of a block of patterns, one per thread. */
+		private final ThreadLocal<double[]> scratch;
+
+		/**
+		 * Constructor.
+		 * @param dim alphabet size.
+		 */
+		BlockedKernel(int dim) {
+			super(dim);
+			this.scratch = new ThreadLocal<double[]>() {
+				@Override
+				protected double[] initialValue() {
+					return new double[PATTERNS_PER_BLOCK * BlockedKernel.this.dim];
+				}
+			};
+		}
+
+		@Override
+		public void prune(double[] P, double[] left, double[] right, double[] out, int offset, int stride, int count) {
+			int dim = this.dim;
+			double[] x = this.scratch.get();
+			int off = offset;
+			int c = 0;
+			for (; c + PATTERNS_PER_BLOCK <= count; c += PATTERNS_PER_BLOCK, off += PATTERNS_PER_BLOCK * stride) {
+				int o0 = off;
+				int o1 = o0 + stride;
+				int o2 = o1 + stride;
+				int o3 = o2 + stride;
+				for (int t = 0; t < dim; ++t) {
+					x[t]           = left[o0 + t] * right[o0 + t];
+					x[dim + t]     = left[o1 + t] * right[o1 + t];
+					x[2 * dim + t] = left[o2 + t] * right[o2 + t];
+					x[3 * dim + t] = left[o3 + t] * right[o3 + t];
+				}
+				int k = 0;
+				for (int s = 0; s < dim; ++s) {
+					double m = P[k++];
+					double s0 = m * x[0];
+					double s1 = m * x[dim];
+					double s2 = m * x[2 * dim];
+					double s3 = m * x[3 * dim];
+					for (int t = 1; t < dim; ++t) {
+						m = P[k++];
+						s0 += m * x[t];
+						s1 += m * x[dim + t];
+						s2 += m * x[2 * dim + t];
+						s3 += m * x[3 * dim + t];
+					}
+					out[o0 + s] = s0;
+					out[o1 + s] = s1;
+					out[o2 + s] = s2;
+					out[o3 + s] = s3;
+				}
+			}
+			for (; c < count; ++c, off += stride) {
+				this.pruneSingle(P, left, right, out, off, x);
+			}
+		}
+	}
+
+}
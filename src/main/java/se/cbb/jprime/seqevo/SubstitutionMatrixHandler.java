@@ -2,6 +2,7 @@ package se.cbb.jprime.seqevo;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.ejml.alg.dense.decomposition.DecompositionFactory;
 import org.ejml.alg.dense.decomposition.EigenDecomposition;
@@ -9,8 +10,12 @@ import org.ejml.data.DenseMatrix64F;
 import org.ejml.ops.CommonOps;
 
 import se.cbb.jprime.math.AdditionalEJMLOps;
+import se.cbb.jprime.mcmc.ChangeInfo;
+import se.cbb.jprime.mcmc.Dependent;
 import se.cbb.jprime.mcmc.InfoProvider;
-import se.cbb.jprime.misc.DoubleKeyMap;
+import se.cbb.jprime.mcmc.ProperDependent;
+import se.cbb.jprime.mcmc.SimplexParameter;
+import se.cbb.jprime.misc.DoubleKeyArrayCache;
 
 /**
  * Handles transition probabilities of a Markov process for molecular sequence evolution.
@@ -19,19 +24,28 @@ import se.cbb.jprime.misc.DoubleKeyMap;
  * <p/>
  * The momentary transition rate matrix Q can be decomposed into a
  * symmetric <i>exchangeability</i> matrix R and the vector of 
- * stationary frequencies Pi. The transition probability
+ * stationary frequencies Pi, with Q_ij=beta*pi_j*r_ij for i != j and beta normalising Q to
+ * 1 expected event per unit of time at stationarity. The transition probability
  * matrix P over a given (Markov) time interval w is given by 
  * P=exp(Qw). Note that w often is measured in the expected 
  * number of events per site occurring over the interval.
  * <p/>
  * Assumes time reversibility, that is, pi_i*mu_ij=pi_j*mu_ji for stationary frequencies pi_x
- * and transition probabilities mu_xy.
+ * and transition probabilities mu_xy. Q is therefore similar to the symmetric matrix Pi^1/2*Q*Pi^-1/2,
+ * whose eigensystem is solved instead of that of Q.
+ * <p/>
+ * R and Pi may be state parameters, in which case Q and its eigensystem are recomputed when
+ * they are perturbed. The cached P matrices are then set aside, and brought back if the
+ * perturbation is rejected.
+ * <p/>
+ * In general, P is computed from the eigensystem of Q. Subclasses may instead provide closed-form
+ * expressions for models where such exist, see e.g. <code>HKYMatrixHandler</code>.
  * 
  * @author Bengt Sennblad.
  * @author Lars Arvestad.
  * @author Joel Sjöstrand.
  */
-public class SubstitutionMatrixHandler implements InfoProvider {
+public class SubstitutionMatrixHandler implements ProperDependent, InfoProvider {
 	
 	/** The maximum allowed time w on which transition rate matrix Q can act. */
 	public static final double MAX_MARKOV_TIME = 100.0;
@@ -54,10 +68,19 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 
 	/** The stationary frequencies of the model formulated as a diagonal matrix. Only diagonal stored as matrix of size (dim,1). */
 	private DenseMatrix64F Pi;
+
+	/** Exchangeabilities as a state parameter. Null if fixed. */
+	private SimplexParameter RParam = null;
+
+	/** Stationary frequencies as a state parameter. Null if fixed. */
+	private SimplexParameter PiParam = null;
 	
 	/** The transition rate matrix Q, normalised to have 1 expected event over branch length 1. */
 	private DenseMatrix64F Q;
 
+	/** True if P is computed by means of the eigensystem of Q; false if a subclass provides a closed form. */
+	private boolean decompose;
+
 	/** Eigenvalues of the transition rate matrix. Only diagonal, stored as matrix of size (dim,1). */
 	private DenseMatrix64F E;
 
@@ -76,8 +99,14 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 	/** Temporary storage vector. Size (dim,1). */
 	private DenseMatrix64F tmp_diagonal;
 
-	/** A cache for saving instances of P for varying times w to avoid recalculations. */
-	private DoubleKeyMap<DenseMatrix64F> PCache;
+	/** A cache for saving the data of P for varying times w to avoid recalculations. */
+	private DoubleKeyArrayCache PCache;
+
+	/** Cached R, Pi, Q, E, V and iV while a perturbation of the parameters is pending. Null if R and Pi are fixed. */
+	private DenseMatrix64F[] cacheMatrices = null;
+
+	/** The P cache of the previous parameter values. Null if R and Pi are fixed. */
+	private DoubleKeyArrayCache cachePCache = null;
 	
 	/** Small cache for ambiguity leaf likelihoods. Cleared every time P i updated. */
 	private HashMap<Integer, DenseMatrix64F> ambigCache;
@@ -92,19 +121,62 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 	 * @param cacheSize number of P matrices to store in cache, e.g., 1000.
 	 */
 	public SubstitutionMatrixHandler(String modelName, SequenceType sequenceType, double[] R_vec, double[] Pi_vec, int cacheSize) {
+		this(modelName, sequenceType, R_vec, Pi_vec, cacheSize, true);
+	}
+
+	/**
+	 * Constructor for a model where R and/or Pi are state parameters.
+	 * @param modelName name of substitution model.
+	 * @param sequenceType sequence type.
+	 * @param R 'intrinsic' rate matrix, in row-major format, of length dim*(dim-1)/2. Since Q is normalised, its
+	 * scale is of no importance.
+	 * @param Pi stationary frequencies, of length dim.
+	 * @param estimateR true if R may be perturbed.
+	 * @param estimatePi true if Pi may be perturbed.
+	 * @param cacheSize number of P matrices to store in cache, e.g., 1000.
+	 */
+	public SubstitutionMatrixHandler(String modelName, SequenceType sequenceType, SimplexParameter R, SimplexParameter Pi,
+			boolean estimateR, boolean estimatePi, int cacheSize) {
+		this(modelName, sequenceType, R.getValues().clone(), Pi.getValues().clone(), cacheSize, true);
+		if (R.getNoOfSubParameters() != this.R.getNumElements() || Pi.getNoOfSubParameters() != this.alphabetSize) {
+			throw new IllegalArgumentException("Invalid size of exchangeabilities R or stationary frequencies Pi for substitution model.");
+		}
+		this.RParam = (estimateR ? R : null);
+		this.PiParam = (estimatePi ? Pi : null);
+		if (estimateR || estimatePi) {
+			this.cacheMatrices = new DenseMatrix64F[6];
+			this.cachePCache = new DoubleKeyArrayCache(this.PCache.getMaxNoOfElements(), alphabetSize * alphabetSize, true);
+		}
+	}
+
+	/**
+	 * Constructor for subclasses.
+	 * @param modelName name of substitution model.
+	 * @param sequenceType sequence type.
+	 * @param R_vec 'intrinsic' rate matrix, in row-major format, of length dim*(dim-1)/2.
+	 * @param Pi_vec stationary frequencies, of length dim.
+	 * @param cacheSize number of P matrices to store in cache, e.g., 1000.
+	 * @param decompose true to solve the eigensystem of Q for computing P; false if the subclass overrides
+	 * <code>computeTransitionMatrix(...)</code> with a closed form.
+	 */
+	protected SubstitutionMatrixHandler(String modelName, SequenceType sequenceType, double[] R_vec, double[] Pi_vec, int cacheSize,
+			boolean decompose) {
 		this.modelName = modelName;
 		this.sequenceType = sequenceType;
 		this.alphabetSize = sequenceType.getAlphabetSize();
 		this.R = new DenseMatrix64F(alphabetSize * (alphabetSize - 1) / 2, 1, true, R_vec);
 		this.Pi = new DenseMatrix64F(alphabetSize, 1, true, Pi_vec);
 		this.Q = new DenseMatrix64F(alphabetSize, alphabetSize);
-		this.E = new DenseMatrix64F(alphabetSize, 1);
-		this.V = new DenseMatrix64F(alphabetSize, alphabetSize);
-		this.iV = new DenseMatrix64F(alphabetSize, alphabetSize);
+		this.decompose = decompose;
+		if (decompose) {
+			this.E = new DenseMatrix64F(alphabetSize, 1);
+			this.V = new DenseMatrix64F(alphabetSize, alphabetSize);
+			this.iV = new DenseMatrix64F(alphabetSize, alphabetSize);
+			this.tmp_matrix = new DenseMatrix64F(alphabetSize, alphabetSize);
+			this.tmp_diagonal = new DenseMatrix64F(alphabetSize, 1);
+		}
 		this.P = new DenseMatrix64F(alphabetSize, alphabetSize);
-		this.tmp_matrix = new DenseMatrix64F(alphabetSize, alphabetSize);
-		this.tmp_diagonal = new DenseMatrix64F(alphabetSize, 1);
-		this.PCache = new DoubleKeyMap<DenseMatrix64F>(cacheSize, cacheSize, true);
+		this.PCache = new DoubleKeyArrayCache(cacheSize, alphabetSize * alphabetSize, true);
 		this.ambigCache = new HashMap<Integer, DenseMatrix64F>(14);  // Not more than at most ~14 different ambiguity characters.
 		this.update();
 	}
@@ -136,6 +208,22 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		return this.sequenceType;
 	}
 
+	/**
+	 * Returns the exchangeabilities R as a state parameter.
+	 * @return the parameter; null if R is fixed.
+	 */
+	public SimplexParameter getExchangeabilityParameter() {
+		return this.RParam;
+	}
+
+	/**
+	 * Returns the stationary frequencies Pi as a state parameter.
+	 * @return the parameter; null if Pi is fixed.
+	 */
+	public SimplexParameter getStationaryFrequencyParameter() {
+		return this.PiParam;
+	}
+
 	/**
 	 * Returns the alphabet size of the Markov process.
 	 * @return the size.
@@ -144,11 +232,20 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		return this.alphabetSize;
 	}
 
+	/**
+	 * Clears the cache of transition probability matrices P. Unlike <code>clearCache(boolean)</code>,
+	 * this does not concern parameter perturbations.
+	 */
+	public void clearPCache() {
+		this.PCache.clear();
+		this.ambigCache.clear();
+	}
+
 	/**
 	 * Updates Q and the eigensystem based on R and Pi.
 	 */
 	private void update() {
-		// Creates Q by means of R and Pi.
+		// Creates Q by means of R and Pi, with Q_ij = pi_j * r_ij so that Pi is the stationary distribution of Q.
 		// The diagonal values of Q = -the sum of other values of row, by definition.
 		// R in this implementation holds upper triangle of symmetric matrix, excluding diagonal.
 		this.PCache.clear();
@@ -158,11 +255,11 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		double val;
 		for (int i = 0 ; i < alphabetSize; i++) {
 			for (int j = i + 1; j < alphabetSize; j++) {
-				val = this.Pi.get(i) * this.R.get(R_i);
+				val = this.Pi.get(j) * this.R.get(R_i);
 				this.Q.set(i, j, val);
 				this.Q.set(i, i, this.Q.get(i,i) - val);
 				// R is symmetric.
-				val = this.Pi.get(j) * this.R.get(R_i++);
+				val = this.Pi.get(i) * this.R.get(R_i++);
 				this.Q.set(j, i, val);
 				this.Q.set(j, j, this.Q.get(j, j) - val);
 			}
@@ -175,9 +272,59 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		}
 		beta = 1.0 / beta;
 		CommonOps.scale(beta, this.Q);
+		if (!this.decompose) {
+			return;
+		}
 		
-		// Solve eigensystem. NOTE: It is assumed solutions with imaginary parts will never be encountered.
-		// To avoid checks, we assume non-symmetric Q. Symmetric models (JC69, etc.) are rarely used in practice anyway.
+		// Solve eigensystem.
+		for (int i = 0; i < this.alphabetSize; ++i) {
+			if (!(this.Pi.get(i) > 0.0)) {
+				this.decomposeGeneral();
+				return;
+			}
+		}
+		this.decomposeSymmetric();
+	}
+
+	/**
+	 * Solves the eigensystem of Q by means of the symmetric matrix A=Pi^1/2*Q*Pi^-1/2, with
+	 * A_ij=beta*r_ij*sqrt(pi_i*pi_j) for i != j. For A=U*E*U^T, V=Pi^-1/2*U and iV=U^T*Pi^1/2.
+	 * Requires Pi to be positive.
+	 */
+	private void decomposeSymmetric() {
+		int dim = this.alphabetSize;
+		DenseMatrix64F A = this.tmp_matrix;
+		double[] sqrtPi = this.tmp_diagonal.getData();
+		for (int i = 0; i < dim; ++i) {
+			sqrtPi[i] = Math.sqrt(this.Pi.get(i));
+		}
+		for (int i = 0; i < dim; ++i) {
+			A.set(i, i, this.Q.get(i, i));
+			for (int j = i + 1; j < dim; ++j) {
+				double a = this.Q.get(i, j) * sqrtPi[i] / sqrtPi[j];
+				A.set(i, j, a);
+				A.set(j, i, a);
+			}
+		}
+		EigenDecomposition<DenseMatrix64F> eigFact = DecompositionFactory.eigSymm(dim, true);
+		if (!eigFact.decompose(A)) {
+			throw new RuntimeException("Unable to decompose eigensystem for substitution model.");
+		}
+		AdditionalEJMLOps.getEigensystemSolution(dim, eigFact, this.E, this.V);
+		for (int i = 0; i < dim; ++i) {
+			for (int k = 0; k < dim; ++k) {
+				double u = this.V.get(i, k);
+				this.iV.set(k, i, u * sqrtPi[i]);
+				this.V.set(i, k, u / sqrtPi[i]);
+			}
+		}
+	}
+
+	/**
+	 * Solves the eigensystem of Q directly, for when some stationary frequency is zero.
+	 * NOTE: It is assumed solutions with imaginary parts will never be encountered.
+	 */
+	private void decomposeGeneral() {
 		EigenDecomposition<DenseMatrix64F> eigFact = DecompositionFactory.eigGeneral(this.alphabetSize, true);
 		if (!eigFact.decompose(this.Q)) {
 			throw new RuntimeException("Unable to decompose eigensystem for substitution model.");
@@ -190,6 +337,86 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		}
 	}
 
+	@Override
+	public Dependent[] getParentDependents() {
+		if (this.RParam == null) {
+			return (this.PiParam == null ? new Dependent[] {} : new Dependent[] { this.PiParam });
+		}
+		return (this.PiParam == null ? new Dependent[] { this.RParam } : new Dependent[] { this.RParam, this.PiParam });
+	}
+
+	@Override
+	public void cacheAndUpdate(Map<Dependent, ChangeInfo> changeInfos, boolean willSample) {
+		boolean rChanged = (this.RParam != null && changeInfos.get(this.RParam) != null);
+		boolean piChanged = (this.PiParam != null && changeInfos.get(this.PiParam) != null);
+		if (!rChanged && !piChanged) {
+			return;
+		}
+		
+		// Set current matrices aside and compute new ones in their place.
+		DenseMatrix64F[] curr = new DenseMatrix64F[] { this.R, this.Pi, this.Q, this.E, this.V, this.iV };
+		for (int i = 0; i < curr.length; ++i) {
+			DenseMatrix64F m = this.cacheMatrices[i];
+			if (m == null) {
+				m = new DenseMatrix64F(curr[i].numRows, curr[i].numCols);
+			}
+			this.cacheMatrices[i] = curr[i];
+			curr[i] = m;
+		}
+		this.setMatrices(curr);
+		curr[0].set(this.cacheMatrices[0]);
+		curr[1].set(this.cacheMatrices[1]);
+		if (rChanged) {
+			System.arraycopy(this.RParam.getValues(), 0, this.R.getData(), 0, this.R.getNumElements());
+		}
+		if (piChanged) {
+			System.arraycopy(this.PiParam.getValues(), 0, this.Pi.getData(), 0, this.alphabetSize);
+		}
+		this.swapPCaches();
+		this.update();
+		changeInfos.put(this, new ChangeInfo(this, "SubstitutionMatrixHandler - Q updated"));
+	}
+
+	@Override
+	public void clearCache(boolean willSample) {
+		// Keep the old matrices for reuse.
+		this.cachePCache.clear();
+	}
+
+	@Override
+	public void restoreCache(boolean willSample) {
+		DenseMatrix64F[] curr = new DenseMatrix64F[] { this.R, this.Pi, this.Q, this.E, this.V, this.iV };
+		this.setMatrices(this.cacheMatrices);
+		this.cacheMatrices = curr;
+		this.swapPCaches();
+		this.cachePCache.clear();
+		this.ambigCache.clear();
+	}
+
+	/**
+	 * Sets R, Pi, Q, E, V and iV.
+	 * @param ms the matrices in that order.
+	 */
+	private void setMatrices(DenseMatrix64F[] ms) {
+		this.R = ms[0];
+		this.Pi = ms[1];
+		this.Q = ms[2];
+		this.E = ms[3];
+		this.V = ms[4];
+		this.iV = ms[5];
+	}
+
+	/**
+	 * Swaps the current P cache with that of the previous parameter values, keeping statistics in the current.
+	 */
+	private void swapPCaches() {
+		DoubleKeyArrayCache c = this.PCache;
+		this.PCache = this.cachePCache;
+		this.cachePCache = c;
+		this.PCache.addStatistics(c);
+		c.resetStatistics();
+	}
+
 
 	/**
 	 * Sets up P=exp(Qw), the transition probability matrix for the Markov
@@ -207,17 +434,61 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		
 		// Clear ambiguity cache.
 		this.ambigCache.clear();
+		this.P.data = this.getTransitionMatrixData(w, true);
+	}
 
+	/**
+	 * Sets up P=exp(Qw) for several Markov times at once, e.g., for all site rate categories of a branch.
+	 * Unlike repeated calls to <code>updateTransitionMatrix(w)</code>, all the returned matrices remain
+	 * valid until the next update. P is thereafter set to the last matrix.
+	 * Precondition: w <= 100 for all times.
+	 * @param ws the "times" (or branch lengths) over which Q acts.
+	 * @param Ps the array to which P for each time is written, in row-major order. The arrays must not be modified.
+	 */
+	public void updateTransitionMatrices(double[] ws, double[][] Ps) {
+		this.ambigCache.clear();
+		
+		// Matrices evicted during the batch could have been handed out earlier in the batch if the cache is small.
+		boolean mayRecycle = (ws.length <= this.PCache.getMaxNoOfElements());
+		for (int i = 0; i < ws.length; ++i) {
+			if (ws[i] > MAX_MARKOV_TIME) {
+				throw new IllegalArgumentException("Bug: In substitution model, cannot compute transition probability matrix P for too large Markov time w=" + ws[i] + ".");
+			}
+			Ps[i] = this.getTransitionMatrixData(ws[i], mayRecycle);
+		}
+		this.P.data = Ps[ws.length - 1];
+	}
+
+	/**
+	 * Returns the data of P=exp(Qw), from the cache if possible, and otherwise computed and cached.
+	 * @param w the Markov time.
+	 * @param mayRecycle true if the array of an evicted matrix may be overwritten.
+	 * @return P, in row-major order.
+	 */
+	private double[] getTransitionMatrixData(double w, boolean mayRecycle) {
 		// Check in cache if result already exists.
-		this.P = this.PCache.get(w);
-		if (this.P == null) {
+		double[] p = this.PCache.get(w);
+		if (p == null) {
 			// Nope, we have to create it.
-			AdditionalEJMLOps.elementExp(this.alphabetSize, this.E, w, this.tmp_diagonal);
-			AdditionalEJMLOps.multDiagA(this.alphabetSize, this.tmp_diagonal, this.iV, this.tmp_matrix);
-			this.P = new DenseMatrix64F(this.alphabetSize, this.alphabetSize);
-			CommonOps.mult(this.V, this.tmp_matrix, this.P);
-			this.PCache.put(w, this.P);
+			p = this.PCache.put(w, mayRecycle);
+			if (p == null) {
+				// Not cacheable.
+				p = new double[this.alphabetSize * this.alphabetSize];
+			}
+			this.computeTransitionMatrix(w, p);
 		}
+		return p;
+	}
+
+	/**
+	 * Computes P=exp(Qw) as V*diag(exp(Ew))*iV. Subclasses with analytical solutions override this.
+	 * @param w the Markov time.
+	 * @param p the array to write P to, in row-major order.
+	 */
+	protected void computeTransitionMatrix(double w, double[] p) {
+		AdditionalEJMLOps.elementExp(this.alphabetSize, this.E, w, this.tmp_diagonal);
+		AdditionalEJMLOps.multDiagA(this.alphabetSize, this.tmp_diagonal, this.iV, this.tmp_matrix);
+		CommonOps.mult(this.V, this.tmp_matrix, DenseMatrix64F.wrap(this.alphabetSize, this.alphabetSize, p));
 	}
 
 	/**
@@ -229,6 +500,53 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		CommonOps.mult(this.P, X, Y);
 	}
 
+	/**
+	 * Returns the current transition probability matrix P in row-major order.
+	 * The array must not be modified, and is only valid until P is updated.
+	 * @return P, of length dim*dim.
+	 */
+	public double[] getTransitionMatrixData() {
+		return this.P.getData();
+	}
+
+	/**
+	 * Returns the stationary frequencies Pi. The array must not be modified.
+	 * @return Pi, of length dim.
+	 */
+	public double[] getStationaryFrequencies() {
+		return this.Pi.getData();
+	}
+
+	/**
+	 * Returns the likelihood for a certain leaf state for a given P, written into a part of an array.
+	 * This corresponds to the state's column in P (and analogously for
+	 * ambiguity characters). Unlike other methods, this does not alter the handler, and may thus be
+	 * invoked concurrently.
+	 * @param P the transition probability matrix, as obtained from <code>getTransitionMatrixData()</code>.
+	 * @param state the state's integer index.
+	 * @param result the array to write to.
+	 * @param offset the index of result where the dim values are written.
+	 */
+	public void getLeafLikelihood(double[] P, int state, double[] result, int offset) {
+		int dim = this.alphabetSize;
+		if (state < dim) {
+			for (int i = 0; i < dim; ++i) {
+				result[offset + i] = P[i * dim + state];
+			}
+		} else {
+			// Ambiguity state: P times the leaf likelihood vector.
+			double[] x = this.sequenceType.getLeafLikelihood(state).getData();
+			int k = 0;
+			for (int i = 0; i < dim; ++i) {
+				double sum = P[k++] * x[0];
+				for (int j = 1; j < dim; ++j) {
+					sum += P[k++] * x[j];
+				}
+				result[offset + i] = sum;
+			}
+		}
+	}
+
 	/**
 	 * Returns the likelihood for a certain leaf state for the current P.
 	 * This corresponds to the state's column in P (and analogously for
@@ -273,12 +591,14 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		sb.append(this.R.toString()).append('\n');
 		sb.append("Current stationary distribution base frequencies, Pi:\n");
 		sb.append(this.Pi.toString()).append('\n');
-		sb.append("Current eigenvalue matrix of Q, E:\n");
-		sb.append(this.E.toString()).append('\n');
-		sb.append("Current right-hand side eigenvectors of Q, V:\n");
-		sb.append(this.V.toString()).append('\n');
-		sb.append("Current inverse of V, iV:\n");
-		sb.append(this.iV.toString()).append('\n');
+		if (this.decompose) {
+			sb.append("Current eigenvalue matrix of Q, E:\n");
+			sb.append(this.E.toString()).append('\n');
+			sb.append("Current right-hand side eigenvectors of Q, V:\n");
+			sb.append(this.V.toString()).append('\n');
+			sb.append("Current inverse of V, iV:\n");
+			sb.append(this.iV.toString()).append('\n');
+		}
 		return sb.toString();
 	};
 
@@ -316,6 +636,9 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 		sb.append(prefix).append("Alphabet size: ").append(this.alphabetSize).append('\n');
 		sb.append(prefix).append("Stationary frequencies Pi: ").append(Arrays.toString(this.Pi.getData())).append('\n');
 		sb.append(prefix).append("Exchangeability matrix R (time reversible, symmetric, only part above diagonal in row-major format): ").append(Arrays.toString(this.R.getData())).append('\n');
+		sb.append(prefix).append("Transition matrix P computation: ").append(this.decompose ? "eigendecomposition" : "closed form").append('\n');
+		sb.append(prefix).append("Estimated exchangeabilities R: ").append(this.RParam != null).append('\n');
+		sb.append(prefix).append("Estimated stationary frequencies Pi: ").append(this.PiParam != null).append('\n');
 		sb.append(prefix).append("Transition matrix P cache size: ").append(this.PCache.getMaxNoOfElements()).append('\n');
 		return sb.toString();
 	}
@@ -323,8 +646,12 @@ public class SubstitutionMatrixHandler implements InfoProvider {
 
 	@Override
 	public String getPostInfo(String prefix) {
-		StringBuilder sb = new StringBuilder(128);
+		StringBuilder sb = new StringBuilder(256);
 		sb.append(prefix).append("SUBSTITUTION MATRIX HANDLER\n");
+		sb.append(prefix).append("Transition matrix P cache hits: ").append(this.PCache.getHits()).append('\n');
+		sb.append(prefix).append("Transition matrix P cache misses: ").append(this.PCache.getMisses()).append('\n');
+		sb.append(prefix).append("Transition matrix P cache evictions: ").append(this.PCache.getEvictions()).append('\n');
+		sb.append(prefix).append("Transition matrix P cache hit rate: ").append(this.PCache.getHitRate()).append('\n');
 		return sb.toString();
 	}
 }
@@ -4,8 +4,9 @@ import se.cbb.jprime.io.SampleDoubleArray;
 
 /**
  * Creates matrix handlers corresponding to various substitution models.
- * TODO: the models JC69, etc. should be moved to another subclass
- * that implements analytical solutions of the member functions.
+ * JC69, K80, F81, HKY85, UNIFORMAA and UNIFORMCODON use closed-form transition probabilities;
+ * the remaining models are solved by eigendecomposition. For GTR, the exchangeabilities and stationary
+ * frequencies are state parameters.
  * <p/>
  * Note: Not a proper factory class yet, but maybe eventually...
  * 
@@ -17,8 +18,8 @@ public class SubstitutionMatrixHandlerFactory {
 	
 	/** User message suitable for all available models. */
 	public static final String USER_MESSAGE =
-		"Substitution model. May be JC69, UNIFORMAA, JTT, LG, WAG, BLOSUM62, CPREV, DAYHOFF, MTMAM, MTREV24, RTREV, VT, " +
-		"UNIFORMCODON, ARVECODON or USERDEFINED='type;[pi1,...,pik];[r1,...,rj]', where type is DNA/AA/CODON, pi holds " +
+		"Substitution model. May be JC69, K80='kappa', F81='[pi1,...,pi4]', HKY85='kappa;[pi1,...,pi4]', UNIFORMAA, JTT, LG, WAG, BLOSUM62, CPREV, DAYHOFF, MTMAM, MTREV24, RTREV, VT, " +
+		"UNIFORMCODON, ARVECODON, GTR='type' where the exchangeabilities and stationary frequencies are estimated, or USERDEFINED='type;[pi1,...,pik];[r1,...,rj]', where type is DNA/AA/CODON, pi holds " +
 		"the k stationary frequencies of the model, and r holds the j=k*(k-1)/2 time-reversible exchangeability rates of the model " +
 		"in row-major format. Base ordering is 'acgt' for DNA/CODON and 'arndcqeghilkmfpstwyv' for AA. Note: All models may not have " +
 		"been normalized.";
@@ -31,9 +32,37 @@ public class SubstitutionMatrixHandlerFactory {
 	 * of arcs in tree...?
 	 */
 	public static SubstitutionMatrixHandler create(String model, int cacheSize) {
+		return create(model, cacheSize, "");
+	}
+	
+	/**
+	 * Convenience method for creating a known substitution model from
+	 * its string identifier, where the names of estimated parameters are prefixed, e.g.
+	 * to tell apart the models of different partitions.
+	 * @param model the identifier.
+	 * @param cacheSize matrix cache size.
+	 * @param paramPrefix prefix of the names of estimated parameters.
+	 */
+	public static SubstitutionMatrixHandler create(String model, int cacheSize, String paramPrefix) {
 		model = model.trim().toUpperCase();
 		if (model.equals("JC69")) {
 			return JC69.createJC69(cacheSize);
+		} else if (model.startsWith("K80")) {
+			return K80.createK80(Double.parseDouble(getArguments(model)), cacheSize);
+		} else if (model.startsWith("F81")) {
+			return F81.createF81(SampleDoubleArray.toDoubleArray(getArguments(model)), cacheSize);
+		} else if (model.startsWith("HKY85")) {
+			String args = getArguments(model);
+			int sep = args.indexOf(";");
+			if (sep < 0) {
+				throw new IllegalArgumentException("Invalid HKY85 substitution model: expected HKY85='kappa;[pi1,...,pi4]'.");
+			}
+			return HKY85.createHKY85(Double.parseDouble(args.substring(0, sep)),
+					SampleDoubleArray.toDoubleArray(args.substring(sep + 1)), cacheSize);
+		} else if (model.equals("GTR")) {
+			return GTR.createGTR(SequenceType.DNA, cacheSize, paramPrefix);
+		} else if (model.startsWith("GTR=")) {
+			return GTR.createGTR(SequenceType.getSequenceType(getArguments(model)), cacheSize, paramPrefix);
 		} else if (model.equals("UNIFORMAA")) {
 			return UniformAA.createUniformAA(cacheSize);
 		} else if (model.equals("JTT")) {
@@ -74,8 +103,18 @@ public class SubstitutionMatrixHandlerFactory {
 		}
 	};
 
-
-	
+	/**
+	 * Returns the arguments of a model string like "MODEL='args'", without quotes.
+	 * @param model the model string.
+	 * @return the arguments.
+	 */
+	private static String getArguments(String model) {
+		int eq = model.indexOf("=");
+		if (eq < 0) {
+			throw new IllegalArgumentException("Missing parameters of substitution model: " + model);
+		}
+		return model.substring(eq + 1).replaceAll("'", "").replaceAll("\"", "").trim();
+	}
 
 	/**
 	 * Returns a user-defined model type.
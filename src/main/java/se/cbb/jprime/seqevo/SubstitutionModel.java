@@ -1,19 +1,19 @@
 package se.cbb.jprime.seqevo;
 
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Map.Entry;
-
-import org.ejml.data.DenseMatrix64F;
-import org.ejml.ops.CommonOps;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import se.cbb.jprime.io.LogDoubleSampleable;
 import se.cbb.jprime.io.SampleLogDouble;
 import se.cbb.jprime.math.LogDouble;
 import se.cbb.jprime.mcmc.ChangeInfo;
+import se.cbb.jprime.mcmc.CheckpointListener;
 import se.cbb.jprime.mcmc.Dependent;
+import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.mcmc.InferenceModel;
 import se.cbb.jprime.topology.DoubleMap;
-import se.cbb.jprime.topology.GenericMap;
 import se.cbb.jprime.topology.NamesMap;
 import se.cbb.jprime.topology.RBTree;
 import se.cbb.jprime.topology.TreeAlgorithms;
@@ -26,8 +26,13 @@ import se.cbb.jprime.topology.TreeAlgorithms;
  * Rate variation across sites over discrete classes, e.g., Yang 1993,
  * can be modelled.
  * <p/>
- * This model does not yet support partitions of data into user-defined "independent" loci
- * (domains, codon positions, etc.). NOTE: This class is derived from the C++ class
+ * Partitions of data into user-defined "independent" loci (domains, codon positions, etc.) are
+ * modelled by one instance per partition, see <code>MSAData.getPartition()</code>. These share the tree and
+ * branch lengths, but have their own substitution matrix and site rates, and optionally a rate multiplier
+ * which scales all branch lengths. Since such instances do not depend on each other, they are updated
+ * concurrently when using a <code>DependentScheduler</code>, and the data probability is the product of theirs.
+ * <p/>
+ * NOTE: This class is derived from the C++ class
  * <code>CacheSubstitutionModel</code> and not <code>FastCacheSubstitutionModel</code>
  * since the latter was stated unsuitable for tree topology changes in the C++ CMake
  * default settings. /Joel
@@ -36,7 +41,28 @@ import se.cbb.jprime.topology.TreeAlgorithms;
  * @author Lars Arvestad.
  * @author Joel Sjöstrand.
  */
-public class SubstitutionModel implements InferenceModel {
+public class SubstitutionModel implements InferenceModel, LogDoubleSampleable, CheckpointListener {
+
+	/** Default maximum number of unique patterns per block when processing patterns concurrently. */
+	public static final int DEFAULT_PATTERN_BLOCK_SIZE = 256;
+
+	/**
+	 * Pattern vectors with a maximum likelihood below this are rescaled to avoid underflow. Since it is rarely reached
+	 * except in very large trees, the likelihood is then usually computed without any scaling at all.
+	 */
+	public static final double SCALING_THRESHOLD = 0x1.0p-256;
+
+	/** Natural logarithm of 2. */
+	private static final double LN2 = Math.log(2.0);
+
+	/** Pattern operation: leaf likelihoods. */
+	private static final int LEAF = 0;
+
+	/** Pattern operation: interior vertex likelihoods. */
+	private static final int INTERNAL = 1;
+
+	/** Pattern operation: likelihoods at the root, weighted by the stationary frequencies. */
+	private static final int ROOT = 2;
 
 	/** Model name. */
 	private String name;
@@ -59,15 +85,22 @@ public class SubstitutionModel implements InferenceModel {
     /** Branch lengths, i.e., Markov model "time". */
     private DoubleMap branchLengths;
     
+    /** Rate multiplier of all branch lengths. Null if none. */
+    private DoubleParameter rateMultiplier;
+    
     /** Decides if root arc should be included in computations. */
     private boolean useRootArc;
     
     /**
      * For each vertex n of V(T), holds the likelihoods for the planted subtree
-     * T^n. Each such element is an array with rows corresponding to unique patterns and
-     * columns corresponding to site rate categories. Each element in such an array holds a
-     * vector with likelihoods corresponding to the states of the sequence type alphabet. */
-    private GenericMap<PatternLikelihoods> likelihoods;
+     * T^n. Each such element holds, for each unique pattern and site rate category, a
+     * vector with likelihoods corresponding to the states of the sequence type alphabet,
+     * all in one contiguous array. Updates are written to the inactive buffer of each vertex,
+     * and committed or discarded upon acceptance or rejection. */
+    private PatternLikelihoods[] likelihoods;
+    
+    /** Vertices with a pending update, in reverse topological order. Null if all vertices. */
+    private int[] updatedVertices;
     
     /** Model likelihood. */
     private LogDouble modelLikelihood;
@@ -75,8 +108,29 @@ public class SubstitutionModel implements InferenceModel {
     /** Cached likelihood. */
     private LogDouble cacheModelLikelihood = null;
 
-    /** Temporary matrix used during computations. */
-    private DenseMatrix64F tmp;
+    /** States of the unique patterns, pattern-major, see <code>MSAData.getPatternStates()</code>. */
+    private byte[] patternStates;
+    
+    /** Number of occurrences of each unique pattern. */
+    private int[] patternCounts;
+    
+    /** Likelihood of each unique pattern, raised to its number of occurrences. */
+    private LogDouble[] patternLikelihoods;
+    
+    /** P matrix of each site rate category for the vertex being processed; null if the arc is discarded. */
+    private double[][] Ps;
+    
+    /** Markov time of each site rate category for the vertex being processed. */
+    private double[] ws;
+    
+    /** Kernel of the pruning step, specialised for the alphabet. */
+    private PruningKernel kernel;
+    
+    /** Pool for processing blocks of patterns concurrently. Null for serial processing. */
+    private ForkJoinPool pool = null;
+    
+    /** Maximum number of patterns per block. */
+    private int blockSize = DEFAULT_PATTERN_BLOCK_SIZE;
     
     /**
      * Constructor.
@@ -92,6 +146,27 @@ public class SubstitutionModel implements InferenceModel {
      */
     public SubstitutionModel(String name, MSAData D, GammaSiteRateHandler siteRates, SubstitutionMatrixHandler Q,
     		RBTree T, NamesMap names, DoubleMap branchLengths, boolean useRootArc) {
+    	this(name, D, siteRates, Q, T, names, branchLengths, null, useRootArc);
+    }
+    
+    /**
+     * Constructor for e.g. a partition of data, where branch lengths are scaled by a rate multiplier.
+     * @param name model name.
+     * @param D sequence data (MSA).
+     * @param siteRates site rate categories.
+     * @param Q data transition matrix Q (and P).
+     * @param T tree.
+     * @param names leaf names of T.
+     * @param branchLengths branch lengths of T.
+     * @param rateMultiplier rate multiplier of all branch lengths. Null if none.
+     * @param useRootArc if true, utilises the root arc ("stem") branch length when computing model
+     *        likelihood; if false, discards the root arc.
+     */
+    public SubstitutionModel(String name, MSAData D, GammaSiteRateHandler siteRates, SubstitutionMatrixHandler Q,
+    		RBTree T, NamesMap names, DoubleMap branchLengths, DoubleParameter rateMultiplier, boolean useRootArc) {
+    	if (D.getSequenceType() != Q.getSequenceType()) {
+    		throw new IllegalArgumentException("Sequence type of data and substitution model of " + name + " differ.");
+    	}
     	this.name = name;
     	this.D = D;
     	this.siteRates = siteRates;
@@ -99,18 +174,29 @@ public class SubstitutionModel implements InferenceModel {
     	this.T = T;
     	this.names = names;
     	this.branchLengths = branchLengths;
+    	this.rateMultiplier = rateMultiplier;
     	this.useRootArc = useRootArc;
     	int noOfVertices = T.getNoOfVertices();
-    	int noOfPatterns = D.getPatterns().size();
+    	int noOfPatterns = D.getNoOfPatterns();
     	int noOfSiteRates = siteRates.getNoOfCategories();
     	int alphabetSize = Q.getAlphabetSize();
-    	this.likelihoods = new GenericMap<PatternLikelihoods>(names + "Likelihoods", noOfVertices);
+    	this.likelihoods = new PatternLikelihoods[noOfVertices];
     	this.modelLikelihood = new LogDouble(0.0);
-    	this.tmp = new DenseMatrix64F(alphabetSize, 1);
+    	this.patternStates = D.getPatternStates();
+    	this.patternCounts = D.getPatternWeights();
+    	this.patternLikelihoods = new LogDouble[noOfPatterns];
+    	for (int i = 0; i < noOfPatterns; ++i) {
+    		this.patternLikelihoods[i] = new LogDouble();
+    	}
+    	this.Ps = new double[noOfSiteRates][];
+    	this.ws = new double[noOfSiteRates];
+    	this.kernel = PruningKernel.create(Q.getSequenceType());
     	for (int n = 0; n < noOfVertices; ++n) {
-    		this.likelihoods.set(n, new PatternLikelihoods(noOfPatterns, noOfSiteRates, alphabetSize));
+    		this.likelihoods[n] = new PatternLikelihoods(noOfPatterns, noOfSiteRates, alphabetSize);
     	}
     	this.updateLikelihood(this.T.getRoot(), true);
+    	this.updatedVertices = null;
+    	this.commitLikelihoods();
 		this.computeModelLikelihood();
     }
 
@@ -120,15 +206,22 @@ public class SubstitutionModel implements InferenceModel {
     	ChangeInfo tInfo = changeInfos.get(this.T);
     	ChangeInfo blInfo = changeInfos.get(this.branchLengths);
 		ChangeInfo siteRateInfo = changeInfos.get(this.siteRates);
-		if (tInfo != null || siteRateInfo != null || (blInfo != null && blInfo.getAffectedElements() == null)) {
-			// Full update if tree or site rates have changed, or if undisclosed
-			// branch lengths changes.
+		ChangeInfo qInfo = changeInfos.get(this.Q);
+		ChangeInfo rmInfo = (this.rateMultiplier == null ? null : changeInfos.get(this.rateMultiplier));
+		if (tInfo == null && blInfo == null && siteRateInfo == null && qInfo == null && rmInfo == null) {
+			return;
+		}
+		int[] changed = ChangeInfo.getAffectedElements(tInfo, blInfo);
+		if (siteRateInfo != null || qInfo != null || rmInfo != null || changed == null) {
+			// Full update if site rates, substitution matrix or rate multiplier have changed, or if undisclosed
+			// tree or branch lengths changes.
 			this.fullUpdate();
 			changeInfos.put(this, new ChangeInfo(this, "SubstitutionModel - full update"));
-		} else if (blInfo != null && blInfo.getAffectedElements() != null) {
-			// Partial update if disclosed branch length changes.
+		} else {
+			// Partial update if disclosed tree and/or branch length changes. The tree's affected vertices are
+			// those whose parent has changed, so all vertices with changed subtrees are on their root paths.
 			// Get reverse-topological-ordered affected vertices.
-			int[] allAffected = TreeAlgorithms.getSpanningRootSubtree(this.T, blInfo.getAffectedElements());
+			int[] allAffected = TreeAlgorithms.getSpanningRootSubtree(this.T, changed);
 			this.partialUpdate(allAffected);
 			changeInfos.put(this, new ChangeInfo(this, "SubstitutionModel - partial update", allAffected));
 		}
@@ -139,11 +232,7 @@ public class SubstitutionModel implements InferenceModel {
      */
     private void fullUpdate() {
 		this.cacheModelLikelihood = new LogDouble(this.modelLikelihood);
-		try {
-			this.likelihoods.cache(null);
-		} catch (CloneNotSupportedException e) {
-			throw new RuntimeException(e);
-		}
+		this.updatedVertices = null;
 		this.updateLikelihood(this.T.getRoot(), true);
 		this.computeModelLikelihood();
     }
@@ -154,11 +243,7 @@ public class SubstitutionModel implements InferenceModel {
      */
     private void partialUpdate(int[] affectedVertices) {
     	this.cacheModelLikelihood = new LogDouble(this.modelLikelihood);
-		try {
-			this.likelihoods.cache(affectedVertices);
-		} catch (CloneNotSupportedException e) {
-			throw new RuntimeException(e);
-		}
+    	this.updatedVertices = affectedVertices;
 		for (int n : affectedVertices) {
 			this.updateLikelihood(n, false);
 		}
@@ -166,43 +251,32 @@ public class SubstitutionModel implements InferenceModel {
     }
 
 	
+	/**
+	 * Sets a pool on which blocks of unique patterns are processed concurrently. Transition probability
+	 * matrices are still obtained by the invoking thread, and the pattern likelihoods are combined in pattern order,
+	 * so the model likelihood is identical to that of serial processing.
+	 * @param pool the pool, possibly shared with other models. Null for serial processing.
+	 * @param blockSize the maximum number of patterns per block, e.g. <code>DEFAULT_PATTERN_BLOCK_SIZE</code>.
+	 */
+	public void setPatternPool(ForkJoinPool pool, int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Pattern block size must be at least 1.");
+		}
+		this.pool = pool;
+		this.blockSize = blockSize;
+	}
+	
 	/**
 	 * Computes the overall model likelihood by consulting the root likelihood
 	 * and the stationary state frequencies. The likelihood data structures must be up-to-date.
 	 */
 	private void computeModelLikelihood() {
+		this.processPatterns(ROOT, this.T.getRoot());
 		
-		// Get root likelihood and patterns.
-		LinkedHashMap<String, int[]> patterns = this.D.getPatterns();
-		int n = this.T.getRoot();
-		PatternLikelihoods pl = this.likelihoods.get(n);
-		
-		// Reset model likelihood.
+		// Multiply with overall likelihood, in pattern order.
 		this.modelLikelihood = new LogDouble(1.0);
-		
-		// For each unique pattern i.
-		int i = 0;
-		for (Entry<String, int[]> pattern : patterns.entrySet()) {
-			
-			// For each site rate category j.
-			LogDouble patternL = new LogDouble(0.0);
-			for (int j = 0; j < pl.getNoOfSiteRateCategories(); ++j) {
-				DenseMatrix64F curr = pl.get(i, j);
-				
-				// Multiply with stationary frequencies (that's our assumption for evolution start).
-				this.Q.multiplyWithPi(curr, this.tmp);
-				patternL.add(CommonOps.elementSum(this.tmp));
-			}
-			
-			// Pr[site rate category] = 1 / # of categories.
-			patternL.div((double) this.siteRates.getNoOfCategories());
-			
-			// # of actual columns of pattern.
-			int noOfOccs = pattern.getValue()[1];
-			
-			// Multiply with overall likelihood.
-			this.modelLikelihood.mult(patternL.pow(noOfOccs));
-			i++;
+		for (int i = 0; i < this.patternLikelihoods.length; ++i) {
+			this.modelLikelihood.mult(this.patternLikelihoods[i]);
 		}
 	}
 
@@ -221,42 +295,18 @@ public class SubstitutionModel implements InferenceModel {
 				this.updateLikelihood(this.T.getLeftChild(n), true);
 				this.updateLikelihood(this.T.getRightChild(n), true);
 			}
-			
-			// Get data and likelihood storage.
-			LinkedHashMap<String, int[]> patterns = this.D.getPatterns();
-			PatternLikelihoods pl = this.likelihoods.get(n);
-			
-			// Get child likelihoods.
-			PatternLikelihoods pl_l = this.likelihoods.get(this.T.getLeftChild(n));
-			PatternLikelihoods pl_r = this.likelihoods.get(this.T.getRightChild(n));
+			this.likelihoods[n].beginUpdate();
 			
 			// Just a special case: we discard evolution over the stem arc if desired (when doUseP = false).
 			boolean doUseP = (this.useRootArc || !this.T.isRoot(n));
 			
-			// Compute Pr[Dk | T, l, r(j)] for each site rate category j.
-			for (int j = 0; j < this.siteRates.getNoOfCategories(); j++) {
-				
-				if (doUseP) {
-					// Set up site rate-specific P matrix.
-					double w = this.branchLengths.get(n) * this.siteRates.getRate(j);
-					this.Q.updateTransitionMatrix(w);
-				}
-				
-				// Lastly, loop over each unique pattern in patterns.
-				for (int i = 0; i < patterns.size(); i++) {
-					DenseMatrix64F left = pl_l.get(i, j);
-					DenseMatrix64F right = pl_r.get(i, j);
-					
-					// Element-wise multiplication, tmp = left .* right.
-					CommonOps.elementMult(left, right, this.tmp);
-					DenseMatrix64F curr = pl.get(i, j);
-					if (doUseP) {
-						this.Q.multiplyWithP(this.tmp, curr);
-					} else {
-						curr.set(this.tmp);
-					}
-				}
+			// Set up site rate-specific P matrices.
+			if (doUseP) {
+				this.updateTransitionMatrices(n);
+			} else {
+				Arrays.fill(this.Ps, null);
 			}
+			this.processPatterns(INTERNAL, n);
 		}
 	}
 
@@ -265,59 +315,254 @@ public class SubstitutionModel implements InferenceModel {
 	 * @param n leaf vertex.
 	 */
 	private void updateLeafLikelihood(int n) {
+		this.likelihoods[n].beginUpdate();
 		
-		// Set up data and likelihood storage.
-		LinkedHashMap<String, int[]> patterns = this.D.getPatterns();
-		PatternLikelihoods pl = this.likelihoods.get(n);
+		// Set up site rate-specific P matrices.
+		this.updateTransitionMatrices(n);
+		this.processPatterns(LEAF, n);
+	}
 	
-		// Get sequence index for this vertex.
-		int seqIdx = this.D.getSequenceIndex(this.names.get(n));
-		
-		// Loop over rate categories.
-		for (int j = 0; j < this.siteRates.getNoOfCategories(); j++) {
-			
-			// Set up site rate-specific P matrix.
-			double w = this.branchLengths.get(n) * this.siteRates.getRate(j);
-			this.Q.updateTransitionMatrix(w);
+	/**
+	 * Sets up the P matrix of each site rate category for the arc of a vertex, in one batch.
+	 * @param n the vertex.
+	 */
+	private void updateTransitionMatrices(int n) {
+		double l = this.branchLengths.get(n);
+		if (this.rateMultiplier != null) {
+			l *= this.rateMultiplier.getValue();
+		}
+		for (int j = 0; j < this.ws.length; j++) {
+			this.ws[j] = l * this.siteRates.getRate(j);
+		}
+		this.Q.updateTransitionMatrices(this.ws, this.Ps);
+	}
 	
-			// Loop over each unique pattern in patterns.
-			int i = 0;
-			for (Entry<String, int[]> pattern : patterns.entrySet()) {
+	/**
+	 * Processes all unique patterns of a vertex, concurrently in blocks if there is a pool.
+	 * @param op the operation, e.g. <code>LEAF</code>.
+	 * @param n the vertex.
+	 */
+	private void processPatterns(int op, int n) {
+		int noOfPatterns = this.patternCounts.length;
+		if (this.pool == null || noOfPatterns <= this.blockSize) {
+			this.processPatterns(op, n, 0, noOfPatterns);
+		} else {
+			this.pool.invoke(new PatternBlockTask(op, n, 0, noOfPatterns));
+		}
+	}
+	
+	/**
+	 * Processes a range of unique patterns of a vertex. For leaves and interior vertices, the P matrices
+	 * of the vertex must have been set up. Only reads shared data, apart from writing to its own patterns.
+	 * @param op the operation, e.g. <code>LEAF</code>.
+	 * @param n the vertex.
+	 * @param from the first pattern.
+	 * @param to the pattern after the last pattern.
+	 */
+	private void processPatterns(int op, int n, int from, int to) {
+		PatternLikelihoods pl = this.likelihoods[n];
+		double[] curr = pl.getData();
+		int dim = pl.getAlphabetSize();
+		int noOfCats = this.siteRates.getNoOfCategories();
+		switch (op) {
+		case LEAF:
+			// Get sequence index for this vertex.
+			int seqIdx = this.D.getSequenceIndex(this.names.get(n));
+			int noOfSeqs = this.D.getNoOfSequences();
+			for (int j = 0; j < noOfCats; j++) {
+				for (int i = from; i < to; i++) {
+					// Compute likelihood from the state of the pattern.
+					int state = this.patternStates[i * noOfSeqs + seqIdx];
+					this.Q.getLeafLikelihood(this.Ps[j], state, curr, pl.getOffset(i, j));
+				}
+			}
+			Arrays.fill(pl.getScales(), from, to, 0.0);
+			break;
+		case INTERNAL:
+			// Get child likelihoods. These have the same layout.
+			double[] left = this.likelihoods[this.T.getLeftChild(n)].getData();
+			double[] right = this.likelihoods[this.T.getRightChild(n)].getData();
+			
+			// Compute Pr[Dk | T, l, r(j)] for each site rate category j.
+			for (int j = 0; j < noOfCats; j++) {
+				double[] P = this.Ps[j];
+				if (P != null) {
+					this.kernel.prune(P, left, right, curr, pl.getOffset(from, j), noOfCats * dim, to - from);
+				} else {
+					for (int i = from; i < to; i++) {
+						int off = pl.getOffset(i, j);
+						for (int s = 0; s < dim; ++s) {
+							curr[off + s] = left[off + s] * right[off + s];
+						}
+					}
+				}
+			}
+			this.rescale(pl, n, from, to);
+			break;
+		default:
+			double[] pi = this.Q.getStationaryFrequencies();
+			for (int i = from; i < to; i++) {
 				
-				// Get position of pattern's first occurrence in partition.
-				int pos = pattern.getValue()[0];
+				// For each site rate category j.
+				LogDouble patternL = this.patternLikelihoods[i].set(Double.NEGATIVE_INFINITY, 0);
+				for (int j = 0; j < noOfCats; ++j) {
+					
+					// Multiply with stationary frequencies (that's our assumption for evolution start).
+					int off = pl.getOffset(i, j);
+					double sum = 0.0;
+					for (int s = 0; s < dim; ++s) {
+						sum += pi[s] * curr[off + s];
+					}
+					patternL.add(sum);
+				}
+				
+				// Pr[site rate category] = 1 / # of categories.
+				patternL.div((double) noOfCats);
 				
-				// Compute likelihood.
-				DenseMatrix64F curr = pl.get(i, j);
-				int state = this.D.getIntState(seqIdx, pos);
-				this.Q.getLeafLikelihood(state, curr);
-				i++;
+				// Add back the scale factors of the tree.
+				double scale = pl.getScales()[i];
+				if (scale != 0.0 && patternL.getSign() != 0) {
+					patternL.set(patternL.getLogValue() + scale, patternL.getSign());
+				}
+				
+				// # of actual columns of pattern.
+				patternL.pow(this.patternCounts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the scale factors of a range of patterns of an interior vertex to those of its children. Then, the vectors
+	 * of each pattern which have a maximum likelihood below <code>SCALING_THRESHOLD</code> are rescaled to a
+	 * maximum in [1,2), and the scale factor accumulated. Scaling is by powers of 2, which is exact.
+	 * @param pl the likelihoods of the vertex.
+	 * @param n the vertex.
+	 * @param from the first pattern.
+	 * @param to the pattern after the last pattern.
+	 */
+	private void rescale(PatternLikelihoods pl, int n, int from, int to) {
+		double[] curr = pl.getData();
+		double[] scales = pl.getScales();
+		double[] leftScales = this.likelihoods[this.T.getLeftChild(n)].getScales();
+		double[] rightScales = this.likelihoods[this.T.getRightChild(n)].getScales();
+		int len = pl.getNoOfSiteRateCategories() * pl.getAlphabetSize();
+		for (int i = from; i < to; i++) {
+			scales[i] = leftScales[i] + rightScales[i];
+			int off = pl.getOffset(i, 0);
+			double max = 0.0;
+			for (int k = off; k < off + len; ++k) {
+				max = Math.max(max, curr[k]);
+			}
+			if (max < SCALING_THRESHOLD && max > 0.0) {
+				int e = Math.getExponent(max);
+				for (int k = off; k < off + len; ++k) {
+					curr[k] = Math.scalb(curr[k], -e);
+				}
+				scales[i] += e * LN2;
 			}
 		}
 	}
+	
+	/**
+	 * Processes a range of unique patterns, recursively split into blocks.
+	 */
+	private final class PatternBlockTask extends RecursiveAction {
+
+		/** Eclipse-generated serial version UID. */
+		private static final long serialVersionUID = 5170993206839744921L;
+
+		/** Operation. */
+		private final int op;
+
+		/** Vertex. */
+		private final int n;
+
+		/** First pattern. */
+		private final int from;
 
+		/** Pattern after the last pattern. */
+		private final int to;
+
+		/**
+		 * Constructor.
+		 * @param op the operation.
+		 * @param n the vertex.
+		 * @param from the first pattern.
+		 * @param to the pattern after the last pattern.
+		 */
+		PatternBlockTask(int op, int n, int from, int to) {
+			this.op = op;
+			this.n = n;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= blockSize) {
+				processPatterns(this.op, this.n, this.from, this.to);
+			} else {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new PatternBlockTask(this.op, this.n, this.from, mid), new PatternBlockTask(this.op, this.n, mid, this.to));
+			}
+		}
+	}
 
 	@Override
 	public Dependent[] getParentDependents() {
 		// We assume this.namesMap won't change.
-		return new Dependent[] { this.T, this.branchLengths, this.siteRates };
+		if (this.rateMultiplier != null) {
+			return new Dependent[] { this.T, this.branchLengths, this.siteRates, this.Q, this.rateMultiplier };
+		}
+		return new Dependent[] { this.T, this.branchLengths, this.siteRates, this.Q };
 	}
 
 
 	@Override
 	public void clearCache(boolean willSample) {
-		this.likelihoods.clearCache();
+		this.commitLikelihoods();
 		this.cacheModelLikelihood = null;
 	}
 
 
 	@Override
 	public void restoreCache(boolean willSample) {
-		this.likelihoods.restoreCache();
+		if (this.updatedVertices == null) {
+			for (PatternLikelihoods pl : this.likelihoods) {
+				pl.discard();
+			}
+		} else {
+			for (int n : this.updatedVertices) {
+				this.likelihoods[n].discard();
+			}
+		}
 		this.modelLikelihood = this.cacheModelLikelihood;
 		this.cacheModelLikelihood = null;
 	}
 
+	/**
+	 * Makes the pending likelihoods of the updated vertices current.
+	 */
+	private void commitLikelihoods() {
+		if (this.updatedVertices == null) {
+			for (PatternLikelihoods pl : this.likelihoods) {
+				pl.commit();
+			}
+		} else {
+			for (int n : this.updatedVertices) {
+				this.likelihoods[n].commit();
+			}
+		}
+	}
+
+	/**
+	 * Discards cached transition matrices, since these are looked up by rounded times.
+	 */
+	@Override
+	public void checkpointPerformed() {
+		this.Q.clearPCache();
+	}
+
 	@Override
 	public Class<?> getSampleType() {
 		return SampleLogDouble.class;
@@ -333,6 +578,11 @@ public class SubstitutionModel implements InferenceModel {
 		return SampleLogDouble.toString(this.modelLikelihood);
 	}
 
+	@Override
+	public LogDouble getSampleLogDouble(SamplingMode mode) {
+		return this.modelLikelihood;
+	}
+
 	@Override
 	public LogDouble getDataProbability() {
 		return this.modelLikelihood;
@@ -342,7 +592,10 @@ public class SubstitutionModel implements InferenceModel {
 	public String getPreInfo(String prefix) {
 		StringBuilder sb = new StringBuilder(4096);
 		sb.append(prefix).append("SUBSTITUTION MODEL\n");
+		sb.append(prefix).append("Name: ").append(this.name).append('\n');
 		sb.append(prefix).append("Including root arc in computations: ").append(this.useRootArc).append('\n');
+		sb.append(prefix).append("Rate multiplier: ").append(this.rateMultiplier == null ? "None" : this.rateMultiplier.getName()).append('\n');
+		sb.append(prefix).append("Concurrent pattern blocks: ").append(this.pool == null ? "None" : this.pool.getParallelism() + " threads, " + this.blockSize + " patterns per block").append('\n');
 		sb.append(prefix).append("Multiple sequence alignment data:\n");
 		sb.append(this.D.getPreInfo(prefix + '\t'));
 		sb.append(prefix).append("Discrete site rates:\n");
@@ -356,6 +609,7 @@ public class SubstitutionModel implements InferenceModel {
 	public String getPostInfo(String prefix) {
 		StringBuilder sb = new StringBuilder(4096);
 		sb.append(prefix).append("SUBSTITUTION MODEL\n");
+		sb.append(prefix).append("Name: ").append(this.name).append('\n');
 		sb.append(prefix).append("Multiple sequence alignment data:\n");
 		sb.append(this.D.getPostInfo(prefix + '\t'));
 		sb.append(prefix).append("Discrete site rates:\n");
@@ -18,15 +18,7 @@ public class UniformAA {
 	 * @return the model type.
 	 */
 	public static SubstitutionMatrixHandler createUniformAA(int cacheSize) {
-		double[] Pi = new double[20];
-		double[] R = new double[190];
-		for (int i = 0; i < 20; i++) {
-			Pi[i] = 0.05;
-		}
-		for (int i = 0; i < 190; i++) {
-			R[i] = 1.0;
-		}
-		return new SubstitutionMatrixHandler("UniformAA", SequenceType.AMINO_ACID, R, Pi, cacheSize);
+		return new UniformMatrixHandler("UniformAA", SequenceType.AMINO_ACID, cacheSize);
 	}
 	
 }
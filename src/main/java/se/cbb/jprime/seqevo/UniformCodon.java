@@ -18,15 +18,6 @@ public class UniformCodon {
 	 * @return the model type.
 	 */
 	public static SubstitutionMatrixHandler createUniformCodon(int cacheSize) {
-		double[] Pi = new double[61];
-		double[] R = new double[1830];
-		for (int i = 0; i < 61; ++i) {
-			Pi[i] = 1.0 / 61;
-		}
-		//   for (int i = 0; i < 4 * (4 - 1) / 2; ++i)
-		for (int i = 0; i < 1830; ++i) {
-			R[i] = 1.0;
-		}
-		return new SubstitutionMatrixHandler("UniformCodon", SequenceType.CODON, R, Pi, cacheSize);
+		return new UniformMatrixHandler("UniformCodon", SequenceType.CODON, cacheSize);
 	}
 }
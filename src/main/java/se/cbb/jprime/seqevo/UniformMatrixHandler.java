@@ -0,0 +1,52 @@
+package se.cbb.jprime.seqevo;
+
+import java.util.Arrays;
+
+/**
+ * Substitution matrix handler for models with uniform stationary frequencies and exchangeabilities,
+ * i.e., the model of Jukes & Cantor 1969 and its amino acid and codon counterparts. For alphabet size n,
+ * P=exp(Qw) has the closed form
+ * <ul>
+ * <li>P_ii = 1/n + (n-1)/n * exp(-nw/(n-1)),</li>
+ * <li>P_ij = 1/n - 1/n * exp(-nw/(n-1)) for i != j,</li>
+ * </ul>
+ * so no eigensystem is solved.
+ */
+public class UniformMatrixHandler extends SubstitutionMatrixHandler {
+
+	/**
+	 * Constructor.
+	 * @param modelName name of substitution model.
+	 * @param sequenceType sequence type.
+	 * @param cacheSize number of P matrices to store in cache, e.g., 1000.
+	 */
+	public UniformMatrixHandler(String modelName, SequenceType sequenceType, int cacheSize) {
+		super(modelName, sequenceType, uniform(sequenceType.getAlphabetSize() * (sequenceType.getAlphabetSize() - 1) / 2, 1.0),
+				uniform(sequenceType.getAlphabetSize(), 1.0 / sequenceType.getAlphabetSize()), cacheSize, false);
+	}
+
+	/**
+	 * Returns an array filled with a single value.
+	 * @param n length.
+	 * @param val value.
+	 * @return the array.
+	 */
+	private static double[] uniform(int n, double val) {
+		double[] a = new double[n];
+		Arrays.fill(a, val);
+		return a;
+	}
+
+	@Override
+	protected void computeTransitionMatrix(double w, double[] p) {
+		int n = this.getAlphabetSize();
+		double e = Math.exp(-n * w / (n - 1));
+		double off = (1.0 - e) / n;
+		double diag = 1.0 / n + (n - 1) * e / n;
+		Arrays.fill(p, off);
+		for (int i = 0; i < p.length; i += n + 1) {
+			p[i] = diag;
+		}
+	}
+
+}
@@ -143,18 +143,16 @@ public class BiasedRBTreeBranchSwapper extends RBTreeBranchSwapper {
 			}
 		}
 				
-		// Note changes. Just say that all sub-parameters have changed.
+		// Note changes, detailing the affected vertices. Still, we say that all sub-parameters have changed.
 		ArrayList<StateParameter> affected = new ArrayList<StateParameter>(3);
-		changeInfos.put(this.T, new ChangeInfo(this.T));
+		this.putChangeInfos(changeInfos);
 		int no = this.T.getNoOfSubParameters();
 		affected.add(this.T);
 		if (this.lengths != null) {
-			changeInfos.put(this.lengths, new ChangeInfo(this.lengths));
 			affected.add(this.lengths);
 			no += this.lengths.getNoOfSubParameters();
 		}
 		if (this.times != null) {
-			changeInfos.put(this.times, new ChangeInfo(this.times));
 			affected.add(this.times);
 			no += this.getNoOfSubParameters();
 		}
@@ -176,6 +174,7 @@ public class BiasedRBTreeBranchSwapper extends RBTreeBranchSwapper {
 		if (this.times != null) {
 			this.times.cache(null);
 		}
+		this.recordState();
 		
 		// Perturb!
 		// First determine move to make.
@@ -78,6 +78,18 @@ public class DoubleArrayMap implements VertexMap, StateParameter {
 		}
 	}
 
+	/**
+	 * Constructor. Converts a log-space map, so that the arrays hold the values rather than their logarithms.
+	 * @param map the map to be converted.
+	 */
+	public DoubleArrayMap(LogArrayMap map) {
+		this.name = map.getName();
+		this.values = new double[map.getSize()][];
+		for (int i = 0; i < this.values.length; ++i) {
+			this.values[i] = map.getExp(i);
+		}
+	}
+
 	@Override
 	public String getName() {
 		return this.name;
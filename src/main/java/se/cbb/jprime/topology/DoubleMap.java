@@ -1,8 +1,14 @@
 package se.cbb.jprime.topology;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 
 import se.cbb.jprime.io.SampleDoubleArray;
+import se.cbb.jprime.io.SnapshotSampleable;
+import se.cbb.jprime.mcmc.Checkpoint;
+import se.cbb.jprime.mcmc.Checkpointable;
 import se.cbb.jprime.mcmc.RealParameter;
 
 /**
@@ -11,7 +17,7 @@ import se.cbb.jprime.mcmc.RealParameter;
  * 
  * @author Joel Sjöstrand.
  */
-public class DoubleMap implements VertexMap, RealParameter {
+public class DoubleMap implements VertexMap, RealParameter, SnapshotSampleable, Checkpointable {
 	
 	/** The name of this map, if any. */
 	protected String name;
@@ -164,6 +170,21 @@ public class DoubleMap implements VertexMap, RealParameter {
 		return SampleDoubleArray.toString(this.values);
 	}
 
+	@Override
+	public Object createSnapshot() {
+		return new double[this.values.length];
+	}
+
+	@Override
+	public void copyToSnapshot(Object snapshot, SamplingMode mode) {
+		System.arraycopy(this.values, 0, (double[]) snapshot, 0, this.values.length);
+	}
+
+	@Override
+	public String getSnapshotValue(Object snapshot, SamplingMode mode) {
+		return SampleDoubleArray.toString((double[]) snapshot);
+	}
+
 	@Override
 	public double getValue(int idx) {
 		return this.values[idx];
@@ -183,6 +204,21 @@ public class DoubleMap implements VertexMap, RealParameter {
 	public String toString() {
 		return Arrays.toString(this.values);
 	}
-	
-	
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		Checkpoint.writeString(out, this.name);
+		Checkpoint.writeDoubleArray(out, this.values);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		Checkpoint.readAndMatchName(in, this.name);
+		double[] vals = Checkpoint.readDoubleArray(in);
+		if (vals == null || vals.length != this.values.length) {
+			throw new IOException("Checkpoint does not match current chain: size mismatch for " + this.name + ".");
+		}
+		System.arraycopy(vals, 0, this.values, 0, vals.length);
+		this.clearCache();
+	}
 }
@@ -0,0 +1,299 @@
+package se.cbb.jprime.topology;
+
+import java.util.Arrays;
+
+/**
+ * Holds an array of non-negative values, e.g. probabilities, for each vertex of a graph, stored as natural
+ * logarithms (see <code>LogSpace</code>). Unlike <code>DoubleArrayLogMap</code>, the arrays of all vertices
+ * are laid out in one flat primitive array, so that reading and writing values never allocates objects.
+ * The array of vertex x occupies indices <code>getOffset(x)</code>,...,<code>getOffset(x)+getLength(x)-1</code>
+ * of <code>getValues()</code>.
+ * <p/>
+ * The layout is set for all vertices at once by <code>setLengths()</code>. Caching of the entire map flips
+ * between two buffers of values and layout, and caching of certain vertices copies their values into a reusable
+ * scratch array. Apart from when the buffers need to grow, neither allocates memory.
+ */
+public class LogArrayMap implements VertexMap {
+
+	/** Cache state: nothing cached. */
+	private static final int NONE = 0;
+
+	/** Cache state: entire map cached. */
+	private static final int ALL = 1;
+
+	/** Cache state: certain vertices cached. */
+	private static final int VERTICES = 2;
+
+	/** The name of this map, if any. */
+	private String name;
+
+	/** Number of vertices. */
+	private int size;
+
+	/** The two buffers of log values. */
+	private double[][] buffers;
+
+	/** The two buffers of offsets, with the total length at index size. */
+	private int[][] offsetBuffers;
+
+	/** Index of the current buffers. */
+	private int active;
+
+	/** Cache state. */
+	private int cacheState;
+
+	/** Cached vertices. The first noOfCacheVertices elements are used. */
+	private int[] cacheVertices;
+
+	/** Number of cached vertices. */
+	private int noOfCacheVertices;
+
+	/** Cached log values of the cached vertices, consecutively. */
+	private double[] cacheValues;
+
+	/** Scratch copy of the log values when changing the layout. */
+	private double[] scratchValues;
+
+	/** Scratch copy of the offsets when changing the layout. */
+	private int[] scratchOffsets;
+
+	/**
+	 * Constructor. All vertices have empty arrays.
+	 * @param name the map's name.
+	 * @param size the size of the map.
+	 */
+	public LogArrayMap(String name, int size) {
+		this.name = name;
+		this.size = size;
+		this.buffers = new double[][] { new double[0], new double[0] };
+		this.offsetBuffers = new int[][] { new int[size + 1], new int[size + 1] };
+		this.active = 0;
+		this.cacheState = NONE;
+		this.cacheVertices = new int[size];
+		this.noOfCacheVertices = 0;
+		this.cacheValues = new double[0];
+		this.scratchValues = new double[0];
+		this.scratchOffsets = new int[size + 1];
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns a copy of the log values of a vertex.
+	 * @param x the vertex.
+	 * @return the log values.
+	 */
+	@Override
+	public Object getAsObject(int x) {
+		return this.get(x);
+	}
+
+	/**
+	 * Sets the log values of a vertex. The array must have the length of the vertex.
+	 * @param x the vertex.
+	 * @param value the log values.
+	 */
+	@Override
+	public void setAsObject(int x, Object value) {
+		double[] vals = (double[]) value;
+		if (vals.length != this.getLength(x)) {
+			throw new IllegalArgumentException("Cannot change the array length of a vertex of a log array map.");
+		}
+		System.arraycopy(vals, 0, this.getValues(), this.getOffset(x), vals.length);
+	}
+
+	@Override
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Sets the array length of each vertex, and thereby the layout of the values. All values are set to 0,
+	 * i.e., to a log value of negative infinity.
+	 * @param lengths the length of each vertex.
+	 */
+	public void setLengths(int[] lengths) {
+		int[] offsets = this.offsetBuffers[this.active];
+		int tot = 0;
+		for (int x = 0; x < this.size; ++x) {
+			offsets[x] = tot;
+			tot += lengths[x];
+		}
+		offsets[this.size] = tot;
+		if (this.buffers[this.active].length < tot) {
+			this.buffers[this.active] = new double[tot + (tot >>> 2)];
+		}
+		Arrays.fill(this.buffers[this.active], 0, tot, Double.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Sets the array length of each vertex like <code>setLengths()</code>, but retains the log values of vertices
+	 * whose length is unchanged. The values of other vertices are set to 0, i.e., to a log value of negative infinity.
+	 * Must not be used when certain vertices are cached.
+	 * @param lengths the length of each vertex.
+	 */
+	public void setLengthsRetainingValues(int[] lengths) {
+		int[] offsets = this.offsetBuffers[this.active];
+		int oldTot = offsets[this.size];
+		if (this.scratchValues.length < oldTot) {
+			this.scratchValues = new double[oldTot + (oldTot >>> 2)];
+		}
+		System.arraycopy(this.buffers[this.active], 0, this.scratchValues, 0, oldTot);
+		System.arraycopy(offsets, 0, this.scratchOffsets, 0, this.size + 1);
+		this.setLengths(lengths);
+		double[] vals = this.buffers[this.active];
+		for (int x = 0; x < this.size; ++x) {
+			int len = offsets[x + 1] - offsets[x];
+			if (len == this.scratchOffsets[x + 1] - this.scratchOffsets[x]) {
+				System.arraycopy(this.scratchValues, this.scratchOffsets[x], vals, offsets[x], len);
+			}
+		}
+	}
+
+	/**
+	 * Returns the flat array of current log values of all vertices. Changes are reflected in this map.
+	 * The array may be replaced when changing the layout or when caching.
+	 * @return the log values.
+	 */
+	public double[] getValues() {
+		return this.buffers[this.active];
+	}
+
+	/**
+	 * Returns the index in <code>getValues()</code> of the first value of a vertex.
+	 * @param x the vertex.
+	 * @return the offset.
+	 */
+	public int getOffset(int x) {
+		return this.offsetBuffers[this.active][x];
+	}
+
+	/**
+	 * Returns the array length of a vertex.
+	 * @param x the vertex.
+	 * @return the length.
+	 */
+	public int getLength(int x) {
+		int[] offsets = this.offsetBuffers[this.active];
+		return offsets[x + 1] - offsets[x];
+	}
+
+	/**
+	 * Returns a log value. No bounds checking.
+	 * @param x the vertex.
+	 * @param i the index in the array of the vertex.
+	 * @return the log value.
+	 */
+	public double get(int x, int i) {
+		return this.buffers[this.active][this.offsetBuffers[this.active][x] + i];
+	}
+
+	/**
+	 * Sets a log value. No bounds checking.
+	 * @param x the vertex.
+	 * @param i the index in the array of the vertex.
+	 * @param logVal the log value.
+	 */
+	public void set(int x, int i, double logVal) {
+		this.buffers[this.active][this.offsetBuffers[this.active][x] + i] = logVal;
+	}
+
+	/**
+	 * Returns a copy of the log values of a vertex.
+	 * @param x the vertex.
+	 * @return the log values.
+	 */
+	public double[] get(int x) {
+		int off = this.getOffset(x);
+		return Arrays.copyOfRange(this.getValues(), off, off + this.getLength(x));
+	}
+
+	/**
+	 * Returns a copy of the values of a vertex, converted from log space.
+	 * @param x the vertex.
+	 * @return the values.
+	 */
+	public double[] getExp(int x) {
+		double[] vals = this.get(x);
+		for (int i = 0; i < vals.length; ++i) {
+			vals[i] = Math.exp(vals[i]);
+		}
+		return vals;
+	}
+
+	/**
+	 * Caches a part of or the whole current map.
+	 * When caching certain vertices, the layout must not be changed until the cache is cleared or restored.
+	 * @param vertices the vertices. Null will cache all values.
+	 */
+	public void cache(int[] vertices) {
+		if (vertices == null) {
+			int inactive = 1 - this.active;
+			int[] offsets = this.offsetBuffers[this.active];
+			int tot = offsets[this.size];
+			System.arraycopy(offsets, 0, this.offsetBuffers[inactive], 0, this.size + 1);
+			if (this.buffers[inactive].length < tot) {
+				this.buffers[inactive] = new double[this.buffers[this.active].length];
+			}
+			System.arraycopy(this.buffers[this.active], 0, this.buffers[inactive], 0, tot);
+			this.active = inactive;
+			this.cacheState = ALL;
+		} else {
+			int tot = 0;
+			for (int x : vertices) {
+				tot += this.getLength(x);
+			}
+			if (this.cacheValues.length < tot) {
+				this.cacheValues = new double[tot + (tot >>> 2)];
+			}
+			double[] vals = this.getValues();
+			int pos = 0;
+			for (int i = 0; i < vertices.length; ++i) {
+				int x = vertices[i];
+				int len = this.getLength(x);
+				System.arraycopy(vals, this.getOffset(x), this.cacheValues, pos, len);
+				pos += len;
+				this.cacheVertices[i] = x;
+			}
+			this.noOfCacheVertices = vertices.length;
+			this.cacheState = VERTICES;
+		}
+	}
+
+	/**
+	 * Clears the cached map.
+	 */
+	public void clearCache() {
+		this.cacheState = NONE;
+		this.noOfCacheVertices = 0;
+	}
+
+	/**
+	 * Replaces the current map with the cached map, and clears the latter.
+	 * If there is no cache, nothing will happen and the current values remain.
+	 */
+	public void restoreCache() {
+		if (this.cacheState == ALL) {
+			this.active = 1 - this.active;
+		} else if (this.cacheState == VERTICES) {
+			double[] vals = this.getValues();
+			int pos = 0;
+			for (int i = 0; i < this.noOfCacheVertices; ++i) {
+				int x = this.cacheVertices[i];
+				int len = this.getLength(x);
+				System.arraycopy(this.cacheValues, pos, vals, this.getOffset(x), len);
+				pos += len;
+			}
+		}
+		this.clearCache();
+	}
+
+}
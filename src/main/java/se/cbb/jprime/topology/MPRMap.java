@@ -98,7 +98,21 @@ public class MPRMap implements ProperDependent {
 	@Override
 	public void cacheAndUpdate(Map<Dependent, ChangeInfo> changeInfos,
 			boolean willSample) {
-		if (changeInfos.get(this.G) != null || changeInfos.get(this.S) != null) {
+		ChangeInfo gInfo = changeInfos.get(this.G);
+		ChangeInfo sInfo = changeInfos.get(this.S);
+		if (gInfo != null && gInfo.getAffectedElements() != null && sInfo == null) {
+			// Only the guest tree has changed, and sigma can only have changed on the root
+			// paths of the guest tree's affected vertices.
+			this.sigmaCache = new int[this.sigma.length];
+			System.arraycopy(this.sigma, 0, this.sigmaCache, 0, this.sigma.length);
+			int[] affected = TreeAlgorithms.getSpanningRootSubtree(this.G, gInfo.getAffectedElements());
+			for (int x : affected) {
+				if (!this.G.isLeaf(x)) {
+					this.sigma[x] = this.S.getLCA(this.sigma[this.G.getLeftChild(x)], this.sigma[this.G.getRightChild(x)]);
+				}
+			}
+			changeInfos.put(this, new ChangeInfo(this, "Partially updated MPR map (i.e. sigma map).", affected));
+		} else if (gInfo != null || sInfo != null) {
 			// Full cache and update regardless of children's changes.
 			this.sigmaCache = new int[this.sigma.length];
 			System.arraycopy(this.sigma, 0, this.sigmaCache, 0, this.sigma.length);
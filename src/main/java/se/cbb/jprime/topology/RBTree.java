@@ -1,5 +1,8 @@
 package se.cbb.jprime.topology;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -8,6 +11,8 @@ import java.util.Set;
 import se.cbb.jprime.io.NewickTree;
 import se.cbb.jprime.io.NewickVertex;
 import se.cbb.jprime.io.SampleNewickTree;
+import se.cbb.jprime.mcmc.Checkpoint;
+import se.cbb.jprime.mcmc.Checkpointable;
 import se.cbb.jprime.misc.IntQueue;
 
 /**
@@ -20,7 +25,7 @@ import se.cbb.jprime.misc.IntQueue;
  * 
  * @author Joel Sjöstrand.
  */
-public class RBTree implements RootedTreeParameter, RootedBifurcatingTreeParameter {
+public class RBTree implements RootedTreeParameter, RootedBifurcatingTreeParameter, Checkpointable {
 	
 	/** Used to indicate null references. */
 	public static final int NULL = RootedBifurcatingTree.NULL;
@@ -568,7 +573,7 @@ public class RBTree implements RootedTreeParameter, RootedBifurcatingTreeParamet
 	 * Low-level setter for copying the topology of another tree. At the moment only handles equally big trees.
 	 * @param tree the tree from which the new topology is mimicked.
 	 */
-	void setTopology(RBTree tree) {
+	public void setTopology(RBTree tree) {
 		System.arraycopy(tree.parents, 0, this.parents, 0, tree.parents.length);
 		System.arraycopy(tree.leftChildren, 0, this.leftChildren, 0, tree.leftChildren.length);
 		System.arraycopy(tree.rightChildren, 0, this.rightChildren, 0, tree.rightChildren.length);
@@ -595,4 +600,30 @@ public class RBTree implements RootedTreeParameter, RootedBifurcatingTreeParamet
 		}
 		return l;
 	}
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		Checkpoint.writeString(out, this.name);
+		out.writeInt(this.root);
+		Checkpoint.writeIntArray(out, this.parents);
+		Checkpoint.writeIntArray(out, this.leftChildren);
+		Checkpoint.writeIntArray(out, this.rightChildren);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		Checkpoint.readAndMatchName(in, this.name);
+		int r = in.readInt();
+		int[] ps = Checkpoint.readIntArray(in);
+		int[] lcs = Checkpoint.readIntArray(in);
+		int[] rcs = Checkpoint.readIntArray(in);
+		if (ps == null || ps.length != this.parents.length || lcs.length != ps.length || rcs.length != ps.length) {
+			throw new IOException("Checkpoint does not match current chain: size mismatch for " + this.name + ".");
+		}
+		this.root = r;
+		this.parents = ps;
+		this.leftChildren = lcs;
+		this.rightChildren = rcs;
+		this.cache = null;
+	}
 }
@@ -56,6 +56,18 @@ public class RBTreeBranchSwapper implements Proposer {
 	/** Last operation type. */
 	protected String lastOperationType;
 	
+	/** Parents of the vertices prior to the last operation. */
+	protected int[] oldParents;
+	
+	/** Lengths prior to the last operation. Null if lengths are not used. */
+	protected double[] oldLengths;
+	
+	/** Vertex times prior to the last operation. Null if times are not used. */
+	protected double[] oldVertexTimes;
+	
+	/** Arc times prior to the last operation. Null if times are not used. */
+	protected double[] oldArcTimes;
+	
 	/**
 	 * Constructor.
 	 * @param T tree topology to perturb.
@@ -104,6 +116,11 @@ public class RBTreeBranchSwapper implements Proposer {
 		}
 		this.isActive = true;
 		this.lastOperationType = null;
+		int n = this.T.getNoOfVertices();
+		this.oldParents = new int[n];
+		this.oldLengths = (this.lengths != null ? new double[n] : null);
+		this.oldVertexTimes = (this.times != null ? new double[n] : null);
+		this.oldArcTimes = (this.times != null ? new double[n] : null);
 	}
 	
 	@Override
@@ -182,6 +199,7 @@ public class RBTreeBranchSwapper implements Proposer {
 		if (this.times != null) {
 			this.times.cache(null);
 		}
+		this.recordState();
 		
 		// Perturb!
 		//System.out.println("\n" + this.T.getSampleValue());
@@ -198,18 +216,16 @@ public class RBTreeBranchSwapper implements Proposer {
 		//System.out.println("\n" + this.T.getSampleValue());
 		assert this.verticesAreUnique();
 		
-		// Note changes. Just say that all sub-parameters have changed.
+		// Note changes, detailing the affected vertices. Still, we say that all sub-parameters have changed.
 		ArrayList<StateParameter> affected = new ArrayList<StateParameter>(3);
-		changeInfos.put(this.T, new ChangeInfo(this.T));
+		this.putChangeInfos(changeInfos);
 		int no = this.T.getNoOfSubParameters();
 		affected.add(this.T);
 		if (this.lengths != null) {
-			changeInfos.put(this.lengths, new ChangeInfo(this.lengths));
 			affected.add(this.lengths);
 			no += this.lengths.getNoOfSubParameters();
 		}
 		if (this.times != null) {
-			changeInfos.put(this.times, new ChangeInfo(this.times));
 			affected.add(this.times);
 			no += this.getNoOfSubParameters();
 		}
@@ -217,6 +233,63 @@ public class RBTreeBranchSwapper implements Proposer {
 		// Right now, we consider forward-backward probabilities as equal.
 		return new MetropolisHastingsProposal(this, new LogDouble(1.0), new LogDouble(1.0), affected, no);
 	}
+	
+	/**
+	 * Records the parents, lengths and times of the vertices prior to an operation,
+	 * so that the vertices affected by the operation can be determined afterwards.
+	 */
+	protected void recordState() {
+		for (int x = 0; x < this.oldParents.length; ++x) {
+			this.oldParents[x] = this.T.getParent(x);
+		}
+		if (this.lengths != null) {
+			for (int x = 0; x < this.oldLengths.length; ++x) {
+				this.oldLengths[x] = this.lengths.get(x);
+			}
+		}
+		if (this.times != null) {
+			System.arraycopy(this.times.getVertexTimes(), 0, this.oldVertexTimes, 0, this.oldVertexTimes.length);
+			System.arraycopy(this.times.getArcTimes(), 0, this.oldArcTimes, 0, this.oldArcTimes.length);
+		}
+	}
+	
+	/**
+	 * Notes the changes of the last operation as compared to <code>recordState()</code>. For the tree, the affected
+	 * elements are the vertices whose parent has changed. Since every vertex whose subtree has changed is an ancestor
+	 * of such a vertex, dependents need only recompute along the root paths of these. For lengths and times,
+	 * the affected elements are the vertices whose values have changed.
+	 * @param changeInfos the map of changes to add to.
+	 */
+	protected void putChangeInfos(Map<Dependent, ChangeInfo> changeInfos) {
+		int n = this.oldParents.length;
+		ArrayList<Integer> moved = new ArrayList<Integer>(8);
+		for (int x = 0; x < n; ++x) {
+			if (this.T.getParent(x) != this.oldParents[x]) {
+				moved.add(x);
+			}
+		}
+		changeInfos.put(this.T, new ChangeInfo(this.T, moved, this.lastOperationType));
+		if (this.lengths != null) {
+			ArrayList<Integer> changed = new ArrayList<Integer>(8);
+			for (int x = 0; x < n; ++x) {
+				if (this.lengths.get(x) != this.oldLengths[x]) {
+					changed.add(x);
+				}
+			}
+			changeInfos.put(this.lengths, new ChangeInfo(this.lengths, changed, this.lastOperationType));
+		}
+		if (this.times != null) {
+			double[] vts = this.times.getVertexTimes();
+			double[] ats = this.times.getArcTimes();
+			ArrayList<Integer> changed = new ArrayList<Integer>(8);
+			for (int x = 0; x < n; ++x) {
+				if (vts[x] != this.oldVertexTimes[x] || ats[x] != this.oldArcTimes[x]) {
+					changed.add(x);
+				}
+			}
+			changeInfos.put(this.times, new ChangeInfo(this.times, changed, this.lastOperationType));
+		}
+	}
 
 	@Override
 	public boolean isEnabled() {
@@ -1,5 +1,11 @@
 package se.cbb.jprime.topology;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import se.cbb.jprime.mcmc.Checkpoint;
+
 /**
  * Specialisation of a DoubleMap to hold times of an ultrametric tree.
  * Provides access to both absolute times of vertices and time span of arcs.
@@ -160,5 +166,20 @@ public class TimesMap extends DoubleMap {
 	public DoubleMap getArcTimesMap() {
 		return new DoubleMap(name, this.arcTimes);
 	}
-	
+
+	@Override
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		super.writeCheckpoint(out);
+		Checkpoint.writeDoubleArray(out, this.arcTimes);
+	}
+
+	@Override
+	public void readCheckpoint(DataInput in) throws IOException {
+		super.readCheckpoint(in);
+		double[] at = Checkpoint.readDoubleArray(in);
+		if (at == null || at.length != this.arcTimes.length) {
+			throw new IOException("Checkpoint does not match current chain: size mismatch for " + this.name + ".");
+		}
+		System.arraycopy(at, 0, this.arcTimes, 0, at.length);
+	}
 }
@@ -5,6 +5,9 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -15,12 +18,17 @@ import se.cbb.jprime.io.NewickIOException;
 import se.cbb.jprime.io.PrIMENewickTree;
 import se.cbb.jprime.io.PrIMENewickTreeReader;
 import se.cbb.jprime.math.GammaDistribution;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.mcmc.ChangeInfo;
+import se.cbb.jprime.mcmc.Dependent;
 import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.topology.DoubleMap;
+import se.cbb.jprime.topology.GuestHostMap;
 import se.cbb.jprime.topology.MPRMap;
 import se.cbb.jprime.topology.NamesMap;
 import se.cbb.jprime.topology.RBTree;
 import se.cbb.jprime.topology.RBTreeArcDiscretiser;
+import se.cbb.jprime.topology.RBTreeBranchSwapper;
 import se.cbb.jprime.topology.TimesMap;
 import se.cbb.jprime.topology.TopologyException;
 
@@ -54,6 +62,98 @@ public class TestDLRModel {
 		//System.out.println(mod);
 		//TODO: We could use better tests on more realistic data.
 		assertTrue(mod != null);
+		double p = mod.getDataProbability().getLogValue();
+		assertEquals(-3710.269463039323, p, 1e-8);  // Value of a LogDouble-based DP with log edge rate densities.
+		
+		// Partial update of a changed leaf length must match a full update, and be undone by a restore.
+		int leaf = g.getLeaves().get(0);
+		lengths.set(leaf, 0.25);
+		Map<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		changeInfos.put(lengths, new ChangeInfo(lengths, "Test", new int[] { leaf }));
+		mod.cacheAndUpdate(changeInfos, false);
+		double pPartial = mod.getDataProbability().getLogValue();
+		DLRModel modFull = new DLRModel(g, s, rHelper, lengths, dupLoss, pd);
+		assertEquals(modFull.getDataProbability().getLogValue(), pPartial, 1e-10);
+		assertTrue(Math.abs(pPartial - p) > 1e-6);
+		lengths.set(leaf, 0.1);
+		mod.restoreCache(false);
+		assertEquals(p, mod.getDataProbability().getLogValue(), 0.0);
+		
+		// Concurrent full updates must be identical to serial ones, also when no p11 values have been requested yet.
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int u = 0; u < g.getNoOfVertices(); ++u) {
+			lengths.set(u, 0.05 + 0.01 * u);
+		}
+		DupLossProbs dupLossConc = new DupLossProbs(s, times, new DoubleParameter("Lambda", 0.5), new DoubleParameter("Mu", 0.4));
+		DLRModel modConc = new DLRModel(g, s, rHelper, lengths, dupLossConc, pd, pool, 3);
+		modConc.fullUpdate();
+		pool.shutdown();
+		DLRModel modSerial = new DLRModel(g, s, rHelper, lengths, dupLoss, pd);
+		assertEquals(modSerial.getDataProbability().getLogValue(), modConc.getDataProbability().getLogValue(), 0.0);
+		assertEquals(modSerial.toString(), modConc.toString());
+	}
+	
+	@Test
+	public void testTopologyMoves() throws NewickIOException, IOException, TopologyException {
+		URL url = this.getClass().getResource("/phylogenetics/simple.05.nw");
+		PrIMENewickTree sRaw = PrIMENewickTreeReader.readTree(new File(url.getFile()), false, true);
+		RBTree s = new RBTree(sRaw, "S");
+		TimesMap pureTimes = sRaw.getTimesMap("Times");
+		RBTreeArcDiscretiser times = new RBTreeArcDiscretiser(s, sRaw.getVertexNamesMap(true, "SNames"), pureTimes, 3, 8, 0.05, 5);
+		NamesMap sNames = sRaw.getVertexNamesMap(true, "S.names");
+		DupLossProbs dupLoss = new DupLossProbs(s, times, new DoubleParameter("Lambda", 0.5), new DoubleParameter("Mu", 0.4));
+		url = this.getClass().getResource("/phylogenetics/simple.09.guest.nw");
+		PrIMENewickTree gRaw = PrIMENewickTreeReader.readTree(new File(url.getFile()), false, false);
+		RBTree g = new RBTree(gRaw, "G");
+		NamesMap gNames = gRaw.getVertexNamesMap(false, "G.names");
+		url = this.getClass().getResource("/phylogenetics/simple.09.to.simple.05.gs");
+		GuestHostMap gsLeafMap = GuestHostMapReader.readGuestHostMap(new File(url.getFile()));
+		MPRMap gsMap = new MPRMap(gsLeafMap, g, gNames, s, sNames);
+		ReconciliationHelper rHelper = new ReconciliationHelper(g, s, times, gsMap, 100);
+		DoubleMap lengths = new DoubleMap("Lengths", g.getNoOfVertices(), 0.1);
+		for (int u = 0; u < g.getNoOfVertices(); ++u) {
+			lengths.set(u, 0.05 + 0.01 * u);
+		}
+		GammaDistribution pd = new GammaDistribution(new DoubleParameter("m", 0.1),
+				new DoubleParameter("v", 0.05));
+		DLRModel mod = new DLRModel(g, s, rHelper, lengths, dupLoss, pd);
+		RBTreeBranchSwapper swapper = new RBTreeBranchSwapper(g, lengths, new PRNG(4711));
+		
+		// Partial updates after random NNI, SPR and rerooting moves must match full updates from scratch,
+		// and be undone by a restore.
+		Map<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		for (int i = 0; i < 60; ++i) {
+			String before = mod.toString();
+			double p = mod.getDataProbability().getLogValue();
+			changeInfos.clear();
+			swapper.cacheAndPerturb(changeInfos);
+			gsMap.cacheAndUpdate(changeInfos, false);
+			rHelper.cacheAndUpdate(changeInfos, false);
+			mod.cacheAndUpdate(changeInfos, false);
+			assertNotNull(changeInfos.get(gsMap).getAffectedElements());
+			assertNotNull(changeInfos.get(rHelper).getAffectedElements());
+			assertNotNull(changeInfos.get(mod).getAffectedElements());
+			MPRMap gsMapFull = new MPRMap(gsLeafMap, g, gNames, s, sNames);
+			for (int u = 0; u < g.getNoOfVertices(); ++u) {
+				assertEquals(gsMapFull.getSigma(u), gsMap.getSigma(u));
+			}
+			DLRModel modFull = new DLRModel(g, s, new ReconciliationHelper(g, s, times, gsMapFull, 100), lengths, dupLoss, pd);
+			assertEquals(modFull.toString(), mod.toString());
+			assertEquals(modFull.getDataProbability().getLogValue(), mod.getDataProbability().getLogValue(), 0.0);
+			if (i % 3 == 0) {
+				mod.restoreCache(false);
+				rHelper.restoreCache(false);
+				gsMap.restoreCache(false);
+				swapper.restoreCache();
+				assertEquals(p, mod.getDataProbability().getLogValue(), 0.0);
+				assertEquals(before, mod.toString());
+			} else {
+				mod.clearCache(false);
+				rHelper.clearCache(false);
+				gsMap.clearCache(false);
+				swapper.clearCache();
+			}
+		}
 	}
 	
 }
@@ -3,6 +3,10 @@ package se.cbb.jprime.apps.dlrs;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -10,6 +14,8 @@ import se.cbb.jprime.apps.dlrs.DupLossProbs;
 import se.cbb.jprime.io.NewickIOException;
 import se.cbb.jprime.io.PrIMENewickTree;
 import se.cbb.jprime.io.PrIMENewickTreeReader;
+import se.cbb.jprime.mcmc.ChangeInfo;
+import se.cbb.jprime.mcmc.Dependent;
 import se.cbb.jprime.mcmc.DoubleParameter;
 import se.cbb.jprime.topology.RBTree;
 import se.cbb.jprime.topology.RBTreeArcDiscretiser;
@@ -40,4 +46,81 @@ public class TestDupLossProbs {
 				dupLoss.getP11Probability(8) * dupLoss.getP11Probability(7) * dupLoss.getExtinctionProbability(6), 1e-6);
 	}
 	
+	@Test
+	public void testPartialUpdate() throws NewickIOException, IOException, TopologyException {
+		URL url = this.getClass().getResource("/phylogenetics/simple.05.nw");
+		PrIMENewickTree rawTree = PrIMENewickTreeReader.readTree(new File(url.getFile()), false, true);
+		RBTree s = new RBTree(rawTree, "S");
+		TimesMap pureTimes = rawTree.getTimesMap("Times");
+		RBTreeArcDiscretiser times = new RBTreeArcDiscretiser(s, rawTree.getVertexNamesMap(true, "SNames"), pureTimes, 3, 8, 0.05, 4);
+		DoubleParameter lambda = new DoubleParameter("Lambda", 0.5);
+		DoubleParameter mu = new DoubleParameter("Mu", 0.4);
+		DupLossProbs dupLoss = new DupLossProbs(s, times, lambda, mu);
+		List<Double> orig = getAllP11(s, times, dupLoss);
+		
+		// Move vertex 2 upwards, which changes the arcs of 2 and its children.
+		int[] affected = new int[] { 2, 0, 1 };
+		pureTimes.cache(affected);
+		pureTimes.getVertexTimes()[2] += 0.1;
+		pureTimes.getArcTimes()[2] -= 0.1;
+		pureTimes.getArcTimes()[0] += 0.1;
+		pureTimes.getArcTimes()[1] += 0.1;
+		Map<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		changeInfos.put(pureTimes, new ChangeInfo(pureTimes, "Test", affected));
+		times.cacheAndUpdate(changeInfos, false);
+		dupLoss.cacheAndUpdate(changeInfos, false);
+		assertNotNull(changeInfos.get(dupLoss).getAffectedElements());
+		List<Double> partial = getAllP11(s, times, dupLoss);
+		List<Double> full = getAllP11(s, times, new DupLossProbs(s, times, lambda, mu));
+		assertFalse(orig.equals(partial));
+		assertEquals(full.size(), partial.size());
+		for (int i = 0; i < full.size(); ++i) {
+			assertEquals(full.get(i), partial.get(i), 1e-12);
+		}
+		for (int x = 0; x < s.getNoOfVertices(); ++x) {
+			assertEquals(new DupLossProbs(s, times, lambda, mu).getExtinctionProbability(x), dupLoss.getExtinctionProbability(x), 1e-12);
+		}
+		
+		// Restore.
+		pureTimes.restoreCache();
+		times.restoreCache(false);
+		dupLoss.restoreCache(false);
+		List<Double> restored = getAllP11(s, times, dupLoss);
+		assertEquals(orig, restored);
+		
+		// Full update and restore, reusing the cache.
+		lambda.cache(null);
+		lambda.setValue(0.6);
+		changeInfos.clear();
+		changeInfos.put(lambda, new ChangeInfo(lambda, "Test"));
+		dupLoss.cacheAndUpdate(changeInfos, false);
+		assertFalse(orig.equals(getAllP11(s, times, dupLoss)));
+		lambda.restoreCache();
+		dupLoss.restoreCache(false);
+		assertEquals(orig, getAllP11(s, times, dupLoss));
+	}
+	
+	/**
+	 * Returns p11 between all pairs of points where the first is ancestral to the second.
+	 */
+	private static List<Double> getAllP11(RBTree s, RBTreeArcDiscretiser times, DupLossProbs dupLoss) {
+		ArrayList<Double> vals = new ArrayList<Double>();
+		for (int y = 0; y < s.getNoOfVertices(); ++y) {
+			for (int yPt = 0; yPt <= times.getNoOfSlices(y) + 1; ++yPt) {
+				int x = y;
+				int xPt = yPt;
+				while (x != RBTree.NULL) {
+					vals.add(dupLoss.getP11Probability(x, xPt, y, yPt));
+					if (xPt == times.getNoOfSlices(x) + 1) {
+						x = s.getParent(x);
+						xPt = 0;
+					} else {
+						++xPt;
+					}
+				}
+			}
+		}
+		return vals;
+	}
+	
 }
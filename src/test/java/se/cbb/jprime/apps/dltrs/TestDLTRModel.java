@@ -0,0 +1,89 @@
+package se.cbb.jprime.apps.dltrs;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import se.cbb.jprime.io.GuestHostMapReader;
+import se.cbb.jprime.io.NewickIOException;
+import se.cbb.jprime.io.PrIMENewickTree;
+import se.cbb.jprime.io.PrIMENewickTreeReader;
+import se.cbb.jprime.math.GammaDistribution;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.mcmc.ChangeInfo;
+import se.cbb.jprime.mcmc.Dependent;
+import se.cbb.jprime.mcmc.DoubleParameter;
+import se.cbb.jprime.topology.DoubleMap;
+import se.cbb.jprime.topology.LeafLeafMap;
+import se.cbb.jprime.topology.NamesMap;
+import se.cbb.jprime.topology.RBTree;
+import se.cbb.jprime.topology.RBTreeBranchSwapper;
+import se.cbb.jprime.topology.RBTreeEpochDiscretiser;
+import se.cbb.jprime.topology.TimesMap;
+import se.cbb.jprime.topology.TopologyException;
+
+public class TestDLTRModel {
+
+	@Test
+	public void testTopologyMoves() throws NewickIOException, IOException, TopologyException {
+		URL url = this.getClass().getResource("/phylogenetics/simple.05.nw");
+		PrIMENewickTree sRaw = PrIMENewickTreeReader.readTree(new File(url.getFile()), false, true);
+		RBTree s = new RBTree(sRaw, "S");
+		NamesMap sNames = sRaw.getVertexNamesMap(true, "S.names");
+		TimesMap sTimes = sRaw.getTimesMap("Times");
+		RBTreeEpochDiscretiser disc = new RBTreeEpochDiscretiser(s, sNames, sTimes, 2, 4, 0.05, 5);
+		EpochDLTProbs probs = new EpochDLTProbs(disc, new DoubleParameter("Dup", 1.0),
+				new DoubleParameter("Loss", 0.5), new DoubleParameter("Trans", 0.5), true);
+		url = this.getClass().getResource("/phylogenetics/simple.09.guest.nw");
+		PrIMENewickTree gRaw = PrIMENewickTreeReader.readTree(new File(url.getFile()), false, false);
+		RBTree g = new RBTree(gRaw, "G");
+		NamesMap gNames = gRaw.getVertexNamesMap(false, "G.names");
+		url = this.getClass().getResource("/phylogenetics/simple.09.to.simple.05.gs");
+		LeafLeafMap llMap = new LeafLeafMap(GuestHostMapReader.readGuestHostMap(new File(url.getFile())), g, gNames, s, sNames);
+		ReconciliationHelper rHelper = new ReconciliationHelper(g, s, disc, llMap);
+		DoubleMap lengths = new DoubleMap("Lengths", g.getNoOfVertices(), 0.1);
+		for (int u = 0; u < g.getNoOfVertices(); ++u) {
+			lengths.set(u, 0.2 + 0.02 * u);
+		}
+		GammaDistribution pd = new GammaDistribution(new DoubleParameter("m", 0.3), new DoubleParameter("v", 0.3));
+		DLTRModel mod = new DLTRModel(g, s, rHelper, lengths, probs, pd);
+		RBTreeBranchSwapper swapper = new RBTreeBranchSwapper(g, lengths, new PRNG(4711));
+
+		// Partial updates after random NNI, SPR and rerooting moves must match full updates from scratch,
+		// and be undone by a restore.
+		Map<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		for (int i = 0; i < 60; ++i) {
+			double p = mod.getDataProbability().getLogValue();
+			changeInfos.clear();
+			swapper.cacheAndPerturb(changeInfos);
+			rHelper.cacheAndUpdate(changeInfos, false);
+			mod.cacheAndUpdate(changeInfos, false);
+			assertNotNull(changeInfos.get(rHelper).getAffectedElements());
+			assertNotNull(changeInfos.get(mod).getAffectedElements());
+			ReconciliationHelper rHelperFull = new ReconciliationHelper(g, s, disc, llMap);
+			for (int u = 0; u < g.getNoOfVertices(); ++u) {
+				assertEquals(rHelperFull.getLoLimAsString(u), rHelper.getLoLimAsString(u));
+				assertEquals(rHelperFull.getUpLimAsString(u), rHelper.getUpLimAsString(u));
+			}
+			DLTRModel modFull = new DLTRModel(g, s, rHelperFull, lengths, probs, pd);
+			assertEquals(modFull.getDataProbability().getLogValue(), mod.getDataProbability().getLogValue(), 0.0);
+			if (i % 3 == 0) {
+				mod.restoreCache(false);
+				rHelper.restoreCache(false);
+				swapper.restoreCache();
+				assertEquals(p, mod.getDataProbability().getLogValue(), 0.0);
+			} else {
+				mod.clearCache(false);
+				rHelper.clearCache(false);
+				swapper.clearCache();
+			}
+		}
+	}
+
+}
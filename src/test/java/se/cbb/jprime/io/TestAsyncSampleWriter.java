@@ -0,0 +1,152 @@
+package se.cbb.jprime.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+import se.cbb.jprime.mcmc.ConstantProposerWeight;
+import se.cbb.jprime.mcmc.ConstantThinner;
+import se.cbb.jprime.mcmc.ConstantTuningParameter;
+import se.cbb.jprime.mcmc.DoubleParameter;
+import se.cbb.jprime.mcmc.FineProposerStatistics;
+import se.cbb.jprime.mcmc.IntParameter;
+import se.cbb.jprime.mcmc.Iteration;
+import se.cbb.jprime.mcmc.MCMCManager;
+import se.cbb.jprime.mcmc.MetropolisHastingsAcceptor;
+import se.cbb.jprime.mcmc.MultiProposerSelector;
+import se.cbb.jprime.mcmc.NormalProposer;
+import se.cbb.jprime.mcmc.RealParameterUniformPrior;
+import se.cbb.jprime.topology.DoubleMap;
+import se.cbb.jprime.topology.NamesMap;
+import se.cbb.jprime.topology.RBTree;
+
+import static org.junit.Assert.*;
+
+public class TestAsyncSampleWriter {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes the same sequence of states with the given sampler.
+	 */
+	private void writeSamples(Sampler sampler) throws Exception {
+		PRNG prng = new PRNG(1234);
+		NewickTree n1 = NewickTreeReader.readTree("((A:1,B:2):3,(C:4,D:5):6);", false);
+		NewickTree n2 = NewickTreeReader.readTree("((A:1,C:2):3,(B:4,D:5):6);", false);
+		RBTree t = new RBTree(n1, "Tree");
+		RBTree t2 = new RBTree(n2, "Tree");
+		RBTree t1 = new RBTree(t);
+		NamesMap names = n1.getVertexNamesMap(true, "Names");
+		DoubleMap lengths = new DoubleMap("Lengths", t.getNoOfVertices(), 1.0);
+		Iteration iter = new Iteration(2000);
+		DoubleParameter p = new DoubleParameter("Param", 0.5);
+		IntParameter k = new IntParameter("K", 1);
+		final int[] plain = new int[1];
+		Sampleable s = new Sampleable() {
+			@Override
+			public Class<?> getSampleType() { return SampleInt.class; }
+			@Override
+			public String getSampleHeader() { return "Plain"; }
+			@Override
+			public String getSampleValue(SamplingMode mode) { return SampleInt.toString(plain[0]); }
+		};
+		ArrayList<Sampleable> sampleables = new ArrayList<Sampleable>();
+		sampleables.add(iter);
+		sampleables.add(p);
+		sampleables.add(k);
+		sampleables.add(s);
+		sampleables.add(lengths);
+		sampleables.add(new RBTreeSampleWrapper(t, names, lengths));
+		sampler.writeSampleHeader(sampleables);
+		while (iter.increment()) {
+			p.setValue(prng.nextDouble());
+			if (prng.nextDouble() < 0.3) {
+				t.setTopology(prng.nextDouble() < 0.5 ? t1 : t2);
+			}
+			plain[0] = prng.nextInt(2);
+			lengths.set(prng.nextInt(lengths.getSize()), prng.nextDouble());
+			sampler.writeSample(sampleables, Sampleable.SamplingMode.ORDINARY);
+			if (iter.getIteration() % 500 == 0) {
+				sampler.writeString("# Checkpoint " + iter.getIteration() + "\n");
+			}
+		}
+		sampler.close();
+	}
+
+	@Test
+	public void testIdenticalOutput() throws Exception {
+		File ref = this.folder.newFile("ref.mcmc");
+		File out = this.folder.newFile("out.mcmc");
+		this.writeSamples(new SampleWriter(ref, 10));
+		this.writeSamples(new AsyncSampleWriter(new SampleWriter(out, 10), 3));
+		assertArrayEquals(Files.readAllBytes(ref.toPath()), Files.readAllBytes(out.toPath()));
+	}
+
+	@Test
+	public void testIdenticalConciseOutput() throws Exception {
+		File ref = this.folder.newFile("ref.mcmc");
+		File out = this.folder.newFile("out.mcmc");
+		SampleWriter w = new SampleWriter(ref, 10);
+		w.setConcise("-");
+		this.writeSamples(w);
+		w = new SampleWriter(out, 10);
+		w.setConcise("-");
+		this.writeSamples(new AsyncSampleWriter(w));
+		assertArrayEquals(Files.readAllBytes(ref.toPath()), Files.readAllBytes(out.toPath()));
+	}
+
+	@Test(expected=IOException.class)
+	public void testClosed() throws Exception {
+		AsyncSampleWriter w = new AsyncSampleWriter(new SampleWriter(this.folder.newFile("out.mcmc"), 10));
+		w.close();
+		w.close();
+		w.writeString("Too late.\n");
+	}
+
+	/** Sampler of the last created chain. */
+	private AsyncSampleWriter sampler;
+
+	private MCMCManager createChain(File out, boolean append) throws Exception {
+		PRNG prng = new PRNG(5678);
+		Iteration iter = new Iteration(20000);
+		DoubleParameter p = new DoubleParameter("Param", 2.34);
+		RealParameterUniformPrior pPrior = new RealParameterUniformPrior(p, new RealInterval(0, 10, true, true));
+		NormalProposer pProp = new NormalProposer(p, new RealInterval(0, 10, true, true), new ConstantTuningParameter(1.0), prng);
+		MultiProposerSelector selector = new MultiProposerSelector(prng);
+		selector.add(pProp, new ConstantProposerWeight(1.0));
+		this.sampler = new AsyncSampleWriter(new SampleWriter(out, SampleWriter.DEFAULT_BUFFER_SIZE, 10, append), 16);
+		MCMCManager manager = new MCMCManager(iter, new ConstantThinner(iter, 10), selector, new MetropolisHastingsAcceptor(prng), this.sampler, prng,
+				new FineProposerStatistics(iter, 8));
+		manager.addModel(pPrior);
+		manager.addSampleable(iter);
+		manager.addSampleable(p);
+		return manager;
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		File ref = this.folder.newFile("ref.mcmc");
+		MCMCManager m = this.createChain(ref, false);
+		m.run();
+		this.sampler.close();
+
+		File out = this.folder.newFile("out.mcmc");
+		File cp = new File(this.folder.getRoot(), "out.cp");
+		m = this.createChain(out, false);
+		m.setCheckpointing(cp, 7000);
+		m.run();
+		this.sampler.close();
+		m = this.createChain(out, true);
+		m.resume(cp);
+		m.run();
+		this.sampler.close();
+		assertArrayEquals(Files.readAllBytes(ref.toPath()), Files.readAllBytes(out.toPath()));
+	}
+}
@@ -0,0 +1,154 @@
+package se.cbb.jprime.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.mcmc.DoubleParameter;
+import se.cbb.jprime.mcmc.Iteration;
+import se.cbb.jprime.topology.DoubleMap;
+import se.cbb.jprime.topology.NamesMap;
+import se.cbb.jprime.topology.RBTree;
+
+import static org.junit.Assert.*;
+
+public class TestBinarySampleWriter {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void writeSamples(Sampler sampler, int noOfSamples) throws Exception {
+		final PRNG prng = new PRNG(4321);
+		NewickTree n1 = NewickTreeReader.readTree("((A:1,B:2):3,(C:4,D:5):6);", false);
+		NewickTree n2 = NewickTreeReader.readTree("((A:1,C:2):3,(B:4,D:5):6);", false);
+		RBTree t = new RBTree(n1, "Tree");
+		RBTree t1 = new RBTree(t);
+		RBTree t2 = new RBTree(n2, "Tree");
+		NamesMap names = n1.getVertexNamesMap(true, "Names");
+		final DoubleMap lengths = new DoubleMap("Lengths", t.getNoOfVertices(), 1.0);
+		Iteration iter = new Iteration(noOfSamples);
+		final DoubleParameter p = new DoubleParameter("Param", 0.5);
+		final LogDouble density = new LogDouble(1.0);
+		List<Sampleable> sampleables = new ArrayList<Sampleable>();
+		sampleables.add(iter);
+		sampleables.add(new Sampleable() {
+			@Override
+			public Class<?> getSampleType() { return SampleLogDouble.class; }
+			@Override
+			public String getSampleHeader() { return "Density"; }
+			@Override
+			public String getSampleValue(SamplingMode mode) { return density.toString(); }
+		});
+		sampleables.add(p);
+		sampleables.add(lengths);
+		sampleables.add(new RBTreeSampleWrapper(t, names));
+		sampleables.add(new RBTreeSampleWrapper(t, names, lengths));
+		sampler.writeSampleHeader(sampleables);
+		while (iter.increment()) {
+			p.setValue(prng.nextDouble());
+			density.set(-prng.nextDouble() * 100, iter.getIteration() % 17 == 0 ? 0 : 1);
+			if (prng.nextDouble() < 0.3) {
+				t.setTopology(prng.nextDouble() < 0.5 ? t1 : t2);
+			}
+			lengths.set(prng.nextInt(lengths.getSize()), prng.nextDouble());
+			sampler.writeSample(sampleables, Sampleable.SamplingMode.ORDINARY);
+		}
+		sampler.close();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		File txt = this.folder.newFile("ref.mcmc");
+		File bin = this.folder.newFile("out.bin");
+		File txt2 = this.folder.newFile("out.mcmc");
+		this.writeSamples(new SampleWriter(txt, 10), 1000);
+		this.writeSamples(new BinarySampleWriter(bin, 64), 1000);
+		BinarySampleConverter.toText(bin, txt2, 0);
+		assertArrayEquals(Files.readAllBytes(txt.toPath()), Files.readAllBytes(txt2.toPath()));
+		assertTrue(bin.length() < txt.length() / 2);
+
+		// Types are retained, and trees share templates.
+		BinarySampleReader r = new BinarySampleReader(bin);
+		assertEquals(6, r.getNoOfColumns());
+		assertEquals(1000, r.getNoOfRows());
+		assertEquals(16, r.getNoOfBlocks());
+		assertEquals(SampleInt.class, r.getColumnType(0));
+		assertEquals(SampleLogDouble.class, r.getColumnType(1));
+		assertEquals(SampleDouble.class, r.getColumnType(r.getColumnIndex("Param")));
+		assertEquals(SampleNewickTree.class, r.getColumnType(5));
+		r.close();
+	}
+
+	@Test
+	public void testColumnExtraction() throws Exception {
+		File txt = this.folder.newFile("ref.mcmc");
+		File bin = this.folder.newFile("out.bin");
+		this.writeSamples(new SampleWriter(txt, 10), 500);
+		this.writeSamples(new BinarySampleWriter(bin, 64), 500);
+		List<String> lines = Files.readAllLines(txt.toPath());
+		BinarySampleReader r = new BinarySampleReader(bin);
+		assertEquals(2, r.getBlock(130));
+		assertEquals(7, r.getBlock(499));
+		double[] its = r.readDoubles(0, 130);
+		double[] ps = r.readDoubles(r.getColumnIndex("Param"), 130);
+		String[] trees = r.readStrings(5, 130);
+		assertEquals(370, ps.length);
+		for (int i = 0; i < ps.length; ++i) {
+			String[] vals = lines.get(131 + i).split("\t");
+			assertEquals(131 + i, (int) its[i]);
+			assertEquals(Double.parseDouble(vals[2]), ps[i], 0.0);
+			assertEquals(vals[5], trees[i]);
+		}
+		assertEquals(0, r.readStrings(1, 500).length);
+		r.close();
+	}
+
+	@Test
+	public void testFromText() throws Exception {
+		File txt = this.folder.newFile("ref.mcmc");
+		File bin = this.folder.newFile("out.bin");
+		File txt2 = this.folder.newFile("out.mcmc");
+		this.writeSamples(new SampleWriter(txt, 10), 300);
+		BinarySampleConverter.toBinary(txt, bin, 100);
+		BinarySampleConverter.toText(bin, txt2, 0);
+		assertArrayEquals(Files.readAllBytes(txt.toPath()), Files.readAllBytes(txt2.toPath()));
+		BinarySampleReader r = new BinarySampleReader(bin);
+		assertEquals(SampleInt.class, r.getColumnType(0));
+		assertEquals(SampleDouble.class, r.getColumnType(2));
+		assertEquals(SampleString.class, r.getColumnType(3));
+		assertEquals(SampleNewickTree.class, r.getColumnType(4));
+		r.close();
+
+		// Burn-in.
+		BinarySampleConverter.toText(bin, txt2, 250);
+		List<String> lines = Files.readAllLines(txt.toPath());
+		List<String> lines2 = Files.readAllLines(txt2.toPath());
+		assertEquals(51, lines2.size());
+		assertEquals(lines.get(0), lines2.get(0));
+		assertEquals(lines.subList(251, 301), lines2.subList(1, 51));
+	}
+
+	@Test(expected=IOException.class)
+	public void testLossyValue() throws Exception {
+		BinarySampleWriter w = new BinarySampleWriter(this.folder.newFile("out.bin"));
+		w.writeHeader(new String[] { "X" }, new Class<?>[] { SampleDouble.class });
+		w.writeRow(new String[] { "1.50" });
+	}
+
+	@Test(expected=IOException.class)
+	public void testIncomplete() throws Exception {
+		File bin = this.folder.newFile("out.bin");
+		BinarySampleWriter w = new BinarySampleWriter(bin);
+		w.writeHeader(new String[] { "X" }, new Class<?>[] { SampleDouble.class });
+		w.writeRow(new String[] { "1.5" });
+		w.flush();
+		new BinarySampleReader(bin);
+	}
+}
@@ -0,0 +1,58 @@
+package se.cbb.jprime.io;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestMSAPartitionReader {
+
+	@Test
+	public void testRead() {
+		String s = "# Name Model Positions Multiplier\n" +
+				"gene1  HKY85='2.0;[0.3,0.2,0.2,0.3]'  1-4,9\n" +
+				"\n" +
+				"pos3\t-\t6-11\\5\t1.5FIXED\n";
+		List<MSAPartitionDefinition> parts = MSAPartitionReader.readPartitions(s);
+		assertEquals(2, parts.size());
+		assertEquals("gene1", parts.get(0).getName());
+		assertEquals("HKY85='2.0;[0.3,0.2,0.2,0.3]'", parts.get(0).getModel());
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 8 }, parts.get(0).getPositions());
+		assertNull(parts.get(0).getRateMultiplier());
+		assertEquals("pos3", parts.get(1).getName());
+		assertNull(parts.get(1).getModel());
+		assertArrayEquals(new int[] { 5, 10 }, parts.get(1).getPositions());
+		assertEquals("1.5FIXED", parts.get(1).getRateMultiplier());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testOverlap() {
+		MSAPartitionReader.readPartitions("a JC69 1-10\nb JC69 10-20\n");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testDuplicateName() {
+		MSAPartitionReader.readPartitions("a JC69 1-10\na JC69 11-20\n");
+	}
+
+	@Test
+	public void testCoverage() {
+		MSAPartitionReader.checkCoverage(MSAPartitionReader.readPartitions("a JC69 1-9\\2\nb JC69 2-10\\2\n"), 10);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUncoveredPosition() {
+		MSAPartitionReader.checkCoverage(MSAPartitionReader.readPartitions("a JC69 1-4\nb JC69 6-10\n"), 10);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testPositionOutsideAlignment() {
+		MSAPartitionReader.checkCoverage(MSAPartitionReader.readPartitions("a JC69 1-11\n"), 10);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidRange() {
+		MSAPartitionReader.readPartitions("a JC69 10-1\n");
+	}
+}
@@ -0,0 +1,130 @@
+package se.cbb.jprime.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.biojava.nbio.core.sequence.io.FastaReaderHelper;
+import org.biojava.nbio.core.sequence.template.Compound;
+import org.biojava.nbio.core.sequence.template.Sequence;
+import org.junit.Test;
+
+import se.cbb.jprime.seqevo.MSAData;
+import se.cbb.jprime.seqevo.SequenceType;
+
+public class TestMSAReader {
+
+	@Test
+	public void testFASTA() throws Exception {
+		URL url = this.getClass().getResource("/phylogenetics/56.pep.align");
+		File f = new File(url.getFile());
+		LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs = FastaReaderHelper.readFastaProteinSequence(f);
+		MSAData expected = new MSAData(SequenceType.AMINO_ACID, seqs);
+		MSAData actual = MSAReader.readMSA(f, SequenceType.AMINO_ACID);
+		assertEquals(expected.getNoOfSequences(), actual.getNoOfSequences());
+		assertEquals(expected.getNoOfPositions(), actual.getNoOfPositions());
+		for (String name : expected.getAllSequenceNames()) {
+			assertEquals(expected.getSequenceIndex(name), actual.getSequenceIndex(name));
+			assertEquals(expected.getSequence(name), actual.getSequence(name));
+		}
+		assertEquals(expected.getNoOfPatterns(), actual.getNoOfPatterns());
+		assertArrayEquals(expected.getPatternStates(), actual.getPatternStates());
+		assertArrayEquals(expected.getPatternPositions(), actual.getPatternPositions());
+		assertArrayEquals(expected.getPatternWeights(), actual.getPatternWeights());
+		assertEquals(80, actual.getPatterns().get("lvllvmlll")[0]);
+	}
+
+	@Test
+	public void testPHYLIP() throws Exception {
+		String sequential =
+				"3 10\n" +
+				"a  ACGTACGTAC\n" +
+				"b  ACGTTCGTAC\n" +
+				"c  ACG-ACGTAN\n";
+		String interleaved =
+				"  3 10\n" +
+				"a  ACGTA\n" +
+				"b  ACGTT\n" +
+				"c  ACG-A\n" +
+				"\n" +
+				"CG TAC\n" +
+				"CGTAC\n" +
+				"CGTAN\n";
+		MSAData D1 = MSAReader.readMSA(sequential, SequenceType.DNA);
+		MSAData D2 = MSAReader.readMSA(interleaved, SequenceType.DNA);
+		for (MSAData D : Arrays.asList(D1, D2)) {
+			assertEquals(3, D.getNoOfSequences());
+			assertEquals(10, D.getNoOfPositions());
+			assertEquals(1, D.getSequenceIndex("b"));
+			assertEquals('t', D.getCharState(1, 4));
+			// Columns 5, 6 and 8 equal columns 1, 2 and 0.
+			assertEquals(7, D.getNoOfPatterns());
+			assertArrayEquals(new int[] { 2, 2, 2, 1, 1, 1, 1 }, D.getPatternWeights());
+			assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 7, 9 }, D.getPatternPositions());
+			assertEquals(D.getIntState(2, 3), D.getPatternState(3, 2));
+		}
+		assertArrayEquals(D1.getPatternStates(), D2.getPatternStates());
+	}
+
+	@Test
+	public void testCodons() throws Exception {
+		MSAData D = MSAReader.readMSA(">x\nATGAAA\nTAA\n>y some description\natgaNa\ntaa\n", SequenceType.CODON);
+		assertEquals(3, D.getNoOfPositions());
+		assertEquals(0, D.getSequenceIndex("x"));
+		assertEquals(1, D.getSequenceIndex("y"));
+		assertEquals(D.getIntState(0, 0), D.getIntState(1, 0));
+		assertEquals(D.getIntState(1, 1), D.getIntState(1, 2));
+		assertEquals(3, D.getNoOfPatterns());
+	}
+
+	@Test
+	public void testFASTAIdentifiers() throws Exception {
+		String fasta =
+				">sp|P1|N_H desc\nACGT\n" +
+				">y some description\nACGA\n" +
+				">gi|123|gb|AB1.1| thing\nACGC\n" +
+				">a,b c\nACTT\n" +
+				">lcl|foo bar\nAGTT\n";
+		LinkedHashMap<String, ? extends Sequence<? extends Compound>> seqs =
+				FastaReaderHelper.readFastaDNASequence(new ByteArrayInputStream(fasta.getBytes("US-ASCII")));
+		MSAData expected = new MSAData(SequenceType.DNA, seqs);
+		MSAData actual = MSAReader.readMSA(fasta, SequenceType.DNA);
+		assertEquals(Arrays.asList("P1", "y", "AB1.1", "a", "foo"), new ArrayList<String>(actual.getAllSequenceNames()));
+		assertEquals(expected.getAllSequenceNames(), actual.getAllSequenceNames());
+		for (String name : expected.getAllSequenceNames()) {
+			assertEquals(expected.getSequenceIndex(name), actual.getSequenceIndex(name));
+			assertEquals(expected.getSequence(name), actual.getSequence(name));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidCodonCharacter() throws Exception {
+		MSAReader.readMSA(">x\nATGAAA\n>y\nATGAJA\n", SequenceType.CODON);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNonASCIICodonCharacter() throws Exception {
+		// 0xc1 would be folded onto 'A' if only the lower 7 bits were considered.
+		MSAData.encode(SequenceType.CODON, "y", new byte[] { 'a', 't', (byte) 0xc1 }, 3);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidCharacter() throws Exception {
+		MSAReader.readMSA(">x\nACGT\n>y\nACJT\n", SequenceType.DNA);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnequalLengths() throws Exception {
+		MSAReader.readMSA(">x\nACGT\n>y\nACG\n", SequenceType.DNA);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testTruncatedPHYLIP() throws Exception {
+		MSAReader.readMSA("2 4\nx ACGT\n", SequenceType.DNA);
+	}
+}
@@ -77,4 +77,20 @@ public class TestGamma {
 		rates = Gamma.getDiscreteGammaCategories(1, 1.0, 2.0);
 		assertEquals(1.0, rates[0], 1e-7);
 	}
+	
+	@Test
+	public void testGammaDistributionLogPDF() {
+		GammaDistribution d = new GammaDistribution(2.5, 0.4);
+		double[] x = new double[] { 0.01, 0.5, 1.0, 4.0 };
+		double[] logPDF = new double[x.length];
+		d.getLogPDF(x, logPDF, x.length);
+		for (int i = 0; i < x.length; ++i) {
+			assertEquals(Math.log(d.getPDF(x[i])), logPDF[i], 1e-10);
+			assertEquals(d.getPDFAsProbability(x[i]).getLogValue(), logPDF[i], 1e-10);
+		}
+		// Far in the tail, where the density itself underflows.
+		d.getLogPDF(new double[] { 1000.0 }, logPDF, 1);
+		assertEquals(0.0, d.getPDF(1000.0), 0.0);
+		assertEquals(d.getPDFAsProbability(1000.0).getLogValue(), logPDF[0], 1e-8);
+	}
 }
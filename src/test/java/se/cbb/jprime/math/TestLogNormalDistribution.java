@@ -51,4 +51,15 @@ public class TestLogNormalDistribution {
 		assertEquals(Math.exp(2.2), d.getMedian(), 1e-6);
 		assertEquals(Math.exp(2.2-1.1), d.getMode(), 1e-6);
 	}
+	
+	@Test
+	public void testLogPDF() {
+		LogNormalDistribution d = new LogNormalDistribution(2.2, 1.1);
+		double[] x = new double[] { 0.1, 1.0, 5.5, 30.0 };
+		double[] logPDF = new double[x.length];
+		d.getLogPDF(x, logPDF, x.length);
+		for (int i = 0; i < x.length; ++i) {
+			assertEquals(Math.log(d.getPDF(x[i])), logPDF[i], 1e-10);
+		}
+	}
 }
@@ -0,0 +1,54 @@
+package se.cbb.jprime.math;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestLogSpace {
+
+	private static final double NEG_INF = Double.NEGATIVE_INFINITY;
+
+	@Test
+	public void testLogAdd() {
+		assertEquals(Math.log(0.0001 + 0.00123), LogSpace.logAdd(Math.log(0.0001), Math.log(0.00123)), 1e-12);
+		assertEquals(Math.log(0.5), LogSpace.logAdd(NEG_INF, Math.log(0.5)), 0.0);
+		assertEquals(Math.log(0.5), LogSpace.logAdd(Math.log(0.5), NEG_INF), 0.0);
+		assertEquals(NEG_INF, LogSpace.logAdd(NEG_INF, NEG_INF), 0.0);
+		// Values far below the double range.
+		assertEquals(-2000.0 + Math.log(2.0), LogSpace.logAdd(-2000.0, -2000.0), 1e-10);
+	}
+
+	@Test
+	public void testLogMult() {
+		assertEquals(Math.log(0.0001 * 0.00123), LogSpace.logMult(Math.log(0.0001), Math.log(0.00123)), 1e-12);
+		assertEquals(NEG_INF, LogSpace.logMult(NEG_INF, -3.0), 0.0);
+	}
+
+	@Test
+	public void testLogSumExp() {
+		double[] a = new double[] { 7.0, Math.log(0.1), Math.log(0.2), NEG_INF, Math.log(0.3), 7.0 };
+		assertEquals(Math.log(0.6), LogSpace.logSumExp(a, 1, 5), 1e-12);
+		assertEquals(NEG_INF, LogSpace.logSumExp(a, 3, 4), 0.0);
+		assertEquals(NEG_INF, LogSpace.logSumExp(a, 2, 2), 0.0);
+		double[] b = new double[] { -3000.0, -3001.0, -3002.0 };
+		double expected = -3000.0 + Math.log(1.0 + Math.exp(-1.0) + Math.exp(-2.0));
+		assertEquals(expected, LogSpace.logSumExp(b, 0, 3), 1e-10);
+	}
+
+	@Test
+	public void testWeightedLogSumExp() {
+		double[] a = new double[] { Math.log(0.1), Math.log(0.2), NEG_INF, Math.log(0.3) };
+		double[] w = new double[] { 0.5, 2.0, 3.0, 0.0 };
+		assertEquals(Math.log(0.05 + 0.4), LogSpace.logSumExp(a, w, 0, 4), 1e-12);
+		assertEquals(NEG_INF, LogSpace.logSumExp(a, w, 2, 4), 0.0);
+		double[] b = new double[] { -3000.0, -3001.0 };
+		assertEquals(-3000.0 + Math.log(0.5 + 0.25 * Math.exp(-1.0)), LogSpace.logSumExp(b, new double[] { 0.5, 0.25 }, 0, 2), 1e-10);
+	}
+
+	@Test
+	public void testToLogDouble() {
+		assertEquals(0.0, LogSpace.toLogDouble(NEG_INF).getValue(), 0.0);
+		assertEquals(-2000.0, LogSpace.toLogDouble(-2000.0).getLogValue(), 0.0);
+	}
+
+}
@@ -70,4 +70,15 @@ public class TestNormalDistribution {
 	public void testMisc() {
 		assertEquals(Math.sqrt(11.34)/23.45, neg.getCV(), 1e-6);
 	}
+	
+	@Test
+	public void testLogPDF() {
+		double[] x = new double[] { 0.0, 123.45, -50.0, 150.0, 7.0 };
+		double[] logPDF = new double[x.length];
+		pos.getLogPDF(x, logPDF, 4);
+		for (int i = 0; i < 4; ++i) {
+			assertEquals(Math.log(pos.getPDF(x[i])), logPDF[i], 1e-10);
+		}
+		assertEquals(0.0, logPDF[4], 0.0);
+	}
 }
@@ -0,0 +1,79 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+
+import static org.junit.Assert.*;
+
+public class TestAdaptiveTuningParameter {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MCMCManager createChain(File out, boolean append, double startCV) throws Exception {
+		PRNG prng = new PRNG(31337);
+		Iteration iter = new Iteration(40000);
+		DoubleParameter p = new DoubleParameter("Param", 2.34);
+		RealParameterUniformPrior pPrior = new RealParameterUniformPrior(p, new RealInterval(0, 10, true, true));
+		// Proposals may exceed the prior interval, so that large CVs yield rejections.
+		FineProposerStatistics stats = new FineProposerStatistics(iter, 8);
+		AdaptiveTuningParameter cv = new AdaptiveTuningParameter(iter, stats, startCV, 0.3, 20000, 100);
+		NormalProposer pProp = new NormalProposer(p, new RealInterval(0, Double.POSITIVE_INFINITY, true, true), cv, prng);
+		pProp.setStatistics(stats);
+		MultiProposerSelector selector = new MultiProposerSelector(prng);
+		selector.add(pProp, new ConstantProposerWeight(1.0));
+		SampleWriter sampler = new SampleWriter(out, SampleWriter.DEFAULT_BUFFER_SIZE, 10, append);
+		MCMCManager manager = new MCMCManager(iter, new ConstantThinner(iter, 100), selector, new MetropolisHastingsAcceptor(prng), sampler, prng,
+				new FineProposerStatistics(iter, 8));
+		manager.addModel(pPrior);
+		manager.addSampleable(iter);
+		manager.addSampleable(p);
+		return manager;
+	}
+
+	@Test
+	public void testAdaptation() throws Exception {
+		for (double startCV : new double[] { 0.01, 20.0 }) {
+			MCMCManager m = this.createChain(this.folder.newFile("out" + startCV + ".mcmc"), false, startCV);
+			m.run();
+			((SampleWriter) m.sampler).close();
+			NormalProposer prop = (NormalProposer) m.proposerSelector.getProposers().get(0);
+			AdaptiveTuningParameter cv = (AdaptiveTuningParameter) prop.getTuningParameters().get(0);
+			assertTrue(cv.isFrozen());
+			assertEquals(200, cv.getNoOfAdaptations());
+			String info = prop.getPostInfo("");
+			String ratio = info.substring(info.indexOf("Acceptance ratio after adaptation: ") + 35, info.indexOf('\n', info.indexOf("Acceptance ratio after adaptation: ")));
+			assertEquals(0.3, Double.parseDouble(ratio), 0.05);
+			assertTrue(info.contains("Final value: " + cv.getValue()));
+		}
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		File ref = this.folder.newFile("ref.mcmc");
+		MCMCManager m = this.createChain(ref, false, 0.01);
+		m.run();
+		((SampleWriter) m.sampler).close();
+
+		// Checkpoint during adaptation, then resume.
+		File out = this.folder.newFile("out.mcmc");
+		File cp = new File(this.folder.getRoot(), "out.cp");
+		m = this.createChain(out, false, 0.01);
+		m.setCheckpointing(cp, 15000);
+		m.run();
+		((SampleWriter) m.sampler).close();
+		m = this.createChain(out, true, 0.01);
+		m.resume(cp);
+		assertEquals(30000, m.iteration.getIteration());
+		m.run();
+		((SampleWriter) m.sampler).close();
+		assertArrayEquals(Files.readAllBytes(ref.toPath()), Files.readAllBytes(out.toPath()));
+	}
+}
@@ -0,0 +1,67 @@
+package se.cbb.jprime.mcmc;
+
+import java.util.Map;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class TestChangeInfoMap {
+
+	@Test
+	public void testRegistered() {
+		DoubleParameter p = new DoubleParameter("P", 1.0);
+		DoubleParameter q = new DoubleParameter("Q", 2.0);
+		ChangeInfoMap m = new ChangeInfoMap(1);
+		assertEquals(0, m.register(p));
+		assertEquals(1, m.register(q));
+		assertEquals(0, m.register(p));
+		assertEquals(2, m.getNoOfRegistered());
+		assertTrue(m.isEmpty());
+
+		ChangeInfo info = new ChangeInfo(p, "Test", new int[] { 0 });
+		assertNull(m.put(p, info));
+		assertSame(info, m.get(p));
+		assertSame(info, m.get(0));
+		assertTrue(m.isChanged(0));
+		assertFalse(m.isChanged(1));
+		assertTrue(m.isAnyChanged(new int[] { 1, 0 }));
+		assertFalse(m.isAnyChanged(new int[] { 1 }));
+		assertEquals(1, m.size());
+		for (Map.Entry<Dependent, ChangeInfo> e : m.entrySet()) {
+			assertSame(p, e.getKey());
+			assertSame(info, e.getValue());
+		}
+
+		// Clearing invalidates all slots.
+		m.clear();
+		assertNull(m.get(p));
+		assertFalse(m.containsKey(p));
+		assertFalse(m.isChanged(0));
+		assertTrue(m.isEmpty());
+
+		m.put(q, info);
+		assertSame(info, m.remove(q));
+		assertTrue(m.isEmpty());
+	}
+
+	@Test
+	public void testUnregistered() {
+		DoubleParameter p = new DoubleParameter("P", 1.0);
+		DoubleParameter q = new DoubleParameter("Q", 2.0);
+		ChangeInfoMap m = new ChangeInfoMap(4);
+		m.register(p);
+		ChangeInfo info = new ChangeInfo(q);
+		m.put(q, info);
+		assertSame(info, m.get(q));
+		assertEquals(1, m.size());
+		assertEquals(-1, m.getId(q));
+
+		// Registering moves existing change info into a slot.
+		int id = m.register(q);
+		assertSame(info, m.get(id));
+		assertEquals(1, m.size());
+		m.clear();
+		assertNull(m.get(q));
+	}
+}
@@ -0,0 +1,131 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.uncommons.maths.random.MersenneTwisterRNG;
+
+import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+
+import static org.junit.Assert.*;
+
+public class TestCheckpoint {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MCMCManager createChain(File out, boolean append) throws IOException {
+		PRNG prng = new PRNG(4711);
+		Iteration iter = new Iteration(3000);
+		Thinner thinner = new ConstantThinner(iter, 10);
+		DoubleParameter p = new DoubleParameter("Param", 2.34);
+		DoubleParameter q = new DoubleParameter("Qaram", 5.67);
+		RealParameterUniformPrior pPrior = new RealParameterUniformPrior(p, new RealInterval(0, 10, true, true));
+		RealParameterUniformPrior qPrior = new RealParameterUniformPrior(q, new RealInterval(0, 10, true, true));
+		NormalProposer pProp = new NormalProposer(p, new RealInterval(0, 10, true, true), new LinearTuningParameter(iter, 1.0, 0.1), prng);
+		NormalProposer qProp = new NormalProposer(q, new RealInterval(0, 10, true, true), new ConstantTuningParameter(0.5), prng);
+		pProp.setStatistics(new FineProposerStatistics(iter, 8));
+		qProp.setStatistics(new FineProposerStatistics(iter, 8));
+		MultiProposerSelector selector = new MultiProposerSelector(prng, new double[] { 0.5, 0.5 });
+		selector.add(pProp, new LinearProposerWeight(iter, 1.0, 2.0));
+		selector.add(qProp, new ConstantProposerWeight(1.0));
+		SampleWriter sampler = new SampleWriter(out, SampleWriter.DEFAULT_BUFFER_SIZE, 10, append);
+		sampler.setConcise("-");
+		MCMCManager manager = new MCMCManager(iter, thinner, selector, new MetropolisHastingsAcceptor(prng), sampler, prng,
+				new FineProposerStatistics(iter, 8));
+		manager.addModel(pPrior);
+		manager.addModel(qPrior);
+		manager.addSampleable(iter);
+		manager.addSampleable(manager);
+		manager.addSampleable(p);
+		manager.addSampleable(q);
+		manager.setDiagnostics(new ConvergenceDiagnostics(iter, 500, Double.NaN));
+		return manager;
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		// Uninterrupted reference run.
+		File ref = this.folder.newFile("ref.mcmc");
+		MCMCManager m = this.createChain(ref, false);
+		m.run();
+		((SampleWriter) m.sampler).close();
+		double refESS = m.getDiagnostics().getESS("Param");
+		assertFalse(Double.isNaN(refESS));
+
+		// Checkpointed run. The output file will contain samples beyond the last checkpoint at iteration 2800.
+		File out = this.folder.newFile("out.mcmc");
+		File cp = new File(this.folder.getRoot(), "out.cp");
+		m = this.createChain(out, false);
+		m.setCheckpointing(cp, 700);
+		m.run();
+		((SampleWriter) m.sampler).close();
+		assertTrue(cp.exists());
+		assertFalse(new File(cp.getPath() + ".tmp").exists());
+		String refStr = new String(Files.readAllBytes(ref.toPath()), StandardCharsets.UTF_8);
+		assertEquals(refStr, new String(Files.readAllBytes(out.toPath()), StandardCharsets.UTF_8));
+
+		// Resume from the checkpoint, truncating and appending to the output file.
+		m = this.createChain(out, true);
+		m.resume(cp);
+		assertEquals(2800, m.iteration.getIteration());
+		m.run();
+		((SampleWriter) m.sampler).close();
+		assertEquals(refStr, new String(Files.readAllBytes(out.toPath()), StandardCharsets.UTF_8));
+		assertTrue(m.getPreInfo("").contains("Resumed from checkpoint at iteration: 2800"));
+		assertEquals(refESS, m.getDiagnostics().getESS("Param"), 0.0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testMismatchingChain() throws Exception {
+		File cp = new File(this.folder.getRoot(), "bad.cp");
+		DataOutputStream out = Checkpoint.openForWriting(cp);
+		out.writeInt(0);
+		new PRNG(1).writeCheckpoint(out);
+		out.writeInt(17);
+		out.close();
+		Checkpoint.commit(cp);
+		this.createChain(this.folder.newFile("bad.mcmc"), true).resume(cp);
+	}
+
+	@Test
+	public void testPRNG() throws Exception {
+		// Variates must be identical to those of the wrapped generator type.
+		PRNG prng = new PRNG(1234);
+		MersenneTwisterRNG mt = new MersenneTwisterRNG(prng.getSeed());
+		byte[] mtBytes = new byte[7];
+		byte[] prngBytes = new byte[7];
+		for (int i = 0; i < 1001; ++i) {
+			assertEquals(mt.nextGaussian(), prng.nextGaussian(), 0.0);
+			assertEquals(mt.nextDouble(), prng.nextDouble(), 0.0);
+			assertEquals(mt.nextInt(), prng.nextInt());
+			assertEquals(mt.nextInt(17), prng.nextInt(17));
+			assertEquals(mt.nextLong(), prng.nextLong());
+			assertEquals(mt.nextBoolean(), prng.nextBoolean());
+			mt.nextBytes(mtBytes);
+			prng.nextBytes(prngBytes);
+			assertArrayEquals(mtBytes, prngBytes);
+		}
+
+		// Round-trip with a spare Gaussian pending.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		prng.writeCheckpoint(new DataOutputStream(bytes));
+		PRNG restored = new PRNG(999);
+		restored.readCheckpoint(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(prng.getSeedAsBigInteger(), restored.getSeedAsBigInteger());
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals(prng.nextGaussian(), restored.nextGaussian(), 0.0);
+			assertEquals(prng.nextInt(), restored.nextInt());
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import se.cbb.jprime.io.SampleInt;
+import se.cbb.jprime.io.SampleNewickTree;
+import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.io.Sampleable;
+import se.cbb.jprime.io.SnapshotSampleable;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+
+import static org.junit.Assert.*;
+
+public class TestConvergenceDiagnostics {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MCMCManager createChain(File out, Iteration iter, PRNG prng) throws Exception {
+		Thinner thinner = new ConstantThinner(iter, 10);
+		DoubleParameter p = new DoubleParameter("Param", 2.34);
+		DoubleParameter q = new DoubleParameter("Fixed", 5.67);
+		RealParameterUniformPrior pPrior = new RealParameterUniformPrior(p, new RealInterval(0, 10, true, true));
+		NormalProposer pProp = new NormalProposer(p, new RealInterval(0, 10, true, true), new ConstantTuningParameter(1.0), prng);
+		MultiProposerSelector selector = new MultiProposerSelector(prng);
+		selector.add(pProp, new ConstantProposerWeight(1.0));
+		SampleWriter sampler = new SampleWriter(out, SampleWriter.DEFAULT_BUFFER_SIZE);
+		MCMCManager manager = new MCMCManager(iter, thinner, selector, new MetropolisHastingsAcceptor(prng), sampler, prng,
+				new FineProposerStatistics(iter, 8));
+		manager.addModel(pPrior);
+		manager.addSampleable(iter);
+		manager.addSampleable(p);
+		manager.addSampleable(q);
+		return manager;
+	}
+
+	@Test
+	public void testStopping() throws Exception {
+		Iteration iter = new Iteration(1000000);
+		MCMCManager m = this.createChain(this.folder.newFile("out.mcmc"), iter, new PRNG(4711));
+		ConvergenceDiagnostics diag = new ConvergenceDiagnostics(iter, 1000, 200.0);
+		StringWriter info = new StringWriter();
+		diag.setReporting(info, 5000, "# ");
+		m.setDiagnostics(diag);
+		m.run();
+		((SampleWriter) m.sampler).close();
+
+		// Stopped long before the end, with the constant parameter not blocking.
+		assertTrue(diag.isConverged());
+		assertTrue(iter.getIteration() < 100000);
+		assertTrue(diag.getESS("Param") >= 200.0);
+		assertTrue(Double.isNaN(diag.getESS("Fixed")));
+		assertTrue(m.getPostInfo("").contains("ESS threshold reached"));
+		assertTrue(info.toString().contains("# CONVERGENCE DIAGNOSTICS AT ITERATION 5000\n"));
+		assertTrue(info.toString().contains("# Fixed: ESS = N/A (constant)"));
+	}
+
+	@Test
+	public void testNoStopping() throws Exception {
+		Iteration iter = new Iteration(20000);
+		MCMCManager m = this.createChain(this.folder.newFile("out.mcmc"), iter, new PRNG(4711));
+		ConvergenceDiagnostics diag = new ConvergenceDiagnostics(iter, 0, Double.NaN);
+		m.setDiagnostics(diag);
+		m.run();
+		((SampleWriter) m.sampler).close();
+		assertFalse(diag.isConverged());
+		assertEquals(20000, iter.getIteration());
+		assertTrue(diag.getESS("Param") > 0.0);
+	}
+
+	@Test
+	public void testClades() throws Exception {
+		PRNG prng = new PRNG(99);
+		Iteration iter = new Iteration(2000);
+		final String[] current = new String[1];
+		Sampleable tree = new SnapshotSampleable() {
+			@Override
+			public Class<?> getSampleType() { return SampleNewickTree.class; }
+			@Override
+			public String getSampleHeader() { return "Tree"; }
+			@Override
+			public String getSampleValue(SamplingMode mode) { return current[0]; }
+			@Override
+			public Object createSnapshot() { return new String[1]; }
+			@Override
+			public void copyToSnapshot(Object snapshot, SamplingMode mode) { ((String[]) snapshot)[0] = current[0]; }
+			@Override
+			public String getSnapshotValue(Object snapshot, SamplingMode mode) { return ((String[]) snapshot)[0]; }
+		};
+		ArrayList<Sampleable> sampleables = new ArrayList<Sampleable>();
+		sampleables.add(iter);
+		sampleables.add(tree);
+		ConvergenceDiagnostics diag = new ConvergenceDiagnostics(iter, 0, 100.0);
+		while (iter.increment()) {
+			current[0] = (prng.nextDouble() < 0.7 ? "((A,B),(C,D));" : "((A,C),(B,D));");
+			diag.addSample(sampleables);
+		}
+		assertTrue(diag.isConverged());
+		assertTrue(diag.getESS("Tree") > 1000.0);
+		String info = diag.getPostInfo("");
+		assertTrue(info.contains("Tree: clades = 4,"));
+		assertTrue(info.contains("\t0.706\t{A,B}\n"));
+		assertFalse(info.contains("{A,B,C,D}"));
+	}
+
+	@Test
+	public void testNoResampling() throws Exception {
+		// A sampleable like RealisationSampler, whose values are produced by obtaining them, must not be invoked.
+		final int[] noOfCalls = new int[1];
+		Sampleable realisations = new Sampleable() {
+			@Override
+			public Class<?> getSampleType() { return SampleInt.class; }
+			@Override
+			public String getSampleHeader() { return "RealisationID"; }
+			@Override
+			public String getSampleValue(SamplingMode mode) {
+				noOfCalls[0]++;
+				return noOfCalls[0] + "\t((A,B),C);";
+			}
+		};
+		Sampleable tree = new Sampleable() {
+			@Override
+			public Class<?> getSampleType() { return SampleNewickTree.class; }
+			@Override
+			public String getSampleHeader() { return "Tree"; }
+			@Override
+			public String getSampleValue(SamplingMode mode) {
+				noOfCalls[0]++;
+				return "((A,B),C);";
+			}
+		};
+		Iteration iter = new Iteration(500);
+		DoubleParameter p = new DoubleParameter("Param", 1.0);
+		ArrayList<Sampleable> sampleables = new ArrayList<Sampleable>();
+		sampleables.add(iter);
+		sampleables.add(realisations);
+		sampleables.add(tree);
+		sampleables.add(p);
+		ConvergenceDiagnostics diag = new ConvergenceDiagnostics(iter, 0, 100.0);
+		PRNG prng = new PRNG(7);
+		while (iter.increment()) {
+			p.setValue(prng.nextDouble());
+			diag.addSample(sampleables);
+		}
+		assertEquals(0, noOfCalls[0]);
+		assertTrue(diag.getESS("Param") > 0.0);
+		assertFalse(diag.getPostInfo("").contains("RealisationID"));
+		assertFalse(diag.getPostInfo("").contains("Tree"));
+	}
+}
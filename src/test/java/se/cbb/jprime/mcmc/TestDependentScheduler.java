@@ -0,0 +1,130 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import se.cbb.jprime.io.SampleLogDouble;
+import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+
+import static org.junit.Assert.*;
+
+public class TestDependentScheduler {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Model with density exp(-(p1+p2)^2/2), with the sum held by an intermediate dependent. */
+	private static class SumModel implements InferenceModel {
+		private final Dependent[] parents;
+		private final RealParameter[] params;
+		private double value;
+		private double cache;
+		SumModel(Dependent[] parents, RealParameter... params) {
+			this.parents = parents;
+			this.params = params;
+			this.update();
+		}
+		private void update() {
+			this.value = 0.0;
+			for (RealParameter p : this.params) {
+				this.value += p.getValue(0);
+			}
+		}
+		@Override
+		public Dependent[] getParentDependents() { return this.parents; }
+		@Override
+		public void cacheAndUpdate(Map<Dependent, ChangeInfo> changeInfos, boolean willSample) {
+			this.cache = this.value;
+			this.update();
+			changeInfos.put(this, new ChangeInfo(this));
+		}
+		@Override
+		public void clearCache(boolean willSample) { }
+		@Override
+		public void restoreCache(boolean willSample) { this.value = this.cache; }
+		@Override
+		public LogDouble getDataProbability() { return new LogDouble(-this.value * this.value / 2, 1); }
+		@Override
+		public String getModelName() { return "SumModel"; }
+		@Override
+		public Class<?> getSampleType() { return SampleLogDouble.class; }
+		@Override
+		public String getSampleHeader() { return "SumModel"; }
+		@Override
+		public String getSampleValue(SamplingMode mode) { return this.getDataProbability().toString(); }
+		@Override
+		public String getPreInfo(String prefix) { return ""; }
+		@Override
+		public String getPostInfo(String prefix) { return ""; }
+	}
+
+	private MCMCManager createChain(File out, int noOfThreads) throws Exception {
+		PRNG prng = new PRNG(1234);
+		Iteration iter = new Iteration(20000);
+		RealInterval iv = new RealInterval(-10, 10, true, true);
+		MultiProposerSelector selector = new MultiProposerSelector(prng, new double[] { 0.5, 0.3, 0.2 });
+		MCMCManager manager = new MCMCManager(iter, new ConstantThinner(iter, 10), selector, new MetropolisHastingsAcceptor(prng),
+				new SampleWriter(out, 10), prng, new FineProposerStatistics(iter, 8));
+		DoubleParameter[] ps = new DoubleParameter[3];
+		for (int i = 0; i < ps.length; ++i) {
+			ps[i] = new DoubleParameter("P" + i, 1.0 + i);
+			selector.add(new NormalProposer(ps[i], iv, new ConstantTuningParameter(0.5), prng), new ConstantProposerWeight(1.0));
+			manager.addModel(new RealParameterUniformPrior(ps[i], iv));
+		}
+		manager.addModel(new SumModel(new Dependent[] { ps[0], ps[1] }, ps[0], ps[1]));
+		SumModel sum = new SumModel(new Dependent[] { ps[1], ps[2] }, ps[1], ps[2]);
+		manager.addModel(new SumModel(new Dependent[] { sum, ps[0] }, ps[0], ps[1], ps[2]));
+		manager.setDependentThreads(noOfThreads);
+		manager.addSampleable(iter);
+		manager.addSampleable(manager);
+		for (DoubleParameter p : ps) {
+			manager.addSampleable(p);
+		}
+		return manager;
+	}
+
+	@Test
+	public void testLevels() throws Exception {
+		MCMCManager m = this.createChain(this.folder.newFile("out.mcmc"), 1);
+		m.run();
+		m.sampler.close();
+		int[][] levels = DependentScheduler.computeLevels(m.properDependents);
+		assertEquals(2, levels.length);
+		assertEquals(1, levels[0].length);
+		assertTrue(m.properDependents.get(levels[0][0]) instanceof SumModel);
+		assertEquals(5, levels[1].length);
+		assertEquals(5, DependentScheduler.getMaxWidth(levels));
+		assertFalse(m.models.contains(m.properDependents.get(levels[0][0])));
+	}
+
+	@Test
+	public void testIdenticalToSerial() throws Exception {
+		File ref = this.folder.newFile("ref.mcmc");
+		MCMCManager m = this.createChain(ref, 1);
+		m.run();
+		m.sampler.close();
+		File out = this.folder.newFile("out.mcmc");
+		m = this.createChain(out, 4);
+		MCMCProfiler prof = new MCMCProfiler(m.iteration);
+		m.setProfiler(prof);
+		m.run();
+		m.sampler.close();
+		assertArrayEquals(Files.readAllBytes(ref.toPath()), Files.readAllBytes(out.toPath()));
+		for (int i = 0; i < m.properDependents.size(); ++i) {
+			assertEquals(prof.getDependentCalls(i, MCMCProfiler.UPDATE, false),
+					prof.getDependentCalls(i, MCMCProfiler.CLEAR, false) + prof.getDependentCalls(i, MCMCProfiler.RESTORE, false));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidThreads() throws Exception {
+		this.createChain(this.folder.newFile("out.mcmc"), 0);
+	}
+}
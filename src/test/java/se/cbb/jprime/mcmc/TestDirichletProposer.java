@@ -0,0 +1,68 @@
+package se.cbb.jprime.mcmc;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import se.cbb.jprime.math.PRNG;
+
+public class TestDirichletProposer {
+
+	@Test
+	public void testUniformTarget() {
+		// With a flat target, the chain should sample Dir(1,...,1).
+		PRNG prng = new PRNG(4711);
+		int k = 4;
+		SimplexParameter p = new SimplexParameter("Freqs", new double[] { 0.7, 0.1, 0.1, 0.1 });
+		DirichletProposer prop = new DirichletProposer(p, new ConstantTuningParameter(0.3), prng);
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		int n = 200000;
+		double[] mean = new double[k];
+		double sq = 0.0;
+		int accepted = 0;
+		for (int i = 0; i < n; ++i) {
+			changeInfos.clear();
+			MetropolisHastingsProposal proposal = (MetropolisHastingsProposal) prop.cacheAndPerturb(changeInfos);
+			if (proposal.isValid() && prng.nextDouble() < Math.exp(proposal.getDensityRatio().getLogValue())) {
+				prop.clearCache();
+				assertNotNull(changeInfos.get(p));
+				++accepted;
+			} else {
+				prop.restoreCache();
+			}
+			double sum = 0.0;
+			for (int j = 0; j < k; ++j) {
+				mean[j] += p.getValue(j) / n;
+				sum += p.getValue(j);
+			}
+			assertEquals(1.0, sum, 1e-12);
+			sq += p.getValue(0) * p.getValue(0) / n;
+		}
+		assertTrue(accepted > n / 10 && accepted < n);
+		for (int j = 0; j < k; ++j) {
+			assertEquals(1.0 / k, mean[j], 0.01);
+		}
+		assertEquals(2.0 / (k * (k + 1)), sq, 0.005);
+	}
+
+	@Test
+	public void testLogDensity() {
+		// Dir(1,1,1) is uniform with density 2 on the 2-simplex.
+		double[] m = new double[] { 1.0 / 3, 1.0 / 3, 1.0 / 3 };
+		assertEquals(Math.log(2.0), DirichletProposer.getLogDensity(new double[] { 0.2, 0.3, 0.5 }, m, 3.0), 1e-9);
+	}
+
+	@Test
+	public void testRestore() {
+		SimplexParameter p = new SimplexParameter("Freqs", 20);
+		DirichletProposer prop = new DirichletProposer(p, new ConstantTuningParameter(0.1), new PRNG(5));
+		prop.cacheAndPerturb(new HashMap<Dependent, ChangeInfo>());
+		assertTrue(p.getValue(0) != 0.05);
+		prop.restoreCache();
+		for (int i = 0; i < 20; ++i) {
+			assertEquals(0.05, p.getValue(i), 0.0);
+		}
+	}
+}
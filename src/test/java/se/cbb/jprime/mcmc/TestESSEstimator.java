@@ -0,0 +1,94 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.*;
+
+import se.cbb.jprime.math.PRNG;
+
+import static org.junit.Assert.*;
+
+public class TestESSEstimator {
+
+	@Test
+	public void testIndependent() {
+		PRNG prng = new PRNG(5678);
+		ESSEstimator est = new ESSEstimator();
+		assertTrue(Double.isNaN(est.getESS()));
+		for (int i = 0; i < 100000; ++i) {
+			est.add(prng.nextGaussian());
+		}
+		assertEquals(100000, est.getNoOfValues());
+		assertEquals(0.0, est.getMean(), 0.02);
+		assertEquals(1.0, est.getVariance(), 0.02);
+		assertEquals(100000, est.getESS(), 30000);
+	}
+
+	@Test
+	public void testAutocorrelated() {
+		// AR(1) with phi = 0.9 has ESS = n * (1 - phi) / (1 + phi).
+		PRNG prng = new PRNG(1234);
+		ESSEstimator est = new ESSEstimator();
+		double x = 0.0;
+		for (int i = 0; i < 200000; ++i) {
+			x = 0.9 * x + prng.nextGaussian();
+			est.add(x);
+		}
+		assertEquals(200000 * 0.1 / 1.9, est.getESS(), 4000);
+	}
+
+	@Test
+	public void testConstant() {
+		ESSEstimator est = new ESSEstimator();
+		est.add(3.0, 1000);
+		assertTrue(est.isConstant());
+		assertTrue(Double.isNaN(est.getESS()));
+	}
+
+	@Test
+	public void testRuns() {
+		// Adding runs of values must agree with adding the values one by one, also across batch merges.
+		PRNG prng = new PRNG(7);
+		ESSEstimator runs = new ESSEstimator();
+		ESSEstimator single = new ESSEstimator();
+		for (int i = 0; i < 3000; ++i) {
+			double x = (prng.nextDouble() < 0.3 ? 1.0 : 0.0);
+			int count = prng.nextInt(20);
+			runs.add(x, count);
+			for (int j = 0; j < count; ++j) {
+				single.add(x);
+			}
+		}
+		assertEquals(single.getNoOfValues(), runs.getNoOfValues());
+		assertEquals(single.getMean(), runs.getMean(), 1e-12);
+		assertEquals(single.getVariance(), runs.getVariance(), 1e-12);
+		assertEquals(single.getESS(), runs.getESS(), 1e-9);
+		ESSEstimator copy = new ESSEstimator(runs);
+		copy.add(1.0, 100);
+		assertEquals(single.getNoOfValues(), runs.getNoOfValues());
+		assertEquals(single.getNoOfValues() + 100, copy.getNoOfValues());
+	}
+
+	@Test
+	public void testCheckpoint() throws Exception {
+		PRNG prng = new PRNG(42);
+		ESSEstimator est = new ESSEstimator();
+		for (int i = 0; i < 777; ++i) {
+			est.add(prng.nextDouble());
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		est.writeCheckpoint(new DataOutputStream(bytes));
+		ESSEstimator restored = new ESSEstimator();
+		restored.readCheckpoint(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		for (int i = 0; i < 555; ++i) {
+			double d = prng.nextDouble();
+			est.add(d);
+			restored.add(d);
+		}
+		assertEquals(est.getESS(), restored.getESS(), 0.0);
+		assertEquals(est.getMean(), restored.getMean(), 0.0);
+	}
+}
@@ -0,0 +1,84 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+
+import static org.junit.Assert.*;
+
+public class TestMCMCProfiler {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MCMCManager createChain(File out) throws Exception {
+		PRNG prng = new PRNG(4711);
+		Iteration iter = new Iteration(5000);
+		DoubleParameter p1 = new DoubleParameter("P1", 2.0);
+		DoubleParameter p2 = new DoubleParameter("P2", 3.0);
+		RealInterval iv = new RealInterval(0, 10, true, true);
+		NormalProposer prop1 = new NormalProposer(p1, iv, new ConstantTuningParameter(0.5), prng);
+		NormalProposer prop2 = new NormalProposer(p2, iv, new ConstantTuningParameter(0.5), prng);
+		MultiProposerSelector selector = new MultiProposerSelector(prng);
+		selector.add(prop1, new ConstantProposerWeight(1.0));
+		selector.add(prop2, new ConstantProposerWeight(3.0));
+		MCMCManager manager = new MCMCManager(iter, new ConstantThinner(iter, 100), selector, new MetropolisHastingsAcceptor(prng),
+				new SampleWriter(out, 10), prng, new FineProposerStatistics(iter, 8));
+		manager.addModel(new RealParameterUniformPrior(p1, iv));
+		manager.addModel(new RealParameterUniformPrior(p2, iv));
+		manager.addSampleable(iter);
+		manager.addSampleable(p1);
+		manager.addSampleable(p2);
+		return manager;
+	}
+
+	@Test
+	public void testCounts() throws Exception {
+		File ref = this.folder.newFile("ref.mcmc");
+		MCMCManager m = this.createChain(ref);
+		m.run();
+		m.sampler.close();
+
+		File out = this.folder.newFile("out.mcmc");
+		m = this.createChain(out);
+		MCMCProfiler prof = new MCMCProfiler(m.iteration);
+		StringWriter info = new StringWriter();
+		prof.setReporting(info, 1000, "# ");
+		m.setProfiler(prof);
+		m.run();
+		m.sampler.close();
+
+		// Profiling does not affect the chain.
+		assertArrayEquals(Files.readAllBytes(ref.toPath()), Files.readAllBytes(out.toPath()));
+
+		// Each prior is updated exactly when its parameter is perturbed, and then either cleared or restored.
+		long updates = 0;
+		for (int i = 0; i < 2; ++i) {
+			long n = prof.getDependentCalls(i, MCMCProfiler.UPDATE, false);
+			assertTrue(n > 0);
+			assertEquals(0, prof.getDependentCalls(i, MCMCProfiler.UPDATE, true));
+			assertEquals(n, prof.getDependentCalls(i, MCMCProfiler.CLEAR, false) + prof.getDependentCalls(i, MCMCProfiler.RESTORE, false));
+			updates += n;
+		}
+		assertEquals(5000, updates);
+
+		// Reports.
+		assertEquals(5, info.toString().split("PROFILE AT ITERATION").length - 1);
+		assertTrue(info.toString().contains("# PROFILE AT ITERATION 5000\n"));
+		String post = m.getPostInfo("");
+		assertTrue(post.contains("Profiling:\n\tPROFILER\n"));
+		assertTrue(post.contains("NormalProposer"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidInterval() {
+		new MCMCProfiler(new Iteration(10)).setReporting(new StringWriter(), 0, "");
+	}
+}
@@ -0,0 +1,95 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import org.junit.*;
+
+import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+
+import static org.junit.Assert.*;
+
+public class TestMetropolisCoupledRunner {
+
+	private MCMCManager createChain(int seed, double temperature, StringWriter out) {
+		PRNG prng = new PRNG(seed);
+		Iteration iter = new Iteration(1000);
+		Thinner thinner = new ConstantThinner(iter, 10);
+		DoubleParameter p = new DoubleParameter("Param", 2.34);
+		RealParameterUniformPrior prior = new RealParameterUniformPrior(p, new RealInterval(0, 10, true, true));
+		NormalProposer prop = new NormalProposer(p, new RealInterval(0, 10, true, true), new ConstantTuningParameter(0.5), prng);
+		MultiProposerSelector selector = new MultiProposerSelector(prng);
+		selector.add(prop, new ConstantProposerWeight(1.0));
+		SampleWriter sampler = new SampleWriter(new BufferedWriter(out), 1);
+		MCMCManager manager = new MCMCManager(iter, thinner, selector, new TemperedMetropolisHastingsAcceptor(prng, temperature),
+				sampler, prng, new ProposerStatistics());
+		manager.addModel(prior);
+		manager.addSampleable(iter);
+		manager.addSampleable(p);
+		return manager;
+	}
+
+	@Test
+	public void testTemperedAcceptor() {
+		PRNG prng = new PRNG(4711);
+		TemperedMetropolisHastingsAcceptor acc = new TemperedMetropolisHastingsAcceptor(prng, 1.0);
+		int n = 20000;
+		for (double t : new double[] { 1.0, 4.0 }) {
+			acc.setTemperature(t);
+			int cnt = 0;
+			for (int i = 0; i < n; ++i) {
+				if (acc.acceptProposedState(new LogDouble(0.25), new LogDouble(1.0), null)) {
+					++cnt;
+				}
+			}
+			assertEquals(Math.pow(0.25, 1.0 / t), cnt / (double) n, 0.02);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTemperature() {
+		new TemperedMetropolisHastingsAcceptor(new PRNG(1), 0.5);
+	}
+
+	@Test
+	public void testSwaps() throws Exception {
+		StringWriter[] outs = new StringWriter[] { new StringWriter(), new StringWriter(), new StringWriter() };
+		ArrayList<MCMCManager> chains = new ArrayList<MCMCManager>();
+		for (int i = 0; i < 3; ++i) {
+			chains.add(this.createChain(100 + i, 1.0 + i * 0.5, outs[i]));
+		}
+		MetropolisCoupledRunner runner = new MetropolisCoupledRunner(chains, 10, new PRNG(99));
+		runner.run();
+
+		// Flat posterior: every swap is accepted.
+		assertEquals(1.0, runner.getSwapAcceptanceRatio(0), 1e-12);
+		assertEquals(1.0, runner.getSwapAcceptanceRatio(1), 1e-12);
+
+		// Each level is occupied by exactly one chain, heated accordingly.
+		boolean[] seen = new boolean[3];
+		for (int l = 0; l < 3; ++l) {
+			int c = runner.getChainAtLevel(l);
+			assertFalse(seen[c]);
+			seen[c] = true;
+			assertEquals(1.0 + l * 0.5, ((TemperedMetropolisHastingsAcceptor) chains.get(c).proposalAcceptor).getTemperature(), 1e-12);
+		}
+
+		// Every sampler still receives a complete sequence of samples.
+		for (StringWriter out : outs) {
+			assertTrue(out.toString().contains("\n1000\t"));
+		}
+		assertTrue(runner.getPostInfo("").contains("METROPOLIS-COUPLED RUNNER"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonIncreasingTemperatures() {
+		ArrayList<MCMCManager> chains = new ArrayList<MCMCManager>();
+		chains.add(this.createChain(1, 2.0, new StringWriter()));
+		chains.add(this.createChain(2, 1.0, new StringWriter()));
+		new MetropolisCoupledRunner(chains, 10, new PRNG(3));
+	}
+}
@@ -0,0 +1,63 @@
+package se.cbb.jprime.mcmc;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.*;
+
+import se.cbb.jprime.io.SampleWriter;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.math.RealInterval;
+
+import static org.junit.Assert.*;
+
+public class TestMultiChainRunner {
+
+	private MCMCManager createChain(int seed, StringWriter out) {
+		PRNG prng = new PRNG(seed);
+		Iteration iter = new Iteration(2000);
+		Thinner thinner = new ConstantThinner(iter, 10);
+		DoubleParameter p = new DoubleParameter("Param", 2.34);
+		RealParameterUniformPrior prior = new RealParameterUniformPrior(p, new RealInterval(0, 10, true, true));
+		NormalProposer prop = new NormalProposer(p, new RealInterval(0, 10, true, true), new ConstantTuningParameter(0.5), prng);
+		MultiProposerSelector selector = new MultiProposerSelector(prng);
+		selector.add(prop, new ConstantProposerWeight(1.0));
+		SampleWriter sampler = new SampleWriter(new BufferedWriter(out), 1);
+		MCMCManager manager = new MCMCManager(iter, thinner, selector, new MetropolisHastingsAcceptor(prng), sampler, prng, new ProposerStatistics());
+		manager.addModel(prior);
+		manager.addSampleable(iter);
+		manager.addSampleable(p);
+		return manager;
+	}
+
+	@Test
+	public void testIndependentChains() throws Exception {
+		// Reference single-chain run.
+		StringWriter ref = new StringWriter();
+		MultiChainRunner single = new MultiChainRunner(Collections.singletonList(this.createChain(123, ref)), 1);
+		single.run();
+
+		// Concurrent runs, two of which share the reference seed.
+		StringWriter[] outs = new StringWriter[] { new StringWriter(), new StringWriter(), new StringWriter() };
+		ArrayList<MCMCManager> chains = new ArrayList<MCMCManager>();
+		chains.add(this.createChain(123, outs[0]));
+		chains.add(this.createChain(124, outs[1]));
+		chains.add(this.createChain(123, outs[2]));
+		MultiChainRunner runner = new MultiChainRunner(chains, 3);
+		assertEquals(3, runner.getNoOfChains());
+		runner.run();
+
+		assertTrue(ref.toString().length() > 0);
+		assertEquals(ref.toString(), outs[0].toString());
+		assertEquals(ref.toString(), outs[2].toString());
+		assertFalse(ref.toString().equals(outs[1].toString()));
+		assertTrue(runner.getPostInfo("").contains("Chain 3:"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoChains() {
+		new MultiChainRunner(new ArrayList<MCMCManager>(), 2);
+	}
+}
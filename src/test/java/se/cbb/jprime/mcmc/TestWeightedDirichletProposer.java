@@ -0,0 +1,79 @@
+package se.cbb.jprime.mcmc;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import se.cbb.jprime.math.PRNG;
+
+public class TestWeightedDirichletProposer {
+
+	@Test
+	public void testFlatPrior() {
+		// With the flat prior as the only target, the shares should be distributed as Dir(1,1,1).
+		PRNG prng = new PRNG(4711);
+		List<DoubleParameter> ps = Arrays.asList(new DoubleParameter("m1", 0.5), new DoubleParameter("m2", 2.0), new DoubleParameter("m3", 1.0));
+		double[] ws = new double[] { 100.0, 50.0, 300.0 };
+		WeightedDirichletProposer prop = new WeightedDirichletProposer(ps, ws, new ConstantTuningParameter(0.3), prng);
+		WeightedDirichletPrior prior = new WeightedDirichletPrior(ps, ws, 1.0);
+		assertEquals(450.0, prop.getWeightedSum(), 1e-12);
+		assertEquals(Math.log(2.0), prior.getDataProbability().getLogValue(), 1e-12);
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		int n = 100000;
+		double[] mean = new double[3];
+		int accepted = 0;
+		for (int i = 0; i < n; ++i) {
+			changeInfos.clear();
+			double old = prior.getDataProbability().getLogValue();
+			MetropolisHastingsProposal proposal = (MetropolisHastingsProposal) prop.cacheAndPerturb(changeInfos);
+			if (proposal.isValid()) {
+				prior.cacheAndUpdate(changeInfos, false);
+			}
+			double logRatio = prior.getDataProbability().getLogValue() - old + proposal.getDensityRatio().getLogValue();
+			if (proposal.isValid() && prng.nextDouble() < Math.exp(logRatio)) {
+				assertEquals(4, changeInfos.size());
+				prior.clearCache(false);
+				prop.clearCache();
+				++accepted;
+			} else {
+				if (proposal.isValid()) {
+					prior.restoreCache(false);
+				}
+				prop.restoreCache();
+			}
+			double sum = 0.0;
+			for (int j = 0; j < 3; ++j) {
+				sum += ws[j] * ps.get(j).getValue();
+				mean[j] += ws[j] * ps.get(j).getValue() / 450.0 / n;
+			}
+			assertEquals(450.0, sum, 1e-9);
+		}
+		assertTrue(accepted > n / 10 && accepted < n);
+		for (int j = 0; j < 3; ++j) {
+			assertEquals(1.0 / 3, mean[j], 0.01);
+		}
+	}
+
+	@Test
+	public void testPrior() {
+		List<DoubleParameter> ps = Arrays.asList(new DoubleParameter("m1", 0.5), new DoubleParameter("m2", 2.0));
+		WeightedDirichletPrior prior = new WeightedDirichletPrior(ps, new double[] { 2.0, 1.0 }, 3.0);
+		// Shares 1/3 and 2/3 under Dir(3,3): Gamma(6)/(Gamma(3)^2)*(1/3)^2*(2/3)^2.
+		assertEquals(Math.log(30.0 * 4.0 / 81.0), prior.getDataProbability().getLogValue(), 1e-12);
+	}
+
+	@Test
+	public void testRestore() {
+		List<DoubleParameter> ps = Arrays.asList(new DoubleParameter("m1", 0.5), new DoubleParameter("m2", 2.0));
+		WeightedDirichletProposer prop = new WeightedDirichletProposer(ps, new double[] { 1.0, 1.0 }, new ConstantTuningParameter(0.1), new PRNG(5));
+		prop.cacheAndPerturb(new HashMap<Dependent, ChangeInfo>());
+		assertTrue(ps.get(0).getValue() != 0.5);
+		prop.restoreCache();
+		assertEquals(0.5, ps.get(0).getValue(), 0.0);
+		assertEquals(2.0, ps.get(1).getValue(), 0.0);
+	}
+}
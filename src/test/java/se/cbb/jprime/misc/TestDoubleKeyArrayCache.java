@@ -0,0 +1,64 @@
+package se.cbb.jprime.misc;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestDoubleKeyArrayCache {
+
+	@Test
+	public void testSameAsDoubleKeyMap() {
+		// Random workload on a small key space, so that there are both hits and evictions.
+		DoubleKeyMap<double[]> map = new DoubleKeyMap<double[]>(16, 16, true);
+		DoubleKeyArrayCache cache = new DoubleKeyArrayCache(16, 1, true);
+		Random rnd = new Random(5);
+		long hits = 0;
+		for (int i = 0; i < 20000; ++i) {
+			double key = rnd.nextInt(40) * 0.013 + (rnd.nextBoolean() ? 1e-9 : 0.0);
+			double[] expected = map.get(key);
+			double[] actual = cache.get(key);
+			assertEquals(expected == null, actual == null);
+			if (expected == null) {
+				double[] v = cache.put(key, true);
+				if (v == null) {
+					assertEquals(0, Math.round(key * DoubleKeyMap.PRECISION));
+				} else {
+					v[0] = i;
+					map.put(key, new double[] { i });
+				}
+			} else {
+				assertEquals(expected[0], actual[0], 0.0);
+				hits++;
+			}
+			assertEquals(map.size(), cache.size());
+		}
+		assertEquals(hits, cache.getHits());
+		assertEquals(20000 - hits, cache.getMisses());
+		assertTrue(cache.getEvictions() > 0);
+		assertTrue(cache.getHitRate() > 0.0 && cache.getHitRate() < 1.0);
+	}
+
+	@Test
+	public void testRecycling() {
+		DoubleKeyArrayCache cache = new DoubleKeyArrayCache(2, 4, true);
+		double[] a = cache.put(0.1, true);
+		double[] b = cache.put(0.2, true);
+		assertNotSame(a, b);
+		assertSame(a, cache.get(0.1));
+		double[] c = cache.put(0.3, true);
+		assertSame(b, c);
+		assertFalse(cache.containsKey(0.2));
+		assertEquals(1, cache.getEvictions());
+		double[] d = cache.put(0.4, false);
+		assertNotSame(a, d);
+		assertNull(cache.get(0.1));
+		cache.clear();
+		assertEquals(0, cache.size());
+		double[] e = cache.put(0.5, true);
+		assertTrue(e == d || e == c);
+		assertNull(cache.put(0.0, true));
+		assertNull(new DoubleKeyArrayCache(0, 4, true).put(0.1, true));
+	}
+}
@@ -0,0 +1,84 @@
+package se.cbb.jprime.seqevo;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * Benchmark of the pruning step: compares <code>PruningKernel</code> with the original EJML path, i.e.,
+ * forming l .* r and invoking <code>SubstitutionMatrixHandler.multiplyWithP(...)</code> once per pattern and category,
+ * for 4 (JC69), 20 (JTT) and 61 (ARVECODON) states. Not run as part of the unit tests.
+ * <p/>
+ * Usage: <code>java se.cbb.jprime.seqevo.PruningKernelBenchmark [noOfPatterns [noOfReps]]</code>,
+ * with the test classpath. The kernels run on the JVM's scalar floating point, see <code>PruningKernel</code>.
+ */
+public class PruningKernelBenchmark {
+
+	/** Number of site rate categories. */
+	private static final int NO_OF_CATS = 4;
+
+	/** Models benchmarked, one per alphabet size. */
+	private static final String[] MODELS = { "JC69", "JTT", "ARVECODON" };
+
+	/**
+	 * Runs the benchmark.
+	 * @param args number of patterns (default 1000) and number of repetitions (default 200).
+	 */
+	public static void main(String[] args) {
+		int noOfPatterns = (args.length > 0 ? Integer.parseInt(args[0]) : 1000);
+		int reps = (args.length > 1 ? Integer.parseInt(args[1]) : 200);
+		Random rnd = new Random(17);
+		for (String model : MODELS) {
+			SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create(model, 0);
+			Q.updateTransitionMatrix(0.1);
+			int dim = Q.getAlphabetSize();
+			PruningKernel kernel = PruningKernel.create(Q.getSequenceType());
+			double[] left = random(rnd, noOfPatterns * NO_OF_CATS * dim);
+			double[] right = random(rnd, noOfPatterns * NO_OF_CATS * dim);
+			double[] out = new double[left.length];
+			DenseMatrix64F x = new DenseMatrix64F(dim, 1);
+			DenseMatrix64F y = new DenseMatrix64F(dim, 1);
+			long tEJML = 0;
+			long tKernel = 0;
+			for (int round = 0; round < 4; ++round) {
+				// Only the timings of the last round are kept, the others are warm-up.
+				long t = System.nanoTime();
+				for (int r = 0; r < reps; ++r) {
+					for (int off = 0; off < left.length; off += dim) {
+						for (int s = 0; s < dim; ++s) {
+							x.set(s, 0, left[off + s] * right[off + s]);
+						}
+						Q.multiplyWithP(x, y);
+						System.arraycopy(y.getData(), 0, out, off, dim);
+					}
+				}
+				tEJML = System.nanoTime() - t;
+				t = System.nanoTime();
+				for (int r = 0; r < reps; ++r) {
+					for (int j = 0; j < NO_OF_CATS; ++j) {
+						kernel.prune(Q.getTransitionMatrixData(), left, right, out, j * dim, NO_OF_CATS * dim, noOfPatterns);
+					}
+				}
+				tKernel = System.nanoTime() - t;
+			}
+			System.out.println(model + " (" + dim + " states, " + noOfPatterns + " patterns x " + NO_OF_CATS + " categories): " +
+					"EJML " + (tEJML / reps / 1000) + " us, kernel " + (tKernel / reps / 1000) + " us, speedup " +
+					String.format("%.2f", (double) tEJML / tKernel) + ".");
+		}
+	}
+
+	/**
+	 * Returns uniformly distributed values in [0,1).
+	 * @param rnd random number generator.
+	 * @param n number of values.
+	 * @return the values.
+	 */
+	private static double[] random(Random rnd, int n) {
+		double[] a = new double[n];
+		for (int i = 0; i < n; ++i) {
+			a[i] = rnd.nextDouble();
+		}
+		return a;
+	}
+
+}
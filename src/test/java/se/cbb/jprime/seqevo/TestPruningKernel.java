@@ -0,0 +1,57 @@
+package se.cbb.jprime.seqevo;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+public class TestPruningKernel {
+
+	private static final int NO_OF_CATS = 4;
+
+	private static double[] random(Random rnd, int n) {
+		double[] a = new double[n];
+		for (int i = 0; i < n; ++i) {
+			a[i] = rnd.nextDouble();
+		}
+		return a;
+	}
+
+	/** Reference pruning step with EJML, as done originally. */
+	private static void pruneEJML(DenseMatrix64F P, double[] left, double[] right, double[] out, int offset, int stride, int count) {
+		int dim = P.numRows;
+		DenseMatrix64F x = new DenseMatrix64F(dim, 1);
+		DenseMatrix64F y = new DenseMatrix64F(dim, 1);
+		for (int c = 0, off = offset; c < count; ++c, off += stride) {
+			for (int s = 0; s < dim; ++s) {
+				x.set(s, 0, left[off + s] * right[off + s]);
+			}
+			CommonOps.mult(P, x, y);
+			System.arraycopy(y.getData(), 0, out, off, dim);
+		}
+	}
+
+	@Test
+	public void testAgainstEJML() {
+		Random rnd = new Random(13);
+		for (SequenceType type : SequenceType.values()) {
+			PruningKernel kernel = PruningKernel.create(type);
+			int dim = type.getAlphabetSize();
+			assertEquals(dim, kernel.getAlphabetSize());
+			int noOfPatterns = 23;
+			double[] P = random(rnd, dim * dim);
+			double[] left = random(rnd, noOfPatterns * NO_OF_CATS * dim);
+			double[] right = random(rnd, noOfPatterns * NO_OF_CATS * dim);
+			double[] expected = new double[left.length];
+			double[] actual = new double[left.length];
+			for (int j = 0; j < NO_OF_CATS; ++j) {
+				pruneEJML(DenseMatrix64F.wrap(dim, dim, P), left, right, expected, j * dim, NO_OF_CATS * dim, noOfPatterns);
+				kernel.prune(P, left, right, actual, j * dim, NO_OF_CATS * dim, noOfPatterns);
+			}
+			assertArrayEquals(expected, actual, 0.0);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package se.cbb.jprime.seqevo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.mcmc.ChangeInfo;
+import se.cbb.jprime.mcmc.ConstantTuningParameter;
+import se.cbb.jprime.mcmc.Dependent;
+import se.cbb.jprime.mcmc.DirichletProposer;
+import se.cbb.jprime.mcmc.SimplexParameter;
+
+public class TestSubstitutionMatrixHandler {
+
+	private static final double[] TIMES = new double[] { 1e-6, 0.01, 0.1, 0.5, 1.0, 3.7, 10.0, 99.0 };
+
+	private static double[] fill(int n, double val) {
+		double[] a = new double[n];
+		Arrays.fill(a, val);
+		return a;
+	}
+
+	private static double[] getP(SubstitutionMatrixHandler Q, double w) {
+		Q.updateTransitionMatrix(w);
+		return Q.getTransitionMatrixData().clone();
+	}
+
+	/**
+	 * Verifies that P(w) of a handler is exp(Qw) for the normalised rate matrix Q_ij=pi_j*r_ij,
+	 * by checking the generator, the semigroup property and reversibility.
+	 */
+	private static void assertIsExpQw(SubstitutionMatrixHandler Q, double[] r, double[] pi) {
+		int dim = pi.length;
+		assertEquals(dim, Q.getAlphabetSize());
+		double[] rate = new double[dim * dim];
+		double beta = 0.0;
+		for (int i = 0, k = 0; i < dim; ++i) {
+			for (int j = i + 1; j < dim; ++j, ++k) {
+				rate[i * dim + j] = pi[j] * r[k];
+				rate[j * dim + i] = pi[i] * r[k];
+				beta += 2 * pi[i] * pi[j] * r[k];
+			}
+		}
+		double h = 1e-7;
+		double[] Ph = getP(Q, h);
+		for (int i = 0; i < dim; ++i) {
+			for (int j = 0; j < dim; ++j) {
+				if (i != j) {
+					assertEquals(rate[i * dim + j] / beta, Ph[i * dim + j] / h, 1e-5);
+				}
+			}
+		}
+		for (double w : TIMES) {
+			double[] P = getP(Q, w);
+			double[] P1 = getP(Q, 0.3 * w);
+			double[] P2 = getP(Q, 0.7 * w);
+			for (int i = 0; i < dim; ++i) {
+				double rowSum = 0.0;
+				for (int j = 0; j < dim; ++j) {
+					rowSum += P[i * dim + j];
+					assertEquals(pi[i] * P[i * dim + j], pi[j] * P[j * dim + i], 1e-14);
+					double prod = 0.0;
+					for (int k = 0; k < dim; ++k) {
+						prod += P1[i * dim + k] * P2[k * dim + j];
+					}
+					assertEquals(prod, P[i * dim + j], 1e-12);
+				}
+				assertEquals(1.0, rowSum, 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testUniform() {
+		assertIsExpQw(JC69.createJC69(10), fill(6, 1.0), fill(4, 0.25));
+		assertIsExpQw(UniformAA.createUniformAA(10), fill(190, 1.0), fill(20, 0.05));
+		assertIsExpQw(UniformCodon.createUniformCodon(10), fill(1830, 1.0), fill(61, 1.0 / 61));
+
+		// Same as eigendecomposition.
+		SubstitutionMatrixHandler closed = JC69.createJC69(10);
+		SubstitutionMatrixHandler eig = new SubstitutionMatrixHandler("JC69", SequenceType.DNA, fill(6, 1.0), fill(4, 0.25), 10);
+		for (double w : TIMES) {
+			assertArrayEquals(getP(eig, w), getP(closed, w), 1e-12);
+		}
+	}
+
+	@Test
+	public void testHKY() {
+		double[] pi = new double[] { 0.1, 0.2, 0.3, 0.4 };
+		double k = 3.5;
+		assertIsExpQw(K80.createK80(k, 10), new double[] { 1, k, 1, 1, k, 1 }, fill(4, 0.25));
+		assertIsExpQw(F81.createF81(pi, 10), fill(6, 1.0), pi);
+		assertIsExpQw(HKY85.createHKY85(k, pi, 10), new double[] { 1, k, 1, 1, k, 1 }, pi);
+
+		// Special cases.
+		double[] jc = getP(JC69.createJC69(10), 0.8);
+		assertArrayEquals(jc, getP(HKY85.createHKY85(1.0, fill(4, 0.25), 10), 0.8), 1e-15);
+		assertArrayEquals(getP(K80.createK80(k, 10), 0.8), getP(HKY85.createHKY85(k, fill(4, 2.0), 10), 0.8), 1e-15);
+	}
+
+	@Test
+	public void testEigenPath() {
+		// The generic eigen path uses the same convention as the closed forms.
+		double[] pi = new double[] { 0.1, 0.2, 0.3, 0.4 };
+		double k = 3.5;
+		double[] r = new double[] { 1, k, 1, 1, k, 1 };
+		SubstitutionMatrixHandler eig = new SubstitutionMatrixHandler("HKY85", SequenceType.DNA, r, pi, 10);
+		assertIsExpQw(eig, r, pi);
+		SubstitutionMatrixHandler closed = HKY85.createHKY85(k, pi, 10);
+		for (double w : TIMES) {
+			assertArrayEquals(getP(eig, w), getP(closed, w), 1e-12);
+		}
+
+		// Arbitrary exchangeabilities: Pi is stationary.
+		double[] gtrR = new double[] { 0.5, 2.0, 0.3, 0.8, 4.0, 1.1 };
+		SubstitutionMatrixHandler gtr = new SubstitutionMatrixHandler("GTR", SequenceType.DNA, gtrR, pi, 10);
+		assertIsExpQw(gtr, gtrR, pi);
+		double[] P = getP(gtr, 0.5);
+		for (int j = 0; j < 4; ++j) {
+			double sum = 0.0;
+			for (int i = 0; i < 4; ++i) {
+				sum += pi[i] * P[i * 4 + j];
+			}
+			assertEquals(pi[j], sum, 1e-14);
+		}
+	}
+
+	@Test
+	public void testJTTCounts() {
+		// Flux pi_i*Q_ij is proportional to the accepted point mutation counts of Jones et al. (1992).
+		SubstitutionMatrixHandler Q = JTT.createJTT(10);
+		double[] pi = Q.getStationaryFrequencies();
+		double[] P = getP(Q, 1e-7);
+		double ar = pi[0] * P[0 * 20 + 1];
+		assertEquals(216.0 / 247.0, pi[0] * P[0 * 20 + 2] / ar, 1e-5);
+		assertEquals(2348.0 / 247.0, pi[1] * P[1 * 20 + 11] / ar, 1e-5);
+		assertEquals(2914.0 / 247.0, pi[3] * P[3 * 20 + 6] / ar, 1e-5);
+	}
+
+	@Test
+	public void testFactory() {
+		SubstitutionMatrixHandler Q = SubstitutionMatrixHandlerFactory.create("hky85='2.0;[0.1,0.2,0.3,0.4]'", 10);
+		assertEquals("HKY85", Q.getModel());
+		assertArrayEquals(new double[] { 0.1, 0.2, 0.3, 0.4 }, Q.getStationaryFrequencies(), 1e-15);
+		assertEquals("K80", SubstitutionMatrixHandlerFactory.create("K80=2.5", 10).getModel());
+		assertArrayEquals(new double[] { 1.0 / 6, 1.0 / 6, 1.0 / 3, 1.0 / 3 },
+				SubstitutionMatrixHandlerFactory.create("F81='[1,1,2,2]'", 10).getStationaryFrequencies(), 1e-15);
+		assertTrue(SubstitutionMatrixHandlerFactory.create("JC69", 10) instanceof UniformMatrixHandler);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidKappa() {
+		K80.createK80(-1.0, 10);
+	}
+}
@@ -4,20 +4,29 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
 
+import org.biojava.nbio.core.sequence.DNASequence;
 import org.biojava.nbio.core.sequence.ProteinSequence;
 import org.biojava.nbio.core.sequence.compound.AminoAcidCompound;
 import org.biojava.nbio.core.sequence.io.FastaReaderHelper;
 import org.junit.Test;
 
 import se.cbb.jprime.io.NewickTree;
+import se.cbb.jprime.io.NewickTreeReader;
 import se.cbb.jprime.math.LogDouble;
+import se.cbb.jprime.math.PRNG;
+import se.cbb.jprime.mcmc.ChangeInfo;
+import se.cbb.jprime.mcmc.Dependent;
 import se.cbb.jprime.mcmc.DoubleParameter;
+import se.cbb.jprime.mcmc.SimplexParameter;
 import se.cbb.jprime.topology.DoubleMap;
 import se.cbb.jprime.topology.NamesMap;
 import se.cbb.jprime.topology.NeighbourJoiningTreeGenerator;
 import se.cbb.jprime.topology.RBTree;
+import se.cbb.jprime.topology.RBTreeBranchSwapper;
 
 /**
  * JUnit test case.
@@ -26,6 +35,52 @@ import se.cbb.jprime.topology.RBTree;
  */
 public class TestSubstitutionModel {
 
+	/** Tolerance of pinned log-likelihoods. */
+	private static final double PINNED_TOL = 1e-8;
+
+	/** Protein alignment. */
+	private MSAData D;
+
+	/** Site rates. */
+	private GammaSiteRateHandler siteRates;
+
+	/** NJ tree of the alignment. */
+	private RBTree T;
+
+	/** Leaf names of T. */
+	private NamesMap names;
+
+	/** Branch lengths of T. */
+	private DoubleMap bls;
+
+	/**
+	 * Reads the alignment and creates the tree, site rates and branch lengths shared by most tests.
+	 * @throws Exception.
+	 */
+	private void setUpFixture() throws Exception {
+		URL url = this.getClass().getResource("/phylogenetics/56.pep.align");
+		LinkedHashMap<String, ProteinSequence> seqs = FastaReaderHelper.readFastaProteinSequence(new File(url.getFile()));
+		this.D = new MSAData(SequenceType.AMINO_ACID, seqs);
+		this.siteRates = new GammaSiteRateHandler(new DoubleParameter("k", 0.7), 4);
+		MultiAlignment<ProteinSequence, AminoAcidCompound> msa = new MultiAlignment<ProteinSequence, AminoAcidCompound>(false);
+		for (ProteinSequence seq : seqs.values()) {
+			msa.addAlignedSequence(seq);
+		}
+		NewickTree rawT = NeighbourJoiningTreeGenerator.createNewickTree(msa);
+		this.T = new RBTree(rawT, "T");
+		this.names = rawT.getVertexNamesMap(true, "Names");
+		this.bls = new DoubleMap("Lengths", this.T.getNoOfVertices(), 0.1);
+	}
+
+	/**
+	 * Sets distinct branch lengths, so that partial updates are not masked by symmetries.
+	 */
+	private void setStaggeredLengths() {
+		for (int x = 0; x < this.bls.getSize(); ++x) {
+			this.bls.set(x, 0.05 + 0.01 * x);
+		}
+	}
+
 	@Test
 	public void test() throws Exception {
 		// Read FASTA file.
@@ -55,5 +110,244 @@ public class TestSubstitutionModel {
 		assertTrue(L.greaterThan(0.0));
 		assertTrue(L.lessThan(1.0));
 	}
-}
 
+	@Test
+	public void testUpdates() throws Exception {
+		this.testUpdates(null);
+	}
+
+	@Test
+	public void testConcurrentPatterns() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			this.testUpdates(pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void testUpdates(ForkJoinPool pool) throws Exception {
+		this.setUpFixture();
+		this.setStaggeredLengths();
+		SubstitutionModel sm = new SubstitutionModel("JTT", D, siteRates, JTT.createJTT(100), T, names, bls, true);
+		if (pool != null) {
+			assertTrue(D.getPatterns().size() > 16);
+			sm.setPatternPool(pool, 16);
+		}
+		// Reference values.
+		double l0 = sm.getDataProbability().getLogValue();
+		assertEquals(-3703.0319331225273, l0, PINNED_TOL);
+
+		// Partial update of a leaf's branch length, then rejection.
+		int leaf = T.getLeaves().get(3);
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		bls.cache(new int[] { leaf });
+		bls.set(leaf, 0.37);
+		changeInfos.put(bls, new ChangeInfo(bls, "Test", new int[] { leaf }));
+		sm.cacheAndUpdate(changeInfos, false);
+		assertNotNull(changeInfos.get(sm).getAffectedElements());
+		assertEquals(-3707.161731899233, sm.getDataProbability().getLogValue(), PINNED_TOL);
+		sm.restoreCache(false);
+		bls.restoreCache();
+		assertEquals(l0, sm.getDataProbability().getLogValue(), 0.0);
+
+		// Full update, then acceptance.
+		changeInfos.clear();
+		bls.cache(null);
+		for (int x = 0; x < bls.getSize(); ++x) {
+			bls.set(x, 0.2 + 0.005 * x);
+		}
+		changeInfos.put(bls, new ChangeInfo(bls, "Test"));
+		sm.cacheAndUpdate(changeInfos, false);
+		assertNull(changeInfos.get(sm).getAffectedElements());
+		sm.clearCache(false);
+		bls.clearCache();
+		assertEquals(-3652.221483148573, sm.getDataProbability().getLogValue(), PINNED_TOL);
+
+		// Partial update, then acceptance, agrees with computing from scratch.
+		changeInfos.clear();
+		bls.cache(new int[] { leaf });
+		bls.set(leaf, 0.01);
+		changeInfos.put(bls, new ChangeInfo(bls, "Test", new int[] { leaf }));
+		sm.cacheAndUpdate(changeInfos, false);
+		sm.clearCache(false);
+		bls.clearCache();
+		SubstitutionModel sm2 = new SubstitutionModel("JTT", D, siteRates, JTT.createJTT(100), T, names, bls, true);
+		assertEquals(sm2.getDataProbability().getLogValue(), sm.getDataProbability().getLogValue(), 0.0);
+	}
+
+	@Test
+	public void testTopologyUpdates() throws Exception {
+		this.setUpFixture();
+		this.setStaggeredLengths();
+		SubstitutionModel sm = new SubstitutionModel("JTT", D, siteRates, JTT.createJTT(100), T, names, bls, true);
+		RBTreeBranchSwapper swapper = new RBTreeBranchSwapper(T, bls, new PRNG(4711));
+
+		// Partial updates after random NNI, SPR and rerooting moves agree with computing from scratch,
+		// and rejections restore the previous likelihood.
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		for (int i = 0; i < 60; ++i) {
+			double l = sm.getDataProbability().getLogValue();
+			changeInfos.clear();
+			swapper.cacheAndPerturb(changeInfos);
+			assertNotNull(changeInfos.get(T).getAffectedElements());
+			sm.cacheAndUpdate(changeInfos, false);
+			assertNotNull(changeInfos.get(sm).getAffectedElements());
+			SubstitutionModel sm2 = new SubstitutionModel("JTT", D, siteRates, JTT.createJTT(100), T, names, bls, true);
+			assertEquals(sm2.getDataProbability().getLogValue(), sm.getDataProbability().getLogValue(), 1e-9);
+			if (i % 3 == 0) {
+				sm.restoreCache(false);
+				swapper.restoreCache();
+				assertEquals(l, sm.getDataProbability().getLogValue(), 0.0);
+			} else {
+				sm.clearCache(false);
+				swapper.clearCache();
+			}
+		}
+	}
+
+	@Test
+	public void testPartitions() throws Exception {
+		this.setUpFixture();
+		SubstitutionModel sm = new SubstitutionModel("JTT", D, siteRates, JTT.createJTT(100), T, names, bls, true);
+
+		// Odd and even positions with identical models multiply to the likelihood of the entire alignment.
+		int n = D.getNoOfPositions();
+		int[] odd = new int[(n + 1) / 2];
+		int[] even = new int[n / 2];
+		for (int i = 0; i < n; ++i) {
+			if (i % 2 == 0) {
+				odd[i / 2] = i;
+			} else {
+				even[i / 2] = i;
+			}
+		}
+		MSAData D1 = D.getPartition(odd);
+		MSAData D2 = D.getPartition(even);
+		assertEquals(odd.length, D1.getNoOfPositions());
+		assertEquals(D.getSequence(names.get(T.getLeaves().get(0))).charAt(2), D1.getSequence(names.get(T.getLeaves().get(0))).charAt(1));
+		SubstitutionModel sm1 = new SubstitutionModel("P1", D1, siteRates, JTT.createJTT(100), T, names, bls, true);
+		SubstitutionModel sm2 = new SubstitutionModel("P2", D2, siteRates, JTT.createJTT(100), T, names, bls, true);
+		LogDouble prod = new LogDouble(sm1.getDataProbability()).mult(sm2.getDataProbability());
+		assertEquals(sm.getDataProbability().getLogValue(), prod.getLogValue(), 1e-9);
+
+		// A rate multiplier scales all branch lengths, and a change causes a full update.
+		DoubleParameter rm = new DoubleParameter("RateMultiplier", 1.0);
+		SubstitutionModel smr = new SubstitutionModel("P1", D1, siteRates, JTT.createJTT(100), T, names, bls, rm, true);
+		assertEquals(sm1.getDataProbability().getLogValue(), smr.getDataProbability().getLogValue(), 0.0);
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		rm.cache(null);
+		rm.setValue(2.5);
+		changeInfos.put(rm, new ChangeInfo(rm, "Test"));
+		smr.cacheAndUpdate(changeInfos, false);
+		assertNull(changeInfos.get(smr).getAffectedElements());
+		DoubleMap scaled = new DoubleMap("Lengths", T.getNoOfVertices(), 0.25);
+		SubstitutionModel sms = new SubstitutionModel("P1", D1, siteRates, JTT.createJTT(100), T, names, scaled, true);
+		assertEquals(sms.getDataProbability().getLogValue(), smr.getDataProbability().getLogValue(), 1e-9);
+		smr.restoreCache(false);
+		rm.restoreCache();
+		assertEquals(sm1.getDataProbability().getLogValue(), smr.getDataProbability().getLogValue(), 0.0);
+	}
+
+	@Test
+	public void testEstimatedMatrix() throws Exception {
+		this.setUpFixture();
+		SubstitutionMatrixHandler Q = GTR.createGTR(SequenceType.AMINO_ACID, 100);
+		SimplexParameter Pi = Q.getStationaryFrequencyParameter();
+		SimplexParameter R = Q.getExchangeabilityParameter();
+		SubstitutionModel sm = new SubstitutionModel("GTR", D, siteRates, Q, T, names, bls, true);
+		double l0 = sm.getDataProbability().getLogValue();
+
+		// Perturb Pi, then rejection.
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		Pi.cache(null);
+		double[] jtt = JTT.createJTT(1).getStationaryFrequencies();
+		for (int i = 0; i < jtt.length; ++i) {
+			Pi.setValue(i, jtt[i]);
+		}
+		changeInfos.put(Pi, new ChangeInfo(Pi, "Test"));
+		Q.cacheAndUpdate(changeInfos, false);
+		sm.cacheAndUpdate(changeInfos, false);
+		assertNotNull(changeInfos.get(Q));
+		assertNull(changeInfos.get(sm).getAffectedElements());
+		double l1 = sm.getDataProbability().getLogValue();
+		assertTrue(l1 != l0);
+		SubstitutionModel sm2 = new SubstitutionModel("GTR", D, siteRates,
+				new SubstitutionMatrixHandler("GTR", SequenceType.AMINO_ACID, R.getValues(), Pi.getValues(), 100), T, names, bls, true);
+		assertEquals(sm2.getDataProbability().getLogValue(), l1, 0.0);
+		sm.restoreCache(false);
+		Q.restoreCache(false);
+		Pi.restoreCache();
+		assertEquals(l0, sm.getDataProbability().getLogValue(), 0.0);
+
+		// Cached P matrices must be those of the restored Q.
+		changeInfos.clear();
+		bls.cache(null);
+		changeInfos.put(bls, new ChangeInfo(bls, "Test"));
+		sm.cacheAndUpdate(changeInfos, false);
+		assertEquals(l0, sm.getDataProbability().getLogValue(), 0.0);
+		sm.clearCache(false);
+		bls.clearCache();
+
+		// Perturb R, then acceptance.
+		changeInfos.clear();
+		R.cache(null);
+		for (int i = 0; i < R.getNoOfSubParameters(); ++i) {
+			R.setValue(i, R.getValue(i) * (1.0 + (i % 7) * 0.1));
+		}
+		changeInfos.put(R, new ChangeInfo(R, "Test"));
+		Q.cacheAndUpdate(changeInfos, false);
+		sm.cacheAndUpdate(changeInfos, false);
+		Q.clearCache(false);
+		sm.clearCache(false);
+		R.clearCache();
+		sm2 = new SubstitutionModel("GTR", D, siteRates,
+				new SubstitutionMatrixHandler("GTR", SequenceType.AMINO_ACID, R.getValues(), Pi.getValues(), 100), T, names, bls, true);
+		assertEquals(sm2.getDataProbability().getLogValue(), sm.getDataProbability().getLogValue(), 0.0);
+	}
+
+	private static String balancedTree(int from, int to) {
+		if (to - from == 1) {
+			return "L" + from;
+		}
+		int mid = (from + to) / 2;
+		return "(" + balancedTree(from, mid) + "," + balancedTree(mid, to) + ")";
+	}
+
+	@Test
+	public void testScaling() throws Exception {
+		// With saturated branches, each pattern has likelihood 0.25^n, which underflows without rescaling.
+		int n = 1024;
+		NewickTree rawT = NewickTreeReader.readTree(balancedTree(0, n) + ";", false);
+		RBTree T = new RBTree(rawT, "T");
+		NamesMap names = rawT.getVertexNamesMap(true, "Names");
+		LinkedHashMap<String, DNASequence> seqs = new LinkedHashMap<String, DNASequence>();
+		String bases = "ACGT";
+		for (int i = 0; i < n; ++i) {
+			StringBuilder sb = new StringBuilder();
+			for (int pos = 0; pos < 10; ++pos) {
+				sb.append(bases.charAt((i * pos + i / 7) % 4));
+			}
+			seqs.put("L" + i, new DNASequence(sb.toString()));
+		}
+		MSAData D = new MSAData(SequenceType.DNA, seqs);
+		GammaSiteRateHandler siteRates = new GammaSiteRateHandler(new DoubleParameter("k", 1.0), 1);
+		DoubleMap bls = new DoubleMap("Lengths", T.getNoOfVertices(), 50.0);
+		SubstitutionModel sm = new SubstitutionModel("JC69", D, siteRates, JC69.createJC69(100), T, names, bls, true);
+		double expected = 10 * n * Math.log(0.25);
+		assertEquals(expected, sm.getDataProbability().getLogValue(), 1e-9 * Math.abs(expected));
+
+		// Partial update, then acceptance, agrees with computing from scratch.
+		int leaf = T.getLeaves().get(5);
+		HashMap<Dependent, ChangeInfo> changeInfos = new HashMap<Dependent, ChangeInfo>();
+		bls.cache(new int[] { leaf });
+		bls.set(leaf, 0.1);
+		changeInfos.put(bls, new ChangeInfo(bls, "Test", new int[] { leaf }));
+		sm.cacheAndUpdate(changeInfos, false);
+		sm.clearCache(false);
+		bls.clearCache();
+		double l = sm.getDataProbability().getLogValue();
+		SubstitutionModel sm2 = new SubstitutionModel("JC69", D, siteRates, JC69.createJC69(100), T, names, bls, true);
+		assertEquals(sm2.getDataProbability().getLogValue(), l, 0.0);
+	}
+}